@@ -6,8 +6,10 @@ package net.sf.thingamablog;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.net.URLDecoder;
 
 
@@ -71,6 +73,32 @@ public class EnvUtils
         }
     }
  
+    /**
+     * Sets the connect and read timeouts of a connection. URLConnection only
+     * has setters for them since Java 5, so on older JREs the timeouts are
+     * set as the defaults of all the connections of the JRE's HTTP client
+     * 
+     * @param conn The connection
+     * @param connectTimeout The connect timeout in milliseconds
+     * @param readTimeout The read timeout in milliseconds
+     */
+    public static void setTimeouts(URLConnection conn, int connectTimeout, int readTimeout)
+    {
+        try
+        {
+            Class params[] = {int.class};
+            Method setConnect = URLConnection.class.getMethod("setConnectTimeout", params);
+            Method setRead = URLConnection.class.getMethod("setReadTimeout", params);
+            setConnect.invoke(conn, new Object[]{new Integer(connectTimeout)});
+            setRead.invoke(conn, new Object[]{new Integer(readTimeout)});
+        }
+        catch(Exception ex)
+        {
+            System.setProperty("sun.net.client.defaultConnectTimeout", String.valueOf(connectTimeout));
+            System.setProperty("sun.net.client.defaultReadTimeout", String.valueOf(readTimeout));
+        }
+    }
+ 
     private static URL getURLForObject(Object obj)
     {
         String name = obj.getClass().getName();
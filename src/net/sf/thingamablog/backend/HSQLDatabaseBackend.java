@@ -24,6 +24,7 @@ package net.sf.thingamablog.backend;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -33,8 +34,13 @@ import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 import net.sf.thingamablog.blog.Author;
@@ -76,6 +82,18 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	private static final String MODIFIED = "MODIFIED";
 	private static final String DRAFT = "DRAFT";
 	
+	//entry category join table stuff
+	private static final String ENTRY_CAT_TABLE = "ENTRY_CATS_";
+	private static final String ENTRY_ID = "ENTRY_ID";
+	private static final String CATEGORY = "CATEGORY";
+	//the join tables are rebuilt when their version is older than this
+	private static final int ENTRY_CATS_VERSION = 1;
+	
+	//schema version table stuff
+	private static final String SCHEMA_TABLE = "SCHEMA_VERSIONS";
+	private static final String SCHEMA_NAME = "NAME";
+	private static final String SCHEMA_VERSION = "VERSION";
+	
 	//Feed table stuff
 	private static final String FEED_TABLE = "FEED_ITEMS";            
 	private static final String ITEM_ID = "ID";
@@ -92,6 +110,10 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	private static final String ITEM_AUTHOR = "AUTHOR";
 	private static final String READ = "READ";
 	private static final String HASH_CODE = "HASH_CODE";
+	private static final String FINGERPRINT = "FINGERPRINT";
+	private static final String FINGERPRINT_INDEX = "IDX_FEED_FINGERPRINT";
+	
+	private static Logger logger = Logger.getLogger("net.sf.thingamablog.backend");
 	
 	/** The connection to the database */
 	protected Connection conn;
@@ -99,6 +121,12 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	private AuthorStore authorStore = new DBAuthorStore();
 	private CategoryStore categoryStore = new DBCategoryStore();	
 	
+	/** Lets any number of queries run at once, but only one update */
+	private ReadWriteLock lock = new ReadWriteLock();
+	
+	//blogKey:operation -> PreparedStatement
+	private Hashtable statements = new Hashtable();
+	
 	
 	public AuthorStore getAuthorStore()
 	{
@@ -116,7 +144,20 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	 * @param dir The directory where the database is located
 	 * @throws Exception If an error occurs while connecting to the database
 	 */
-	public synchronized void connectToDB(File dir) throws Exception
+	public void connectToDB(File dir) throws Exception
+	{
+		lock.writeLock();
+		try
+		{
+			openDB(dir);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+
+	private void openDB(File dir) throws Exception
 	{        
 		File dbDir = new File(dir, "database");
 		if(!dbDir.exists() ||dbDir.isFile())
@@ -126,6 +167,7 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		{
 			//connect to the local blog
 			connect(dbDir.getAbsolutePath() + File.separator + "database");
+			closeStatements(null);
 		}
 		catch(Exception ex)
 		{
@@ -180,12 +222,398 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 				LINK + " LONGVARCHAR, " + 
 				CHANNEL_TITLE + " LONGVARCHAR, " +
 				CHANNEL_LINK + " LONGVARCHAR, " + 
-				CHANNEL_IMG_LINK + " LONGVARCHAR)"                
+				CHANNEL_IMG_LINK + " LONGVARCHAR, " + 
+				FINGERPRINT + " BIGINT)"                
 			);
 		} 
 		catch(SQLException sqle) 
 		{
 			//System.out.println(FEED_TABLE + " exists");
+		}
+	
+		//upgrade databases created by older versions
+		try
+		{
+			migrateSchema();
+		}
+		catch(SQLException ex)
+		{
+			throw new Exception("Unable to upgrade database: " + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Gets a prepared statement from the statement cache, preparing it the
+	 * first time it is asked for. Cached statements are shared, so callers
+	 * set the parameters and read the results while synchronized on the
+	 * statement, and never close it.
+	 * 
+	 * @param blogKey The weblog the statement is for, or null
+	 * @param op The name of the statement, unique for each blog
+	 * @param sql The SQL of the statement
+	 * @return The statement
+	 * @throws SQLException If the statement can't be prepared
+	 */
+	private PreparedStatement prepare(String blogKey, String op, String sql)
+	throws SQLException
+	{
+		String key = blogKey + ":" + op;
+		synchronized(statements)
+		{
+			PreparedStatement ps = (PreparedStatement)statements.get(key);
+			if(ps == null)
+			{
+				ps = conn.prepareStatement(sql);
+				statements.put(key, ps);
+			}
+			return ps;
+		}
+	}
+	
+	/**
+	 * Closes and removes cached statements
+	 * @param blogKey The weblog whose statements are closed, or null for all statements
+	 */
+	private void closeStatements(String blogKey)
+	{
+		synchronized(statements)
+		{
+			String prefix = blogKey + ":";
+			Vector keys = new Vector();
+			for(Enumeration e = statements.keys(); e.hasMoreElements();)
+			{
+				String key = e.nextElement().toString();
+				if(blogKey == null || key.startsWith(prefix))
+					keys.add(key);
+			}
+			
+			for(int i = 0; i < keys.size(); i++)
+			{
+				PreparedStatement ps = (PreparedStatement)statements.remove(keys.elementAt(i));
+				try
+				{
+					ps.close();
+				}
+				catch(SQLException ex){}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the total time database calls have spent waiting
+	 * for other threads to finish with the database
+	 * @return The time in milliseconds
+	 */
+	public long getLockWaitTime()
+	{
+		return lock.getWaitTime();
+	}
+	
+	/**
+	 * Gets the number of database calls that had to wait
+	 * for other threads to finish with the database
+	 * @return The number of waits
+	 */
+	public int getLockWaitCount()
+	{
+		return lock.getWaitCount();
+	}
+	
+	/**
+	 * Adds the indexes and tables that databases created by older versions
+	 * don't have. Anything that already exists is left alone, so this is
+	 * safe to run every time the database is opened.
+	 * 
+	 * @throws SQLException If an error occurs while upgrading the database
+	 */
+	private void migrateSchema() throws SQLException
+	{
+		try 
+		{   
+			query
+			(
+				"CREATE CACHED TABLE " + SCHEMA_TABLE + " (" + 
+				SCHEMA_NAME + " VARCHAR(255), " +
+				SCHEMA_VERSION + " INTEGER)"
+			);
+		} 
+		catch(SQLException sqle) 
+		{
+			//thrown when TABLE already exists...
+		}
+		
+		createIndex("IDX_FEED_HASH", FEED_TABLE, HASH_CODE);
+		createIndex("IDX_FEED_CHANNEL", FEED_TABLE, CHANNEL_LINK);
+		migrateFeedFingerprints();
+		
+		Vector keys = new Vector();
+		ResultSet rs = conn.getMetaData().getTables(
+			null, null, ENTRY_TABLE + "%", new String[]{"TABLE"});
+		while(rs.next())
+		{
+			String name = rs.getString("TABLE_NAME");
+			if(name.startsWith(ENTRY_TABLE))
+				keys.add(name.substring(ENTRY_TABLE.length()));
+		}
+		rs.close();
+		
+		for(int i = 0; i < keys.size(); i++)
+			initEntrySchema(keys.elementAt(i).toString());
+	}
+	
+	/**
+	 * Creates the indexes of an entry table, and the table that joins
+	 * its entries to their categories. The join table is rebuilt from the
+	 * categories of the entries when its recorded version is older than
+	 * ENTRY_CATS_VERSION, which is the case for tables filled by earlier
+	 * versions. The version is written in the same transaction, so a
+	 * rebuild that didn't finish is done again the next time the
+	 * database is opened.
+	 * 
+	 * @param blogKey The weblog of the entry table
+	 * @throws SQLException If an error occurs while filling the join table
+	 */
+	private void initEntrySchema(String blogKey) throws SQLException
+	{
+		String table = ENTRY_TABLE + blogKey;
+		createIndex("IDX_TS_" + blogKey, table, TIMESTAMP + ", " + DRAFT);
+		createIndex("IDX_MOD_" + blogKey, table, MODIFIED);
+		
+		String catTable = ENTRY_CAT_TABLE + blogKey;
+		try 
+		{   
+			query
+			(
+				"CREATE CACHED TABLE " + catTable + " (" + 
+				ENTRY_ID + " INTEGER, " +
+				CATEGORY + " LONGVARCHAR)"
+			);
+		} 
+		catch(SQLException sqle) 
+		{
+			//thrown when TABLE already exists...
+		}
+		createIndex("IDX_CAT_" + blogKey, catTable, CATEGORY);
+		createIndex("IDX_CAT_ENTRY_" + blogKey, catTable, ENTRY_ID);
+		
+		if(getSchemaVersion(catTable) >= ENTRY_CATS_VERSION)
+			return;
+		
+		Statement st = conn.createStatement();
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		try
+		{
+			st.executeUpdate("DELETE FROM " + catTable);
+			ResultSet rs = st.executeQuery(
+				"SELECT " + ID + ", " + CATEGORIES + " FROM " + table);
+			while(rs.next())
+			{
+				writeEntryCategories(blogKey, rs.getInt(ID), 
+					tokenizeCatString(rs.getString(CATEGORIES)), false);
+			}
+			rs.close();
+			setSchemaVersion(catTable, ENTRY_CATS_VERSION);
+			conn.commit();
+		}
+		catch(SQLException ex)
+		{
+			conn.rollback();
+			throw ex;
+		}
+		finally
+		{
+			conn.setAutoCommit(autoCommit);
+			st.close();
+		}
+	}
+	
+	/**
+	 * Gets the version a table was last built with
+	 * 
+	 * @param name The name of the table
+	 * @return The version, or 0 if none was recorded
+	 * @throws SQLException If an error occurs
+	 */
+	private int getSchemaVersion(String name) throws SQLException
+	{
+		PreparedStatement ps = conn.prepareStatement(
+			"SELECT " + SCHEMA_VERSION + " FROM " + SCHEMA_TABLE + 
+			" WHERE " + SCHEMA_NAME + " = ?");
+		try
+		{
+			ps.setString(1, name);
+			ResultSet rs = ps.executeQuery();
+			int version = rs.next() ? rs.getInt(1) : 0;
+			rs.close();
+			return version;
+		}
+		finally
+		{
+			ps.close();
+		}
+	}
+	
+	/**
+	 * Records the version a table was built with
+	 * 
+	 * @param name The name of the table
+	 * @param version The version, or 0 to forget it
+	 * @throws SQLException If an error occurs
+	 */
+	private void setSchemaVersion(String name, int version) throws SQLException
+	{
+		PreparedStatement ps = conn.prepareStatement(
+			"DELETE FROM " + SCHEMA_TABLE + " WHERE " + SCHEMA_NAME + " = ?");
+		try
+		{
+			ps.setString(1, name);
+			ps.executeUpdate();
+		}
+		finally
+		{
+			ps.close();
+		}
+		if(version == 0)
+			return;
+		
+		ps = conn.prepareStatement(
+			"INSERT INTO " + SCHEMA_TABLE + "(" + SCHEMA_NAME + ", " + 
+			SCHEMA_VERSION + ") VALUES(?, ?)");
+		try
+		{
+			ps.setString(1, name);
+			ps.setInt(2, version);
+			ps.executeUpdate();
+		}
+		finally
+		{
+			ps.close();
+		}
+	}
+	
+	/**
+	 * Adds the fingerprint column to feed tables created by older versions,
+	 * which told items apart by a 32 bit hash code, and fills it in. The
+	 * fingerprint index is created last, so a migration that didn't
+	 * finish is done again the next time the database is opened.
+	 * 
+	 * @throws SQLException If an error occurs while migrating the items
+	 */
+	private void migrateFeedFingerprints() throws SQLException
+	{
+		DatabaseMetaData md = conn.getMetaData();
+		ResultSet rs = md.getIndexInfo(null, null, FEED_TABLE, false, false);
+		boolean indexed = false;
+		while(rs.next())
+			indexed |= FINGERPRINT_INDEX.equals(rs.getString("INDEX_NAME"));
+		rs.close();
+		if(indexed)
+			return;
+		
+		rs = md.getColumns(null, null, FEED_TABLE, FINGERPRINT);
+		boolean exists = rs.next();
+		rs.close();
+		if(!exists)
+			update("ALTER TABLE " + FEED_TABLE + " ADD COLUMN " + FINGERPRINT + " BIGINT");
+		
+		//only the hashed columns are read, a batch of items at a time
+		PreparedStatement st = conn.prepareStatement(
+			"SELECT " + ITEM_ID + ", " + ITEM_TITLE + ", " + LINK + ", " + DESC + ", " + 
+			CHANNEL_LINK + " FROM " + FEED_TABLE + " WHERE " + FINGERPRINT + " IS NULL AND " + 
+			ITEM_ID + " > ? ORDER BY " + ITEM_ID);
+		st.setMaxRows(500);
+		PreparedStatement ps = conn.prepareStatement(
+			"UPDATE " + FEED_TABLE + " SET " + FINGERPRINT + " = ? WHERE " + ITEM_ID + " = ?");
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		try
+		{
+			int lastID = -1;
+			int n;
+			do
+			{
+				st.setInt(1, lastID);
+				rs = st.executeQuery();
+				n = 0;
+				while(rs.next())
+				{
+					lastID = rs.getInt(ITEM_ID);
+					ps.setLong(1, FeedItem.fingerprint(rs.getString(ITEM_TITLE), 
+						rs.getString(LINK), rs.getString(DESC), rs.getString(CHANNEL_LINK)));
+					ps.setInt(2, lastID);
+					ps.addBatch();
+					n++;
+				}
+				rs.close();
+				ps.executeBatch();
+			}
+			while(n > 0);
+			conn.commit();
+		}
+		catch(SQLException ex)
+		{
+			conn.rollback();
+			throw ex;
+		}
+		finally
+		{
+			conn.setAutoCommit(autoCommit);
+			ps.close();
+			st.close();
+		}
+		
+		createIndex(FINGERPRINT_INDEX, FEED_TABLE, CHANNEL_LINK + ", " + FINGERPRINT);
+	}
+	
+	private void createIndex(String name, String table, String columns)
+	{
+		try
+		{
+			query("CREATE INDEX " + name + " ON " + table + " (" + columns + ")");
+		}
+		catch(SQLException sqle)
+		{
+			//thrown when the INDEX already exists...
+		}
+	}
+	
+	/**
+	 * Writes the categories of an entry to the join table
+	 * 
+	 * @param blogKey The weblog of the entry
+	 * @param id The ID of the entry
+	 * @param cats The categories of the entry, may be null
+	 * @param replace true to remove the categories the entry had
+	 * @throws SQLException If an error occurs
+	 */
+	private void writeEntryCategories(String blogKey, long id, String cats[], boolean replace)
+	throws SQLException
+	{
+		String catTable = ENTRY_CAT_TABLE + blogKey;
+		if(replace)
+			update("DELETE FROM " + catTable + " WHERE " + ENTRY_ID + " = " + id);
+		if(cats == null || cats.length == 0)
+			return;
+		
+		PreparedStatement ps = prepare(blogKey, "insertEntryCategory",
+			"INSERT INTO " + catTable + "(" + 
+			ENTRY_ID + ", " + 
+			CATEGORY + ") " +
+			"VALUES(?, ?)"
+		);
+		synchronized(ps)
+		{
+			Vector written = new Vector(cats.length);
+			for(int i = 0; i < cats.length; i++)
+			{
+				if(written.contains(cats[i]))
+					continue;
+				written.add(cats[i]);
+				ps.setLong(1, id);
+				ps.setString(2, cats[i]);
+				ps.executeUpdate();
+			}
 		}		
 	}
 	
@@ -200,7 +628,20 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	 * @param id The ID the entry should have
 	 * @throws BackendException If an error occurs
 	 */
-	public synchronized void importEntry(String blogKey, BlogEntry e, long id) throws BackendException
+	public void importEntry(String blogKey, BlogEntry e, long id) throws BackendException
+	{
+		lock.writeLock();
+		try
+		{
+			insertEntry(blogKey, e, id);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+
+	private void insertEntry(String blogKey, BlogEntry e, long id) throws BackendException
 	{		
 		//check if an entry with the id exists
 		try
@@ -213,8 +654,9 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		String table = ENTRY_TABLE + blogKey;
 		try
 		{
-			PreparedStatement ps = conn.prepareStatement
+			PreparedStatement ps = prepare
 			(
+					blogKey, "importEntry",
 					"INSERT INTO " + table + "(" +
 					ID + ", " +
 					TIMESTAMP + ", " +					
@@ -226,24 +668,27 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 					AUTHOR + ") " +
 					"VALUES(?, ?, ?, ?, ?, ?, ?, ?)"
 			);
-        
-			ps.setLong(1, id);
-			ps.setTimestamp(2, new Timestamp(e.getDate().getTime()));			
-			ps.setString(3, e.getTitle());
-			ps.setString(4, catsString(e.getCategories()));
-			ps.setString(5, e.getText());
-			ps.setBoolean(6, e.isDraft());
+			synchronized(ps)
+			{
+				ps.setLong(1, id);
+				ps.setTimestamp(2, new Timestamp(e.getDate().getTime()));			
+				ps.setString(3, e.getTitle());
+				ps.setString(4, catsString(e.getCategories()));
+				ps.setString(5, e.getText());
+				ps.setBoolean(6, e.isDraft());
 		
-			Timestamp ts = null;
-			if(e.getLastModified() != null)
-				ts = new Timestamp(e.getLastModified().getTime());		
-			ps.setTimestamp(7, ts);			
-			if(e.getAuthor() == null)
-				ps.setString(8, null);
-			else
-				ps.setString(8, e.getAuthor().getString());
-			ps.executeUpdate();
-			ps.close();       	
+				Timestamp ts = null;
+				if(e.getLastModified() != null)
+					ts = new Timestamp(e.getLastModified().getTime());		
+				ps.setTimestamp(7, ts);			
+				if(e.getAuthor() == null)
+					ps.setString(8, null);
+				else
+					ps.setString(8, e.getAuthor().getString());
+				ps.executeUpdate();
+			}
+		
+			writeEntryCategories(blogKey, id, e.getCategories(), true);
 		}
 		catch(Exception ex)
 		{
@@ -251,9 +696,10 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		}
 	}
 	
-	public synchronized void removeAllWeblogData(String blogKey) throws BackendException
+	public void removeAllWeblogData(String blogKey) throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
+		lock.writeLock();
 		try
 		{
 			String cats[] = categoryStore.getCategories(blogKey, false);
@@ -269,16 +715,36 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 				authorStore.removeAuthor(blogKey, auths[i]);	
 			}			
 			
+			closeStatements(blogKey);
 			query("DROP TABLE " + table);
+			query("DROP TABLE " + ENTRY_CAT_TABLE + blogKey);
+			setSchemaVersion(ENTRY_CAT_TABLE + blogKey, 0);
 
 		}
 		catch(SQLException ex)
 		{
 			throw new BackendException(ex);
 		}
+		finally
+		{
+			lock.writeUnlock();
+		}
 	}
 	
-	public synchronized void initEntryStoreForWeblog(String blogKey) throws BackendException
+	public void initEntryStoreForWeblog(String blogKey) throws BackendException
+	{
+		lock.writeLock();
+		try
+		{
+			createEntryStore(blogKey);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+
+	private void createEntryStore(String blogKey) throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
 		try 
@@ -301,12 +767,22 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			//thrown when TABLE already exists...
 			//System.out.println(table + " exists");
 		}
+	
+		try
+		{
+			initEntrySchema(blogKey);
+		}
+		catch(SQLException ex)
+		{
+			throw new BackendException(ex);
+		}
 	}
 	
-	public synchronized EntryEnumeration findEntries(String blogKey, WeblogSearch search) throws BackendException
+	public EntryEnumeration findEntries(String blogKey, WeblogSearch search) throws BackendException
 	{
 		EntryEnumeration entries = null;
 		String table = ENTRY_TABLE + blogKey;
+		lock.readLock();
 		try
 		{
 			String stmnt = "SELECT * FROM " + table + " WHERE ";
@@ -368,7 +844,8 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
         
 			if(search.getCategory() != null)
 			{    
-				stmnt += " " + CATEGORIES + " LIKE CONCAT('%', CONCAT(?, '%')) AND";
+				stmnt += " " + ID + " IN (SELECT " + ENTRY_ID + " FROM " + 
+					ENTRY_CAT_TABLE + blogKey + " WHERE " + CATEGORY + " = ?) AND";
 				c = i++;
 			}
         
@@ -391,17 +868,21 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			}
         
 			if(search.getCategory() != null)
-				ps.setString(c , toDBEntryCat(search.getCategory()));
+				ps.setString(c , search.getCategory());
         
 			ps.setBoolean(i, search.isFindDrafts());
 			
-			ResultSet rs = ps.executeQuery();
-			entries = new RSEntryEnumeration(rs, ps);
+			entries = readEntries(ps.executeQuery());
+			ps.close();
 		}
 		catch(Exception sqle)
 		{
 			throw new BackendException(sqle);
 		}
+		finally
+		{
+			lock.readUnlock();
+		}
 		
 		return entries;
 	}
@@ -409,9 +890,10 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	/**
 	 * Finds feed items
 	 */
-	public synchronized FeedItem[] findItems(String url, FeedSearch search) throws FeedBackendException
+	public FeedItem[] findItems(String url, FeedSearch search) throws FeedBackendException
 	{
 		FeedItem[] items;
+		lock.readLock();
 		try
 		{
 			//ps 1
@@ -463,12 +945,16 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			
 			ResultSet rs = ps.executeQuery();
 			items = createItemsFromResultSet(rs);
-			
+			ps.close();
 		}
 		catch(Exception ex)
 		{
 			throw new FeedBackendException(ex);
 		}		
+		finally
+		{
+			lock.readUnlock();
+		}		
 	
 		return items;
 	}
@@ -477,14 +963,16 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#addEntry(net.sf.thingamablog.blog.BlogEntry)
 	 */
-	public synchronized long addEntry(String blogKey, BlogEntry e) throws BackendException
+	public long addEntry(String blogKey, BlogEntry e) throws BackendException
 	{
 		long id;
 	    String table = ENTRY_TABLE + blogKey;
+		lock.writeLock();
 		try
 		{
-			PreparedStatement ps = conn.prepareStatement
+			PreparedStatement ps = prepare
 			(
+					blogKey, "addEntry",
 					"INSERT INTO " + table + "(" +
 					TIMESTAMP + ", " +					
 					TITLE + ", " +
@@ -495,27 +983,29 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 					AUTHOR + ") " +
 					"VALUES(?, ?, ?, ?, ?, ?, ?)"
 			);
-        
-			ps.setTimestamp(1, new Timestamp(e.getDate().getTime()));
-			ps.setString(2, e.getTitle());
-			ps.setString(3, catsString(e.getCategories()));
-			ps.setString(4, e.getText());
-			ps.setBoolean(5, e.isDraft());
+			synchronized(ps)
+			{
+				ps.setTimestamp(1, new Timestamp(e.getDate().getTime()));
+				ps.setString(2, e.getTitle());
+				ps.setString(3, catsString(e.getCategories()));
+				ps.setString(4, e.getText());
+				ps.setBoolean(5, e.isDraft());
 		
-			Timestamp ts = null;
-			if(e.getLastModified() != null)
-				ts = new Timestamp(e.getLastModified().getTime());		
-			ps.setTimestamp(6, ts);	
+				Timestamp ts = null;
+				if(e.getLastModified() != null)
+					ts = new Timestamp(e.getLastModified().getTime());		
+				ps.setTimestamp(6, ts);	
 					
-			if(e.getAuthor() == null)
-				ps.setString(7, null);
-			else
-				ps.setString(7, e.getAuthor().getString());
+				if(e.getAuthor() == null)
+					ps.setString(7, null);
+				else
+					ps.setString(7, e.getAuthor().getString());
 				
-			ps.executeUpdate();
-			ps.close();
+				ps.executeUpdate();
+			}
 			
             id = this.getLastInsertedID();
+            writeEntryCategories(blogKey, id, e.getCategories(), false);
             
 			//now get the id for the added entry
 			/*//this probably isn't the best way to do this
@@ -543,6 +1033,10 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		{
 			throw new BackendException(ex);	
 		}
+		finally
+		{
+			lock.writeUnlock();
+		}
 		
 		return id;
 	}
@@ -582,7 +1076,20 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#updateEntry(net.sf.thingamablog.blog.BlogEntry)
 	 */
-	public synchronized void updateEntry(String blogKey, BlogEntry be) throws BackendException
+	public void updateEntry(String blogKey, BlogEntry be) throws BackendException
+	{
+		lock.writeLock();
+		try
+		{
+			writeEntry(blogKey, be);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+
+	private void writeEntry(String blogKey, BlogEntry be) throws BackendException
 	{
 		//throw an exception if the entry doesn't exist
 		getEntry(blogKey, be.getID());
@@ -590,8 +1097,9 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		String table = ENTRY_TABLE + blogKey;
 		try
 		{
-			PreparedStatement ps = conn.prepareStatement
+			PreparedStatement ps = prepare
 			(
+					blogKey, "updateEntry",
 					"UPDATE " + table + " SET " +
 					TIMESTAMP + " = ?, " +
 					TITLE + " = ?, " +
@@ -601,27 +1109,30 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 					MODIFIED + " = ?, " +
 					AUTHOR + " = ? WHERE " + ID + " = ?"
 			);
-        
-			ps.setTimestamp(1, new Timestamp(be.getDate().getTime()));
-			ps.setString(2, be.getTitle());
-			ps.setString(3, catsString(be.getCategories()));
-			ps.setString(4, be.getText());
-			ps.setBoolean(5, be.isDraft());	
+			synchronized(ps)
+			{
+				ps.setTimestamp(1, new Timestamp(be.getDate().getTime()));
+				ps.setString(2, be.getTitle());
+				ps.setString(3, catsString(be.getCategories()));
+				ps.setString(4, be.getText());
+				ps.setBoolean(5, be.isDraft());	
 					
-			Timestamp ts = null;
-			if(be.getLastModified() != null)
-				ts = new Timestamp(be.getLastModified().getTime());
-			ps.setTimestamp(6, ts);
+				Timestamp ts = null;
+				if(be.getLastModified() != null)
+					ts = new Timestamp(be.getLastModified().getTime());
+				ps.setTimestamp(6, ts);
 			
-			if(be.getAuthor() == null)
-				ps.setString(7, null);
-			else
-				ps.setString(7, be.getAuthor().getString());
+				if(be.getAuthor() == null)
+					ps.setString(7, null);
+				else
+					ps.setString(7, be.getAuthor().getString());
 				
-			ps.setLong(8, be.getID());
+				ps.setLong(8, be.getID());
         
-			ps.executeUpdate();
-			ps.close();       
+				ps.executeUpdate();
+			}
+		
+			writeEntryCategories(blogKey, be.getID(), be.getCategories(), true);
 		
 		}
 		catch(Exception ex)
@@ -633,56 +1144,81 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#removeEntry(net.sf.thingamablog.blog.BlogEntry)
 	 */
-	public synchronized void removeEntry(String blogKey, long id) throws BackendException
+	public void removeEntry(String blogKey, long id) throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
+		lock.writeLock();
 		try
 		{			
 			update("DELETE FROM " + table + " WHERE " + ID + " = " + id);
+			update("DELETE FROM " + ENTRY_CAT_TABLE + blogKey + 
+				" WHERE " + ENTRY_ID + " = " + id);
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
 		}
+		finally
+		{
+			lock.writeUnlock();
+		}
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#getEntry(long)
 	 */
-	public synchronized BlogEntry getEntry(String blogKey, long id) throws BackendException
+	public BlogEntry getEntry(String blogKey, long id) throws BackendException
 	{
 		BlogEntry be = new BlogEntry();
 		String table = ENTRY_TABLE + blogKey;
+		lock.readLock();
 		try
 		{
-			Statement st = conn.createStatement();
-			ResultSet rs = st.executeQuery(
+			PreparedStatement ps = prepare(blogKey, "getEntry",
 				"SELECT * FROM " + table + 
-				" WHERE " + ID + " = " + id);
-
-			rs.next();
+				" WHERE " + ID + " = ?");
+			synchronized(ps)
+			{
+				ps.setLong(1, id);
+				ResultSet rs = ps.executeQuery();
+				try
+				{
+					if(!rs.next())
+						throw new BackendException("No entry with ID " + id);
 			        
-			be.setDate(rs.getTimestamp(TIMESTAMP));
-			be.setCategories(tokenizeCatString(rs.getString(CATEGORIES)));
-			be.setID(rs.getInt(ID));
-			be.setTitle(rs.getString(TITLE));
-			be.setText(rs.getString(ENTRY));
-			
-			Author a = new Author();
-			String auth = rs.getString(AUTHOR);
-			if(auth != null)
-				a.setString(auth);
-			be.setAuthor(a);
+					be.setDate(rs.getTimestamp(TIMESTAMP));
+					be.setCategories(tokenizeCatString(rs.getString(CATEGORIES)));
+					be.setID(rs.getInt(ID));
+					be.setTitle(rs.getString(TITLE));
+					be.setText(rs.getString(ENTRY));
 			
-			be.setDraft(rs.getBoolean(DRAFT));
-			be.setLastModified(rs.getTimestamp(MODIFIED));
+					Author a = new Author();
+					String auth = rs.getString(AUTHOR);
+					if(auth != null)
+						a.setString(auth);
+					be.setAuthor(a);
 			
-			st.close();			
+					be.setDraft(rs.getBoolean(DRAFT));
+					be.setLastModified(rs.getTimestamp(MODIFIED));
+				}
+				finally
+				{
+					rs.close();
+				}
+			}
+		}
+		catch(BackendException ex)
+		{
+			throw ex;
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
 		}		
+		finally
+		{
+			lock.readUnlock();
+		}		
 		return be;
 	}
 
@@ -690,24 +1226,44 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#getEntries(java.lang.String, boolean)
 	 */
-	public synchronized EntryEnumeration getEntries(String blogKey, boolean orderByDateAsc)
+	public EntryEnumeration getEntries(String blogKey, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return queryEntries(blogKey, orderByDateAsc, false);
+	}
+
+	public EntryEnumeration getEntryHeaders(String blogKey, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return queryEntries(blogKey, orderByDateAsc, true);
+	}
+
+	private EntryEnumeration queryEntries(String blogKey, boolean orderByDateAsc, boolean headers)
 		throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
 		EntryEnumeration entries = null;
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + table +
+			PreparedStatement ps = prepare
+			(blogKey, "getEntries" + (headers ? "Headers" : "") + orderBy(orderByDateAsc),
+			"SELECT " + columns(headers) + " FROM " + table +
 			" WHERE " + DRAFT + " = " + false + 
 			" ORDER BY " + TIMESTAMP + " " + orderBy(orderByDateAsc));			
 			
-			ResultSet rs = ps.executeQuery();
-			entries = new RSEntryEnumeration(rs, ps);			
+			synchronized(ps)
+			{
+				entries = readEntries(ps.executeQuery(), headers ? blogKey : null);
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
+		}
+		finally
+		{
+			lock.readUnlock();
 		}		
 		return entries;
 	}
@@ -715,141 +1271,238 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#getEntriesFromCategory(java.lang.String, java.lang.String, boolean)
 	 */
-	public synchronized EntryEnumeration getEntriesFromCategory(String blogKey, String category, boolean orderByDateAsc)
+	public EntryEnumeration getEntriesFromCategory(String blogKey, String category, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesFromCategory(blogKey, category, orderByDateAsc, false);
+	}
+
+	public EntryEnumeration getEntryHeadersFromCategory(String blogKey, String category, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesFromCategory(blogKey, category, orderByDateAsc, true);
+	}
+
+	private EntryEnumeration entriesFromCategory(String blogKey, String category, boolean orderByDateAsc, boolean headers)
 		throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
 		EntryEnumeration entries = null;
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + table +
-			" WHERE " + CATEGORIES + " LIKE CONCAT('%', CONCAT(?, '%'))" +
+			PreparedStatement ps = prepare
+			(blogKey, "getEntriesFromCategory" + (headers ? "Headers" : "") + orderBy(orderByDateAsc),
+			"SELECT " + columns(headers) + " FROM " + table +
+			" WHERE " + ID + " IN (SELECT " + ENTRY_ID + " FROM " +
+			ENTRY_CAT_TABLE + blogKey + " WHERE " + CATEGORY + " = ?)" +
 			" AND " + DRAFT + " = " + false + 
 			" ORDER BY " + TIMESTAMP + " " + orderBy(orderByDateAsc));         	
 			
-			ps.setString(1, toDBEntryCat(category));
-			ResultSet rs = ps.executeQuery();
-			entries = new RSEntryEnumeration(rs, ps);			
+			synchronized(ps)
+			{
+				ps.setString(1, category);
+				entries = readEntries(ps.executeQuery(), headers ? blogKey : null);
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
 		}
-		
+		finally
+		{
+			lock.readUnlock();
+		}
 		return entries;
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#getEntriesBefore(java.lang.String, java.util.Date, boolean)
 	 */
-	public synchronized EntryEnumeration getEntriesBefore(String blogKey, Date d, boolean orderByDateAsc)
+	public EntryEnumeration getEntriesBefore(String blogKey, Date d, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesBefore(blogKey, d, orderByDateAsc, false);
+	}
+
+	public EntryEnumeration getEntryHeadersBefore(String blogKey, Date d, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesBefore(blogKey, d, orderByDateAsc, true);
+	}
+
+	private EntryEnumeration entriesBefore(String blogKey, Date d, boolean orderByDateAsc, boolean headers)
 		throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
 		EntryEnumeration entries = null;
 		Timestamp ts = new Timestamp(d.getTime());
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + table +
+			PreparedStatement ps = prepare
+			(blogKey, "getEntriesBefore" + (headers ? "Headers" : "") + orderBy(orderByDateAsc),
+			"SELECT " + columns(headers) + " FROM " + table +
 			" WHERE " + TIMESTAMP + " <= ?" + 
 			" AND " + DRAFT + " = " + false + 
 			" ORDER BY " + TIMESTAMP + " " + orderBy(orderByDateAsc));
          	
-			ps.setTimestamp(1, ts);
-			ResultSet rs = ps.executeQuery();
-			entries = new RSEntryEnumeration(rs, ps);			
+			synchronized(ps)
+			{
+				ps.setTimestamp(1, ts);
+				entries = readEntries(ps.executeQuery(), headers ? blogKey : null);
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
 		}
-		
+		finally
+		{
+			lock.readUnlock();
+		}
 		return entries;
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#getEntriesAfter(java.lang.String, java.util.Date, boolean)
 	 */
-	public synchronized EntryEnumeration getEntriesAfter(String blogKey, Date d, boolean orderByDateAsc)
+	public EntryEnumeration getEntriesAfter(String blogKey, Date d, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesAfter(blogKey, d, orderByDateAsc, false);
+	}
+
+	public EntryEnumeration getEntryHeadersAfter(String blogKey, Date d, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesAfter(blogKey, d, orderByDateAsc, true);
+	}
+
+	private EntryEnumeration entriesAfter(String blogKey, Date d, boolean orderByDateAsc, boolean headers)
 		throws BackendException
 	{		
 		String table = ENTRY_TABLE + blogKey;
 		EntryEnumeration entries = null;
 		Timestamp ts = new Timestamp(d.getTime());
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + table +
+			PreparedStatement ps = prepare
+			(blogKey, "getEntriesAfter" + (headers ? "Headers" : "") + orderBy(orderByDateAsc),
+			"SELECT " + columns(headers) + " FROM " + table +
 			" WHERE " + TIMESTAMP + " >= ?" + 
 			" AND " + DRAFT + " = " + false + 
 			" ORDER BY " + TIMESTAMP + " " + orderBy(orderByDateAsc));
          	
-			ps.setTimestamp(1, ts);
-			ResultSet rs = ps.executeQuery();
-			entries = new RSEntryEnumeration(rs, ps);			
+			synchronized(ps)
+			{
+				ps.setTimestamp(1, ts);
+				entries = readEntries(ps.executeQuery(), headers ? blogKey : null);
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
 		}
-		
+		finally
+		{
+			lock.readUnlock();
+		}
 		return entries;
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#getEntriesBetween(java.lang.String, java.util.Date, java.util.Date, boolean)
 	 */
-	public synchronized EntryEnumeration getEntriesBetween(String blogKey, Date from, Date to, boolean orderByDateAsc)
+	public EntryEnumeration getEntriesBetween(String blogKey, Date from, Date to, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesBetween(blogKey, from, to, orderByDateAsc, false);
+	}
+
+	public EntryEnumeration getEntryHeadersBetween(String blogKey, Date from, Date to, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return entriesBetween(blogKey, from, to, orderByDateAsc, true);
+	}
+
+	private EntryEnumeration entriesBetween(String blogKey, Date from, Date to, boolean orderByDateAsc, boolean headers)
 		throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
 		EntryEnumeration entries = null;
 		Timestamp fts = new Timestamp(from.getTime());
 		Timestamp tts = new Timestamp(to.getTime());
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + table +
+			PreparedStatement ps = prepare
+			(blogKey, "getEntriesBetween" + (headers ? "Headers" : "") + orderBy(orderByDateAsc),
+			"SELECT " + columns(headers) + " FROM " + table +
 			" WHERE " + TIMESTAMP + " >= ? AND " + TIMESTAMP + " <= ?" +
 			" AND " + DRAFT + " = " + false +  
 			" ORDER BY " + TIMESTAMP + " " + orderBy(orderByDateAsc));
          	
-			ps.setTimestamp(1, fts);
-			ps.setTimestamp(2, tts);
-			ResultSet rs = ps.executeQuery();
-			entries = new RSEntryEnumeration(rs, ps);			
+			synchronized(ps)
+			{
+				ps.setTimestamp(1, fts);
+				ps.setTimestamp(2, tts);
+				entries = readEntries(ps.executeQuery(), headers ? blogKey : null);
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
 		}
-		
+		finally
+		{
+			lock.readUnlock();
+		}
 		return entries;
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.thingamablog.blog.WeblogBackend#getDraftEntries(java.lang.String, boolean)
 	 */
-	public synchronized EntryEnumeration getDraftEntries(String blogKey, boolean orderByDateAsc)
+	public EntryEnumeration getDraftEntries(String blogKey, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return draftEntries(blogKey, orderByDateAsc, false);
+	}
+
+	public EntryEnumeration getDraftEntryHeaders(String blogKey, boolean orderByDateAsc)
+		throws BackendException
+	{
+		return draftEntries(blogKey, orderByDateAsc, true);
+	}
+
+	private EntryEnumeration draftEntries(String blogKey, boolean orderByDateAsc, boolean headers)
 		throws BackendException
 	{
 		String table = ENTRY_TABLE + blogKey;
 		EntryEnumeration entries = null;
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + table +
+			PreparedStatement ps = prepare
+			(blogKey, "getDraftEntries" + (headers ? "Headers" : "") + orderBy(orderByDateAsc),
+			"SELECT " + columns(headers) + " FROM " + table +
 			" WHERE " + DRAFT + " = " + true + 
 			" ORDER BY " + TIMESTAMP + " " + orderBy(orderByDateAsc));
 			
-			ResultSet rs = ps.executeQuery();
-			entries = new RSEntryEnumeration(rs, ps);			
+			synchronized(ps)
+			{
+				entries = readEntries(ps.executeQuery(), headers ? blogKey : null);
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new BackendException(ex);
+		}
+		finally
+		{
+			lock.readUnlock();
 		}		
 		return entries;
 	}
@@ -857,24 +1510,39 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	
 	
 	//*********** FeedBackend implementation *****************
-	public synchronized void addItem(FeedItem item, boolean addIfExists) throws FeedBackendException
+	public void addItem(FeedItem item, boolean addIfExists) throws FeedBackendException
+	{
+		lock.writeLock();
+		try
+		{
+			insertItem(item, addIfExists);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+
+	private void insertItem(FeedItem item, boolean addIfExists) throws FeedBackendException
 	{
 		if(!addIfExists)
 		{
 			try
 			{			
-				Statement st = conn.createStatement();
-				ResultSet rs = st.executeQuery(
-					"SELECT * FROM " + FEED_TABLE + 
-					" WHERE " + HASH_CODE + " = " + item.hashCode());
-
-				if(rs.next()) //this item exists in the DB so we won't addit
+				PreparedStatement ps = prepare(null, "findItemFingerprint",
+					"SELECT " + ITEM_ID + " FROM " + FEED_TABLE + 
+					" WHERE " + CHANNEL_LINK + " = ? AND " + FINGERPRINT + " = ?");
+				boolean exists;
+				synchronized(ps)
 				{
-					st.close();
-					return;
+					ps.setString(1, item.getChannelLink());
+					ps.setLong(2, item.getFingerprint());
+					ResultSet rs = ps.executeQuery();
+					exists = rs.next();
+					rs.close();
 				}
-				st.close();
-				
+				if(exists) //this item exists in the DB so we won't addit
+					return;
 			}
 			catch(SQLException sqle)
 			{
@@ -884,43 +1552,12 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		
 		try
 		{
-			PreparedStatement ps = conn.prepareStatement
-			(
-					"INSERT INTO " + FEED_TABLE + "(" +
-					RETRIEVED + ", " +
-					PUB_DATE + ", " +
-					LINK + ", " +
-					CHANNEL_LINK + ", " +
-					ITEM_TITLE + ", " +
-					DESC + ", " +
-					ITEM_AUTHOR + ", " +
-					READ + ", " +
-					HASH_CODE + ", " +
-					CHANNEL_TITLE + ", " +
-					CHANNEL_IMG_LINK + ") " +
-					"VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
-			);
-        
-			ps.setTimestamp(1, new Timestamp(item.getRetrieved().getTime()));
-			//FIXME should be a date, not a string
-			//The feed table is a LONGVARCHAR for the pubdate
-			//A timestamp would be better, but since users already
-			//have DBs initialized with this column, we have to settle
-			//for converting dates to and from strings for now
-			if(item.getPubDate() != null)
-			    ps.setString(2, item.getPubDate().getTime() + "");
-			ps.setString(3, item.getLink());
-			ps.setString(4, item.getChannelLink());
-			ps.setString(5, item.getTitle());
-			ps.setString(6, item.getDescription());		
-			ps.setString(7, item.getAuthor());
-			ps.setBoolean(8, item.isRead());
-			ps.setInt(9, item.hashCode());
-			ps.setString(10, item.getChannelTitle());
-			ps.setString(11, item.getChannelImageURL());
-			
-			ps.executeUpdate();
-			ps.close();       	
+			PreparedStatement ps = prepareAddItem();
+			synchronized(ps)
+			{
+				setItemParameters(ps, item);
+				ps.executeUpdate();
+			}
 		}
 		catch(Exception ex)
 		{
@@ -928,12 +1565,163 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		}		
 	}
 	
-	public synchronized void updateItem(FeedItem item) throws FeedBackendException
+	public int addItems(FeedItem items[]) throws FeedBackendException
+	{
+		lock.writeLock();
+		try
+		{
+			return insertItems(items);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+
+	private int insertItems(FeedItem items[]) throws FeedBackendException
+	{
+		Vector added = new Vector(items.length);
+		try
+		{
+			//the fingerprints already stored for each channel
+			Hashtable known = new Hashtable();
+			for(int i = 0; i < items.length; i++)
+			{
+				String channel = items[i].getChannelLink();
+				String key = channel == null ? "" : channel;
+				HashSet prints = (HashSet)known.get(key);
+				if(prints == null)
+				{
+					prints = readFingerprints(channel);
+					known.put(key, prints);
+				}
+				//also leaves out items that are in the list twice
+				if(prints.add(new Long(items[i].getFingerprint())))
+					added.add(items[i]);
+			}
+			if(added.isEmpty())
+				return 0;
+		}
+		catch(SQLException ex)
+		{
+			throw new FeedBackendException(ex);
+		}
+		
+		//one batch in one transaction
+		try
+		{
+			boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			try
+			{
+				PreparedStatement ps = prepareAddItem();
+				synchronized(ps)
+				{
+					for(int i = 0; i < added.size(); i++)
+					{
+						setItemParameters(ps, (FeedItem)added.elementAt(i));
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				}
+				conn.commit();
+			}
+			catch(SQLException ex)
+			{
+				conn.rollback();
+				throw ex;
+			}
+			finally
+			{
+				conn.setAutoCommit(autoCommit);
+			}
+		}
+		catch(SQLException ex)
+		{
+			throw new FeedBackendException(ex);
+		}
+		return added.size();
+	}
+	
+	private HashSet readFingerprints(String channel) throws SQLException
+	{
+		HashSet prints = new HashSet();
+		if(channel == null)
+			return prints;
+		
+		PreparedStatement ps = prepare(null, "getItemFingerprints",
+			"SELECT " + FINGERPRINT + " FROM " + FEED_TABLE + 
+			" WHERE " + CHANNEL_LINK + " = ?");
+		synchronized(ps)
+		{
+			ps.setString(1, channel);
+			ResultSet rs = ps.executeQuery();
+			while(rs.next())
+				prints.add(new Long(rs.getLong(1)));
+			rs.close();
+		}
+		return prints;
+	}
+	
+	private PreparedStatement prepareAddItem() throws SQLException
+	{
+		return prepare
+		(
+				null, "addItem",
+				"INSERT INTO " + FEED_TABLE + "(" +
+				RETRIEVED + ", " +
+				PUB_DATE + ", " +
+				LINK + ", " +
+				CHANNEL_LINK + ", " +
+				ITEM_TITLE + ", " +
+				DESC + ", " +
+				ITEM_AUTHOR + ", " +
+				READ + ", " +
+				HASH_CODE + ", " +
+				CHANNEL_TITLE + ", " +
+				CHANNEL_IMG_LINK + ", " +
+				FINGERPRINT + ") " +
+				"VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+		);
+	}
+        
+	/**
+	 * Sets the first twelve parameters of an insert or update 
+	 * of a feed item to the fields of the item
+	 */
+	private void setItemParameters(PreparedStatement ps, FeedItem item) throws SQLException
+	{
+		ps.setTimestamp(1, new Timestamp(item.getRetrieved().getTime()));
+		//FIXME should be a date, not a string
+		//The feed table is a LONGVARCHAR for the pubdate
+		//A timestamp would be better, but since users already
+		//have DBs initialized with this column, we have to settle
+		//for converting dates to and from strings for now
+		if(item.getPubDate() != null)
+		    ps.setString(2, item.getPubDate().getTime() + "");
+		else
+		    ps.setString(2, null);
+		ps.setString(3, item.getLink());
+		ps.setString(4, item.getChannelLink());
+		ps.setString(5, item.getTitle());
+		ps.setString(6, item.getDescription());		
+		ps.setString(7, item.getAuthor());
+		ps.setBoolean(8, item.isRead());
+		//kept up to date for older versions
+		ps.setInt(9, item.getLink() == null ? 0 : item.hashCode());
+		ps.setString(10, item.getChannelTitle());
+		ps.setString(11, item.getChannelImageURL());
+		ps.setLong(12, item.getFingerprint());
+	}
+	
+	public void updateItem(FeedItem item) throws FeedBackendException
 	{
+		lock.writeLock();
 		try
 		{
-			PreparedStatement ps = conn.prepareStatement
+			PreparedStatement ps = prepare
 			(
+					null, "updateItem",
 					"UPDATE " + FEED_TABLE + " SET " +
 					RETRIEVED + " = ?, " +
 					PUB_DATE + " = ?, " +
@@ -945,36 +1733,31 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 					READ + " = ?, " +
 					HASH_CODE + " = ?, " +
 					CHANNEL_TITLE + " = ?, " +
-					CHANNEL_IMG_LINK + " = ? " +
+					CHANNEL_IMG_LINK + " = ?, " +
+					FINGERPRINT + " = ? " +
 					"WHERE " + ITEM_ID + " = ?"
 			);
+			synchronized(ps)
+			{
+				setItemParameters(ps, item);
+				ps.setLong(13, item.getID());
         
-			ps.setTimestamp(1, new Timestamp(item.getRetrieved().getTime()));
-			//FIXME should be a date
-			if(item.getPubDate() != null)
-			    ps.setString(2, item.getPubDate().getTime() + "");
-			ps.setString(3, item.getLink());
-			ps.setString(4, item.getChannelLink());
-			ps.setString(5, item.getTitle());
-			ps.setString(6, item.getDescription());		
-			ps.setString(7, item.getAuthor());
-			ps.setBoolean(8, item.isRead());
-			ps.setInt(9, item.hashCode());
-			ps.setString(10, item.getChannelTitle());
-			ps.setString(11, item.getChannelImageURL());
-			ps.setLong(12, item.getID());
-        
-			ps.executeUpdate();
-			ps.close();		
+				ps.executeUpdate();
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new FeedBackendException(ex);
 		}		
+		finally
+		{
+			lock.writeUnlock();
+		}
 	}
 	
-	public synchronized void removeItem(long id) throws FeedBackendException
+	public void removeItem(long id) throws FeedBackendException
 	{
+		lock.writeLock();
 		try
 		{			
 			update("DELETE FROM " + FEED_TABLE + " WHERE " + ITEM_ID + " = " + id);
@@ -983,90 +1766,210 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		{
 			throw new FeedBackendException(ex);
 		}		
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+	
+	public int pruneItems(String channelLink, int maxItems, Date retrievedBefore) throws FeedBackendException
+	{
+		int removed = 0;
+		lock.writeLock();
+		try
+		{
+			if(maxItems >= 0)
+			{
+				//find the newest item past the limit. It and everything
+				//older than it goes, without reading the items themselves
+				PreparedStatement ps = prepare(null, "findItemLimit",
+					"SELECT " + RETRIEVED + ", " + ITEM_ID + " FROM " + FEED_TABLE +
+					" WHERE " + CHANNEL_LINK + " = ?" +
+					" ORDER BY " + RETRIEVED + " DESC, " + ITEM_ID + " DESC");
+				Timestamp ret = null;
+				int id = 0;
+				synchronized(ps)
+				{
+					ps.setMaxRows(maxItems + 1);
+					ps.setString(1, channelLink);
+					ResultSet rs = ps.executeQuery();
+					int n = 0;
+					while(rs.next())
+					{
+						if(++n > maxItems)
+						{
+							ret = rs.getTimestamp(1);
+							id = rs.getInt(2);
+						}
+					}
+					rs.close();
+				}
+				
+				if(ret != null)
+				{
+					ps = prepare(null, "removeItemsFrom",
+						"DELETE FROM " + FEED_TABLE + " WHERE " + CHANNEL_LINK + " = ? AND (" +
+						RETRIEVED + " < ? OR (" + RETRIEVED + " = ? AND " + ITEM_ID + " <= ?))");
+					synchronized(ps)
+					{
+						ps.setString(1, channelLink);
+						ps.setTimestamp(2, ret);
+						ps.setTimestamp(3, ret);
+						ps.setInt(4, id);
+						removed += ps.executeUpdate();
+					}
+				}
+			}
+			
+			if(retrievedBefore != null)
+			{
+				PreparedStatement ps = prepare(null, "removeItemsBefore",
+					"DELETE FROM " + FEED_TABLE + " WHERE " + CHANNEL_LINK + " = ? AND " +
+					RETRIEVED + " < ?");
+				synchronized(ps)
+				{
+					ps.setString(1, channelLink);
+					ps.setTimestamp(2, new Timestamp(retrievedBefore.getTime()));
+					removed += ps.executeUpdate();
+				}
+			}
+		}
+		catch(SQLException ex)
+		{
+			throw new FeedBackendException(ex);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+		return removed;
+	}
+	
+	/**
+	 * Compacts the database files, which don't shrink by themselves when
+	 * rows are deleted. The database can't be used while it's compacted.
+	 */
+	public void compact() throws FeedBackendException
+	{
+		lock.writeLock();
+		try
+		{
+			if(conn == null || conn.isClosed())
+				return;
+			update("CHECKPOINT DEFRAG");
+		}
+		catch(SQLException ex)
+		{
+			throw new FeedBackendException(ex);
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
 	}
 	
-	public synchronized FeedItem getItem(long id) throws FeedBackendException
+	public FeedItem getItem(long id) throws FeedBackendException
 	{
 		FeedItem item = new FeedItem();
+		lock.readLock();
 		try
 		{
-			Statement st = conn.createStatement();
-			ResultSet rs = st.executeQuery(
+			PreparedStatement ps = prepare(null, "getItem",
 				"SELECT * FROM " + FEED_TABLE + 
-				" WHERE " + ITEM_ID + " = " + id);
-
-			rs.next();
+				" WHERE " + ITEM_ID + " = ?");
+			synchronized(ps)
+			{
+				ps.setLong(1, id);
+				ResultSet rs = ps.executeQuery();
+				rs.next();
 			
-			item.setRetrieved(rs.getTimestamp(RETRIEVED));
-			//FIXME should be a date
-			try{
-			    item.setPubDate(new Date(Long.parseLong(rs.getString(PUB_DATE))));
-			}catch(Exception ex){}			
-			item.setLink(rs.getString(LINK));			
-			item.setTitle(rs.getString(ITEM_TITLE));
-			item.setDescription(rs.getString(DESC));
-			item.setAuthor(rs.getString(ITEM_AUTHOR));
-			item.setRead(rs.getBoolean(READ));
-			item.setID(rs.getInt(ITEM_ID));
-			item.setChannelLink(rs.getString(CHANNEL_LINK));
+				item.setRetrieved(rs.getTimestamp(RETRIEVED));
+				//FIXME should be a date
+				try{
+				    item.setPubDate(new Date(Long.parseLong(rs.getString(PUB_DATE))));
+				}catch(Exception ex){}			
+				item.setLink(rs.getString(LINK));			
+				item.setTitle(rs.getString(ITEM_TITLE));
+				item.setDescription(rs.getString(DESC));
+				item.setAuthor(rs.getString(ITEM_AUTHOR));
+				item.setRead(rs.getBoolean(READ));
+				item.setID(rs.getInt(ITEM_ID));
+				item.setChannelLink(rs.getString(CHANNEL_LINK));
 			
-			item.setChannelTitle(rs.getString(CHANNEL_TITLE));
-			item.setChannelImageURL(rs.getString(CHANNEL_IMG_LINK));			
-			st.close();			
+				item.setChannelTitle(rs.getString(CHANNEL_TITLE));
+				item.setChannelImageURL(rs.getString(CHANNEL_IMG_LINK));			
+				rs.close();
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new FeedBackendException(ex);
 		}		
+		finally
+		{
+			lock.readUnlock();
+		}
 		return item;
 	}
 	
-	public synchronized FeedItem[] getItems(String channelLink, boolean orderByRetDateAsc) throws FeedBackendException
+	public FeedItem[] getItems(String channelLink, boolean orderByRetDateAsc) throws FeedBackendException
 	{
 		FeedItem items[];
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + FEED_TABLE +
+			PreparedStatement ps = prepare
+			(null, "getItems" + orderBy(orderByRetDateAsc),
+			"SELECT * FROM " + FEED_TABLE +
 			" WHERE " + CHANNEL_LINK + " = ?" + 
 			" ORDER BY " + RETRIEVED + " " + orderBy(orderByRetDateAsc));			
 			
-			ps.setString(1, channelLink);
-			ResultSet rs = ps.executeQuery();
-			items = createItemsFromResultSet(rs);
-			
-			ps.close();						
+			synchronized(ps)
+			{
+				ps.setString(1, channelLink);
+				items = createItemsFromResultSet(ps.executeQuery());
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new FeedBackendException(ex);
 		}	
+		finally
+		{
+			lock.readUnlock();
+		}	
 
 		return items;
 	}
 	
 	
-	public synchronized FeedItem[] getUnreadItems(String channelLink, boolean orderByRetDateAsc) throws FeedBackendException
+	public FeedItem[] getUnreadItems(String channelLink, boolean orderByRetDateAsc) throws FeedBackendException
 	{
 		FeedItem items[];
+		lock.readLock();
 		try
 		{		
-			PreparedStatement ps = conn.prepareStatement
-			("SELECT * FROM " + FEED_TABLE +
+			PreparedStatement ps = prepare
+			(null, "getUnreadItems" + orderBy(orderByRetDateAsc),
+			"SELECT * FROM " + FEED_TABLE +
 			" WHERE " + CHANNEL_LINK + " = ? AND " + READ + " = ?" + 
 			" ORDER BY " + RETRIEVED + " " + orderBy(orderByRetDateAsc));			
 			
-			ps.setString(1, channelLink);
-			ps.setBoolean(2, false);
-			ResultSet rs = ps.executeQuery();
-			items = createItemsFromResultSet(rs);
-			
-			ps.close();						
+			synchronized(ps)
+			{
+				ps.setString(1, channelLink);
+				ps.setBoolean(2, false);
+				items = createItemsFromResultSet(ps.executeQuery());
+			}
 		}
 		catch(Exception ex)
 		{
 			throw new FeedBackendException(ex);
 		}		
+		finally
+		{
+			lock.readUnlock();
+		}		
 
 		return items;
 	}
@@ -1077,11 +1980,25 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	 * whenever the application exits
 	 * @throws SQLException If an error occurs while shutting down
 	 */
-	public synchronized void shutdown() throws SQLException 
+	public void shutdown() throws SQLException 
+	{
+		lock.writeLock();
+		try
+		{
+			closeDB();
+		}
+		finally
+		{
+			lock.writeUnlock();
+		}
+	}
+
+	private void closeDB() throws SQLException
 	{
 		if(conn == null || conn.isClosed())
 			return;
 			
+		closeStatements(null);
 		Statement st = conn.createStatement();        
 		//st.executeQuery("SHUTDOWN COMPACT");
 		st.executeQuery("SHUTDOWN");
@@ -1091,6 +2008,8 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 						// this happens anyway at garbage collection
 						// when program ends
 		System.out.println("Database shutdown");
+		logger.log(Level.FINE, "Database lock waits: " + lock.getWaitCount() + 
+			", " + lock.getWaitTime() + " ms");
 	}
 	
 	protected void connect(String db_file_name_prefix) throws Exception// note more general exception
@@ -1114,7 +2033,7 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		System.out.println("Connected.");
 	}
 	
-	protected synchronized void update(String expression) throws SQLException 
+	protected void update(String expression) throws SQLException 
 	{
 		Statement st = null;
 		st = conn.createStatement();                // statements
@@ -1128,7 +2047,7 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 		st.close();
 	}
 	
-	protected synchronized void query(String expression) throws SQLException 
+	protected void query(String expression) throws SQLException 
 	{
 		Statement st = null;
 		
@@ -1213,6 +2132,7 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			item.setChannelImageURL(rs.getString(CHANNEL_IMG_LINK));				
 			v.add(item);	
 		}
+		rs.close();
 		
 		FeedItem items[] = new FeedItem[v.size()];
 		for(int i = 0; i < items.length; i++)
@@ -1229,8 +2149,9 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	 */
 	private class DBAuthorStore implements AuthorStore
 	{
-		public synchronized void addAuthor(String blogKey, Author auth) throws BackendException
+		public void addAuthor(String blogKey, Author auth) throws BackendException
 		{
+			lock.writeLock();
 			try
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1249,10 +2170,15 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.writeUnlock();
+			}
 		}
 		
-		public synchronized void removeAuthor(String blogKey, Author auth) throws BackendException
+		public void removeAuthor(String blogKey, Author auth) throws BackendException
 		{			
+			lock.writeLock();
 			try
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1293,10 +2219,15 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.writeUnlock();
+			}
 		}
 		
-		public synchronized void updateAuthor(String blogKey, Author oldAuth, Author newAuth) throws BackendException
+		public void updateAuthor(String blogKey, Author oldAuth, Author newAuth) throws BackendException
 		{
+			lock.writeLock();
 			try
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1341,11 +2272,16 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.writeUnlock();
+			}
 		}
 		
-		public synchronized Author[] getAuthors(String blogKey, boolean sortAsc) throws BackendException
+		public Author[] getAuthors(String blogKey, boolean sortAsc) throws BackendException
 		{
 			Vector v = new Vector(4, 2);
+			lock.readLock();
 			try
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1367,6 +2303,10 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.readUnlock();
+			}
 			
 			Author authors[] = new Author[v.size()];
 			for(int i = 0; i < authors.length; i++)			
@@ -1384,8 +2324,9 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	 */
 	private class DBCategoryStore implements CategoryStore
 	{
-		public synchronized void addCategory(String blogKey, String cat) throws BackendException
+		public void addCategory(String blogKey, String cat) throws BackendException
 		{
+			lock.writeLock();
 			try //what happens if a cat is added that already exists?
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1404,10 +2345,15 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.writeUnlock();
+			}
 		}
 		
-		public synchronized void removeCategory(String blogKey, String cat) throws BackendException
+		public void removeCategory(String blogKey, String cat) throws BackendException
 		{
+			lock.writeLock();
 			try
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1454,15 +2400,29 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 					 update.close();			      		
 				 }      	
 				 ps2.close();     	
+			 
+				 PreparedStatement ps3 = conn.prepareStatement
+				 (
+					 "DELETE FROM " + ENTRY_CAT_TABLE + blogKey + 
+					 " WHERE " + CATEGORY + " = ?"
+				 );
+				 ps3.setString(1, cat);
+				 ps3.executeUpdate();
+				 ps3.close();
 			}
 			catch(Exception ex)
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.writeUnlock();
+			}
 		}
 		
-		public synchronized void renameCategory(String blogKey, String oldCat, String newCat) throws BackendException
+		public void renameCategory(String blogKey, String oldCat, String newCat) throws BackendException
 		{
+			lock.writeLock();
 			try
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1510,16 +2470,31 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 				 }
       	
 				 ps2.close();	
+			 
+				 PreparedStatement ps3 = conn.prepareStatement
+				 (
+					 "UPDATE " + ENTRY_CAT_TABLE + blogKey + " SET " + 
+					 CATEGORY + " = ? WHERE " + CATEGORY + " = ?"
+				 );
+				 ps3.setString(1, newCat);
+				 ps3.setString(2, oldCat);
+				 ps3.executeUpdate();
+				 ps3.close();
 			}
 			catch(Exception ex)
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.writeUnlock();
+			}
 		}
 		
-		public synchronized String[] getCategories(String blogKey, boolean sortAsc) throws BackendException
+		public String[] getCategories(String blogKey, boolean sortAsc) throws BackendException
 		{
 			Vector v = new Vector(4, 2);
+			lock.readLock();
 			try
 			{
 				PreparedStatement ps = conn.prepareStatement
@@ -1540,6 +2515,10 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 			{
 				throw new BackendException(ex);
 			}
+			finally
+			{
+				lock.readUnlock();
+			}
 			
 			//sort the cats properly
 			final java.text.Collator catCollator = java.text.Collator.getInstance();
@@ -1571,37 +2550,36 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 	
 	
 	/**
-	 * EntryEnumerator implementation which walks through a ResultSet
+	 * Reads the entries of a ResultSet and closes it. The entries are
+	 * read while the database is locked, so the enumeration doesn't
+	 * hold on to the database after the lock is released.
 	 * 
-	 * @author Bob
+	 * @param rs The ResultSet
+	 * @return The entries
+	 * @throws SQLException If an error occurs while reading the entries
 	 */
-	private class RSEntryEnumeration implements EntryEnumeration
+	private EntryEnumeration readEntries(ResultSet rs) throws SQLException
 	{
-		private ResultSet rs = null;
-		private Statement st = null;
-		
-		public RSEntryEnumeration(ResultSet r, Statement s)
-		{
-			st = s;
-			rs = r;	
-		}
-		
-		public boolean hasMoreEntries()
-		{
-			boolean hasNext = false;
-			try{
-				hasNext = rs.next();
-			}catch(SQLException ex){}
-			
-			return rs != null && hasNext;
-		}
+		return readEntries(rs, null);
+	}
 		
-		public BlogEntry nextEntry()
+	/**
+	 * Reads the entries of a ResultSet and closes it
+	 * 
+	 * @param rs The ResultSet
+	 * @param headerKey The key of the weblog if the ResultSet has the 
+	 * header columns only, or null if it has the text of the entries
+	 * @return The entries
+	 * @throws SQLException If an error occurs while reading the entries
+	 */
+	private EntryEnumeration readEntries(ResultSet rs, String headerKey) throws SQLException
+	{
+		Vector v = new Vector(50, 50);
+		try
 		{
-			BlogEntry h = null;
-			try
+			while(rs.next())
 			{
-				h = new BlogEntry();
+				BlogEntry h = headerKey == null ? new BlogEntry() : new EntryHeader(headerKey);
 				h.setID(rs.getInt(ID));
 				h.setTitle(rs.getString(TITLE));
 				h.setCategories(tokenizeCatString(rs.getString(CATEGORIES)));
@@ -1615,25 +2593,147 @@ public class HSQLDatabaseBackend implements WeblogBackend, FeedBackend
 					a.setString(auth);
 					h.setAuthor(a);
 				}	
-				h.setText(rs.getString(ENTRY));							
+				if(headerKey == null)
+					h.setText(rs.getString(ENTRY));
+				v.add(h);
 			}
-			catch(SQLException sqle)
+		}
+		finally
+		{
+			rs.close();
+		}
+		return new VectorEntryEnumeration(v);
+	}
+	
+	/**
+	 * Gets the columns an entry query selects
+	 * @param headers true for every column but the text of the entries
+	 * @return the columns
+	 */
+	private String columns(boolean headers)
+	{
+		if(!headers)
+			return "*";
+		return ID + ", " + TITLE + ", " + CATEGORIES + ", " + TIMESTAMP + ", " + 
+			DRAFT + ", " + MODIFIED + ", " + AUTHOR;
+	}
+	
+	/**
+	 * Reads the text of an entry
+	 * 
+	 * @param blogKey The key of the weblog
+	 * @param id The ID of the entry
+	 * @return The text
+	 * @throws BackendException If the entry can't be read
+	 */
+	private String readText(String blogKey, long id) throws BackendException
+	{
+		lock.readLock();
+		try
+		{
+			PreparedStatement ps = prepare(blogKey, "getEntryText",
+				"SELECT " + ENTRY + " FROM " + ENTRY_TABLE + blogKey + 
+				" WHERE " + ID + " = ?");
+			synchronized(ps)
 			{
-				sqle.printStackTrace();
+				ps.setLong(1, id);
+				ResultSet rs = ps.executeQuery();
+				try
+				{
+					if(!rs.next())
+						throw new BackendException("No entry with ID " + id);
+					return rs.getString(ENTRY);
+				}
+				finally
+				{
+					rs.close();
+				}
 			}
-			return h;
 		}
+		catch(SQLException ex)
+		{
+			throw new BackendException(ex);
+		}
+		finally
+		{
+			lock.readUnlock();
+		}
+	}
+	
+	/**
+	 * An entry that was read without its text. The text is read
+	 * from the database the first time it's asked for.
+	 */
+	private class EntryHeader extends BlogEntry
+	{
+		private String blogKey;
+		private boolean hasText;
 		
-		public void close()
+		EntryHeader(String blogKey)
 		{
-			try
+			this.blogKey = blogKey;
+		}
+		
+		public synchronized String getText()
+		{
+			if(!hasText)
 			{
-				st.close();
+				try
+				{
+					super.setText(readText(blogKey, getID()));
+				}
+				catch(BackendException ex)
+				{
+					//read the whole entry instead
+					logger.log(Level.WARNING, "Unable to read the text of entry " + getID(), ex);
+					try
+					{
+						super.setText(getEntry(blogKey, getID()).getText());
+					}
+					catch(BackendException bex)
+					{
+						throw new RuntimeException("Unable to read entry " + getID(), bex);
+					}
+				}
+				hasText = true;
 			}
-			catch(Exception ex)
-			{
-				ex.printStackTrace();		
-			}			
+			return super.getText();
+		}
+		
+		public synchronized void setText(String t)
+		{
+			hasText = true;
+			super.setText(t);
+		}
+	}
+	
+	/**
+	 * EntryEnumerator implementation which walks through entries
+	 * that have already been read from the database
+	 */
+	private static class VectorEntryEnumeration implements EntryEnumeration
+	{
+		private Vector entries;
+		private int next;
+		
+		public VectorEntryEnumeration(Vector v)
+		{
+			entries = v;
+		}
+		
+		public boolean hasMoreEntries()
+		{
+			return next < entries.size();
+		}
+		
+		public BlogEntry nextEntry()
+		{
+			return (BlogEntry)entries.elementAt(next++);
+		}
+		
+		public void close()
+		{
+			//nothing to release
 		}
 	}
 
@@ -0,0 +1,188 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.backend;
+
+import java.util.Hashtable;
+
+
+/**
+ * A reentrant lock that lets any number of readers in at once, or a
+ * single writer. Waiting writers are let in before new readers, so a
+ * steady stream of reads can't starve a write.
+ *
+ * The thread that holds the write lock can also take the read lock.
+ * A thread that only holds the read lock can't take the write lock.
+ *
+ * The lock keeps track of how long threads have waited for it.
+ */
+class ReadWriteLock
+{
+	private Thread writer;
+	private int writeHolds;
+	private int waitingWriters;
+	//thread -> int[1] hold count
+	private Hashtable readers = new Hashtable();
+
+	private long waitTime;
+	private int waitCount;
+
+	/**
+	 * Acquires the read lock, waiting while a writer holds or waits for it
+	 */
+	synchronized void readLock()
+	{
+		Thread t = Thread.currentThread();
+		int holds[] = (int[])readers.get(t);
+		if(holds != null)
+		{
+			holds[0]++;
+			return;
+		}
+
+		if(writer != t)
+		{
+			long start = 0;
+			boolean interrupted = false;
+			while(writer != null || waitingWriters > 0)
+			{
+				if(start == 0)
+					start = System.currentTimeMillis();
+				interrupted |= await();
+			}
+			waited(start);
+			if(interrupted)
+				t.interrupt();
+		}
+
+		readers.put(t, new int[]{1});
+	}
+
+	/**
+	 * Releases the read lock
+	 */
+	synchronized void readUnlock()
+	{
+		int holds[] = (int[])readers.get(Thread.currentThread());
+		if(holds == null)
+			throw new IllegalStateException("Read lock not held");
+
+		if(--holds[0] == 0)
+		{
+			readers.remove(Thread.currentThread());
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Acquires the write lock, waiting until there are no other readers or writers
+	 */
+	synchronized void writeLock()
+	{
+		Thread t = Thread.currentThread();
+		if(writer == t)
+		{
+			writeHolds++;
+			return;
+		}
+		if(readers.containsKey(t))
+			throw new IllegalStateException("Read lock can't be upgraded");
+
+		long start = 0;
+		boolean interrupted = false;
+		waitingWriters++;
+		try
+		{
+			while(writer != null || !readers.isEmpty())
+			{
+				if(start == 0)
+					start = System.currentTimeMillis();
+				interrupted |= await();
+			}
+		}
+		finally
+		{
+			waitingWriters--;
+		}
+		waited(start);
+		if(interrupted)
+			t.interrupt();
+
+		writer = t;
+		writeHolds = 1;
+	}
+
+	/**
+	 * Releases the write lock
+	 */
+	synchronized void writeUnlock()
+	{
+		if(writer != Thread.currentThread())
+			throw new IllegalStateException("Write lock not held");
+
+		if(--writeHolds == 0)
+		{
+			writer = null;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the total time threads have spent waiting for the lock
+	 * @return the time in milliseconds
+	 */
+	synchronized long getWaitTime()
+	{
+		return waitTime;
+	}
+
+	/**
+	 * Gets the number of times a thread had to wait for the lock
+	 * @return the number of waits
+	 */
+	synchronized int getWaitCount()
+	{
+		return waitCount;
+	}
+
+	private void waited(long start)
+	{
+		if(start != 0)
+		{
+			waitTime += System.currentTimeMillis() - start;
+			waitCount++;
+		}
+	}
+
+	private boolean await()
+	{
+		try
+		{
+			wait();
+			return false;
+		}
+		catch(InterruptedException ie)
+		{
+			return true;
+		}
+	}
+}
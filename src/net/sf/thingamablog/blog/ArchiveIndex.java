@@ -0,0 +1,376 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.Vector;
+
+
+/**
+ * The archive ranges of a weblog, with the number of entries in each.
+ *
+ * The index is built with one pass over the entries of the weblog, and
+ * then kept up to date as entries are added, removed and moved. With
+ * monthly and weekly archives, an entry only touches the range it falls
+ * in. With "by n days" archives, a range starts at the first entry after
+ * the previous range, so a change can move the ranges after it. Those are
+ * laid out again until they line up with the old ranges.
+ *
+ * The index has to be built again when the archive policy, the day
+ * interval or the base date changes.
+ */
+class ArchiveIndex
+{
+	private boolean built;
+	private int policy;
+	private int interval;
+	private long baseTime;
+
+	//range start -> Range
+	private TreeMap ranges = new TreeMap();
+	//day start -> int[1] number of entries that day
+	private TreeMap days = new TreeMap();
+	private ArchiveRange archives[];
+
+	private Calendar cal = Calendar.getInstance();
+	private String format;
+	private boolean span;
+	private DateFormat formatter;
+
+	/**
+	 * Indicates if the index was built for the archive settings of a weblog
+	 *
+	 * @param policy The archive policy
+	 * @param interval The days of a "by n days" archive
+	 * @param base The archive base date
+	 * @return true if it was
+	 */
+	synchronized boolean isBuiltFor(int policy, int interval, Date base)
+	{
+		return built && this.policy == policy && this.interval == interval &&
+			baseTime == base.getTime();
+	}
+
+	/**
+	 * Forgets the ranges, so the index is built again
+	 */
+	synchronized void invalidate()
+	{
+		built = false;
+		ranges.clear();
+		days.clear();
+		archives = null;
+	}
+
+	/**
+	 * Builds the index from the entries of a weblog
+	 *
+	 * @param policy The archive policy
+	 * @param interval The days of a "by n days" archive
+	 * @param base The archive base date
+	 * @param eEnum The published entries dated on or after the base date,
+	 * oldest first
+	 * @throws BackendException If the entries can't be read
+	 */
+	synchronized void build(int policy, int interval, Date base, EntryEnumeration eEnum)
+	throws BackendException
+	{
+		invalidate();
+		this.policy = policy;
+		this.interval = interval;
+		baseTime = base.getTime();
+		try
+		{
+			while(eEnum.hasMoreEntries())
+				add(eEnum.nextEntry().getDate());
+		}
+		finally
+		{
+			eEnum.close();
+		}
+		built = true;
+	}
+
+	/**
+	 * Sets the format of the ranges
+	 *
+	 * @param pattern The SimpleDateFormat pattern
+	 * @param span true if both dates of a range are formatted
+	 */
+	synchronized void setFormat(String pattern, boolean span)
+	{
+		if(formatter != null && pattern.equals(format) && span == this.span)
+			return;
+
+		format = pattern;
+		this.span = span;
+		formatter = new SimpleDateFormat(pattern);
+		for(Iterator it = ranges.values().iterator(); it.hasNext();)
+			format(((Range)it.next()).ar);
+	}
+
+	/**
+	 * Adds a published entry
+	 *
+	 * @param d The date of the entry
+	 * @return true if the ranges changed
+	 */
+	synchronized boolean add(Date d)
+	{
+		long t = d.getTime();
+		if(t < baseTime)
+			return false;
+
+		Long day = new Long(dayStart(t));
+		int n[] = (int[])days.get(day);
+		if(n == null)
+			days.put(day, new int[]{1});
+		else
+			n[0]++;
+
+		Range r = rangeFor(t);
+		if(r != null)
+		{
+			r.count++;
+			return false;
+		}
+
+		if(policy == TBWeblog.ARCHIVE_BY_DAY_INTERVAL)
+			layout(day.longValue(), day.longValue());
+		else
+		{
+			r = newRange(t);
+			r.count = 1;
+			put(r);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a published entry
+	 *
+	 * @param d The date of the entry
+	 * @return true if the ranges changed
+	 */
+	synchronized boolean remove(Date d)
+	{
+		long t = d.getTime();
+		Range r = rangeFor(t);
+		if(r == null)
+			return false;
+
+		Long day = new Long(dayStart(t));
+		int n[] = (int[])days.get(day);
+		if(n != null && --n[0] <= 0)
+			days.remove(day);
+
+		r.count--;
+		if(policy == TBWeblog.ARCHIVE_BY_DAY_INTERVAL)
+		{
+			//the range starts at its first entry
+			if(r.count > 0 && days.containsKey(new Long(r.start)))
+				return false;
+			layout(r.start, day.longValue());
+			return true;
+		}
+
+		if(r.count > 0)
+			return false;
+		ranges.remove(new Long(r.start));
+		archives = null;
+		return true;
+	}
+
+	/**
+	 * Gets the ranges, oldest first
+	 * @return the ranges
+	 */
+	synchronized ArchiveRange[] getArchives()
+	{
+		if(archives == null)
+		{
+			archives = new ArchiveRange[ranges.size()];
+			int i = 0;
+			for(Iterator it = ranges.values().iterator(); it.hasNext();)
+				archives[i++] = ((Range)it.next()).ar;
+		}
+		return archives;
+	}
+
+	/**
+	 * Gets the range a date falls in
+	 *
+	 * @param d The date
+	 * @return the range, or null if there isn't one
+	 */
+	synchronized ArchiveRange getArchiveForDate(Date d)
+	{
+		Range r = rangeFor(d.getTime());
+		return r == null ? null : r.ar;
+	}
+
+	/**
+	 * Gets the number of entries in a range
+	 *
+	 * @param ar The range
+	 * @return the number of entries
+	 */
+	synchronized int getEntryCount(ArchiveRange ar)
+	{
+		Range r = (Range)ranges.get(new Long(ar.getStartDate().getTime()));
+		return r == null ? 0 : r.count;
+	}
+
+	/**
+	 * Lays out the "by n days" ranges again from a day on, until they
+	 * line up with the old ranges after the changed day
+	 *
+	 * @param from The first day that may start a different range
+	 * @param changed The day of the entry that changed
+	 */
+	private void layout(long from, long changed)
+	{
+		Vector laid = new Vector();
+		Range cur = null;
+		long stop = Long.MAX_VALUE;
+		for(Iterator it = days.tailMap(new Long(from)).entrySet().iterator(); it.hasNext();)
+		{
+			java.util.Map.Entry e = (java.util.Map.Entry)it.next();
+			long day = ((Long)e.getKey()).longValue();
+			int n = ((int[])e.getValue())[0];
+			if(cur != null && day <= cur.end)
+			{
+				cur.count += n;
+				continue;
+			}
+
+			Range old = (Range)ranges.get(e.getKey());
+			if(day > changed && old != null)
+			{
+				stop = day;//the rest of the ranges are unchanged
+				break;
+			}
+
+			//keep the range objects that didn't move
+			cur = old != null ? old : newRange(day);
+			cur.count = n;
+			laid.add(cur);
+		}
+
+		SortedMap gone = stop == Long.MAX_VALUE ?
+			ranges.tailMap(new Long(from)) : ranges.subMap(new Long(from), new Long(stop));
+		gone.clear();
+		for(int i = 0; i < laid.size(); i++)
+			put((Range)laid.elementAt(i));
+		archives = null;
+	}
+
+	private void put(Range r)
+	{
+		ranges.put(new Long(r.start), r);
+		archives = null;
+	}
+
+	private Range rangeFor(long t)
+	{
+		SortedMap head = ranges.headMap(new Long(t + 1));
+		if(head.isEmpty())
+			return null;
+		Range r = (Range)head.get(head.lastKey());
+		return t <= r.end ? r : null;
+	}
+
+	private Range newRange(long t)
+	{
+		cal.setTimeInMillis(t);
+		Date d1 = cal.getTime();
+		Date d2;
+		if(policy == TBWeblog.ARCHIVE_MONTHLY)
+		{
+			cal.set(Calendar.DAY_OF_MONTH, 1);
+			d1 = cal.getTime();
+			cal.add(Calendar.MONTH, 1);
+			cal.add(Calendar.DATE, -1);
+			d2 = cal.getTime();
+		}
+		else if(policy == TBWeblog.ARCHIVE_WEEKLY)
+		{
+			//in some countries Monday is the 1st day of the week
+			cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
+			d1 = cal.getTime();
+			cal.add(Calendar.DAY_OF_MONTH, 6);
+			d2 = cal.getTime();
+		}
+		else
+		{
+			cal.add(Calendar.DATE, Math.max(1, interval) - 1);
+			d2 = cal.getTime();
+		}
+
+		Range r = new Range(new ArchiveRange(d1, d2));
+		format(r.ar);
+		return r;
+	}
+
+	private void format(ArchiveRange ar)
+	{
+		//each range gets its own formatter, as ranges are
+		//formatted by the threads that generate the pages
+		if(formatter != null)
+			ar.setFormatter((DateFormat)formatter.clone(), span);
+	}
+
+	private long dayStart(long t)
+	{
+		cal.setTimeInMillis(t);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTimeInMillis();
+	}
+
+	/**
+	 * An archive range and the number of entries in it
+	 */
+	private static class Range
+	{
+		ArchiveRange ar;
+		long start, end;
+		int count;
+
+		Range(ArchiveRange ar)
+		{
+			this.ar = ar;
+			start = ar.getStartDate().getTime();
+			//through the last second of the range
+			end = ar.getExpirationDate().getTime() / 1000 * 1000 + 999;
+		}
+	}
+}
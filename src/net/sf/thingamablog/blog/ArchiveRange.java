@@ -40,7 +40,6 @@ public class ArchiveRange
     private Date expire;
     private DateFormat format = DateFormat.getDateInstance(DateFormat.SHORT);
     private boolean span = true;  
-	private static Calendar cal = Calendar.getInstance();   
     
     /**
      * 
@@ -55,6 +54,7 @@ public class ArchiveRange
             throw new IllegalArgumentException("Expire date must be >= start date");
 
         //set to 12:00:00.0 AM        
+        Calendar cal = Calendar.getInstance();
         cal.setTime(s);
         cal.set(cal.get(
         	Calendar.YEAR), cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH),
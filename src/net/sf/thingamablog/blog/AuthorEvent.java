@@ -37,6 +37,7 @@ public class AuthorEvent extends EventObject
      */
     private static final long serialVersionUID = 1L;
     private Author auth;
+    private Author oldAuth;
 	private Weblog blog;
 	
 	/**
@@ -45,10 +46,22 @@ public class AuthorEvent extends EventObject
 	 * @param auth The Author on which this even occured
 	 */
 	public AuthorEvent(Weblog blog, Author auth)
+	{
+		this(blog, auth, null);
+	}
+	
+	/**
+	 * Constructs an AuthorEvent object for an updated Author
+	 * @param blog The weblog which this even originated from
+	 * @param auth The Author on which this even occured
+	 * @param oldAuth The Author before it was updated
+	 */
+	public AuthorEvent(Weblog blog, Author auth, Author oldAuth)
 	{
 		super(blog);
 		this.blog = blog;
 		this.auth = auth;
+		this.oldAuth = oldAuth;
 	}
 	/**
 	 * Gets the weblog
@@ -67,4 +80,13 @@ public class AuthorEvent extends EventObject
 	{
 		return auth;
 	}
+	
+	/**
+	 * Gets the author as it was before it was updated
+	 * @return the old author, or null if the author wasn't updated
+	 */
+	public Author getOldAuthor()
+	{
+		return oldAuth;
+	}
 }
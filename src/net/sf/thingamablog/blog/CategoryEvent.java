@@ -37,6 +37,7 @@ public class CategoryEvent extends EventObject
      */
     private static final long serialVersionUID = 1L;
     private String cat;
+    private String oldCat;
 	private Weblog blog;
 	
 	/**
@@ -45,10 +46,22 @@ public class CategoryEvent extends EventObject
 	 * @param cat The category
 	 */
 	public CategoryEvent(Weblog blog, String cat)
+	{
+		this(blog, cat, null);
+	}
+	
+	/**
+	 * Constructs a CategoryEvent for a renamed category
+	 * @param blog The blog from which the event originated
+	 * @param cat The category
+	 * @param oldCat The name of the category before it was renamed
+	 */
+	public CategoryEvent(Weblog blog, String cat, String oldCat)
 	{
 		super(blog);
 		this.blog = blog;
 		this.cat = cat;
+		this.oldCat = oldCat;
 	}
 	/**
 	 * @return
@@ -65,4 +78,13 @@ public class CategoryEvent extends EventObject
 	{
 		return cat;
 	}
+	
+	/**
+	 * Gets the name the category had before it was renamed
+	 * @return the old name, or null if the category wasn't renamed
+	 */
+	public String getOldCategory()
+	{
+		return oldCat;
+	}
 }
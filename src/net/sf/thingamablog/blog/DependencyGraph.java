@@ -0,0 +1,616 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+
+/**
+ * A record of what each generated page of a weblog read during its
+ * last render: the entries, the categories, the authors and the custom
+ * tags it showed, and the date ranges it asked for entries in.
+ *
+ * A page is recorded by the thread that generates it. The page is begun
+ * with beginPage(), the entry index, the weblog and the custom tags call
+ * record() and recordRange() as the page reads them, and the dependencies
+ * replace those of the last render when the page ends. When the data of
+ * the weblog changes, the weblog asks the graph which pages read it and
+ * regenerates only those.
+ *
+ * The graph only knows the pages it has seen rendered. It is complete
+ * once every page of the weblog was generated while it was recording.
+ */
+public class DependencyGraph
+{
+	/** The list of categories of the weblog */
+	public static final String CATEGORIES = "cats";
+	/** The list of archives of the weblog */
+	public static final String ARCHIVES = "arcs";
+
+	private static final String COMPLETE_KEY = ".complete";
+	private static final String RANGE = "r:";
+
+	//the page being recorded by the current thread
+	private static ThreadLocal recording = new ThreadLocal();
+
+	private File file;
+	//page -> Deps
+	private Hashtable pages = new Hashtable();
+	//dependency -> HashSet of pages
+	private Hashtable readers = new Hashtable();
+	private boolean complete;
+	private boolean loaded;
+	private boolean modified;
+
+	/**
+	 * @param file The file the graph is saved to
+	 */
+	public DependencyGraph(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Gets the dependency on an entry
+	 * @param id The ID of the entry
+	 * @return the dependency
+	 */
+	public static String entry(long id)
+	{
+		return "e:" + id;
+	}
+
+	/**
+	 * Gets the dependency on the entries of a category
+	 * @param cat The category
+	 * @return the dependency
+	 */
+	public static String categoryEntries(String cat)
+	{
+		return "c:" + cat;
+	}
+
+	/**
+	 * Gets the dependency on the name of a category, for pages
+	 * that show the category of an entry
+	 * @param cat The category
+	 * @return the dependency
+	 */
+	public static String categoryName(String cat)
+	{
+		return "n:" + cat;
+	}
+
+	/**
+	 * Gets the dependency on an author
+	 * @param name The name of the author
+	 * @return the dependency
+	 */
+	public static String author(String name)
+	{
+		return "a:" + name;
+	}
+
+	/**
+	 * Gets the dependency on a custom tag
+	 * @param name The name of the tag
+	 * @return the dependency
+	 */
+	public static String customTag(String name)
+	{
+		return "t:" + name;
+	}
+
+	/**
+	 * Records that the page the current thread is generating reads
+	 * something. Does nothing if the thread isn't recording a page.
+	 *
+	 * @param dep The dependency
+	 */
+	public static void record(String dep)
+	{
+		Deps d = (Deps)recording.get();
+		if(d != null)
+		{
+			d.keys.add(dep);
+			for(int i = 0; i < d.captures.size(); i++)
+				((Capture)d.captures.elementAt(i)).keys.add(dep);
+		}
+	}
+
+	/**
+	 * Records that the page the current thread is generating reads the
+	 * entries dated between two times, inclusive. Does nothing if the
+	 * thread isn't recording a page.
+	 *
+	 * @param from The start time
+	 * @param to The end time
+	 */
+	public static void recordRange(long from, long to)
+	{
+		Deps d = (Deps)recording.get();
+		if(d != null && from <= to)
+		{
+			long r[] = new long[]{from, to};
+			d.ranges.add(r);
+			for(int i = 0; i < d.captures.size(); i++)
+				((Capture)d.captures.elementAt(i)).ranges.add(r);
+		}
+	}
+
+	/**
+	 * Records that the page the current thread is generating shows an
+	 * entry, its author and its categories
+	 *
+	 * @param be The entry
+	 */
+	public static void recordEntry(BlogEntry be)
+	{
+		if(be == null || !isRecording())
+			return;
+
+		record(entry(be.getID()));
+		if(be.getAuthor() != null)
+			record(author(be.getAuthor().getName()));
+		String cats[] = be.getCategories();
+		for(int i = 0; i < cats.length; i++)
+			record(categoryName(cats[i]));
+	}
+
+	/**
+	 * Starts capturing what the current thread records, such as while a
+	 * part of a page is rendered that will be reused on other pages.
+	 * Captures can be nested.
+	 *
+	 * @return the capture, or null if the thread isn't recording a page
+	 */
+	public static Capture beginCapture()
+	{
+		Deps d = (Deps)recording.get();
+		if(d == null)
+			return null;
+		Capture c = new Capture();
+		d.captures.add(c);
+		return c;
+	}
+
+	/**
+	 * Stops a capture begun with beginCapture()
+	 * @param c The capture, or null
+	 */
+	public static void endCapture(Capture c)
+	{
+		Deps d = (Deps)recording.get();
+		if(d != null && c != null)
+			d.captures.remove(c);
+	}
+
+	/**
+	 * Records everything a capture recorded on the page the current
+	 * thread is generating
+	 *
+	 * @param c The capture, or null
+	 */
+	public static void replay(Capture c)
+	{
+		if(c == null || !isRecording())
+			return;
+		for(Iterator it = c.keys.iterator(); it.hasNext();)
+			record((String)it.next());
+		for(int i = 0; i < c.ranges.size(); i++)
+		{
+			long r[] = (long[])c.ranges.elementAt(i);
+			recordRange(r[0], r[1]);
+		}
+	}
+
+	/**
+	 * Indicates if the current thread is recording a page
+	 * @return true if it is
+	 */
+	public static boolean isRecording()
+	{
+		return recording.get() != null;
+	}
+
+	/**
+	 * Starts recording a page on the current thread
+	 * @param page The key of the page
+	 */
+	void beginPage(String page)
+	{
+		recording.set(new Deps(page));
+	}
+
+	/**
+	 * Stops recording the page of the current thread. The dependencies
+	 * of a page that was generated replace those of its last render.
+	 *
+	 * @param generated true if the page was generated, false if it failed
+	 */
+	void endPage(boolean generated)
+	{
+		Deps d = (Deps)recording.get();
+		recording.set(null);
+		if(d == null)
+			return;
+
+		synchronized(this)
+		{
+			load();
+			if(generated)
+			{
+				d.mergeRanges();
+				put(d);
+			}
+			else
+				remove(d.page);
+			modified = true;
+		}
+	}
+
+	/**
+	 * Gets the pages that read any of the dependencies, or any entry
+	 * dated at one of the times
+	 *
+	 * @param deps The dependencies
+	 * @param times The entry times, in milliseconds
+	 * @return the keys of the pages
+	 */
+	public synchronized String[] getAffectedPages(String deps[], long times[])
+	{
+		load();
+		HashSet found = new HashSet();
+		for(int i = 0; i < deps.length; i++)
+		{
+			HashSet s = (HashSet)readers.get(deps[i]);
+			if(s != null)
+				found.addAll(s);
+		}
+
+		if(times.length > 0)
+		{
+			for(Enumeration e = pages.elements(); e.hasMoreElements();)
+			{
+				Deps d = (Deps)e.nextElement();
+				if(!found.contains(d.page) && d.readsAny(times))
+					found.add(d.page);
+			}
+		}
+
+		String s[] = (String[])found.toArray(new String[found.size()]);
+		Arrays.sort(s);
+		return s;
+	}
+
+	/**
+	 * Gets the pages that read any of the dependencies
+	 *
+	 * @param deps The dependencies
+	 * @return the keys of the pages
+	 */
+	public String[] getAffectedPages(String deps[])
+	{
+		return getAffectedPages(deps, new long[0]);
+	}
+
+	/**
+	 * Forgets a page, such as the page of a category that was removed
+	 * @param page The key of the page
+	 */
+	public synchronized void removePage(String page)
+	{
+		load();
+		if(remove(page))
+			modified = true;
+	}
+
+	/**
+	 * Indicates if the graph has seen every page of the weblog rendered.
+	 * Until it has, the pages it doesn't know might read anything.
+	 *
+	 * @return true if the graph is complete
+	 */
+	public synchronized boolean isComplete()
+	{
+		load();
+		return complete;
+	}
+
+	/**
+	 * Sets if the graph has seen every page of the weblog rendered
+	 * @param b true if the graph is complete
+	 */
+	public synchronized void setComplete(boolean b)
+	{
+		load();
+		if(b != complete)
+		{
+			complete = b;
+			modified = true;
+		}
+	}
+
+	/**
+	 * Forgets every page
+	 */
+	public synchronized void clear()
+	{
+		loaded = true;
+		pages.clear();
+		readers.clear();
+		complete = false;
+		modified = true;
+	}
+
+	/**
+	 * Gets the number of pages in the graph
+	 * @return the number of pages
+	 */
+	public synchronized int size()
+	{
+		load();
+		return pages.size();
+	}
+
+	/**
+	 * Saves the graph if it was modified. The graph is written to a
+	 * temporary file that is then renamed.
+	 *
+	 * @throws IOException If the graph can't be written
+	 */
+	public synchronized void save() throws IOException
+	{
+		if(!modified)
+			return;
+
+		Properties p = new Properties();
+		for(Enumeration e = pages.elements(); e.hasMoreElements();)
+		{
+			Deps d = (Deps)e.nextElement();
+			p.setProperty(d.page, d.toString());
+		}
+		p.setProperty(COMPLETE_KEY, String.valueOf(complete));
+
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try
+		{
+			p.store(out, "Generated pages: page = what it read");
+		}
+		finally
+		{
+			out.close();
+		}
+
+		file.delete();
+		if(!tmp.renameTo(file))
+			throw new IOException("Unable to rename " + tmp + " to " + file);
+		modified = false;
+	}
+
+	private void load()
+	{
+		if(loaded)
+			return;
+		loaded = true;
+		if(!file.isFile())
+			return;
+
+		Properties p = new Properties();
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream(file);
+			p.load(in);
+		}
+		catch(IOException ex)
+		{
+			return;//start over, every page is regenerated anyway
+		}
+		finally
+		{
+			if(in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch(IOException ex){}
+			}
+		}
+
+		complete = "true".equals(p.getProperty(COMPLETE_KEY));
+		p.remove(COMPLETE_KEY);
+		for(Enumeration e = p.keys(); e.hasMoreElements();)
+		{
+			String page = e.nextElement().toString();
+			put(Deps.parse(page, p.getProperty(page)));
+		}
+	}
+
+	private void put(Deps d)
+	{
+		remove(d.page);
+		pages.put(d.page, d);
+		for(Iterator it = d.keys.iterator(); it.hasNext();)
+		{
+			Object k = it.next();
+			HashSet s = (HashSet)readers.get(k);
+			if(s == null)
+			{
+				s = new HashSet();
+				readers.put(k, s);
+			}
+			s.add(d.page);
+		}
+	}
+
+	private boolean remove(String page)
+	{
+		Deps d = (Deps)pages.remove(page);
+		if(d == null)
+			return false;
+
+		for(Iterator it = d.keys.iterator(); it.hasNext();)
+		{
+			Object k = it.next();
+			HashSet s = (HashSet)readers.get(k);
+			if(s != null)
+			{
+				s.remove(page);
+				if(s.isEmpty())
+					readers.remove(k);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * What one page read
+	 */
+	/**
+	 * The dependencies recorded by a part of a page
+	 */
+	public static class Capture
+	{
+		private HashSet keys = new HashSet();
+		private Vector ranges = new Vector();
+
+		private Capture()
+		{
+		}
+	}
+
+	private static class Deps
+	{
+		String page;
+		HashSet keys = new HashSet();
+		//long[2] inclusive time ranges
+		Vector ranges = new Vector();
+		//the Captures in progress
+		Vector captures = new Vector(1);
+
+		Deps(String page)
+		{
+			this.page = page;
+		}
+
+		boolean readsAny(long times[])
+		{
+			for(int i = 0; i < ranges.size(); i++)
+			{
+				long r[] = (long[])ranges.elementAt(i);
+				for(int j = 0; j < times.length; j++)
+					if(times[j] >= r[0] && times[j] <= r[1])
+						return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Sorts the ranges and joins the ones that overlap or touch,
+		 * such as the days of a calendar
+		 */
+		void mergeRanges()
+		{
+			if(ranges.size() < 2)
+				return;
+
+			long r[][] = (long[][])ranges.toArray(new long[ranges.size()][]);
+			Arrays.sort(r, new Comparator()
+			{
+				public int compare(Object o1, Object o2)
+				{
+					long a = ((long[])o1)[0], b = ((long[])o2)[0];
+					return a < b ? -1 : (a == b ? 0 : 1);
+				}
+			});
+
+			ranges.clear();
+			long cur[] = r[0];
+			for(int i = 1; i < r.length; i++)
+			{
+				if(cur[1] == Long.MAX_VALUE || r[i][0] <= cur[1] + 1)
+					cur = new long[]{cur[0], Math.max(cur[1], r[i][1])};
+				else
+				{
+					ranges.add(cur);
+					cur = r[i];
+				}
+			}
+			ranges.add(cur);
+		}
+
+		public String toString()
+		{
+			StringBuffer sb = new StringBuffer();
+			for(Iterator it = keys.iterator(); it.hasNext();)
+				sb.append(it.next()).append('\n');
+			for(int i = 0; i < ranges.size(); i++)
+			{
+				long r[] = (long[])ranges.elementAt(i);
+				sb.append(RANGE).append(r[0]).append(':').append(r[1]).append('\n');
+			}
+			return sb.toString();
+		}
+
+		static Deps parse(String page, String val)
+		{
+			Deps d = new Deps(page);
+			StringTokenizer st = new StringTokenizer(val, "\n");
+			while(st.hasMoreTokens())
+			{
+				String s = st.nextToken();
+				int c = s.indexOf(':', RANGE.length());
+				if(s.startsWith(RANGE) && c > 0)
+				{
+					try
+					{
+						d.ranges.add(new long[]{
+							Long.parseLong(s.substring(RANGE.length(), c)),
+							Long.parseLong(s.substring(c + 1))});
+						continue;
+					}
+					catch(NumberFormatException ex){}
+				}
+				d.keys.add(s);
+			}
+			return d;
+		}
+	}
+}
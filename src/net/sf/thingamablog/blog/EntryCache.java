@@ -0,0 +1,285 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+
+/**
+ * A cache of the full entries of a weblog, in front of
+ * WeblogBackend.getEntry().
+ *
+ * The cache holds a limited number of entries and bytes, and forgets the
+ * least recently used entries first. An entry is forgotten when it's
+ * updated or removed, and the whole cache is cleared when categories or
+ * authors change, since the backend changes the entries that refer to them.
+ *
+ * Callers are free to modify the entries they get, so the cache keeps
+ * its own copies and hands out copies of them. It's safe to use from
+ * several threads.
+ */
+public class EntryCache
+{
+	/** The default maximum number of cached entries */
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+	/** The default maximum number of cached bytes */
+	public static final long DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+	
+	//the rough size of an entry apart from its strings
+	private static final int ENTRY_OVERHEAD = 128;
+	
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxSize = DEFAULT_MAX_SIZE;
+	
+	//Long id -> Cached, least recently used first
+	private LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+	private long size;
+	//bumped whenever entries are forgotten, so a read that
+	//raced with an update doesn't put back the old entry
+	private long generation;
+	
+	private int hits;
+	private int misses;
+	
+	/**
+	 * Gets a copy of a cached entry
+	 * 
+	 * @param id The ID of the entry
+	 * @return The entry, or null if it isn't cached
+	 */
+	public synchronized BlogEntry get(long id)
+	{
+		Cached c = (Cached)entries.get(new Long(id));
+		if(c == null)
+		{
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		return copy(c.entry);
+	}
+	
+	/**
+	 * Gets the generation of the cache. A caller that reads an entry from 
+	 * the backend takes the generation before the read and passes it to put()
+	 * 
+	 * @return the generation
+	 */
+	public synchronized long getGeneration()
+	{
+		return generation;
+	}
+	
+	/**
+	 * Caches a copy of an entry, unless entries were forgotten
+	 * since the entry was read
+	 * 
+	 * @param be The entry
+	 * @param gen The generation of the cache before the entry was read
+	 */
+	public synchronized void put(BlogEntry be, long gen)
+	{
+		if(gen != generation)
+			return;
+		
+		Long key = new Long(be.getID());
+		Cached c = new Cached(copy(be));
+		if(c.size > maxSize)
+			return;
+		
+		Cached old = (Cached)entries.put(key, c);
+		if(old != null)
+			size -= old.size;
+		size += c.size;
+		trim();
+	}
+	
+	/**
+	 * Forgets an entry
+	 * @param id The ID of the entry
+	 */
+	public synchronized void remove(long id)
+	{
+		generation++;
+		Cached c = (Cached)entries.remove(new Long(id));
+		if(c != null)
+			size -= c.size;
+	}
+	
+	/**
+	 * Forgets all the cached entries
+	 */
+	public synchronized void clear()
+	{
+		generation++;
+		entries.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Resets the hit and miss counts, such as at the start of a publish
+	 */
+	public synchronized void resetStatistics()
+	{
+		hits = misses = 0;
+	}
+	
+	/**
+	 * Gets the number of entries that were found in the cache
+	 * since the statistics were reset
+	 * @return the number of hits
+	 */
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+	
+	/**
+	 * Gets the number of entries that were read from the backend
+	 * since the statistics were reset
+	 * @return the number of misses
+	 */
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+	
+	/**
+	 * Gets the number of cached entries
+	 * @return the number of entries
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	
+	/**
+	 * Gets the estimated number of bytes the cached entries use
+	 * @return the number of bytes
+	 */
+	public synchronized long getSize()
+	{
+		return size;
+	}
+	
+	/**
+	 * Gets the maximum number of cached entries
+	 * @return the number of entries
+	 */
+	public synchronized int getMaxEntries()
+	{
+		return maxEntries;
+	}
+	
+	/**
+	 * Sets the maximum number of cached entries
+	 * @param n the number of entries, or 0 to turn off the cache
+	 */
+	public synchronized void setMaxEntries(int n)
+	{
+		maxEntries = Math.max(0, n);
+		trim();
+	}
+	
+	/**
+	 * Gets the maximum number of bytes of cached entries
+	 * @return the number of bytes
+	 */
+	public synchronized long getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	/**
+	 * Sets the maximum number of bytes of cached entries. Larger 
+	 * entries are read from the backend every time.
+	 * @param n the number of bytes
+	 */
+	public synchronized void setMaxSize(long n)
+	{
+		maxSize = Math.max(0, n);
+		trim();
+	}
+	
+	private void trim()
+	{
+		Iterator it = entries.values().iterator();
+		while((entries.size() > maxEntries || size > maxSize) && it.hasNext())
+		{
+			size -= ((Cached)it.next()).size;
+			it.remove();
+		}
+	}
+	
+	private static BlogEntry copy(BlogEntry be)
+	{
+		BlogEntry c = new BlogEntry();
+		c.setID(be.getID());
+		c.setTitle(be.getTitle());
+		c.setText(be.getText());
+		c.setDraft(be.isDraft());
+		c.setCategories(be.getCategories());
+		if(be.getDate() != null)
+			c.setDate(new Date(be.getDate().getTime()));
+		if(be.getLastModified() != null)
+			c.setLastModified(new Date(be.getLastModified().getTime()));
+		if(be.getAuthor() != null)
+		{
+			Author a = new Author();
+			a.setName(be.getAuthor().getName());
+			a.setEmailAddress(be.getAuthor().getEmailAddress());
+			a.setUrl(be.getAuthor().getUrl());
+			c.setAuthor(a);
+		}
+		return c;
+	}
+	
+	/**
+	 * A cached entry and its estimated size
+	 */
+	private static class Cached
+	{
+		final BlogEntry entry;
+		final long size;
+		
+		Cached(BlogEntry be)
+		{
+			entry = be;
+			long chars = length(be.getTitle()) + length(be.getText());
+			String cats[] = be.getCategories();
+			for(int i = 0; i < cats.length; i++)
+				chars += length(cats[i]);
+			if(be.getAuthor() != null)
+				chars += length(be.getAuthor().getString());
+			size = ENTRY_OVERHEAD + chars * 2;
+		}
+		
+		private static long length(String s)
+		{
+			return s == null ? 0 : s.length();
+		}
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Vector;
+
+
+/**
+ * An in-memory snapshot of the published entries of a weblog.
+ *
+ * The index is built with a single pass over the entries dated on or after
+ * the archive base date, and holds the entry headers sorted by date, the
+ * entries of each category and the categories of the weblog. Page
+ * generators answer their questions about which entries appear on a page,
+ * which days have entries and which entries come before and after another
+ * from the index instead of querying the backend.
+ *
+ * The headers don't have the entry text. Full entries are read through
+ * the entry cache of the weblog with getEntry(), which keeps its own
+ * statistics. The index counts the backend queries it makes itself.
+ *
+ * When a page is being recorded in the dependency graph of the weblog,
+ * the index records the entries, categories and date ranges it returns.
+ *
+ * An EntryIndex is immutable once built and can be shared between threads.
+ * The headers it returns are shared too, and must not be modified.
+ */
+public class EntryIndex
+{
+	private static final BlogEntry NO_ENTRIES[] = new BlogEntry[0];
+
+	private Weblog blog;
+	private Date baseDate;
+
+	//the entry headers in ascending date order
+	private BlogEntry entries[];
+	private long times[];
+	private Hashtable positions = new Hashtable();
+	//category -> Vector of positions
+	private Hashtable catEntries = new Hashtable();
+	private String categories[];
+
+	private int queryCount;
+
+	/**
+	 * Builds the index of a weblog
+	 *
+	 * @param blog The weblog
+	 * @throws BackendException If the entries can't be read
+	 */
+	public EntryIndex(Weblog blog) throws BackendException
+	{
+		this.blog = blog;
+		baseDate = blog.getArchiveBaseDate();
+
+		Vector v = new Vector(100, 100);
+		EntryEnumeration eEnum =
+			blog.getBackend().getEntryHeadersAfter(blog.getKey(), baseDate, true);
+		queryCount++;
+		while(eEnum.hasMoreEntries())
+		{
+			BlogEntry be = eEnum.nextEntry();
+			if(be.isDraft() || be.getDate().before(baseDate))
+				continue;
+			be.setText(null);//the shared headers never read their text
+			v.add(be);
+		}
+		eEnum.close();
+
+		entries = new BlogEntry[v.size()];
+		times = new long[entries.length];
+		for(int i = 0; i < entries.length; i++)
+		{
+			entries[i] = (BlogEntry)v.elementAt(i);
+			times[i] = entries[i].getDate().getTime();
+			positions.put(new Long(entries[i].getID()), new Integer(i));
+
+			String cats[] = entries[i].getCategories();
+			for(int j = 0; j < cats.length; j++)
+			{
+				Vector c = (Vector)catEntries.get(cats[j]);
+				if(c == null)
+				{
+					c = new Vector();
+					catEntries.put(cats[j], c);
+				}
+				if(c.isEmpty() || ((Integer)c.lastElement()).intValue() != i)
+					c.add(new Integer(i));
+			}
+		}
+
+		categories = blog.getCategories();
+		queryCount++;
+	}
+
+	/**
+	 * Gets the number of entries in the index
+	 * @return the number of entries
+	 */
+	public int size()
+	{
+		return entries.length;
+	}
+
+	/**
+	 * Gets the archive base date the index was built for
+	 * @return the base date
+	 */
+	public Date getArchiveBaseDate()
+	{
+		return baseDate;
+	}
+
+	/**
+	 * Gets the categories of the weblog
+	 * @return the categories
+	 */
+	public String[] getCategories()
+	{
+		DependencyGraph.record(DependencyGraph.CATEGORIES);
+		return (String[])categories.clone();
+	}
+
+	/**
+	 * Gets the header of an entry
+	 * @param id The ID of the entry
+	 * @return The header, or null if the entry isn't in the index
+	 */
+	public BlogEntry getEntryHeader(long id)
+	{
+		DependencyGraph.record(DependencyGraph.entry(id));
+		Integer p = (Integer)positions.get(new Long(id));
+		if(p == null)
+			return null;
+		DependencyGraph.recordEntry(entries[p.intValue()]);
+		return entries[p.intValue()];
+	}
+
+	/**
+	 * Reads a full entry, including its text, from the backend
+	 *
+	 * @param id The ID of the entry
+	 * @return The entry
+	 * @throws BackendException If the entry can't be read
+	 */
+	public BlogEntry getEntry(long id) throws BackendException
+	{
+		DependencyGraph.record(DependencyGraph.entry(id));
+		BlogEntry be = blog.getEntry(id);
+		DependencyGraph.recordEntry(be);
+		return be;
+	}
+
+	/**
+	 * Gets the entry headers
+	 * @param asc true for oldest first, false for newest first
+	 * @return the headers
+	 */
+	public BlogEntry[] getEntries(boolean asc)
+	{
+		DependencyGraph.recordRange(Long.MIN_VALUE, Long.MAX_VALUE);
+		return range(0, entries.length, asc);
+	}
+
+	/**
+	 * Gets the headers of the entries dated between two dates, inclusive
+	 *
+	 * @param from The start date
+	 * @param to The end date
+	 * @param asc true for oldest first, false for newest first
+	 * @return the headers
+	 */
+	public BlogEntry[] getEntriesBetween(Date from, Date to, boolean asc)
+	{
+		DependencyGraph.recordRange(from.getTime(), to.getTime());
+		int s = firstAtOrAfter(from.getTime());
+		int e = firstAfter(to.getTime());
+		return range(s, e, asc);
+	}
+
+	/**
+	 * Gets the number of entries dated between two dates, inclusive,
+	 * such as the entries of one day of a calendar
+	 *
+	 * @param from The start date
+	 * @param to The end date
+	 * @return the number of entries
+	 */
+	public int getEntryCount(Date from, Date to)
+	{
+		DependencyGraph.recordRange(from.getTime(), to.getTime());
+		int n = firstAfter(to.getTime()) - firstAtOrAfter(from.getTime());
+		return n < 0 ? 0 : n;
+	}
+
+	/**
+	 * Gets the oldest entry dated between two dates, inclusive, that
+	 * belongs to a category
+	 *
+	 * @param from The start date
+	 * @param to The end date
+	 * @param cat The category, or null for any category
+	 * @return The header of the entry, or null if there isn't one
+	 */
+	public BlogEntry getFirstEntryBetween(Date from, Date to, String cat)
+	{
+		DependencyGraph.recordRange(from.getTime(), to.getTime());
+		int e = firstAfter(to.getTime());
+		for(int i = firstAtOrAfter(from.getTime()); i < e; i++)
+		{
+			if(cat == null || isInCategory(entries[i], cat))
+				return entries[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the headers of the entries of a category
+	 *
+	 * @param cat The category
+	 * @param asc true for oldest first, false for newest first
+	 * @return the headers
+	 */
+	public BlogEntry[] getEntriesFromCategory(String cat, boolean asc)
+	{
+		DependencyGraph.record(DependencyGraph.categoryEntries(cat));
+		Vector c = (Vector)catEntries.get(cat);
+		if(c == null)
+			return NO_ENTRIES;
+
+		BlogEntry be[] = new BlogEntry[c.size()];
+		for(int i = 0; i < be.length; i++)
+		{
+			int p = ((Integer)c.elementAt(asc ? i : be.length - 1 - i)).intValue();
+			be[i] = entries[p];
+		}
+		return be;
+	}
+
+	/**
+	 * Gets the first entry dated after a date. This is
+	 * the index version of Weblog.getEntryAfter(Date)
+	 *
+	 * @param d The date
+	 * @return The header of the next entry, or null if there isn't one
+	 */
+	public BlogEntry getEntryAfter(Date d)
+	{
+		long t = Math.max(d.getTime(), baseDate.getTime());
+		int i = firstAfter(t);
+		//an entry added before the next one changes the answer
+		DependencyGraph.recordRange(t + 1, i < entries.length ? times[i] : Long.MAX_VALUE);
+		return i < entries.length ? entries[i] : null;
+	}
+
+	/**
+	 * Gets the last entry dated before a date. This is
+	 * the index version of Weblog.getEntryBefore(Date)
+	 *
+	 * @param d The date
+	 * @return The header of the previous entry, or null if there isn't one
+	 */
+	public BlogEntry getEntryBefore(Date d)
+	{
+		if(d.before(baseDate))
+			return null;
+
+		int i = firstAtOrAfter(d.getTime()) - 1;
+		DependencyGraph.recordRange(i < 0 ? Long.MIN_VALUE : times[i], d.getTime() - 1);
+		if(i < 0 || times[i] <= baseDate.getTime())
+			return null;
+		return entries[i];
+	}
+
+	/**
+	 * Gets the number of backend queries made to build the index. It
+	 * doesn't depend on the number of entries or pages.
+	 *
+	 * @return the number of queries
+	 */
+	public int getQueryCount()
+	{
+		return queryCount;
+	}
+
+	private boolean isInCategory(BlogEntry be, String cat)
+	{
+		String cats[] = be.getCategories();
+		for(int i = 0; i < cats.length; i++)
+			if(cats[i].equals(cat))
+				return true;
+		return false;
+	}
+
+	private BlogEntry[] range(int s, int e, boolean asc)
+	{
+		if(e <= s)
+			return NO_ENTRIES;
+
+		BlogEntry be[] = new BlogEntry[e - s];
+		for(int i = 0; i < be.length; i++)
+			be[i] = entries[asc ? s + i : e - 1 - i];
+		return be;
+	}
+
+	private int firstAtOrAfter(long t)
+	{
+		int lo = 0, hi = times.length;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(times[mid] < t)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private int firstAfter(long t)
+	{
+		int lo = 0, hi = times.length;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(times[mid] <= t)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Generates independent weblog pages on a bounded pool of worker threads.
+ *
+ * Pages are queued with add() and generated by generate(), which waits
+ * for all of them to finish. The generated files are put in the file to
+ * path table in the order the pages were queued, no matter which worker
+ * finished first.
+ *
+ * Pages that have a key are recorded in a dependency graph while
+ * they're generated.
+ */
+class PageGenerationPool
+{
+    private static Logger logger = Logger.getLogger("net.sf.thingamablog.blog");
+
+    private Vector pages = new Vector();
+    private int maxThreads;
+    private PublishProgress progress;
+    private DependencyGraph dependencies;
+
+    //the state shared by the workers
+    private int nextPage;
+    private int pagesDone;
+    private Exception failure;
+
+    /**
+     * @param maxThreads The maximum number of worker threads
+     * @param progress The progress to report generated pages to, or null
+     */
+    PageGenerationPool(int maxThreads, PublishProgress progress)
+    {
+        this(maxThreads, progress, null);
+    }
+
+    /**
+     * @param maxThreads The maximum number of worker threads
+     * @param progress The progress to report generated pages to, or null
+     * @param deps The graph to record the dependencies of the pages in, or null
+     */
+    PageGenerationPool(int maxThreads, PublishProgress progress, DependencyGraph deps)
+    {
+        this.maxThreads = Math.max(1, maxThreads);
+        this.progress = progress;
+        this.dependencies = deps;
+    }
+
+    /**
+     * Queues a page for generation
+     * @param page The page
+     */
+    void add(Page page)
+    {
+        pages.add(page);
+    }
+
+    /**
+     * Generates the queued pages and puts the generated files in the table.
+     * If a required page fails, no more pages are started and the error is
+     * thrown once the running pages are done.
+     *
+     * @param ht The file to path table
+     * @throws IOException If a required page couldn't be written
+     * @throws BackendException If a required page couldn't be read from the backend
+     */
+    void generate(Hashtable ht) throws IOException, BackendException
+    {
+        int n = Math.min(maxThreads, pages.size());
+        if(n <= 1)
+        {
+            new Worker().run();
+        }
+        else
+        {
+            Thread workers[] = new Thread[n];
+            for(int i = 0; i < n; i++)
+            {
+                workers[i] = new Thread(new Worker(), "PageGenerator-" + (i + 1));
+                workers[i].start();
+            }
+
+            for(int i = 0; i < n; i++)
+            {
+                try
+                {
+                    workers[i].join();
+                }
+                catch(InterruptedException ie)
+                {
+                    i--;//keep waiting, the pages are still being written
+                }
+            }
+        }
+
+        if(failure instanceof IOException)
+            throw (IOException)failure;
+        if(failure instanceof BackendException)
+            throw (BackendException)failure;
+        if(failure instanceof RuntimeException)
+            throw (RuntimeException)failure;
+
+        for(int i = 0; i < pages.size(); i++)
+        {
+            Page p = (Page)pages.elementAt(i);
+            if(p.file != null)
+                ht.put(p.file, p.path);
+        }
+    }
+
+    private synchronized Page nextPage()
+    {
+        if(failure != null || nextPage >= pages.size())
+            return null;
+        return (Page)pages.elementAt(nextPage++);
+    }
+
+    private synchronized void pageFinished(Page p, Exception ex)
+    {
+        pagesDone++;
+        if(ex == null)
+        {
+            if(progress != null && p.file != null)
+                progress.logMessage("Generated " + p.file.getName() +
+                    " (" + pagesDone + "/" + pages.size() + ")");
+        }
+        else if(p.isRequired())
+        {
+            if(failure == null)
+                failure = ex;
+        }
+        else
+        {
+            logger.log(Level.WARNING, ex.getMessage(), ex);
+            ex.printStackTrace();
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        public void run()
+        {
+            Page p;
+            while((p = nextPage()) != null)
+            {
+                Exception ex = null;
+                boolean record = dependencies != null && p.key != null;
+                if(record)
+                    dependencies.beginPage(p.key);
+                try
+                {
+                    p.generate();
+                }
+                catch(Exception e)
+                {
+                    p.file = null;
+                    ex = e;
+                }
+                finally
+                {
+                    if(record)
+                        dependencies.endPage(ex == null);
+                }
+                pageFinished(p, ex);
+            }
+        }
+    }
+
+    /**
+     * A page to generate. Implementations call write() to
+     * create the file the page is generated to.
+     */
+    static abstract class Page
+    {
+        private File file;
+        private String path;
+        private String key;
+
+        Page()
+        {
+        }
+
+        /**
+         * @param key The key of the page in the dependency graph
+         */
+        Page(String key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * Generates the page
+         * @throws Exception If the page couldn't be generated
+         */
+        abstract void generate() throws Exception;
+
+        /**
+         * Indicates if a failure of this page should fail the whole
+         * generation. Otherwise the failure is only logged.
+         * @return true by default
+         */
+        boolean isRequired()
+        {
+            return true;
+        }
+
+        /**
+         * Opens the file of the page
+         *
+         * @param f The file
+         * @param pubPath The path the file is published to
+         * @return An OutputStream to the file
+         * @throws IOException If the file couldn't be opened
+         */
+        OutputStream write(File f, String pubPath) throws IOException
+        {
+            file = f;
+            path = pubPath;
+            return new FileOutputStream(f);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.logging.Logger;
+
+import net.sf.thingamablog.transport.RemotePublishTransport;
+
+
+/**
+ * Uploads files over several sessions of a remote transport at once.
+ *
+ * The files are grouped by the directory they are published to, and each
+ * session takes a whole directory at a time, so it changes directory once
+ * per group. The biggest groups are handed out first. The sessions share
+ * the cache of remote directories that are known to exist, so a directory
+ * is only made once.
+ *
+ * The progress of all sessions goes to one PublishProgress, one call at a
+ * time. If a session fails, the others stop as if the publish was aborted.
+ */
+class ParallelPublisher
+{
+    private static Logger logger = Logger.getLogger("net.sf.thingamablog.blog");
+
+    private RemotePublishTransport transport;
+    private PublishManifest manifest;
+    private PublishJournal journal;
+    private SharedProgress progress;
+
+    //pubPath -> Batch
+    private Hashtable batchTable = new Hashtable();
+    private Vector batches = new Vector();
+
+    //the state shared by the workers
+    private int nextBatch;
+    private String failure;
+
+    /**
+     * @param transport The transport, which must be connected. It is the
+     * first session, and the others are created from it.
+     * @param progress The progress of the publish
+     * @param manifest The manifest to record uploads in, or null
+     * @param journal The journal to record uploads in, or null
+     */
+    ParallelPublisher(RemotePublishTransport transport, PublishProgress progress, 
+        PublishManifest manifest, PublishJournal journal)
+    {
+        this.journal = journal;
+        this.transport = transport;
+        this.progress = new SharedProgress(progress);
+        this.manifest = manifest;
+    }
+
+    /**
+     * Queues a file for upload
+     * @param f The file
+     * @param pubPath The path to publish the file to
+     */
+    void add(File f, String pubPath)
+    {
+        Batch b = (Batch)batchTable.get(pubPath);
+        if(b == null)
+        {
+            b = new Batch(pubPath);
+            batchTable.put(pubPath, b);
+            batches.add(b);
+        }
+        b.files.add(f);
+        b.bytes += f.length();
+    }
+
+    /**
+     * Uploads the queued files, and waits until they are uploaded
+     *
+     * @return true if all the files were uploaded
+     */
+    boolean publish()
+    {
+        Collections.sort(batches, new Comparator()
+        {
+            public int compare(Object o1, Object o2)
+            {
+                long b1 = ((Batch)o1).bytes, b2 = ((Batch)o2).bytes;
+                return b1 > b2 ? -1 : (b1 < b2 ? 1 : 0);
+            }
+        });
+
+        int n = Math.min(transport.getUploadSessions(), batches.size());
+        Thread workers[] = new Thread[n];
+        for(int i = 0; i < n; i++)
+        {
+            RemotePublishTransport t = i == 0 ? transport : transport.createSession();
+            workers[i] = new Thread(new Worker(t, i > 0), "Uploader-" + (i + 1));
+            workers[i].start();
+        }
+
+        for(int i = 0; i < n; i++)
+        {
+            try
+            {
+                workers[i].join();
+            }
+            catch(InterruptedException ie)
+            {
+                i--;//keep waiting, the files are still being uploaded
+            }
+        }
+
+        synchronized(this)
+        {
+            return failure == null && nextBatch >= batches.size() && !progress.isAborted();
+        }
+    }
+
+    /**
+     * Gets the reason the upload failed
+     * @return the reason, or null
+     */
+    synchronized String getFailureReason()
+    {
+        return failure;
+    }
+
+    private synchronized Batch nextBatch()
+    {
+        if(failure != null || nextBatch >= batches.size())
+            return null;
+        return (Batch)batches.elementAt(nextBatch++);
+    }
+
+    private synchronized void failed(String reason)
+    {
+        if(failure == null)
+            failure = reason;
+    }
+
+    private synchronized boolean isFailed()
+    {
+        return failure != null;
+    }
+
+    private class Worker implements Runnable
+    {
+        private RemotePublishTransport session;
+        private boolean ownSession;
+
+        Worker(RemotePublishTransport session, boolean ownSession)
+        {
+            this.session = session;
+            this.ownSession = ownSession;
+        }
+
+        public void run()
+        {
+            if(ownSession && !session.connect())
+            {
+                //the server may limit the connections, the other sessions carry on
+                logger.warning("Upload session not connected: " + session.getFailureReason());
+                progress.logMessage("Upload session not connected: " + session.getFailureReason());
+                return;
+            }
+
+            try
+            {
+                Batch b;
+                while((b = nextBatch()) != null)
+                {
+                    for(int i = 0; i < b.files.size(); i++)
+                    {
+                        if(progress.isAborted())
+                            return;
+
+                        File f = (File)b.files.elementAt(i);
+                        progress.filePublishStarted(f, b.pubPath);
+                        if(!session.publishFile(b.pubPath, f, progress))
+                        {
+                            failed(session.getFailureReason());
+                            return;
+                        }
+                        if(manifest != null)
+                            manifest.record(Weblog.remotePath(b.pubPath, f), f);
+                        if(journal != null)
+                            journal.uploaded(f);
+                        progress.filePublishCompleted(f, b.pubPath);
+                    }
+                }
+            }
+            catch(RuntimeException ex)
+            {
+                failed(ex.toString());
+                throw ex;
+            }
+            finally
+            {
+                if(ownSession)
+                    session.disconnect();
+            }
+        }
+    }
+
+    /**
+     * The files published to one directory
+     */
+    private static class Batch
+    {
+        String pubPath;
+        Vector files = new Vector();
+        long bytes;
+
+        Batch(String pubPath)
+        {
+            this.pubPath = pubPath;
+        }
+    }
+
+    /**
+     * Passes the progress of the sessions to the real progress one call at
+     * a time, and reports a failed publish as aborted to stop the sessions
+     */
+    private class SharedProgress implements PublishProgress
+    {
+        private PublishProgress p;
+
+        SharedProgress(PublishProgress p)
+        {
+            this.p = p;
+        }
+
+        public synchronized void publishStarted(long totalBytesToPublish)
+        {
+            p.publishStarted(totalBytesToPublish);
+        }
+
+        public synchronized void filePublishStarted(File f, String pubPath)
+        {
+            p.filePublishStarted(f, pubPath);
+        }
+
+        public synchronized void filePublishCompleted(File f, String pubPath)
+        {
+            p.filePublishCompleted(f, pubPath);
+        }
+
+        public synchronized void publishFailed(String reason)
+        {
+            p.publishFailed(reason);
+        }
+
+        public synchronized void publishCompleted()
+        {
+            p.publishCompleted();
+        }
+
+        public synchronized void bytesTransferred(long bytes)
+        {
+            p.bytesTransferred(bytes);
+        }
+
+        public boolean isAborted()
+        {
+            return isFailed() || p.isAborted();
+        }
+
+        public synchronized void logMessage(String msg)
+        {
+            p.logMessage(msg);
+        }
+
+        public synchronized void updateBlocksTransferred(int blocks, int total, String name)
+        {
+            p.updateBlocksTransferred(blocks, total, name);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.thingamablog.util.io.FileUtil;
+
+
+/**
+ * A small HTTP server on the loopback interface that previews a weblog.
+ *
+ * Each request renders just the page at the requested path with
+ * TBWeblog.generatePage(), from the current entries and templates, so a
+ * changed template shows up on the next reload without generating the
+ * rest of the weblog. Paths that aren't pages are served from the web
+ * files directory of the weblog.
+ *
+ * Only GET and HEAD requests are served, and only to the local machine.
+ * Requests are served by a few worker threads, and a request whose Host
+ * header doesn't name the server is refused, so a page on another site
+ * can't read the weblog by pointing its own host name at 127.0.0.1.
+ */
+public class PreviewServer
+{
+	private static final int TIMEOUT = 10000;
+	//browsers ask for the stylesheets and images of a page at once
+	private static final int WORKERS = 4;
+	//connections waiting for a worker, the rest are closed
+	private static final int MAX_QUEUED = 50;
+	private static final String CRLF = "\r\n";
+	
+	private static Logger logger = Logger.getLogger("net.sf.thingamablog.blog");
+	
+	private ServerSocket server;
+	private Thread acceptor;
+	private volatile TBWeblog weblog;
+	//accepted connections waiting for a worker
+	private Vector queue = new Vector();
+	
+	/**
+	 * Starts the server on a free port of the loopback interface
+	 * 
+	 * @throws IOException If the server can't be started
+	 */
+	public synchronized void start() throws IOException
+	{
+		if(server != null)
+			return;
+		
+		server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		final ServerSocket ss = server;
+		acceptor = new Thread("Preview server")
+		{
+			public void run()
+			{
+				accept(ss);
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		for(int i = 0; i < WORKERS; i++)
+		{
+			Thread t = new Thread("Preview request " + (i + 1))
+			{
+				public void run()
+				{
+					Socket s;
+					while((s = take(ss)) != null)
+						handle(s);
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		logger.info("Preview server started at " + getBaseUrl());
+	}
+	
+	/**
+	 * Stops the server
+	 */
+	public synchronized void stop()
+	{
+		if(server == null)
+			return;
+		try
+		{
+			server.close();
+		}
+		catch(IOException ex){}
+		server = null;
+		acceptor = null;
+		synchronized(queue)
+		{
+			//wake up the workers so they stop
+			queue.notifyAll();
+		}
+	}
+	
+	/**
+	 * Indicates if the server is running
+	 * @return true if it's running
+	 */
+	public synchronized boolean isRunning()
+	{
+		return server != null;
+	}
+	
+	/**
+	 * Gets the URL the weblog is served at
+	 * @return the URL, ending with a slash
+	 */
+	public synchronized String getBaseUrl()
+	{
+		if(server == null)
+			throw new IllegalStateException("The preview server isn't running");
+		return "http://127.0.0.1:" + server.getLocalPort() + "/";
+	}
+	
+	/**
+	 * Sets the weblog that is served. Its URLs should be
+	 * set to the base URL of the server.
+	 * 
+	 * @param blog The weblog, or null to serve nothing
+	 */
+	public void setWeblog(TBWeblog blog)
+	{
+		weblog = blog;
+	}
+	
+	/**
+	 * Gets the weblog that is served
+	 * @return the weblog, or null
+	 */
+	public TBWeblog getWeblog()
+	{
+		return weblog;
+	}
+	
+	private void accept(ServerSocket ss)
+	{
+		while(!ss.isClosed())
+		{
+			final Socket s;
+			try
+			{
+				s = ss.accept();
+			}
+			catch(IOException ex)
+			{
+				if(!ss.isClosed())
+					logger.log(Level.WARNING, ex.getMessage(), ex);
+				break;
+			}
+			
+			synchronized(queue)
+			{
+				if(queue.size() < MAX_QUEUED)
+				{
+					queue.add(s);
+					queue.notify();
+					continue;
+				}
+			}
+			close(s);
+		}
+	}
+	
+	/**
+	 * Waits for an accepted connection
+	 * 
+	 * @return the connection, or null once the server is stopped
+	 */
+	private Socket take(ServerSocket ss)
+	{
+		synchronized(queue)
+		{
+			while(queue.isEmpty())
+			{
+				if(ss.isClosed())
+					return null;
+				try
+				{
+					queue.wait();
+				}
+				catch(InterruptedException ex)
+				{
+					return null;
+				}
+			}
+			return (Socket)queue.remove(0);
+		}
+	}
+	
+	private void handle(Socket s)
+	{
+		try
+		{
+			if(!s.getInetAddress().isLoopbackAddress())
+				return;
+			s.setSoTimeout(TIMEOUT);
+			InputStream in = s.getInputStream();
+			OutputStream out = s.getOutputStream();
+			
+			String request = readLine(in);
+			String host = null;
+			while(true)
+			{
+				String h = readLine(in);
+				if(h == null || h.length() == 0)
+					break;
+				if(h.regionMatches(true, 0, "Host:", 0, 5))
+					host = h.substring(5).trim();
+			}
+			if(!isLocalHost(host, s.getLocalPort()))
+			{
+				error(out, "403 Forbidden");
+				return;
+			}
+			
+			String parts[] = request == null ? new String[0] : request.split(" ");
+			if(parts.length < 2)
+			{
+				error(out, "400 Bad Request");
+				return;
+			}
+			boolean head = parts[0].equals("HEAD");
+			if(!head && !parts[0].equals("GET"))
+			{
+				error(out, "405 Method Not Allowed");
+				return;
+			}
+			
+			String path = path(parts[1]);
+			if(path == null)
+			{
+				error(out, "400 Bad Request");
+				return;
+			}
+			serve(path, head, out);
+		}
+		catch(SocketException ex)
+		{
+			//the browser went away
+		}
+		catch(Exception ex)
+		{
+			logger.log(Level.WARNING, ex.getMessage(), ex);
+		}
+		finally
+		{
+			close(s);
+		}
+	}
+	
+	/**
+	 * Indicates if the Host header of a request names this server
+	 */
+	private boolean isLocalHost(String host, int port)
+	{
+		if(host == null)
+			return false;
+		host = host.toLowerCase();
+		return host.equals("127.0.0.1:" + port) || host.equals("localhost:" + port);
+	}
+	
+	private void close(Socket s)
+	{
+		try
+		{
+			s.close();
+		}
+		catch(IOException ex){}
+	}
+	
+	private void serve(String path, boolean head, OutputStream out) throws IOException
+	{
+		TBWeblog blog = weblog;
+		if(blog == null)
+		{
+			error(out, "404 Not Found");
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		ByteArrayOutputStream page = new ByteArrayOutputStream();
+		boolean found;
+		try
+		{
+			found = blog.generatePage(path, page);
+		}
+		catch(Exception ex)
+		{
+			logger.log(Level.WARNING, "Unable to render " + path, ex);
+			error(out, "500 Internal Server Error");
+			return;
+		}
+		
+		if(found)
+		{
+			logger.fine("Rendered /" + path + " in " + 
+				(System.currentTimeMillis() - start) + " ms");
+			String charset = blog.getPageGenerator().getCharset();
+			respond(out, "200 OK", pageType(path) + "; charset=" + charset, 
+				page.toByteArray(), head);
+			return;
+		}
+		
+		File f = new File(blog.getWebFilesDirectory(), path);
+		if(path.length() == 0 || !f.isFile())
+		{
+			error(out, "404 Not Found");
+			return;
+		}
+		
+		InputStream in = new FileInputStream(f);
+		try
+		{
+			page.reset();
+			FileUtil.copy(in, page, -1);
+		}
+		finally
+		{
+			in.close();
+		}
+		respond(out, "200 OK", fileType(path), page.toByteArray(), head);
+	}
+	
+	/**
+	 * Gets the path of a request relative to the root, or null if it isn't valid
+	 */
+	private String path(String uri)
+	{
+		int q = uri.indexOf('?');
+		if(q > -1)
+			uri = uri.substring(0, q);
+		if(!uri.startsWith("/"))
+			return null;
+		
+		String path;
+		try
+		{
+			//a + is a plus sign in a path
+			path = URLDecoder.decode(uri.replaceAll("\\+", "%2B"), "UTF-8");
+		}
+		catch(Exception ex)
+		{
+			return null;
+		}
+		
+		path = path.substring(1);
+		if(path.indexOf('\\') > -1 || path.indexOf('\0') > -1 || 
+			path.equals("..") || path.startsWith("../") || 
+			path.indexOf("/../") > -1 || path.endsWith("/.."))
+			return null;
+		return path;
+	}
+	
+	private String pageType(String path)
+	{
+		String p = path.toLowerCase();
+		if(p.endsWith(".xml") || p.endsWith(".rss") || p.endsWith(".rdf") || p.endsWith(".atom"))
+			return "text/xml";
+		return "text/html";
+	}
+	
+	private String fileType(String path)
+	{
+		String p = path.toLowerCase();
+		if(p.endsWith(".css"))
+			return "text/css";
+		if(p.endsWith(".js"))
+			return "text/javascript";
+		String type = URLConnection.guessContentTypeFromName(p);
+		return type == null ? "application/octet-stream" : type;
+	}
+	
+	private void error(OutputStream out, String status) throws IOException
+	{
+		respond(out, status, "text/plain", status.getBytes("US-ASCII"), false);
+	}
+	
+	private void respond(OutputStream out, String status, String type, byte body[], boolean head)
+	throws IOException
+	{
+		String h = "HTTP/1.0 " + status + CRLF + 
+			"Content-Type: " + type + CRLF + 
+			"Content-Length: " + body.length + CRLF + 
+			"Cache-Control: no-cache" + CRLF + 
+			"Connection: close" + CRLF + CRLF;
+		out.write(h.getBytes("US-ASCII"));
+		if(!head)
+			out.write(body);
+		out.flush();
+	}
+	
+	private String readLine(InputStream in) throws IOException
+	{
+		StringBuffer sb = new StringBuffer();
+		int c;
+		while((c = in.read()) != -1 && c != '\n')
+		{
+			if(c != '\r')
+				sb.append((char)c);
+			if(sb.length() > 8192)
+				throw new IOException("Request line too long");
+		}
+		if(c == -1 && sb.length() == 0)
+			return null;
+		return sb.toString();
+	}
+}
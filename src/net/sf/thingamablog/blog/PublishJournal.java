@@ -0,0 +1,312 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Properties;
+
+
+/**
+ * A record of the generated files of a publish that haven't been
+ * uploaded yet, so a publish that fails or is aborted can be resumed.
+ *
+ * When a publish starts, the journal is written with every generated file
+ * and the path it's published to. Each file is taken out of the journal
+ * once it's uploaded, and the journal is saved every few seconds while the
+ * files are uploaded, and again when the publish ends. If the publish
+ * fails, the generated files that are left in the journal are kept, and
+ * the next publish uploads them along with the pages it generates.
+ *
+ * The journal is tied to a publish target and is ignored if the target
+ * changes.
+ */
+public class PublishJournal
+{
+	private static final String TARGET_KEY = ".target";
+	//the last line of a journal that was written completely
+	private static final String END_LINE = "#end";
+	private static final long SAVE_INTERVAL = 5000;
+
+	private File file;
+	private String target;
+	//local file path -> publish path
+	private Properties pending = new Properties();
+	private boolean active;
+	private long lastSave;
+
+	/**
+	 * @param file The file the journal is saved to
+	 */
+	public PublishJournal(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Loads the journal of the last publish. A journal that was written for
+	 * another publish target is thrown away. If the publish stopped while the
+	 * journal was being saved, the temporary file is loaded, as long as it
+	 * was written completely.
+	 *
+	 * @param target A description of the publish target
+	 */
+	public synchronized void load(String target)
+	{
+		pending.clear();
+		active = false;
+		this.target = target;
+		File f = file;
+		if(!f.isFile())
+			f = tempFile();
+		if(!f.isFile() || (f != file && !isComplete(f)))
+			return;
+
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream(f);
+			pending.load(in);
+		}
+		catch(IOException ex)
+		{
+			pending.clear();
+		}
+		finally
+		{
+			if(in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch(IOException ex){}
+			}
+		}
+
+		if(!target.equals(pending.getProperty(TARGET_KEY)))
+			pending.clear();
+		pending.remove(TARGET_KEY);
+	}
+
+	/**
+	 * Adds the files the last publish didn't upload to the files of this
+	 * publish. Files that were generated again, or that no longer exist,
+	 * are left out.
+	 *
+	 * @param ht The file to path table of this publish
+	 * @return the number of files that were added
+	 */
+	public synchronized int resume(Hashtable ht)
+	{
+		int n = 0;
+		for(Enumeration e = pending.keys(); e.hasMoreElements();)
+		{
+			String path = e.nextElement().toString();
+			File f = new File(path);
+			if(!ht.containsKey(f) && f.isFile())
+			{
+				ht.put(f, pending.getProperty(path));
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Starts the journal of a publish, and saves it
+	 *
+	 * @param ht The file to path table of the generated files
+	 * @param skipped The files of the table that don't need to be uploaded
+	 * @return true if the journal was saved, and the publish can be resumed
+	 */
+	public synchronized boolean begin(Hashtable ht, Hashtable skipped)
+	{
+		pending.clear();
+		for(Enumeration e = ht.keys(); e.hasMoreElements();)
+		{
+			Object o = e.nextElement();
+			if(o instanceof File && !skipped.containsKey(o))
+				pending.setProperty(((File)o).getPath(), ht.get(o).toString());
+		}
+
+		try
+		{
+			write();
+			active = true;
+		}
+		catch(IOException ex)
+		{
+			active = false;
+		}
+		return active;
+	}
+
+	/**
+	 * Records that a file has been uploaded, or didn't need to be
+	 *
+	 * @param f The file
+	 */
+	public synchronized void uploaded(File f)
+	{
+		if(pending.remove(f.getPath()) == null || !active)
+			return;
+
+		if(System.currentTimeMillis() - lastSave > SAVE_INTERVAL)
+		{
+			try
+			{
+				write();
+			}
+			catch(IOException ex){}//saved again at the end
+		}
+	}
+
+	/**
+	 * Indicates if a file of the current publish hasn't been uploaded yet
+	 *
+	 * @param f The file
+	 * @return true if the file is in the journal
+	 */
+	public synchronized boolean isPending(File f)
+	{
+		return active && pending.containsKey(f.getPath());
+	}
+
+	/**
+	 * Indicates if the current publish can be resumed
+	 *
+	 * @return true if the journal was saved when the publish began
+	 */
+	public synchronized boolean isActive()
+	{
+		return active;
+	}
+
+	/**
+	 * Saves the journal at the end of a publish that failed
+	 *
+	 * @throws IOException If the journal can't be written
+	 */
+	public synchronized void save() throws IOException
+	{
+		if(!active)
+			return;
+		try
+		{
+			write();
+		}
+		catch(IOException ex)
+		{
+			active = false;//the files can't be kept for the next publish
+			throw ex;
+		}
+	}
+
+	/**
+	 * Ends the journal of a publish that succeeded, and deletes its file
+	 */
+	public synchronized void clear()
+	{
+		pending.clear();
+		active = false;
+		file.delete();
+		tempFile().delete();
+	}
+
+	/**
+	 * Writes the journal to a temporary file and renames it, so
+	 * there's always a complete journal on disk
+	 */
+	private void write() throws IOException
+	{
+		Properties p = new Properties();
+		p.putAll(pending);
+		p.setProperty(TARGET_KEY, target);
+
+		File tmp = tempFile();
+		OutputStream out = new FileOutputStream(tmp);
+		try
+		{
+			p.store(out, "Files left to publish: local path = publish path");
+			out.write((END_LINE + "\n").getBytes("ISO-8859-1"));
+		}
+		finally
+		{
+			out.close();
+		}
+
+		file.delete();
+		if(!tmp.renameTo(file))
+			throw new IOException("Unable to rename " + tmp + " to " + file);
+		lastSave = System.currentTimeMillis();
+	}
+
+	private File tempFile()
+	{
+		return new File(file.getPath() + ".tmp");
+	}
+
+	/**
+	 * Checks if a journal file ends with the line written after the entries
+	 */
+	private static boolean isComplete(File f)
+	{
+		byte end[] = (END_LINE + "\n").getBytes();
+		if(f.length() < end.length)
+			return false;
+
+		RandomAccessFile raf = null;
+		try
+		{
+			raf = new RandomAccessFile(f, "r");
+			byte b[] = new byte[end.length];
+			raf.seek(f.length() - end.length);
+			raf.readFully(b);
+			return Arrays.equals(b, end);
+		}
+		catch(IOException ex)
+		{
+			return false;
+		}
+		finally
+		{
+			if(raf != null)
+			{
+				try
+				{
+					raf.close();
+				}
+				catch(IOException ex){}
+			}
+		}
+	}
+}
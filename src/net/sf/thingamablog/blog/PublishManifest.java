@@ -0,0 +1,270 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.blog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Hashtable;
+import java.util.Properties;
+
+
+/**
+ * A record of the files a weblog has published, by remote path, with the
+ * size and MD5 hash of the content of each file at its last successful
+ * upload.
+ *
+ * Before a file is published, the weblog asks the manifest if the file is
+ * unchanged since it was last uploaded to the same remote path, and skips
+ * it if so. Pages that are regenerated with the same bytes, and web files
+ * that were touched but not changed, aren't uploaded again.
+ *
+ * The manifest is tied to a publish target, such as the address of an FTP
+ * server. It starts over when the target changes.
+ */
+public class PublishManifest
+{
+	private static final String TARGET_KEY = ".target";
+
+	private File file;
+	private String target;
+	//remote path -> "size:hash"
+	private Properties entries = new Properties();
+	//remote path -> {"size:hash", modified time} of files checked but not yet recorded
+	private Hashtable checked = new Hashtable();
+	private boolean loaded;
+	private boolean modified;
+
+	/**
+	 * @param file The file the manifest is saved to
+	 */
+	public PublishManifest(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Loads the manifest, if it isn't loaded, and starts it over if it
+	 * was written for another publish target
+	 *
+	 * @param target A description of the publish target
+	 */
+	public synchronized void load(String target)
+	{
+		if(!loaded)
+		{
+			loaded = true;
+			if(file.isFile())
+			{
+				InputStream in = null;
+				try
+				{
+					in = new FileInputStream(file);
+					entries.load(in);
+				}
+				catch(IOException ex)
+				{
+					entries.clear();
+				}
+				finally
+				{
+					close(in);
+				}
+			}
+			this.target = entries.getProperty(TARGET_KEY);
+			entries.remove(TARGET_KEY);
+		}
+
+		if(!target.equals(this.target))
+		{
+			this.target = target;
+			entries.clear();
+			modified = true;
+		}
+		checked.clear();
+	}
+
+	/**
+	 * Indicates if a file has the same content as the last file that was
+	 * successfully uploaded to a remote path
+	 *
+	 * @param remotePath The remote path
+	 * @param f The file
+	 * @return true if the file doesn't have to be uploaded
+	 */
+	public synchronized boolean isUnchanged(String remotePath, File f)
+	{
+		String last = entries.getProperty(remotePath);
+		if(last == null || !last.startsWith(f.length() + ":"))
+			return false;
+
+		String sig = signature(remotePath, f);
+		return sig != null && sig.equals(last);
+	}
+
+	/**
+	 * Records the successful upload of a file
+	 *
+	 * @param remotePath The remote path the file was uploaded to
+	 * @param f The file
+	 */
+	public synchronized void record(String remotePath, File f)
+	{
+		String sig = signature(remotePath, f);
+		if(sig == null)
+			entries.remove(remotePath);
+		else
+			entries.setProperty(remotePath, sig);
+		checked.remove(remotePath);
+		modified = true;
+	}
+
+	/**
+	 * Saves the manifest if it was modified
+	 *
+	 * @throws IOException If the manifest can't be written
+	 */
+	public synchronized void save() throws IOException
+	{
+		if(!modified || target == null)
+			return;
+
+		Properties p = new Properties();
+		p.putAll(entries);
+		p.setProperty(TARGET_KEY, target);
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			p.store(out, "Published files: remote path = size:MD5");
+		}
+		finally
+		{
+			out.close();
+		}
+		modified = false;
+	}
+
+	/**
+	 * Forgets every recorded upload, so everything is published again
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+		checked.clear();
+		modified = true;
+	}
+
+	/**
+	 * Gets the number of recorded uploads
+	 * @return the number of remote paths
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Gets the size and hash of a file. The signature is computed once
+	 * for the check and the record of an upload.
+	 *
+	 * @return the signature, or null if the file can't be read
+	 */
+	private String signature(String remotePath, File f)
+	{
+		Object c[] = (Object[])checked.get(remotePath);
+		String sig = c == null ? null : (String)c[0];
+		if(sig != null && sig.startsWith(f.length() + ":") && 
+			((Long)c[1]).longValue() == f.lastModified())
+			return sig;
+
+		try
+		{
+			sig = f.length() + ":" + digest(f);
+		}
+		catch(IOException ex)
+		{
+			return null;
+		}
+		checked.put(remotePath, new Object[]{sig, new Long(f.lastModified())});
+		return sig;
+	}
+
+	/**
+	 * Computes the MD5 hash of the content of a file
+	 *
+	 * @param f The file
+	 * @return the hash in hex
+	 * @throws IOException If the file can't be read
+	 */
+	public static String digest(File f) throws IOException
+	{
+		MessageDigest md;
+		try
+		{
+			md = MessageDigest.getInstance("MD5");
+		}
+		catch(NoSuchAlgorithmException ex)
+		{
+			throw new IOException(ex.getMessage());
+		}
+
+		InputStream in = new FileInputStream(f);
+		try
+		{
+			byte buf[] = new byte[8192];
+			int n;
+			while((n = in.read(buf)) != -1)
+				md.update(buf, 0, n);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		byte hash[] = md.digest();
+		StringBuffer sb = new StringBuffer(hash.length * 2);
+		for(int i = 0; i < hash.length; i++)
+		{
+			sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(hash[i] & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	private static void close(InputStream in)
+	{
+		if(in != null)
+		{
+			try
+			{
+				in.close();
+			}
+			catch(IOException ex){}
+		}
+	}
+}
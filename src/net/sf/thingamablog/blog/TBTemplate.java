@@ -29,6 +29,7 @@ import java.io.PrintWriter;
 import java.util.Date;
 
 import net.atlanticbb.tantlinger.io.IOUtils;
+import net.sf.thingamablog.generator.CompiledTemplate;
 
 /**
  * 
@@ -39,6 +40,8 @@ import net.atlanticbb.tantlinger.io.IOUtils;
 public class TBTemplate extends Template
 {
 	private File tmplFile;
+	private CompiledTemplate compiled;
+	private long compiledDate;
 	
    	/**
    	 * Constructs a TBTemplate
@@ -83,6 +86,25 @@ public class TBTemplate extends Template
 		return text;
     }
 
+    /**
+     * Gets the compiled form of the template. The template is only
+     * loaded and compiled again if it has been modified since
+     * it was last compiled.
+     * 
+     * @return The compiled template
+     * @throws IOException If an error occurs while loading the template
+     */
+    public synchronized CompiledTemplate getCompiledTemplate() throws IOException
+    {
+        long modified = getLastModifiedDate().getTime();
+        if(compiled == null || modified != compiledDate)
+        {
+            compiled = CompiledTemplate.compile(load());
+            compiledDate = modified;
+        }
+        return compiled;
+    }
+
     /* (non-Javadoc)
      * @see net.sf.thingamablog.blog.Template#save(java.lang.String)
      */
@@ -91,6 +113,11 @@ public class TBTemplate extends Template
 		PrintWriter pw = new PrintWriter(new FileWriter(tmplFile));
 		pw.print(text);
 		pw.close();
+		synchronized(this)
+		{
+		    //the modified date may not change if saved twice in a second
+		    compiled = null;
+		}
     }    
 
 }
@@ -36,6 +36,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.atlanticbb.tantlinger.io.IOUtils;
+import net.sf.thingamablog.generator.CompiledTemplate;
+import net.sf.thingamablog.generator.FragmentCache;
+import net.sf.thingamablog.generator.HyperTextTag;
+import net.sf.thingamablog.generator.IncludeCache;
 import net.sf.thingamablog.generator.PageGenerator;
 import net.sf.thingamablog.transport.FCPTransport;
 import thingamablog.l10n.i18n;
@@ -63,14 +67,22 @@ public class TBWeblog extends Weblog
 	
 	/** Constant indicating a "by n days" archive policy */
 	public static final int ARCHIVE_BY_DAY_INTERVAL = 2;
+	
+	//the keys of the pages in the dependency graph
+	private static final String ARCHIVE_PAGE = "arc:";
+	private static final String CATEGORY_PAGE = "cat:";
+	private static final String CATEGORY_FEED = "feed:";
+	private static final String ENTRY_PAGE = "entry:";
 		
 	private int archivePolicy = ARCHIVE_MONTHLY;
 	private Date archiveBaseDate = new Date(0);
 	private int archiveByDayInterval = 5;
-	private ArchiveRange archives[] = new ArchiveRange[0];
+	private ArchiveIndex archiveIndex = new ArchiveIndex();
 	
 	private Locale locale = Locale.getDefault();
 	private PageGenerator generator = new PageGenerator();
+	private EntryIndex entryIndex;
+	private Object entryIndexLock = new Object();
 	
 	private String frontPageFileName = "blog.html";
 	private String archiveIndexFileName = "archives.html";
@@ -116,6 +128,9 @@ public class TBWeblog extends Weblog
 	private File homeDir;
 	private File tmplDir;
 	private File outputDir;
+	private PublishManifest publishManifest;
+	private PublishJournal publishJournal;
+	private DependencyGraph dependencies;
 	
 	
 	/**
@@ -147,6 +162,7 @@ public class TBWeblog extends Weblog
             if(!(getPublishTransport() instanceof FCPTransport)){
                 super.publish(progress);
             } else {
+                useKeyCache();
                 super.doFlogPublish(progress);
                 // Now we update the urls with the new edition number
                 String url = baseUrl;
@@ -165,6 +181,7 @@ public class TBWeblog extends Weblog
             if(!(getPublishTransport() instanceof FCPTransport)){
                 super.publishAll(progress);
             } else {
+                useKeyCache();
                 super.doFlogPublish(progress);
                 // Now we update the urls with the new edition number
                 String url = baseUrl;
@@ -176,6 +193,15 @@ public class TBWeblog extends Weblog
             }
 	}
 	
+	/**
+	 * Lets the FCP transport reuse the CHKs of content it inserted
+	 * for earlier editions
+	 */
+	private void useKeyCache()
+	{
+		((FCPTransport)getPublishTransport()).setKeyCacheFile(new File(homeDir, "chk.cache"));
+	}
+	
 	private void init(File dir)
 	{		
 		//make our dirs if needed
@@ -195,6 +221,10 @@ public class TBWeblog extends Weblog
 		if(!webFilesDirectory.exists() || webFilesDirectory.isFile())
 			webFilesDirectory.mkdir();
 		
+		publishManifest = new PublishManifest(new File(homeDir, "publish.manifest"));
+		publishJournal = new PublishJournal(new File(homeDir, "publish.journal"));
+		dependencies = new DependencyGraph(new File(homeDir, "pages.deps"));
+		
 		//set the default arc list format
 		generator.setArchiveRangeFormat("MMMM yyyy", false);
 		
@@ -231,6 +261,10 @@ public class TBWeblog extends Weblog
 		if(webFilesDirectory.getParent().equals(homeDir.getAbsolutePath()))
 			IOUtils.deleteRecursively(webFilesDirectory);
 		new File(homeDir, "pack.properties").delete();
+		new File(homeDir, "publish.manifest").delete();
+		new File(homeDir, "publish.journal").delete();
+		new File(homeDir, "pages.deps").delete();
+		new File(homeDir, "chk.cache").delete();
 		//won't delete if not empty
 		homeDir.delete();
 	}
@@ -260,11 +294,8 @@ public class TBWeblog extends Weblog
     public void setBackend(WeblogBackend backend)
     {
     	super.setBackend(backend);
-    	try
-    	{
-    		updateArchives();
-    	}
-    	catch(BackendException be){}	
+    	//rebuilt when they're next needed, once the archive settings are loaded
+    	archiveIndex.invalidate();
     }
     
     public String getKey()
@@ -290,20 +321,9 @@ public class TBWeblog extends Weblog
      */
     public ArchiveRange[] getArchives()
     {        
-        if(archives == null)
-        {
-        	try
-        	{
-        		updateArchives();	
-        	}
-        	catch(Exception ex)
-        	{
-        	    logger.log(Level.WARNING, ex.getMessage(), ex);
-        	    ex.printStackTrace();
-        	}
-        }
-        
-        return archives;
+        DependencyGraph.record(DependencyGraph.ARCHIVES);
+        ensureArchives();
+        return archiveIndex.getArchives();
     }
     
     /**
@@ -314,6 +334,40 @@ public class TBWeblog extends Weblog
     {
     	return generator;
     }
+    
+    /**
+     * Gets the graph of what the archive, category and entry pages read
+     * when they were last generated
+     * @return The dependency graph
+     */
+    public DependencyGraph getDependencyGraph()
+    {
+    	return dependencies;
+    }
+    
+    /**
+     * Gets the index of the entries the pages are generated from. The index
+     * is built on the first call and rebuilt after the entries change.
+     * @return The entry index
+     * @throws BackendException If an error occurs while building the index
+     */
+    public EntryIndex getEntryIndex() throws BackendException
+    {
+    	synchronized(entryIndexLock)
+    	{
+    		if(entryIndex == null)
+    			entryIndex = new EntryIndex(this);
+    		return entryIndex;
+    	}
+    }
+    
+    private void invalidateEntryIndex()
+    {
+    	synchronized(entryIndexLock)
+    	{
+    		entryIndex = null;
+    	}
+    }
 
     /* (non-Javadoc)
      * @see net.sf.thingamablog.blog.Weblog#getCurrentEntries()
@@ -321,7 +375,7 @@ public class TBWeblog extends Weblog
     public BlogEntry[] getCurrentEntries() throws BackendException
     {
 		int limit = generator.getFrontPageLimit();
-		EntryEnumeration eEnum = backend.getEntries(getKey(), false);
+		EntryEnumeration eEnum = backend.getEntryHeaders(getKey(), false);
 		Vector v = new Vector(10, 2);
 		int count = 0;
 		while(eEnum.hasMoreEntries() && count < limit)
@@ -338,7 +392,7 @@ public class TBWeblog extends Weblog
     
 	public BlogEntry[] getExpiredEntries() throws BackendException
 	{
-		EntryEnumeration eEnum = backend.getEntriesBefore(getKey(), archiveBaseDate, false);
+		EntryEnumeration eEnum = backend.getEntryHeadersBefore(getKey(), archiveBaseDate, false);
 		Vector v = new Vector(10, 2);		
 		while(eEnum.hasMoreEntries())
 		{
@@ -356,46 +410,25 @@ public class TBWeblog extends Weblog
     {
 		public void entryAdded(WeblogEvent e)
 		{
-			System.out.println("Entry added");					
+			System.out.println("Entry added");
+			invalidateEntryIndex();					
 			BlogEntry be = e.getEntry();
 			Date d = be.getDate();
+			if(!be.isDraft())
+				moveInArchives(null, be);
 			//is it a valid date?
 			Date now = new Date();
 			if(!be.isDraft() && d.after(archiveBaseDate) && 
 			(d.before(now) || d.compareTo(now) == 0))
 			{				
-				//updateArchives();
-				ArchiveRange ar = getArchiveForDate(d);
-				if(ar != null)//has archive for this range
-				{
-					//System.out.println("State changed");
-					addOutdatedArchive(ar);					
-					String cats[] = be.getCategories();
-					for(int i = 0; i < cats.length; i++)
-						addOutdatedCategory(cats[i]);
-					
-					addOutdatedEntryID(new Long(be.getID()));
-					outdatePrevNextEntries(be);
-				}
-				else
-				{
-					try
-					{
-						updateArchives();
-					}
-					catch(Exception ex)
-					{
-					    logger.log(Level.WARNING, ex.getMessage(), ex);
-					    ex.printStackTrace();	
-					}
-					shouldPublishAll = true;
-				}									
+				outdateEntryPages(null, be);
 			}
 		}
 		
 		public void entryUpdated(WeblogEvent e)
 		{
 			System.out.println("Entry updated");
+			invalidateEntryIndex();
 			try
 			{				
 			    BlogEntry oldEntry = e.getEntry();
@@ -403,26 +436,11 @@ public class TBWeblog extends Weblog
 				if(oldEntry.isDraft() && newEntry.isDraft())
 				    return;
 				
-				addOutdatedEntryID(new Long(newEntry.getID()));
-				
-				String cats[] = oldEntry.getCategories();
-				for(int i = 0; i < cats.length; i++)
-				    addOutdatedCategory(cats[i]);
-				cats = newEntry.getCategories();
-				for(int i = 0; i < cats.length; i++)
-				    addOutdatedCategory(cats[i]);				
-								    
-			    updateArchives();
-			    ArchiveRange oar = getArchiveForDate(oldEntry.getDate());
-			    ArchiveRange nar = getArchiveForDate(newEntry.getDate());
-			    if(oar == null || nar == null)
-			        shouldPublishAll = true;
-			    else
-			    {
-			        addOutdatedArchive(oar);
-			        addOutdatedArchive(nar);
-			        outdatePrevNextEntries(newEntry);
-			    }
+				//the archives only change if the entry moved in or out of them
+				if(oldEntry.isDraft() != newEntry.isDraft() ||
+				!oldEntry.getDate().equals(newEntry.getDate()))
+					moveInArchives(oldEntry, newEntry);
+				outdateEntryPages(oldEntry, newEntry);
 			}
 			catch(Exception ex)
 			{
@@ -434,33 +452,65 @@ public class TBWeblog extends Weblog
 		public void entryRemoved(WeblogEvent e)
 		{
 			System.out.println("Entry removed");		    
+			invalidateEntryIndex();
 			BlogEntry entry = e.getEntry();
+			if(!entry.isDraft() && !entry.getDate().before(getArchiveBaseDate()))
+			{
+				moveInArchives(entry, null);
+				outdateEntryPages(entry, null);
+			}
+			
 			outdatedEntryPages.remove(new Long(entry.getID()));
-			if(entry.isDraft() || entry.getDate().before(getArchiveBaseDate()))
-			    return;			
+			dependencies.removePage(entryPageKey(entry.getID()));
+		}
+		
+		/**
+		 * Outdates the pages of an entry before and after it changed, and the
+		 * pages that read the entry, its categories or its dates
+		 * 
+		 * @param oldEntry The entry before the change, or null if it was added
+		 * @param newEntry The entry after the change, or null if it was removed
+		 */
+		private void outdateEntryPages(BlogEntry oldEntry, BlogEntry newEntry)
+		{
+			Vector deps = new Vector();
+			Vector dates = new Vector();
+			BlogEntry ents[] = {oldEntry, newEntry};
+			for(int i = 0; i < ents.length; i++)
+			{
+				BlogEntry be = ents[i];
+				if(be == null || be.isDraft())
+					continue;
+				
+				addOutdatedEntryID(new Long(be.getID()));
+				deps.add(DependencyGraph.entry(be.getID()));
+				ArchiveRange ar = getArchiveForDate(be.getDate());
+				if(ar != null)
+					addOutdatedArchive(ar);
+				dates.add(be.getDate());
+				
+				String cats[] = be.getCategories();
+				for(int j = 0; j < cats.length; j++)
+				{
+					addOutdatedCategory(cats[j]);
+					deps.add(DependencyGraph.categoryEntries(cats[j]));
+				}
+			}
 			
-			String cats[] = entry.getCategories();
-			for(int i = 0; i < cats.length; i++)
-			    addOutdatedCategory(cats[i]);
+			long times[] = new long[dates.size()];
+			for(int i = 0; i < times.length; i++)
+				times[i] = ((Date)dates.elementAt(i)).getTime();
+			outdatePages(dependencies.getAffectedPages(
+				(String[])deps.toArray(new String[deps.size()]), times));
 			
-			try
-			{				    
-			    updateArchives();
-			    ArchiveRange ar = getArchiveForDate(entry.getDate());
-			    if(ar == null)
-			        shouldPublishAll = true;
-			    else
-			    {
-			        addOutdatedArchive(ar);
-			        outdatePrevNextEntries(entry);
-			    }
-			    
-			}
-			catch(Exception ex)
+			//the graph doesn't know every page yet, so guess
+			//which entry pages link to the entry
+			if(!dependencies.isComplete())
 			{
-			    logger.log(Level.WARNING, ex.getMessage(), ex);
-			    ex.printStackTrace();	
-			}						
+				for(int i = 0; i < ents.length; i++)
+					if(ents[i] != null)
+						outdatePrevNextEntries(ents[i]);
+			}
 		}
 		
 		private void outdatePrevNextEntries(BlogEntry be)
@@ -491,31 +541,49 @@ public class TBWeblog extends Weblog
 	{
 		public void categoryAdded(CategoryEvent e)
 		{
-			catsChanged();
+			invalidateEntryIndex();
+			addOutdatedCategory(e.getCategory());
+			catsChanged(new String[]{DependencyGraph.CATEGORIES});
 		}
 		
 		public void categoryRenamed(CategoryEvent e)
 		{
-			catsChanged();
+			invalidateEntryIndex();
+			String oldCat = e.getOldCategory();
+			if(oldCat == null)//don't know which pages show it
+			{
+				shouldPublishAll = true;
+				return;
+			}
+			
+			categoryRemoved(oldCat);
+			addOutdatedCategory(e.getCategory());
+			catsChanged(new String[]{DependencyGraph.CATEGORIES, 
+				DependencyGraph.categoryEntries(oldCat), DependencyGraph.categoryName(oldCat)});
 		}
 		
 		public void categoryRemoved(CategoryEvent e)
 		{
-			catsChanged();
+			invalidateEntryIndex();
+			String cat = e.getCategory();
+			categoryRemoved(cat);
+			catsChanged(new String[]{DependencyGraph.CATEGORIES, 
+				DependencyGraph.categoryEntries(cat), DependencyGraph.categoryName(cat)});
 		}
 		
-		private void catsChanged()
+		private void categoryRemoved(String cat)
 		{
-			try
-			{
-				updateArchives();
-			}
-			catch(Exception ex)
-			{
-			    logger.log(Level.WARNING, ex.getMessage(), ex);
-			    ex.printStackTrace();	
-			}
-			shouldPublishAll = true;	
+			outdatedCategoryPages.remove(cat);
+			dependencies.removePage(categoryPageKey(cat));
+			dependencies.removePage(categoryFeedKey(cat));
+		}
+		
+		private void catsChanged(String deps[])
+		{
+			if(dependencies.isComplete())
+				outdatePages(dependencies.getAffectedPages(deps));
+			else
+				shouldPublishAll = true;	
 		}
 	}
 	
@@ -530,14 +598,172 @@ public class TBWeblog extends Weblog
 		public void authorUpdated(AuthorEvent e)
 		{
 			//System.out.println("Author updated " + e.getAuthor().getName());
-			shouldPublishAll = true;
+			Author old = e.getOldAuthor();
+			if(old == null)
+				shouldPublishAll = true;
+			else
+				authorChanged(old);
 		}
 		
 		public void authorRemoved(AuthorEvent e)
 		{
 			//System.out.println("Author removed " + e.getAuthor().getName());
+			authorChanged(e.getAuthor());
+		}
+		
+		private void authorChanged(Author auth)
+		{
+			if(dependencies.isComplete())
+			{
+				outdatePages(dependencies.getAffectedPages(
+					new String[]{DependencyGraph.author(auth.getName())}));
+			}
+			else
+				shouldPublishAll = true;
+		}
+	}
+	
+	/**
+	 * Moves an entry in the archives, and outdates the pages 
+	 * that list the archives if they changed
+	 * 
+	 * @param oldEntry The entry before it changed, or null if it was added
+	 * @param newEntry The entry after it changed, or null if it was removed
+	 */
+	private void moveInArchives(BlogEntry oldEntry, BlogEntry newEntry)
+	{
+		ArchiveRange old[];
+		synchronized(archiveIndex)
+		{
+			if(!archiveIndex.isBuiltFor(archivePolicy, archiveByDayInterval, archiveBaseDate))
+			{
+				//the entries are read with the change already 
+				//made, so undo it to get the old archives
+				ensureArchives();
+				if(!archiveIndex.isBuiltFor(archivePolicy, archiveByDayInterval, archiveBaseDate))
+					return;
+				if(newEntry != null && !newEntry.isDraft())
+					archiveIndex.remove(newEntry.getDate());
+				if(oldEntry != null && !oldEntry.isDraft())
+					archiveIndex.add(oldEntry.getDate());
+			}
+			
+			old = archiveIndex.getArchives();
+			boolean changed = false;
+			if(oldEntry != null && !oldEntry.isDraft())
+				changed |= archiveIndex.remove(oldEntry.getDate());
+			if(newEntry != null && !newEntry.isDraft())
+				changed |= archiveIndex.add(newEntry.getDate());
+			if(!changed)
+				return;
+		}
+		
+		ArchiveRange archives[] = archiveIndex.getArchives();
+		Hashtable gone = new Hashtable();
+		for(int i = 0; i < old.length; i++)
+			gone.put(archivePageKey(old[i]), old[i]);
+		boolean changed = false;
+		for(int i = 0; i < archives.length; i++)
+		{
+			if(gone.remove(archivePageKey(archives[i])) == null)
+			{
+				addOutdatedArchive(archives[i]);
+				changed = true;
+			}
+		}
+		
+		for(Enumeration e = gone.keys(); e.hasMoreElements();)
+		{
+			String page = e.nextElement().toString();
+			for(int i = outdatedArchivePages.size() - 1; i >= 0; i--)
+				if(archivePageKey((ArchiveRange)outdatedArchivePages.elementAt(i)).equals(page))
+					outdatedArchivePages.removeElementAt(i);
+			dependencies.removePage(page);
+			changed = true;
+		}
+		
+		if(!changed)
+			return;
+		if(dependencies.isComplete())
+			outdatePages(dependencies.getAffectedPages(new String[]{DependencyGraph.ARCHIVES}));
+		else
+			shouldPublishAll = true;
+	}
+	
+	/**
+	 * Outdates pages of the dependency graph
+	 * @param pages The keys of the pages
+	 */
+	private void outdatePages(String pages[])
+	{
+		for(int i = 0; i < pages.length; i++)
+		{
+			String p = pages[i];
+			if(p.startsWith(ENTRY_PAGE))
+			{
+				try
+				{
+					addOutdatedEntryID(new Long(p.substring(ENTRY_PAGE.length())));
+				}
+				catch(NumberFormatException ex)
+				{
+					dependencies.removePage(p);
+				}
+			}
+			else if(p.startsWith(CATEGORY_PAGE))
+				addOutdatedCategory(p.substring(CATEGORY_PAGE.length()));
+			else if(p.startsWith(CATEGORY_FEED))
+				addOutdatedCategory(p.substring(CATEGORY_FEED.length()));
+			else if(p.startsWith(ARCHIVE_PAGE))
+			{
+				ArchiveRange archives[] = archiveIndex.getArchives();
+				ArchiveRange ar = null;
+				for(int j = 0; j < archives.length && ar == null; j++)
+					if(archivePageKey(archives[j]).equals(p))
+						ar = archives[j];
+				if(ar != null)
+					addOutdatedArchive(ar);
+				else//the archive is gone
+					dependencies.removePage(p);
+			}
+		}
+	}
+	
+	private static String archivePageKey(ArchiveRange ar)
+	{
+		return ARCHIVE_PAGE + ar.getStartDate().getTime() + ":" + ar.getExpirationDate().getTime();
+	}
+	
+	private static String categoryPageKey(String cat)
+	{
+		return CATEGORY_PAGE + cat;
+	}
+	
+	private static String categoryFeedKey(String cat)
+	{
+		return CATEGORY_FEED + cat;
+	}
+	
+	private static String entryPageKey(long id)
+	{
+		return ENTRY_PAGE + id;
+	}
+	
+	/**
+	 * Outdates the pages that use custom tags, such as after
+	 * the values of the tags were edited
+	 * 
+	 * @param names The names of the tags
+	 */
+	public void outdateCustomTags(String names[])
+	{
+		String deps[] = new String[names.length];
+		for(int i = 0; i < names.length; i++)
+			deps[i] = DependencyGraph.customTag(names[i]);
+		if(dependencies.isComplete())
+			outdatePages(dependencies.getAffectedPages(deps));
+		else
 			shouldPublishAll = true;
-		}		
 	}
 
 
@@ -577,6 +803,7 @@ public class TBWeblog extends Weblog
 		cal.set(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), 
 			cal.get(Calendar.DAY_OF_MONTH), 0, 0, 0);       
 		 archiveBaseDate = cal.getTime();        
+		 invalidateEntryIndex();
     }
 
     /**
@@ -692,20 +919,31 @@ public class TBWeblog extends Weblog
      */
     public ArchiveRange getArchiveForDate(Date d)
     {
-    	if(archives != null)
-    	{   	
-    		for(int i = 0; i < archives.length; i++)
-    		{
-    			Date s = archives[i].getStartDate();
-    			Date e = archives[i].getExpirationDate();
-    		    if(s.before(d) && e.after(d))
-    				return archives[i];
-    		    if(s.equals(d) || e.equals(d))
-    		        return archives[i];
-    		}
-    	}  		
-    	System.out.println(d);
-    	return null;
+    	DependencyGraph.record(DependencyGraph.ARCHIVES);
+    	ensureArchives();
+    	ArchiveRange ar = archiveIndex.getArchiveForDate(d);
+    	if(ar == null)
+    		System.out.println(d);
+    	return ar;
+    }
+    
+    /**
+     * Builds the archives if they aren't built for the current archive settings
+     */
+    private void ensureArchives()
+    {
+    	if(!archiveIndex.isBuiltFor(archivePolicy, archiveByDayInterval, archiveBaseDate))
+    	{
+        	try
+        	{
+        		updateArchives();	
+        	}
+        	catch(Exception ex)
+        	{
+        	    logger.log(Level.WARNING, ex.getMessage(), ex);
+        	    ex.printStackTrace();
+        	}
+    	}
     }
     
     
@@ -861,7 +1099,8 @@ public class TBWeblog extends Weblog
     	return url + getFrontPageFileName();
     }
     
-	protected Hashtable weblogFiles(boolean pubAll) throws BackendException, IOException
+	protected Hashtable weblogFiles(boolean pubAll, PublishProgress progress)
+	throws BackendException, IOException
 	{
 		Hashtable ht = new Hashtable();		
 		if(pubAll)
@@ -873,6 +1112,7 @@ public class TBWeblog extends Weblog
 		{
 			outdatedArchivePages.removeAllElements();			
 			updateArchives();
+			ArchiveRange archives[] = archiveIndex.getArchives();
 			for(int i = 0; i < archives.length; i++)
 				addOutdatedArchive(archives[i]);  		
 		}
@@ -898,7 +1138,7 @@ public class TBWeblog extends Weblog
 		    try
 		    {
 		        EntryEnumeration eEnum = 
-		            backend.getEntriesAfter(getKey(), getArchiveBaseDate(), true);
+		            backend.getEntryHeadersAfter(getKey(), getArchiveBaseDate(), true);
 		        while(eEnum.hasMoreEntries())
 		        {
 		            BlogEntry ent = eEnum.nextEntry();
@@ -916,73 +1156,172 @@ public class TBWeblog extends Weblog
 		    }
 		}
 		
+		//every page is generated, so the graph is rebuilt from scratch
+		boolean allPages = shouldPublishAll;
+		if(allPages)
+			dependencies.clear();
+		
+		//every publish reads the entries once, up front
+		invalidateEntryIndex();
+		EntryIndex index = getEntryIndex();
+		
+		//the pages of a publish share the files and URLs they include
+		IncludeCache includes = generator.getIncludeCache();
+		includes.beginSession();
+		//and the lists and calendars that are the same on many pages
+		FragmentCache fragments = generator.getFragmentCache();
+		fragments.beginSession();
+		getEntryCache().resetStatistics();
+		try
+		{
+			generatePages(ht, progress);
+		}
+		finally
+		{
+			includes.endSession();
+			fragments.endSession();
+			//the memoized entry text isn't needed until the next publish
+			HyperTextTag.clearCache();
+		}
+		if(allPages)
+			dependencies.setComplete(true);
+		
+		if(progress != null)
+		{
+			progress.logMessage("Generated " + ht.size() + " pages with " + 
+				index.getQueryCount() + " index queries");
+			if(includes.getHits() + includes.getMisses() + includes.getNotModified() > 0)
+				progress.logMessage("Includes: " + includes.getHits() + " cached, " + 
+					includes.getNotModified() + " unchanged, " + includes.getMisses() + " read");
+			if(fragments.getHits() + fragments.getMisses() > 0)
+				progress.logMessage("Fragments: " + fragments.getHits() + " reused, " + 
+					fragments.getMisses() + " rendered");
+			EntryCache entries = getEntryCache();
+			if(entries.getHits() + entries.getMisses() > 0)
+				progress.logMessage("Entries: " + entries.getHits() + " cached, " + 
+					entries.getMisses() + " read");
+		}
+		return ht;		
+	}
+	
+	private void generatePages(Hashtable ht, PublishProgress progress)
+	throws BackendException, IOException
+	{
 		//generate top level pages
 		//top level pages get published every time
 		genTopLevelPages(ht);
 		
+		//the archive, category and entry pages don't depend on each
+		//other, so they are generated in parallel
+		PageGenerationPool pool = new PageGenerationPool(
+			Runtime.getRuntime().availableProcessors(), progress, dependencies);
+		
 		//generate archives
-		String arcTmpl = archiveTemplate.load();
+		final CompiledTemplate arcTmpl = archiveTemplate.getCompiledTemplate();
 		for(int i = 0; i < outdatedArchivePages.size(); i++)
 		{				
-			ArchiveRange arc = (ArchiveRange)outdatedArchivePages.elementAt(i);				
-			File f = new File(outputDir, getArchiveFileName(arc));
-			OutputStream out = new FileOutputStream(f);
-			generator.generatePage(this, arc, out, arcTmpl);
-			out.close();				
-			ht.put(f, getArchivePath());
+			final ArchiveRange arc = (ArchiveRange)outdatedArchivePages.elementAt(i);				
+			pool.add(new PageGenerationPool.Page(archivePageKey(arc))
+			{
+				void generate() throws Exception
+				{
+					OutputStream out = write(
+						new File(outputDir, getArchiveFileName(arc)), getArchivePath());
+					try
+					{
+						generator.generatePage(TBWeblog.this, arc, out, arcTmpl);
+					}
+					finally
+					{
+						out.close();
+					}
+				}
+			});
 		}
     		
 		//generate categories
-		String catTmpl = categoryTemplate.load();
-        String catFeedTmpl = null;
+		final CompiledTemplate catTmpl = categoryTemplate.getCompiledTemplate();
+        CompiledTemplate catFeedTmpl = null;
         if(isGenerateCategoryFeeds())
-            catFeedTmpl = feedTemplate.load();
+            catFeedTmpl = feedTemplate.getCompiledTemplate();
 		for(int i = 0; i < outdatedCategoryPages.size(); i++)
 		{			
-			String cat = outdatedCategoryPages.elementAt(i).toString();
+			final String cat = outdatedCategoryPages.elementAt(i).toString();
             //generate the cat page
-			File f = new File(outputDir, getCategoryFileName(cat));
-			OutputStream out = new FileOutputStream(f);			
-			generator.generatePage(this, cat, out, catTmpl);
-			out.close();				
-			ht.put(f, getArchivePath());
+			pool.add(new PageGenerationPool.Page(categoryPageKey(cat))
+			{
+				void generate() throws Exception
+				{
+					OutputStream out = write(
+						new File(outputDir, getCategoryFileName(cat)), getArchivePath());
+					try
+					{
+						generator.generatePage(TBWeblog.this, cat, out, catTmpl);
+					}
+					finally
+					{
+						out.close();
+					}
+				}
+			});
             
             //generate cat feed
             if(catFeedTmpl != null)
             {
-                f = new File(outputDir, getCategoryFeedFileName(cat));
-                out = new FileOutputStream(f);
-                generator.generatePage(this, cat, out, catFeedTmpl);
-                out.close();                
-                ht.put(f, getArchivePath());
+                final CompiledTemplate feedTmpl = catFeedTmpl;
+                pool.add(new PageGenerationPool.Page(categoryFeedKey(cat))
+                {
+                    void generate() throws Exception
+                    {
+                        OutputStream out = write(
+                            new File(outputDir, getCategoryFeedFileName(cat)), getArchivePath());
+                        try
+                        {
+                            generator.generatePage(TBWeblog.this, cat, out, feedTmpl);
+                        }
+                        finally
+                        {
+                            out.close();
+                        }
+                    }
+                });
             }
 		}
 		
 		//generate entry pages
 		if(generateEntryPages)
 		{
-		    String entryTmpl = entryTemplate.load();
+		    final CompiledTemplate entryTmpl = entryTemplate.getCompiledTemplate();
 		    for(int i = 0; i < outdatedEntryPages.size(); i++)
 		    {			
-		        Long id = (Long)outdatedEntryPages.elementAt(i);				
-
-		        try
+		        final Long id = (Long)outdatedEntryPages.elementAt(i);				
+		        pool.add(new PageGenerationPool.Page(entryPageKey(id.longValue()))
 		        {
-		            BlogEntry be = getEntry(id.longValue());
-		            File f = new File(outputDir, getEntryFileName(be));
-		            OutputStream out = new FileOutputStream(f);
-		            generator.generatePage(this, be.getID(), out, entryTmpl);
-		            out.close();
-		            ht.put(f, getPathForEntry(be));
-		        }		    
-		        catch(Exception ex)
-		        {
-		            logger.log(Level.WARNING, ex.getMessage(), ex);
-		            ex.printStackTrace();
-		        }						
+		            void generate() throws Exception
+		            {
+		                BlogEntry be = getEntry(id.longValue());
+		                OutputStream out = write(
+		                    new File(outputDir, getEntryFileName(be)), getPathForEntry(be));
+		                try
+		                {
+		                    generator.generatePage(TBWeblog.this, be.getID(), out, entryTmpl);
+		                }
+		                finally
+		                {
+		                    out.close();
+		                }
+		            }
+		            
+		            //a broken entry page shouldn't stop the publish
+		            boolean isRequired()
+		            {
+		                return false;
+		            }
+		        });
 		    }
 		}
-		return ht;		
+		
+		pool.generate(ht);
 	}
 	
 	private void genTopLevelPages(Hashtable ht) throws IOException
@@ -990,7 +1329,7 @@ public class TBWeblog extends Weblog
 		//generate top level pages
 		File f = new File(outputDir, frontPageFileName);
 		OutputStream out = new FileOutputStream(f);
-		generator.generatePage(this, PageGenerator.FRONT_PAGE, out, mainTemplate.load());
+		generator.generatePage(this, PageGenerator.FRONT_PAGE, out, mainTemplate.getCompiledTemplate());
 		out.close();
 		ht.put(f, getBasePath());		
 			
@@ -999,7 +1338,7 @@ public class TBWeblog extends Weblog
 			f = new File(outputDir, archiveIndexFileName);
 			out = new FileOutputStream(f);
 			generator.generatePage(this, 
-				PageGenerator.INDEX_PAGE, out, arcIndexTemplate.load());
+				PageGenerator.INDEX_PAGE, out, arcIndexTemplate.getCompiledTemplate());
 			out.close();
 			ht.put(f, getBasePath());			
 		}
@@ -1009,14 +1348,121 @@ public class TBWeblog extends Weblog
 			f = new File(outputDir, rssFileName);
 			out = new FileOutputStream(f);
 			generator.generatePage(this, 
-				PageGenerator.RSS_PAGE, out, feedTemplate.load());
+				PageGenerator.RSS_PAGE, out, feedTemplate.getCompiledTemplate());
 			out.close();
 			ht.put(f, getBasePath());			
 		}		
 	}
 	
+	/**
+	 * Generates the single page that a publish puts at a path, such as
+	 * for a preview. Only the page is rendered, from the current entries 
+	 * and templates.
+	 * 
+	 * @param path The path of the page, relative to the base URL
+	 * @param out The OutputStream to write the page to
+	 * @return true if the path is a page of the weblog, false if it isn't
+	 * @throws IOException If an error occurs while writing the page
+	 * @throws BackendException If an error occurs while reading the entries
+	 */
+	public boolean generatePage(String path, OutputStream out)
+	throws IOException, BackendException
+	{
+		if(path.equals("") || path.equals(frontPageFileName))
+		{
+			generator.generatePage(this, PageGenerator.FRONT_PAGE, out, 
+				mainTemplate.getCompiledTemplate());
+			return true;
+		}
+		if(generateArchiveIndex && path.equals(archiveIndexFileName))
+		{
+			generator.generatePage(this, PageGenerator.INDEX_PAGE, out, 
+				arcIndexTemplate.getCompiledTemplate());
+			return true;
+		}
+		if(generateRssFeed && path.equals(rssFileName))
+		{
+			generator.generatePage(this, PageGenerator.RSS_PAGE, out, 
+				feedTemplate.getCompiledTemplate());
+			return true;
+		}
+		
+		//the other pages are in the archive directory
+		String arcPart = "";
+		if(!archiveUrl.equals(baseUrl))
+			arcPart = archiveUrl.substring(baseUrl.length());
+		if(!path.startsWith(arcPart))
+			return false;
+		String name = path.substring(arcPart.length());
+		
+		String cats[] = getEntryIndex().getCategories();
+		for(int i = 0; i < cats.length; i++)
+		{
+			if(name.equals(getCategoryFileName(cats[i])))
+			{
+				generator.generatePage(this, cats[i], out, 
+					categoryTemplate.getCompiledTemplate());
+				return true;
+			}
+			if(generateCategoryFeeds && name.equals(getCategoryFeedFileName(cats[i])))
+			{
+				generator.generatePage(this, cats[i], out, 
+					feedTemplate.getCompiledTemplate());
+				return true;
+			}
+		}
+		
+		ArchiveRange arcs[] = getArchives();
+		for(int i = 0; i < arcs.length; i++)
+		{
+			if(name.equals(getArchiveFileName(arcs[i])))
+			{
+				generator.generatePage(this, arcs[i], out, 
+					archiveTemplate.getCompiledTemplate());
+				return true;
+			}
+		}
+		
+		//entry pages are in year/month/entry_ID directories
+		String prefix = "entry_";
+		int s = name.lastIndexOf('/') + 1;
+		if(!generateEntryPages || !name.startsWith(prefix, s) || 
+			!name.endsWith(getEntryPageExtension()))
+			return false;
+		long id;
+		try
+		{
+			id = Long.parseLong(name.substring(s + prefix.length(), 
+				name.length() - getEntryPageExtension().length()));
+		}
+		catch(NumberFormatException ex)
+		{
+			return false;
+		}
+		
+		BlogEntry be = getEntryIndex().getEntryHeader(id);
+		if(be == null || !name.equals(getEntryPathPart(be) + getEntryFileName(be)))
+			return false;
+		generator.generatePage(this, id, out, entryTemplate.getCompiledTemplate());
+		return true;
+	}
+	
+	protected PublishManifest getPublishManifest()
+	{
+		return publishManifest;
+	}
+	
+	protected PublishJournal getPublishJournal()
+	{
+		return publishJournal;
+	}
+	
 	protected void publishComplete(Hashtable ht, boolean failed)
 	{				
+		//a failed publish is resumed from the journal, with the
+		//files that weren't uploaded instead of regenerated pages
+		boolean resumable = failed && publishJournal.isActive();
+		
 		//delete the weblog files		
 		for(Enumeration e = ht.keys() ; e.hasMoreElements() ;) 
 		{
@@ -1024,20 +1470,31 @@ public class TBWeblog extends Weblog
 			{
                             Object element = e.nextElement();
                             File f = (File)element;
+                            if(resumable && publishJournal.isPending(f))
+                                continue;
                             if(!f.getAbsolutePath().startsWith(webFilesDirectory.getAbsolutePath()))
 				f.delete();				
 			}
 			catch(ClassCastException cce){}
 		}
 				
-		if(!failed)
+		if(!failed || resumable)
 		{		
 			System.out.println("clearing");
 			shouldPublishAll = false;//no pages need updated		
 			outdatedArchivePages.removeAllElements();
 			outdatedCategoryPages.removeAllElements();
 			outdatedEntryPages.removeAllElements();
-		}				
+		}
+		
+		try
+		{
+			dependencies.save();
+		}
+		catch(IOException ex)
+		{
+		    logger.log(Level.WARNING, ex.getMessage(), ex);
+		}
 	}
     
 
@@ -1135,66 +1592,24 @@ public class TBWeblog extends Weblog
 	}
 	
     /**
-     * Recalculates the weblog's archives
+     * Recalculates the weblog's archives. The archives are kept up to date
+     * as entries change, so the entries are only read again if the archive
+     * policy, the day interval or the base date changed since the archives
+     * were built.
      * @throws BackendException If an error occurs while recalculating the archives
      */
     public void updateArchives() throws BackendException
     {    	 
-    	EntryEnumeration eEnum = backend.getEntriesAfter(getKey(), archiveBaseDate, true);
-		ArchiveRange cur = null;
-		Vector arcs = new Vector(20, 20);
-		while(eEnum.hasMoreEntries())
-		{			
-			BlogEntry be = eEnum.nextEntry();
-			Date ts = be.getDate();
-			//System.out.println(ts);
-			//current record greater than current page date
-			if(cur == null || cur.getExpirationDate().compareTo(ts) < 0)//before
-			{
-				Date d1 = new Date(ts.getTime());				
-				Calendar cal = Calendar.getInstance();
-				cal.setTime(ts);
-				cal.add(Calendar.DATE, archiveByDayInterval - 1);
-				Date d2 = cal.getTime();
-           		
-				if(archivePolicy == ARCHIVE_MONTHLY)
-				{
-					cal = Calendar.getInstance();
-					cal.setTime(d1);
-					cal.set(Calendar.DAY_OF_MONTH, 1);
-					d1 = cal.getTime();
-           		
-					cal.add(Calendar.MONTH, 1);
-					cal.add(Calendar.DATE, -1);
-					d2 = cal.getTime();           	
-				}
-				else if(archivePolicy == ARCHIVE_WEEKLY)
-				{
-					cal = Calendar.getInstance();
-					cal.setTime(d1);
-					//cal.set(Calendar.DAY_OF_WEEK, Calendar.SUNDAY);
-					//bug fix - in some countries Monday is the 1st day of the week
-					cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
-					d1 = cal.getTime();					
-					//cal.set(Calendar.DAY_OF_WEEK, Calendar.SATURDAY);
-					cal.add(Calendar.DAY_OF_MONTH, 6);
-					d2 =  cal.getTime();      			
-				}
-           		
-				cur = new ArchiveRange(d1, d2);               
-				arcs.add(cur);
-			}			
-		}
-		eEnum.close();
-		archives = new ArchiveRange[arcs.size()];
-		for(int i = 0; i < archives.length; i++)
-		{		
-			archives[i] = (ArchiveRange)arcs.elementAt(i);
-			//set the formatting
-			archives[i].setFormatter(
-				new java.text.SimpleDateFormat(generator.getArchiveRangeFormat()),
-				generator.isSpanArcRange());
-		}   	   
+    	synchronized(archiveIndex)
+    	{
+    		if(!archiveIndex.isBuiltFor(archivePolicy, archiveByDayInterval, archiveBaseDate))
+    		{
+    			archiveIndex.build(archivePolicy, archiveByDayInterval, archiveBaseDate,
+    				backend.getEntryHeadersAfter(getKey(), archiveBaseDate, true));
+    		}
+    		archiveIndex.setFormat(
+    			generator.getArchiveRangeFormat(), generator.isSpanArcRange());
+    	}
     }   
     
     /**
@@ -39,6 +39,8 @@ import net.sf.thingamablog.transport.FCPTransport;
 import net.sf.thingamablog.transport.LocalTransport;
 import net.sf.thingamablog.transport.MailTransportProgress;
 import net.sf.thingamablog.transport.PublishTransport;
+import net.sf.thingamablog.transport.RemotePublishTransport;
+import net.sf.thingamablog.transport.RemoteTransport;
 
 import org.apache.xmlrpc.XmlRpcClient;
 
@@ -55,6 +57,7 @@ public abstract class Weblog
 	private Vector categoryListeners = new Vector(2, 2);
 	private Vector authorListeners = new Vector(2, 2);	
 	private Vector pingServices = new Vector(2, 2);
+	private EntryCache entryCache = new EntryCache();
 	private PublishTransport transport = new LocalTransport();
     
     private EMailTransport mailTransport = new EMailTransport();
@@ -172,9 +175,43 @@ public abstract class Weblog
 	 */
 	public abstract Date getArchiveBaseDate();
 	//TODO hashtable probably shouldn't be returned	
-	protected abstract Hashtable weblogFiles(boolean pubAll) throws BackendException, IOException;
+	/**
+	 * Generates the weblog files that need to be published
+	 * 
+	 * @param pubAll true if all the files should be generated
+	 * @param progress The progress the generated files are reported to
+	 * @return A table of the generated files and the paths they are published to
+	 * @throws BackendException If an error occurs while reading from the backend
+	 * @throws IOException If an error occurs while writing the files
+	 */
+	protected abstract Hashtable weblogFiles(boolean pubAll, PublishProgress progress)
+	throws BackendException, IOException;
 	protected abstract void publishComplete(Hashtable ht, boolean failed);
 	
+	/**
+	 * Gets the manifest of the files this weblog has published. Files
+	 * that are unchanged since their last upload aren't published again.
+	 * 
+	 * @return The manifest, or null to publish every generated file and
+	 * every web file modified since the last publish
+	 */
+	protected PublishManifest getPublishManifest()
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets the journal of the generated files that are left to upload.
+	 * A failed publish is resumed by the next one.
+	 * 
+	 * @return The journal, or null to generate the pages again after 
+	 * a failed publish
+	 */
+	protected PublishJournal getPublishJournal()
+	{
+		return null;
+	}
+	
 	/**
 	 * Publishes weblog files, including any web files whose modified date
 	 * is after the last publish date
@@ -244,7 +281,7 @@ public abstract class Weblog
         Hashtable ht = null;
 		try
 		{		
-			ht = weblogFiles(pubAll);
+			ht = weblogFiles(pubAll, progress);
 		}
 		catch(IOException ioe)
 		{
@@ -254,11 +291,78 @@ public abstract class Weblog
 			return;
 		}
 		
-		//if we're publishing all the files, set the web files'
-		//modified date to the current date so they get published too
-		if(pubAll)
-			markWebFilesAsUpdated();		
-		File webFiles[] = getUpdatedWebFiles();
+		//add the files a failed publish left behind
+		PublishJournal journal = getPublishJournal();
+		if(journal != null)
+		{
+			journal.load(getPublishTarget());
+			int n = journal.resume(ht);
+			if(n > 0)
+			{
+				logger.info("Resuming " + n + " files of the last publish");
+				progress.logMessage("Resuming " + n + " files of the last publish");
+			}
+		}
+		
+		PublishManifest manifest = getPublishManifest();
+		File webFiles[];
+		if(manifest == null)
+		{
+			//if we're publishing all the files, set the web files'
+			//modified date to the current date so they get published too
+			if(pubAll)
+				markWebFilesAsUpdated();		
+			webFiles = getUpdatedWebFiles();
+		}
+		else
+		{
+			//the manifest tells which of the web files are unchanged
+			manifest.load(getPublishTarget());
+			//publishing all the files uploads them again, even if the
+			//manifest says the server already has them
+			if(pubAll)
+				manifest.clear();
+			webFiles = pubAll ? getWebFiles() : getUpdatedWebFiles();
+		}
+		if(webFiles == null)
+			webFiles = new File[0];
+		String webPaths[] = getWebFilesServerPaths(webFiles);
+		
+		//leave out the files that are the same as their last upload
+		Hashtable unchanged = new Hashtable();
+		long skippedBytes = 0;
+		if(manifest != null)
+		{
+			for(Enumeration e = ht.keys() ; e.hasMoreElements() ;) 
+			{
+				try
+				{
+					File f = (File)e.nextElement();
+					if(manifest.isUnchanged(remotePath(ht.get(f).toString(), f), f))
+					{
+						unchanged.put(f, f);
+						skippedBytes += f.length();
+					}
+				}
+				catch(ClassCastException cce){}
+			}
+			
+			Vector files = new Vector(), paths = new Vector();
+			for(int i = 0; i < webFiles.length; i++)
+			{
+				if(webPaths[i] != null && manifest.isUnchanged(remotePath(webPaths[i], webFiles[i]), webFiles[i]))
+				{
+					unchanged.put(webFiles[i], webFiles[i]);
+					skippedBytes += webFiles[i].length();
+					continue;
+				}
+				files.add(webFiles[i]);
+				paths.add(webPaths[i]);
+			}
+			webFiles = (File[])files.toArray(new File[files.size()]);
+			webPaths = (String[])paths.toArray(new String[paths.size()]);
+		}
+		
 		long totalBytes = 0;				
 		//count the total bytes for this publish
 		for(int i = 0; i < webFiles.length; i++)
@@ -268,12 +372,23 @@ public abstract class Weblog
 			try
 			{
 				File f = (File)e.nextElement();
-				totalBytes += f.length();
+				if(!unchanged.containsKey(f))
+					totalBytes += f.length();
 			}
 			catch(ClassCastException cce){}
 		}
 		
+		if(journal != null && !journal.begin(ht, unchanged))
+			logger.warning("Unable to save the publish journal");
+		
 		progress.publishStarted(totalBytes);
+		if(!unchanged.isEmpty())
+		{
+			String msg = "Skipping " + unchanged.size() + " unchanged files (" + 
+				skippedBytes + " bytes)";
+			logger.info(msg);
+			progress.logMessage(msg);
+		}
         
 		if(!transport.connect())
 		{
@@ -297,7 +412,7 @@ public abstract class Weblog
 		Hashtable ht = null;
 		try
 		{		
-			ht = weblogFiles(pubAll);
+			ht = weblogFiles(pubAll, progress);
 		}
 		catch(IOException ioe)
 		{
@@ -307,14 +422,47 @@ public abstract class Weblog
 		
 		//publish weblog files, if any
 		boolean failed = false;
-		for(Enumeration e = ht.keys() ; e.hasMoreElements() ;) 
+		String failReason = null;
+		boolean parallel = transport instanceof RemotePublishTransport && 
+			((RemotePublishTransport)transport).getUploadSessions() > 1;
+		if(parallel)
+		{
+			//upload everything over several sessions at once
+			ParallelPublisher pp = new ParallelPublisher(
+				(RemotePublishTransport)transport, progress, manifest, journal);
+			for(Enumeration e = ht.keys() ; e.hasMoreElements() ;) 
+			{
+				try
+				{
+					File f = (File)e.nextElement();
+					if(!unchanged.containsKey(f))
+						pp.add(f, ht.get(f).toString());
+				}
+				catch(ClassCastException cce){}
+			}
+			if(webPaths.length == webFiles.length)
+			{
+				for(int i = 0; i < webFiles.length; i++)
+					pp.add(webFiles[i], webPaths[i]);
+				failed = !pp.publish();
+				failReason = pp.getFailureReason();
+			}
+			else
+				failed = true;
+		}
+		else for(Enumeration e = ht.keys() ; e.hasMoreElements() ;) 
 		{
 			if(progress.isAborted())
+			{
+				failed = true;
 				break;
+			}
 				
 			try
 			{
 				File f = (File)e.nextElement();
+				if(unchanged.containsKey(f))
+					continue;
 				String pubPath = ht.get(f).toString();
 				progress.filePublishStarted(f, pubPath);
 				boolean result = transport.publishFile(pubPath, f, progress);
@@ -324,19 +472,58 @@ public abstract class Weblog
 					failed = true;
 					break;	
 				}			
+				if(manifest != null)
+					manifest.record(remotePath(pubPath, f), f);
+				if(journal != null)
+					journal.uploaded(f);
 				progress.filePublishCompleted(f, pubPath);				
 			}
 			catch(ClassCastException cce){}
 		}
 		
-		if(!failed)
+		if(!failed && !parallel)
 		{		
-			failed = !publishWebFiles(webFiles, progress);
+			failed = !publishWebFiles(webFiles, webPaths, manifest, progress);
 		}
 		
+		//an aborted publish isn't complete, whatever was uploaded before it
+		if(progress.isAborted())
+			failed = true;
+		
         if(transport.isConnected())
             transport.disconnect();
         
+        if(manifest != null)
+        {
+        	//the uploads that succeeded are recorded even if the publish failed
+        	try
+        	{
+        		manifest.save();
+        	}
+        	catch(IOException ioe)
+        	{
+        		logger.log(Level.WARNING, "Unable to save the publish manifest", ioe);
+        	}
+        }
+        
+        if(journal != null)
+        {
+        	//keep the files that weren't uploaded for the next publish
+        	if(!failed)
+        		journal.clear();
+        	else
+        	{
+        		try
+        		{
+        			journal.save();
+        		}
+        		catch(IOException ioe)
+        		{
+        			logger.log(Level.WARNING, "Unable to save the publish journal", ioe);
+        		}
+        	}
+        }
+        
 		if(!failed)
 		{			
 			progress.publishCompleted();//publish completed okay
@@ -345,7 +532,7 @@ public abstract class Weblog
 		else
 		{
 			if(!progress.isAborted())
-			    progress.publishFailed(transport.getFailureReason());
+			    progress.publishFailed(failReason != null ? failReason : transport.getFailureReason());
 		}		
         
         publishFailed = failed && !progress.isAborted();
@@ -364,7 +551,7 @@ public abstract class Weblog
             Hashtable ht = null;
                 try
 		{		
-			ht = weblogFiles(true);
+			ht = weblogFiles(true, progress);
 		}
                 catch (IOException ioe)
 		{
@@ -373,7 +560,8 @@ public abstract class Weblog
 			progress.publishFailed("Error building pages: " + ioe.getLocalizedMessage());
 			return;
 		}
-            markWebFilesAsUpdated();
+            //every edition has all the files, unchanged ones
+            //are inserted as redirects to their earlier CHKs
             File webFiles[] = getWebFiles();
             String webPaths[] = getWebFilesServerPaths(webFiles);
             //count the total bytes for this publish
@@ -467,9 +655,9 @@ public abstract class Weblog
 		return updatedFiles;
 	}
         
-	private boolean publishWebFiles(File webFiles[], PublishProgress progress)
+	private boolean publishWebFiles(File webFiles[], String webPaths[], 
+		PublishManifest manifest, PublishProgress progress)
 	{
-		String webPaths[] = getWebFilesServerPaths(webFiles);
 		if(webPaths.length != webFiles.length)
 			return false;
 		
@@ -483,12 +671,40 @@ public abstract class Weblog
 			{				
 				return false;	
 			}			
+			if(manifest != null)
+				manifest.record(remotePath(webPaths[i], webFiles[i]), webFiles[i]);
 			progress.filePublishCompleted(webFiles[i], webPaths[i]);
 		}
 		
 		return true;		
 	}
 	
+	/**
+	 * Gets the path a file is published to by the transports, 
+	 * which put the file in the publish path under its own name
+	 */
+	static String remotePath(String pubPath, File f)
+	{
+		if(pubPath.endsWith("/"))
+			return pubPath + f.getName();
+		return pubPath + "/" + f.getName();
+	}
+	
+	/**
+	 * Describes where the transport publishes to, so the publish
+	 * manifest starts over when the server or account changes
+	 */
+	private String getPublishTarget()
+	{
+		String target = transport.getClass().getName();
+		if(transport instanceof RemoteTransport)
+		{
+			RemoteTransport rt = (RemoteTransport)transport;
+			target += ":" + rt.getUserName() + "@" + rt.getAddress() + ":" + rt.getPort();
+		}
+		return target;
+	}
+	
 	private String[] getWebFilesServerPaths(File webFiles[])
 	{
 		String paths[] = new String[webFiles.length];
@@ -587,6 +803,8 @@ public abstract class Weblog
 	
 	protected void fireEntryUpdated(BlogEntry be)
 	{
+		//the listeners read the new version of the entry
+		entryCache.remove(be.getID());
 		for(int i = 0; i < weblogListeners.size(); i++)
 		{
 			WeblogListener wl = (WeblogListener)weblogListeners.elementAt(i);
@@ -596,6 +814,7 @@ public abstract class Weblog
 	
 	protected void fireEntryRemoved(BlogEntry be)
 	{
+		entryCache.remove(be.getID());
 		for(int i = 0; i < weblogListeners.size(); i++)
 		{
 			WeblogListener wl = (WeblogListener)weblogListeners.elementAt(i);
@@ -615,15 +834,22 @@ public abstract class Weblog
 	
 	protected void fireAuthorUpdated(Author auth)
 	{
+		fireAuthorUpdated(null, auth);
+	}
+	
+	protected void fireAuthorUpdated(Author oldAuth, Author auth)
+	{
+		entryCache.clear();
 		for(int i = 0; i < authorListeners.size(); i++)
 		{
 			AuthorListener wl = (AuthorListener)authorListeners.elementAt(i);
-			wl.authorUpdated(new AuthorEvent(this, auth));		
+			wl.authorUpdated(new AuthorEvent(this, auth, oldAuth));		
 		}		
 	}
 	
 	protected void fireAuthorRemoved(Author auth)
 	{
+		entryCache.clear();
 		for(int i = 0; i < authorListeners.size(); i++)
 		{
 			AuthorListener wl = (AuthorListener)authorListeners.elementAt(i);
@@ -643,15 +869,22 @@ public abstract class Weblog
 	
 	protected void fireCategoryRenamed(String cat)
 	{
+		fireCategoryRenamed(null, cat);
+	}
+	
+	protected void fireCategoryRenamed(String oldCat, String cat)
+	{
+		entryCache.clear();
 		for(int i = 0; i < categoryListeners.size(); i++)
 		{
 			CategoryListener wl = (CategoryListener)categoryListeners.elementAt(i);
-			wl.categoryRenamed(new CategoryEvent(this, cat));		
+			wl.categoryRenamed(new CategoryEvent(this, cat, oldCat));		
 		}		
 	}
 	
 	protected void fireCategoryRemoved(String cat)
 	{
+		entryCache.clear();
 		for(int i = 0; i < categoryListeners.size(); i++)
 		{
 			CategoryListener wl = (CategoryListener)categoryListeners.elementAt(i);
@@ -667,6 +900,7 @@ public abstract class Weblog
 	public void deleteAll() throws BackendException
 	{
 		backend.removeAllWeblogData(getKey());
+		entryCache.clear();
 	}
 	
 	/**
@@ -689,7 +923,8 @@ public abstract class Weblog
 	 */
 	public void updateEntry(BlogEntry be) throws BackendException
 	{
-		BlogEntry old = getEntry(be.getID());
+		//read the old version past the cache, it's evicted once the update is done
+		BlogEntry old = backend.getEntry(getKey(), be.getID());
 	    backend.updateEntry(getKey(), be);		
 		fireEntryUpdated(old);
 	}
@@ -740,7 +975,7 @@ public abstract class Weblog
 	public void renameCategory(String oldCat, String newCat) throws BackendException
 	{
 		categoryStore.renameCategory(getKey(), oldCat, newCat);
-		fireCategoryRenamed(newCat);
+		fireCategoryRenamed(oldCat, newCat);
 	}
 	
 	
@@ -779,7 +1014,7 @@ public abstract class Weblog
 	public void updateAuthor(Author oldAuth, Author newAuth) throws BackendException
 	{
 		authorStore.updateAuthor(getKey(), oldAuth, newAuth);
-		fireAuthorUpdated(newAuth);
+		fireAuthorUpdated(oldAuth, newAuth);
 	}
 	
 	/**
@@ -803,14 +1038,32 @@ public abstract class Weblog
 	}
 	
 	/**
-	 * Gets an entry
+	 * Gets an entry. Entries are read through the entry cache of
+	 * the weblog, and the entry returned is the caller's own copy.
 	 * @param id The ID of the entry
 	 * @return a weblog entry
 	 * @throws BackendException
 	 */
 	public BlogEntry getEntry(long id) throws BackendException
 	{
-		return backend.getEntry(getKey(), id);
+		BlogEntry be = entryCache.get(id);
+		if(be != null)
+			return be;
+		
+		long gen = entryCache.getGeneration();
+		be = backend.getEntry(getKey(), id);
+		if(be != null)
+			entryCache.put(be, gen);
+		return be;
+	}
+	
+	/**
+	 * Gets the cache of the entries read with getEntry()
+	 * @return the entry cache
+	 */
+	public EntryCache getEntryCache()
+	{
+		return entryCache;
 	}
 	
 	/**
@@ -837,38 +1090,41 @@ public abstract class Weblog
 	}
 	
 	/**
-	 * Gets the entries that belong to a category
+	 * Gets the entries that belong to a category. The text of 
+	 * the entries is read when it's first asked for.
 	 * @param cat The category
 	 * @return entries that are categorized under the category
 	 * @throws BackendException
 	 */
 	public BlogEntry[] getEntriesFromCategory(String cat) throws BackendException
 	{
-		EntryEnumeration eEnum = backend.getEntriesFromCategory(getKey(), cat, true);
+		EntryEnumeration eEnum = backend.getEntryHeadersFromCategory(getKey(), cat, true);
 		return toArray(eEnum);
 	}
 	
 	/**
-	 * Gets the entries that fall between an ArchiveRange
+	 * Gets the entries that fall between an ArchiveRange. The text 
+	 * of the entries is read when it's first asked for.
 	 * @param range The range
 	 * @return entries with post dates >= the start date and <= the expiration date 
 	 * @throws BackendException
 	 */
 	public BlogEntry[] getEntriesFromArchive(ArchiveRange range) throws BackendException
 	{
-		EntryEnumeration eEnum = backend.getEntriesBetween(
+		EntryEnumeration eEnum = backend.getEntryHeadersBetween(
 			getKey(), range.getStartDate(), range.getExpirationDate(), true);
 		return toArray(eEnum);
 	}
 	
 	/**
-	 * Gets entries which are drafts
+	 * Gets entries which are drafts. The text of the 
+	 * entries is read when it's first asked for.
 	 * @return
 	 * @throws BackendException
 	 */
 	public BlogEntry[] getDraftEntries() throws BackendException
 	{
-		EntryEnumeration eEnum = backend.getDraftEntries(getKey(), true);
+		EntryEnumeration eEnum = backend.getDraftEntryHeaders(getKey(), true);
 		return toArray(eEnum);	
 	}
 	
@@ -942,6 +1198,7 @@ public abstract class Weblog
     public void setBackend(WeblogBackend backend)
     {
         this.backend = backend;
+        entryCache.clear();
         
         try
         {        
@@ -1172,7 +1429,7 @@ public abstract class Weblog
 	    WeblogBackend be = getBackend();
 	    if(be == null)
 	        return null;
-	    EntryEnumeration eEnum = be.getEntriesAfter(getKey(), d, true);
+	    EntryEnumeration eEnum = be.getEntryHeadersAfter(getKey(), d, true);
         
 	    long chkTime = d.getTime();
 	    long arcTime = getArchiveBaseDate().getTime();
@@ -1204,7 +1461,7 @@ public abstract class Weblog
 	        return null;
 	    
 	    BlogEntry ent = null;
-	    EntryEnumeration eEnum = be.getEntriesBefore(getKey(), d, false);        
+	    EntryEnumeration eEnum = be.getEntryHeadersBefore(getKey(), d, false);        
 	    
         while(eEnum.hasMoreEntries())
         {
@@ -139,4 +139,48 @@ public interface WeblogBackend
 	 * @throws BackendException
 	 */
 	public EntryEnumeration getDraftEntries(String blogKey, boolean orderByDateAsc) throws BackendException;
+	
+	/*
+	 * The header versions of the entry queries return the entries without
+	 * their text. The text of an entry header is read from the backend the
+	 * first time getText() is called, so callers that only need the IDs,
+	 * dates, titles, categories or authors of the entries don't read the
+	 * text of every entry.
+	 */
+	
+	/**
+	 * Gets the headers of entries from the backend
+	 * @see #getEntries(String, boolean)
+	 */
+	public EntryEnumeration getEntryHeaders(String blogKey, boolean orderByDateAsc) throws BackendException;
+	
+	/**
+	 * Gets the headers of categorized entries from the backend
+	 * @see #getEntriesFromCategory(String, String, boolean)
+	 */
+	public EntryEnumeration getEntryHeadersFromCategory(String blogKey, String category, boolean orderByDateAsc) throws BackendException;
+	
+	/**
+	 * Gets the headers of entries before a certain date
+	 * @see #getEntriesBefore(String, Date, boolean)
+	 */
+	public EntryEnumeration getEntryHeadersBefore(String blogKey, Date d, boolean orderByDateAsc) throws BackendException;
+	
+	/**
+	 * Gets the headers of entries after a certain date
+	 * @see #getEntriesAfter(String, Date, boolean)
+	 */
+	public EntryEnumeration getEntryHeadersAfter(String blogKey, Date d, boolean orderByDateAsc) throws BackendException;
+	
+	/**
+	 * Gets the headers of entries that fall between two dates
+	 * @see #getEntriesBetween(String, Date, Date, boolean)
+	 */
+	public EntryEnumeration getEntryHeadersBetween(String blogKey, Date from, Date to, boolean orderByDateAsc) throws BackendException;
+	
+	/**
+	 * Gets the headers of entries which are drafts
+	 * @see #getDraftEntries(String, boolean)
+	 */
+	public EntryEnumeration getDraftEntryHeaders(String blogKey, boolean orderByDateAsc) throws BackendException;
 }
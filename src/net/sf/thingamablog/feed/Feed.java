@@ -25,12 +25,16 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Vector;
 
+import net.sf.thingamablog.EnvUtils;
 import net.sf.thingamablog.TBGlobals;
 
 import com.sun.syndication.feed.synd.SyndContent;
@@ -49,15 +53,23 @@ import com.sun.syndication.io.XmlReader;
  */
 public class Feed
 {
+    /** The default connect and read timeout of an update, in milliseconds */
+    public static final int DEFAULT_TIMEOUT = 30000;
+
     private FeedBackend backend;
     private String url = "";
     private String link = null;
     private Date lastUpdated = null;
     private boolean lastUpdateFailed;
     private String lastUpdateFailedReason = "";
+    //the validators of the last download, sent back in a conditional GET
+    private String etag;
+    private String lastModified;
 
     private boolean isLimitItems = true;
     private int itemLimit = 50;
+    //days to keep items for, or 0 to keep them for good
+    private int itemMaxAge = 0;
 
     private String title = "";
     private String description = "";
@@ -82,17 +94,52 @@ public class Feed
 	 * @throws FeedBackendException If an error occurs while updating the feed
 	 */
     public void update() throws FeedBackendException
+    {
+        Download d = fetch(DEFAULT_TIMEOUT, DEFAULT_TIMEOUT);
+        if(d != null)
+            store(d);
+    }
+
+    /**
+     * Downloads and parses the feed, without touching the backend. If the
+     * feed was downloaded before, the request is a conditional GET and
+     * a feed that hasn't changed isn't downloaded or parsed again.
+     *
+     * This is the network half of update(), and can run on any thread.
+     *
+     * @param connectTimeout The connect timeout in milliseconds
+     * @param readTimeout The read timeout in milliseconds
+     * @return The download, or null if the update failed
+     */
+    Download fetch(int connectTimeout, int readTimeout)
     {
 		lastUpdateFailed = false;
-		//SyndFeedI feed = null;
-		SyndFeed feed = null;
+		Download d = new Download();
+		XmlReader reader = null;
 		
 		try 
 		{
-			URL feedUrl = new URL(url);
+			URLConnection conn = new URL(url).openConnection();
+			EnvUtils.setTimeouts(conn, connectTimeout, readTimeout);
+			if(conn instanceof HttpURLConnection)
+			{
+				if(etag != null)
+					conn.setRequestProperty("If-None-Match", etag);
+				if(lastModified != null)
+					conn.setRequestProperty("If-Modified-Since", lastModified);
+				if(((HttpURLConnection)conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+				{
+					d.etag = etag;
+					d.lastModified = lastModified;
+					return d;//not changed, nothing to parse
+				}
+			}
+			
+			d.etag = conn.getHeaderField("ETag");
+			d.lastModified = conn.getHeaderField("Last-Modified");
+			reader = new XmlReader(conn);
 			SyndFeedInput input = new SyndFeedInput();
-			feed = input.build(new XmlReader(feedUrl));
-			//feed = input.build(FeedUtils.getFeedReader(feedUrl));
+			d.feed = input.build(reader);
 		}
 		catch(MalformedURLException ex) 
 		{
@@ -106,11 +153,41 @@ public class Feed
 			lastUpdateFailed = true;			
 			System.out.println("ERROR: "+ex.getMessage());
 		}
+		finally
+		{
+			if(reader != null)
+			{
+				try{reader.close();}
+				catch(IOException ex){}
+			}
+		}
 		
 		if(lastUpdateFailed)
+			return null;
+		
+		if(d.feed.getImage() != null)
+			saveImage(d.feed.getImage().getUrl(), connectTimeout, readTimeout);
+		return d;
+    }
+
+    /**
+     * Adds the items of a download to the backend, and updates the
+     * properties of the feed. This is the backend half of update().
+     *
+     * @param d The download
+     * @throws FeedBackendException If an error occurs while adding the items
+     */
+    void store(Download d) throws FeedBackendException
+    {
+		SyndFeed feed = d.feed;
+		if(feed == null)//not modified since the last update
+		{
+			setLastUpdated(new Date());
 			return;
+		}
 		
 		List fItems = feed.getEntries();
+		Vector newItems = new Vector(fItems.size());
 		Iterator it = fItems.iterator();
 		while(it.hasNext())
 		{
@@ -142,19 +219,11 @@ public class Feed
 			}				
 			fi.setDescription(itemDescr);		
 			
-			backend.addItem(fi, false);  
+			newItems.add(fi);
     	}
-		
-		//adjust items for limit
-		if(isLimitItems)
-		{
-			FeedItem items[] = backend.getItems(url, false);
-			for (int i = 0; i < items.length; i++)
-			{
-				if (i >= itemLimit)
-					removeItem(items[i]);
-			}
-		}
+		//the new items are added in one go
+		if(backend.addItems((FeedItem[])newItems.toArray(new FeedItem[newItems.size()])) > 0)
+			pruneItems();//adjust items for limit
 		
 		setTitle(feed.getTitle());
 		setDescription(feed.getDescription());
@@ -166,16 +235,16 @@ public class Feed
 		
 		
 		if(feed.getImage() != null)
-		{
 			setImageURL(feed.getImage().getUrl());
-			saveImage(feed.getImage().getUrl());
-		}
 		
+		//only remember the validators once the items are stored
+		etag = d.etag;
+		lastModified = d.lastModified;
     }
 	
 
 
-    private void saveImage(String iUrl)
+    private void saveImage(String iUrl, int connectTimeout, int readTimeout)
     {
 		if(iUrl == null)
 			return;
@@ -201,17 +270,18 @@ public class Feed
         
         try
         {
-            URL url = new URL(iUrl);            
+            URLConnection conn = new URL(iUrl).openConnection();
+            EnvUtils.setTimeouts(conn, connectTimeout, readTimeout);
             // Copy resource to local file, use remote file           
-            InputStream is = url.openStream();           
+            InputStream is = conn.getInputStream();           
                        
             FileOutputStream fos = null;    
             fos = new FileOutputStream(file);
-            int oneChar, count = 0;
-            while ((oneChar = is.read()) != -1)
+            byte buf[] = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1)
             {
-                fos.write(oneChar);
-                count++;
+                fos.write(buf, 0, n);
             }
             is.close();
             fos.close();            
@@ -310,11 +380,24 @@ public class Feed
 	 */
     public void removeAllItems() throws FeedBackendException
     {
-        FeedItem items[] = getItems();
-        for (int i = 0; i < items.length; i++)
-        {
-            backend.removeItem(items[i].getID());
-        }
+        backend.pruneItems(url, 0, null);
+    }
+    
+	/**
+	 * Removes the items that are past the item limit or the
+	 * maximum item age of the feed
+	 * 
+	 * @return The number of items that were removed
+	 * @throws FeedBackendException If an error occurs removing the items
+	 */
+    public int pruneItems() throws FeedBackendException
+    {
+        Date before = null;
+        if(itemMaxAge > 0)
+            before = new Date(System.currentTimeMillis() - itemMaxAge * 24L * 60 * 60 * 1000);
+        if(!isLimitItems && before == null)
+            return 0;
+        return backend.pruneItems(url, isLimitItems ? itemLimit : -1, before);
     }
 
     /**
@@ -606,4 +689,77 @@ public class Feed
     {
         itemLimit = i;
     }
+
+    /**
+     * Gets the number of days items are kept for
+     * 
+     * @return The maximum item age, or 0 if items are kept regardless of age
+     */
+    public int getItemMaxAge()
+    {
+        return itemMaxAge;
+    }
+
+    /**
+     * Sets the number of days items are kept for
+     * 
+     * @param days The maximum item age, or 0 to keep items regardless of age
+     */
+    public void setItemMaxAge(int days)
+    {
+        itemMaxAge = Math.max(0, days);
+    }
+
+    /**
+     * Gets the ETag the server sent with the last download of the feed
+     * 
+     * @return The ETag, or null
+     */
+    public String getETag()
+    {
+        return etag;
+    }
+
+    /**
+     * Sets the ETag the server sent with the last download of the feed
+     * 
+     * @param string The ETag
+     */
+    public void setETag(String string)
+    {
+        etag = string;
+    }
+
+    /**
+     * Gets the Last-Modified header the server sent with the
+     * last download of the feed
+     * 
+     * @return The Last-Modified header, or null
+     */
+    public String getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Sets the Last-Modified header the server sent with the
+     * last download of the feed
+     * 
+     * @param string The Last-Modified header
+     */
+    public void setLastModified(String string)
+    {
+        lastModified = string;
+    }
+
+    /**
+     * The result of fetch(), handed to store()
+     */
+    static class Download
+    {
+        //the parsed feed, or null if it wasn't modified
+        SyndFeed feed;
+        String etag;
+        String lastModified;
+    }
 }
@@ -22,6 +22,8 @@
  */
 package net.sf.thingamablog.feed;
 
+import java.util.Date;
+
 /**
  * An interface for a FeedBackend.
  * A FeedBackend manages the FeedItems for one or more Feeds
@@ -39,6 +41,18 @@ public interface FeedBackend
 	 */
 	public void addItem(FeedItem item, boolean updateIfExists) throws FeedBackendException;
 	
+	/**
+	 * Adds the items that aren't in the backend yet, such as the items
+	 * of a feed update. Items are told apart by their fingerprints, and
+	 * the new items are added all at once.
+	 * 
+	 * @param items The items to add
+	 * @return The number of items that were added
+	 * @throws FeedBackendException If an error occurs adding the items, 
+	 * in which case none of them are added
+	 */
+	public int addItems(FeedItem items[]) throws FeedBackendException;
+	
 	/**
 	 * Updates an existing item in the backend
 	 * 
@@ -55,6 +69,27 @@ public interface FeedBackend
 	 */
 	public void removeItem(long id) throws FeedBackendException;
 	
+	/**
+	 * Removes the items of a feed that are past its retention limits, 
+	 * with a single delete per limit
+	 * 
+	 * @param channelLink The feed's link
+	 * @param maxItems The number of most recently retrieved items to keep, 
+	 * or -1 to keep any number of items
+	 * @param retrievedBefore Items retrieved before this date are removed, 
+	 * or null to keep items of any age
+	 * @return The number of items that were removed
+	 * @throws FeedBackendException If an error occurs removing the items
+	 */
+	public int pruneItems(String channelLink, int maxItems, Date retrievedBefore) throws FeedBackendException;
+	
+	/**
+	 * Reclaims the space left by removed items
+	 * 
+	 * @throws FeedBackendException If an error occurs compacting the backend
+	 */
+	public void compact() throws FeedBackendException;
+	
 	/**
 	 * Retrieves an item from the backend
 	 * 
@@ -0,0 +1,182 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.feed;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Keeps the feed items within their retention limits in the background.
+ *
+ * Now and then, the compactor removes the items of every feed that are
+ * past the item limit or maximum age of the feed, and then compacts the
+ * backend, so the space of the removed items is given back.
+ *
+ * The backend serializes the compaction with the feed updates.
+ */
+public class FeedCompactor
+{
+	/** The default time between compactions, in milliseconds */
+	public static final long DEFAULT_INTERVAL = 6 * 60 * 60 * 1000L;
+
+	private static Logger logger = Logger.getLogger("net.sf.thingamablog.feed");
+
+	private FeedFolder root;
+	private FeedBackend backend;
+	private long interval = DEFAULT_INTERVAL;
+	private Thread thread;
+	private boolean stopped;
+
+	/**
+	 * Creates a compactor
+	 *
+	 * @param root The folder with the feeds to compact, including subfolders
+	 * @param backend The backend of the feeds
+	 */
+	public FeedCompactor(FeedFolder root, FeedBackend backend)
+	{
+		this.root = root;
+		this.backend = backend;
+	}
+
+	/**
+	 * Sets the time between compactions
+	 *
+	 * @param ms The interval in milliseconds
+	 */
+	public synchronized void setInterval(long ms)
+	{
+		interval = Math.max(1000, ms);
+		notifyAll();
+	}
+
+	/**
+	 * Gets the time between compactions
+	 *
+	 * @return The interval in milliseconds
+	 */
+	public synchronized long getInterval()
+	{
+		return interval;
+	}
+
+	/**
+	 * Starts compacting in the background. The first
+	 * compaction runs one interval after the start.
+	 */
+	public synchronized void start()
+	{
+		if(thread != null)
+			return;
+		stopped = false;
+		thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				while(waitInterval())
+				{
+					try
+					{
+						compact();
+					}
+					catch(Exception ex)
+					{
+						logger.log(Level.WARNING, "Unable to compact the feeds", ex);
+					}
+				}
+			}
+		}, "FeedCompactor");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Stops compacting, and waits for a compaction that is running to finish
+	 */
+	public void stop()
+	{
+		Thread t;
+		synchronized(this)
+		{
+			t = thread;
+			thread = null;
+			stopped = true;
+			notifyAll();
+		}
+
+		if(t != null && t != Thread.currentThread())
+		{
+			try
+			{
+				t.join();
+			}
+			catch(InterruptedException ie){}
+		}
+	}
+
+	/**
+	 * Removes the items that are past the retention limits of their
+	 * feeds, and then compacts the backend
+	 *
+	 * @return The number of items that were removed
+	 * @throws FeedBackendException If an error occurs while compacting
+	 */
+	public int compact() throws FeedBackendException
+	{
+		Feed feeds[] = root.getFeeds(true);
+		int removed = 0;
+		for(int i = 0; i < feeds.length && !isStopped(); i++)
+			removed += feeds[i].pruneItems();
+		if(!isStopped())
+			backend.compact();
+		return removed;
+	}
+
+	private synchronized boolean isStopped()
+	{
+		return stopped;
+	}
+
+	/**
+	 * Waits for the next compaction
+	 *
+	 * @return false if the compactor was stopped
+	 */
+	private synchronized boolean waitInterval()
+	{
+		long end = System.currentTimeMillis() + interval;
+		long left;
+		while(!stopped && (left = end - System.currentTimeMillis()) > 0)
+		{
+			try
+			{
+				wait(left);
+			}
+			catch(InterruptedException ie){}
+			end = Math.min(end, System.currentTimeMillis() + interval);
+		}
+		return !stopped;
+	}
+}
@@ -67,6 +67,21 @@ public class FeedFolder
 		return feeds;
 	} 
 	
+	/**
+	 * Gets the feeds of this folder
+	 * 
+	 * @param subFolders Include feeds in subfolders
+	 * @return The feeds
+	 */
+	public Feed[] getFeeds(boolean subFolders)
+	{
+		Vector v = new Vector();
+		collectFeeds(v, subFolders);
+		Feed feeds[] = new Feed[v.size()];
+		v.copyInto(feeds);
+		return feeds;
+	}
+	
 	public List getFeeds1()
 	{
 		return feedChildren;
@@ -196,42 +211,25 @@ public class FeedFolder
 		if(progress.isAborted())
 			return;
 		
+		Feed feeds[] = getFeeds(subFolders);
 		if(!progress.isUpdateStarted())	
-			progress.updateStart(getFeedCount(subFolders));
+			progress.updateStart(feeds.length);
 		
+		//the feeds are downloaded concurrently, and stored by this thread
+		new FeedUpdater().update(feeds, progress);
+	}
+	
+	private void collectFeeds(Vector v, boolean subFolders)
+	{
 		if(subFolders)
 		{
 			for(int i = 0; i < folderChildren.size(); i++)
 			{
 				FeedFolder subFolder = (FeedFolder)folderChildren.elementAt(i);
-				subFolder.updateFeeds(subFolders, progress);
+				subFolder.collectFeeds(v, subFolders);
 			}	
 		}
-		
-		for(int i = 0; i < feedChildren.size(); i++)
-		{
-			if(progress.isAborted())
-			{
-				progress.updateFinish();
-				return;
-			}		
-			
-			Feed f = (Feed)feedChildren.elementAt(i);
-			progress.feedUpdating(f);
-			
-			try
-			{
-				f.update();
-			}
-			catch(Exception ex)
-			{ 
-				ex.printStackTrace(); 
-			}
-			
-			int n = progress.feedUpdated();
-			if(n >= progress.getUpdateSize())
-				progress.updateFinish();		
-		}
+		v.addAll(feedChildren);
 	}
 	
 	/**
@@ -22,6 +22,9 @@
  */
 package net.sf.thingamablog.feed;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
 /**
@@ -261,6 +264,66 @@ public class FeedItem
 		return title.hashCode() + link.hashCode() + description.hashCode() + channelLink.hashCode();
 	}
 	
+	/**
+	 * Gets the fingerprint the backend tells items apart by. It's the
+	 * first 64 bits of the MD5 hash of the title, link, description and
+	 * channel link, so different items practically never share one.
+	 * 
+	 * @return the fingerprint
+	 */
+	public long getFingerprint()
+	{
+		return fingerprint(title, link, description, channelLink);
+	}
+	
+	/**
+	 * Computes the fingerprint of an item
+	 * 
+	 * @param title The title
+	 * @param link The link
+	 * @param description The description
+	 * @param channelLink The channel link
+	 * @return the fingerprint
+	 */
+	public static long fingerprint(String title, String link, String description, String channelLink)
+	{
+		MessageDigest md;
+		try
+		{
+			md = MessageDigest.getInstance("MD5");
+		}
+		catch(NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex.getMessage());
+		}
+		
+		String fields[] = {title, link, description, channelLink};
+		for(int i = 0; i < fields.length; i++)
+		{
+			//the lengths keep "ab" + "c" apart from "a" + "bc"
+			String f = fields[i] == null ? "" : fields[i];
+			try
+			{
+				byte b[] = f.getBytes("UTF-8");
+				md.update((byte)(b.length >>> 24));
+				md.update((byte)(b.length >>> 16));
+				md.update((byte)(b.length >>> 8));
+				md.update((byte)b.length);
+				md.update(b);
+			}
+			catch(UnsupportedEncodingException ex)
+			{
+				throw new IllegalStateException(ex.getMessage());
+			}
+		}
+		
+		byte hash[] = md.digest();
+		long fp = 0;
+		for(int i = 0; i < 8; i++)
+			fp = (fp << 8) | (hash[i] & 0xff);
+		return fp;
+	}
+	
     /**
      * @return
      */
@@ -0,0 +1,299 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.feed;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.Vector;
+
+
+/**
+ * Updates a set of feeds with a bounded pool of threads.
+ *
+ * The feeds are downloaded and parsed concurrently, with at most
+ * maxPerHost downloads from any one host at a time, so a slow host only
+ * holds up its own feeds. Every download has a connect and read timeout.
+ *
+ * The downloaded feeds are handed to the thread that called update(),
+ * which stores them in the backend one at a time and reports the progress.
+ * So the backend only ever sees a single writer.
+ */
+public class FeedUpdater
+{
+	public static final int DEFAULT_MAX_THREADS = 8;
+	public static final int DEFAULT_MAX_PER_HOST = 2;
+
+	private int maxThreads;
+	private int maxPerHost;
+	private int connectTimeout = Feed.DEFAULT_TIMEOUT;
+	private int readTimeout = Feed.DEFAULT_TIMEOUT;
+
+	//the state shared by the workers and the writer
+	private Vector queue;
+	private Hashtable hostLoads = new Hashtable();//host -> int[1]
+	private Vector results = new Vector();
+	private int runningWorkers;
+	private UpdateProgress progress;
+
+	/**
+	 * Creates an updater with the default limits
+	 */
+	public FeedUpdater()
+	{
+		this(DEFAULT_MAX_THREADS, DEFAULT_MAX_PER_HOST);
+	}
+
+	/**
+	 * Creates an updater
+	 *
+	 * @param maxThreads The maximum number of concurrent downloads
+	 * @param maxPerHost The maximum number of concurrent downloads from one host
+	 */
+	public FeedUpdater(int maxThreads, int maxPerHost)
+	{
+		this.maxThreads = Math.max(1, maxThreads);
+		this.maxPerHost = Math.max(1, maxPerHost);
+	}
+
+	/**
+	 * Sets the timeouts of the downloads
+	 *
+	 * @param connect The connect timeout in milliseconds
+	 * @param read The read timeout in milliseconds
+	 */
+	public void setTimeouts(int connect, int read)
+	{
+		connectTimeout = connect;
+		readTimeout = read;
+	}
+
+	/**
+	 * Updates feeds, and returns when all of them are updated or the
+	 * update is aborted. The progress must already be started.
+	 *
+	 * After an abort, the downloads that are running are left to finish
+	 * or time out in the background, and their results are dropped.
+	 *
+	 * @param feeds The feeds to update
+	 * @param progress The progress of the update
+	 */
+	public void update(Feed feeds[], UpdateProgress progress)
+	{
+		if(feeds.length == 0)
+			return;
+
+		synchronized(this)
+		{
+			if(queue != null)
+				throw new IllegalStateException("Update in progress");
+			queue = new Vector(feeds.length);
+			for(int i = 0; i < feeds.length; i++)
+				queue.add(feeds[i]);
+			results.clear();
+			hostLoads = new Hashtable();
+			this.progress = progress;
+			runningWorkers = Math.min(maxThreads, feeds.length);
+		}
+
+		for(int i = 0; i < runningWorkers; i++)
+		{
+			Thread t = new Thread(new Worker(), "FeedUpdater-" + (i + 1));
+			t.setDaemon(true);
+			t.start();
+		}
+
+		try
+		{
+			Result r;
+			while((r = nextResult()) != null)
+			{
+				if(r.download != null)
+				{
+					try
+					{
+						r.feed.store(r.download);
+					}
+					catch(Exception ex)
+					{
+						ex.printStackTrace();
+					}
+				}
+
+				int n = progress.feedUpdated();
+				if(n >= progress.getUpdateSize())
+					progress.updateFinish();
+			}
+
+			if(progress.isAborted())
+				progress.updateFinish();
+		}
+		finally
+		{
+			synchronized(this)
+			{
+				queue = null;//workers still downloading drop their results
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the next downloaded feed
+	 *
+	 * @return The result, or null if there are no more feeds or the update was aborted
+	 */
+	private synchronized Result nextResult()
+	{
+		while(results.isEmpty() && runningWorkers > 0 && !progress.isAborted())
+		{
+			try
+			{
+				wait(500);//check for aborts now and then
+			}
+			catch(InterruptedException ie){}
+		}
+
+		if(results.isEmpty() || progress.isAborted())
+			return null;
+		return (Result)results.remove(0);
+	}
+
+	/**
+	 * Takes the first queued feed whose host has a free download slot,
+	 * waiting while every remaining feed is on a busy host
+	 */
+	private synchronized Feed nextFeed(Vector q)
+	{
+		while(true)
+		{
+			if(queue != q || q.isEmpty() || progress.isAborted())
+				return null;
+
+			for(int i = 0; i < q.size(); i++)
+			{
+				Feed f = (Feed)q.elementAt(i);
+				int load[] = hostLoad(f);
+				if(load[0] < maxPerHost)
+				{
+					load[0]++;
+					q.remove(i);
+					return f;
+				}
+			}
+
+			try
+			{
+				wait(500);
+			}
+			catch(InterruptedException ie){}
+		}
+	}
+
+	private synchronized void feedFetched(Vector q, Feed f, Feed.Download d)
+	{
+		if(queue == q)
+		{
+			hostLoad(f)[0]--;
+			results.add(new Result(f, d));
+		}
+		notifyAll();
+	}
+
+	private synchronized void workerFinished(Vector q)
+	{
+		if(queue == q)
+			runningWorkers--;
+		notifyAll();
+	}
+
+	private int[] hostLoad(Feed f)
+	{
+		String host;
+		try
+		{
+			host = new URL(f.getURL()).getHost().toLowerCase();
+		}
+		catch(MalformedURLException ex)
+		{
+			host = "";
+		}
+
+		int load[] = (int[])hostLoads.get(host);
+		if(load == null)
+		{
+			load = new int[1];
+			hostLoads.put(host, load);
+		}
+		return load;
+	}
+
+	private class Worker implements Runnable
+	{
+		public void run()
+		{
+			Vector q;
+			UpdateProgress p;
+			synchronized(FeedUpdater.this)
+			{
+				q = queue;
+				p = progress;
+			}
+
+			try
+			{
+				Feed f;
+				while((f = nextFeed(q)) != null)
+				{
+					p.feedUpdating(f);
+					Feed.Download d = null;
+					try
+					{
+						d = f.fetch(connectTimeout, readTimeout);
+					}
+					catch(Exception ex)
+					{
+						ex.printStackTrace();
+					}
+					feedFetched(q, f, d);
+				}
+			}
+			finally
+			{
+				workerFinished(q);
+			}
+		}
+	}
+
+	private static class Result
+	{
+		Feed feed;
+		Feed.Download download;
+
+		Result(Feed feed, Feed.Download download)
+		{
+			this.feed = feed;
+			this.download = download;
+		}
+	}
+}
@@ -18,7 +18,7 @@ import net.sf.thingamablog.blog.TBWeblog;
 /**
  * @author Bob Tantlinger
  */
-public class ArchiveListContainer extends ListContainer
+public class ArchiveListContainer extends ListContainer implements CacheableContainer
 {
     private TBWeblog blog;
     private HyperTextTag labelTag;
@@ -28,6 +28,7 @@ public class ArchiveListContainer extends ListContainer
     private String arcUrl;
     private String format = "";
     private boolean span;
+    private boolean allArchives;
     
 	/** Archive range format attrib */
 	public static final String ARC_FORMAT = "format";
@@ -47,6 +48,7 @@ public class ArchiveListContainer extends ListContainer
         super(name);
         this.arcs = arcs;
         this.blog = blog;
+        allArchives = arcs == null;
 		labelTag = new HyperTextTag("ArchiveName");
 		linkTag = new TextTag("ArchiveLink");
 		tags.add(labelTag);
@@ -139,6 +141,15 @@ public class ArchiveListContainer extends ListContainer
         return true;
     }
     
+    /**
+     * The list of all the archives is the same on every page,
+     * a list of given archives isn't cached
+     */
+    public String getFragmentKey()
+    {
+        return allArchives ? "" : null;
+    }
+    
 	private class ArcComparator implements Comparator
 	{
 		private boolean asc;
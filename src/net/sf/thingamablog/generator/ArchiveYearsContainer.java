@@ -21,7 +21,7 @@ import net.sf.thingamablog.blog.TBWeblog;
  * @author Bob Tantlinger
  *
  */
-public class ArchiveYearsContainer extends ListContainer
+public class ArchiveYearsContainer extends ListContainer implements CacheableContainer
 {
     private String format;
     private boolean span;
@@ -137,6 +137,14 @@ public class ArchiveYearsContainer extends ListContainer
         return years.size() > 0;
     }
     
+    /* (non-Javadoc)
+     * @see net.sf.thingamablog.generator.CacheableContainer#getFragmentKey()
+     */
+    public String getFragmentKey()
+    {
+        return "";
+    }
+    
 	private class ArcComparator implements Comparator
 	{
 		private boolean asc;
@@ -15,9 +15,8 @@ import net.sf.thingamablog.blog.ArchiveRange;
 import net.sf.thingamablog.blog.Author;
 import net.sf.thingamablog.blog.BackendException;
 import net.sf.thingamablog.blog.BlogEntry;
-import net.sf.thingamablog.blog.EntryEnumeration;
+import net.sf.thingamablog.blog.EntryIndex;
 import net.sf.thingamablog.blog.TBWeblog;
-import net.sf.thingamablog.blog.WeblogBackend;
 import net.sf.thingamablog.transport.FCPTransport;
 
 
@@ -239,19 +238,16 @@ public class BlogEntryContainer extends ListContainer
 		return 	limit && pageType == RSS_PAGE;
 	}
     
-    private EntryEnumeration getEntriesForPage(boolean sortAsc) throws BackendException
+    private BlogEntry[] getEntriesForPage(boolean sortAsc) throws BackendException
     {
-		WeblogBackend backend = blog.getBackend();		
-		EntryEnumeration eEnum = null;    		
+		EntryIndex index = blog.getEntryIndex();
 		if(pageType == ARC_PAGE)
-			eEnum = backend.getEntriesBetween(
-				blog.getKey(), arc.getStartDate(), arc.getExpirationDate(), sortAsc);
+			return index.getEntriesBetween(
+				arc.getStartDate(), arc.getExpirationDate(), sortAsc);
 		else if(pageType == CAT_PAGE)
-			eEnum = backend.getEntriesFromCategory(blog.getKey(), cat, sortAsc);
-		else
-			eEnum = backend.getEntries(blog.getKey(), sortAsc);
+			return index.getEntriesFromCategory(cat, sortAsc);
 		
-		return eEnum;
+		return index.getEntries(sortAsc);
     }    
 	
     /* (non-Javadoc)
@@ -291,58 +287,28 @@ public class BlogEntryContainer extends ListContainer
     	
     	try
     	{
-    		EntryEnumeration  eEnum = null;
+    		//the index only has entries dated after the archive base date
     		if(!shouldLimit)
     		{				
-				eEnum = getEntriesForPage(asc);
-				while(eEnum.hasMoreEntries())
-				{						
-					BlogEntry be = eEnum.nextEntry();
-					if(be.getDate().before(blog.getArchiveBaseDate()))
-						continue;
-					addListElement(be);
-				}
+				BlogEntry ents[] = getEntriesForPage(asc);
+				for(int i = 0; i < ents.length; i++)
+					addListElement(ents[i]);
     		}
     		else
     		{				
-				eEnum = getEntriesForPage(false);//newest first
-				int count = 0;
+				BlogEntry ents[] = getEntriesForPage(false);//newest first
+				int count = Math.min(entryLimit, ents.length);
 				if(!asc) //newest first
 				{
-					while(eEnum.hasMoreEntries())
-					{
-						BlogEntry be = eEnum.nextEntry();
-						if(count >= entryLimit || be.getDate().before(blog.getArchiveBaseDate()))
-							break;						
-						addListElement(be);
-						count++;
-					}
+					for(int i = 0; i < count; i++)
+						addListElement(ents[i]);
 				}
 				else //oldest first
 				{				
-					//Vectorize
-					Long h[] = new Long[entryLimit];					
-					while(eEnum.hasMoreEntries())
-					{
-						if(count >= entryLimit)
-							break;			
-						BlogEntry be = eEnum.nextEntry();
-						h[count++] = new Long(be.getID());
-						//System.out.println(h[count]);		
-					}
-					for(int i = (h.length - 1); i > -1; --i)					
-					{						
-						if(h[i] != null)
-						{
-							BlogEntry be = blog.getEntry(h[i].longValue());							
-							if(be.getDate().before(blog.getArchiveBaseDate()))
-								continue;
-							addListElement(be);
-						}
-					}
+					for(int i = count - 1; i > -1; --i)
+						addListElement(ents[i]);
 				}
     		}    		
-			eEnum.close();	
     	}
     	catch(Exception ex)
     	{
@@ -381,7 +347,10 @@ public class BlogEntryContainer extends ListContainer
         ListElement e = (ListElement)entryIDs.elementAt(index);
         try
         {
-            curEntry = blog.getEntry(e.id);
+            //all the tags of an entry are fetched in a row,
+            //so the entry is only read once
+            if(curEntry == null || curEntry.getID() != e.id)
+                curEntry = blog.getEntryIndex().getEntry(e.id);
             Author auth = curEntry.getAuthor();
             if(auth == null)
                 auth = new Author();
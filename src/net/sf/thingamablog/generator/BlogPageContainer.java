@@ -30,6 +30,7 @@ public class BlogPageContainer implements TemplateContainer
     
     private String pageTitle = "";
     private String charSet = "UTF-8";
+    private Date currentDate;
  
     
     public BlogPageContainer(TBWeblog b, String pageTitle, String charSet)
@@ -45,6 +46,21 @@ public class BlogPageContainer implements TemplateContainer
             containers.add(tc);
     }
     
+    /**
+     * Sets the date the CurrentDate tag and the calendars of the page show
+     * 
+     * @param d The date, or null for the time the page is generated
+     */
+    void setCurrentDate(Date d)
+    {
+        currentDate = d;
+        for(int i = 0; i < containers.size(); i++)
+        {
+            if(containers.elementAt(i) instanceof CalendarContainer)
+                ((CalendarContainer)containers.elementAt(i)).setCurrentDate(d);
+        }
+    }
+    
     public void addCustomTag(CustomTag t)
     {
         customTags.put(t, t.getValue());
@@ -76,7 +92,7 @@ public class BlogPageContainer implements TemplateContainer
                             tagValues.put(new TextTag("EditionNumber"), (((FCPTransport)blog.getPublishTransport()).getEdition()+ 1) +"");        
         }
         tagValues.put(new TextTag("IndexPageLink"), blog.getBaseUrl() + blog.getArchiveIndexFileName());
-        tagValues.put(curDateTag, new Date());
+        tagValues.put(curDateTag, currentDate == null ? new Date() : currentDate);
         tagValues.put(new TextTag("PageTitle"), pageTitle);
         tagValues.put(new TextTag("AppName"), TBGlobals.APP_NAME);
         tagValues.put(new TextTag("AppVersion"), TBGlobals.VERSION);
@@ -0,0 +1,23 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+
+/**
+ * A container whose output only depends on its attributes and on the
+ * context of the page it's on, such as the category list or the calendar.
+ * Its output is rendered once per publish for each context and reused on
+ * every page that shares the context.
+ */
+public interface CacheableContainer extends TemplateContainer
+{
+    /**
+     * Gets the key of the page context the output of the container
+     * depends on. Pages with the same key get the same output.
+     * 
+     * @return The key, or null if the output can't be reused
+     */
+    public String getFragmentKey();
+}
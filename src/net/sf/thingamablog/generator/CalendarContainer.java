@@ -19,7 +19,7 @@ import net.sf.thingamablog.blog.TBWeblog;
 /**
  * @author Owner
  */
-public class CalendarContainer implements TemplateContainer
+public class CalendarContainer implements CacheableContainer
 {
 
     static final int TOP_PAGE = 0;
@@ -48,6 +48,8 @@ public class CalendarContainer implements TemplateContainer
     private TemplateTag monthLabelTag = new DateTag("MonthLabel");
     
     private int month, year;
+    //the date of a top level or category page, or null for the current date
+    private Date currentDate;
     
     
     /**
@@ -82,9 +84,19 @@ public class CalendarContainer implements TemplateContainer
         ht.put(DateTag.FORMAT, "MMMM yyyy");
     }
     
+    /**
+     * Sets the date whose month is shown on top level and category pages
+     * 
+     * @param d The date, or null for the current date
+     */
+    void setCurrentDate(Date d)
+    {
+        currentDate = d;
+    }
+    
     private int getCurrentMonth()
     {
-        Date d = new Date();
+        Date d = currentDate == null ? new Date() : currentDate;
         if(pageType == ARC_PAGE)
             d = archive.getStartDate();
         calendar.setTime(d);
@@ -93,7 +105,7 @@ public class CalendarContainer implements TemplateContainer
     
     private int getCurrentYear()
     {
-        Date d = new Date();
+        Date d = currentDate == null ? new Date() : currentDate;
         if(pageType == ARC_PAGE)
             d = archive.getStartDate();
         calendar.setTime(d);
@@ -182,6 +194,20 @@ public class CalendarContainer implements TemplateContainer
         return true;
     }
 
+    /**
+     * The calendar of an archive page only highlights the days of the
+     * archive, and the calendar of a category page the days of the category
+     */
+    public String getFragmentKey()
+    {
+        if(pageType == ARC_PAGE)
+            return "arc:" + archive.getStartDate().getTime() + ":" + 
+                archive.getExpirationDate().getTime();
+        if(pageType == CAT_PAGE)
+            return "cat:" + category;
+        return "top";
+    }
+    
     /* (non-Javadoc)
      * @see net.sf.thingamablog.generator.TemplateContainer#prefix()
      */
@@ -9,7 +9,7 @@ import java.util.Vector;
 
 import net.sf.thingamablog.blog.ArchiveRange;
 import net.sf.thingamablog.blog.BlogEntry;
-import net.sf.thingamablog.blog.EntryEnumeration;
+import net.sf.thingamablog.blog.EntryIndex;
 import net.sf.thingamablog.blog.TBWeblog;
 
 
@@ -22,7 +22,7 @@ public class CalendarDayContainer extends ListContainer
 	static final int CAT_PAGE = 2;
     
     private Calendar cal;
-    private static Calendar monthCheck = Calendar.getInstance();
+    private Calendar monthCheck = Calendar.getInstance();
     
     private int numDays = 7;
     private Vector days = new Vector();
@@ -137,37 +137,9 @@ public class CalendarDayContainer extends ListContainer
 		BlogEntry be = null;
 		try
 		{
-			EntryEnumeration eEnum = blog.getBackend().getEntriesBetween(
-				blog.getKey(), arc.getStartDate(), arc.getExpirationDate(), true);			
-			while(eEnum.hasMoreEntries())
-			{
-				if(pageType == CAT_PAGE)
-				{
-					BlogEntry e = eEnum.nextEntry();
-					String cats[] = e.getCategories();
-								
-					boolean found = false;
-					for(int i = 0; i < cats.length; i++)
-					{
-						if(cats[i].equals(category))
-						{
-							be = e;
-							found = true;
-							break;
-						}
-					}
-					
-					if(found)
-						break;//break out of while					
-				}
-				else
-				{				
-					be = eEnum.nextEntry();
-					break;//we only want this entry
-				}
-			}
-			
-			eEnum.close();			
+			be = blog.getEntryIndex().getFirstEntryBetween(
+				arc.getStartDate(), arc.getExpirationDate(), 
+				pageType == CAT_PAGE ? category : null);
 		}
 		catch(Exception ex)
 		{
@@ -200,38 +172,19 @@ public class CalendarDayContainer extends ListContainer
 			if(blog.getArchiveBaseDate().after(arc.getStartDate()))							
 				return false;			
 			
-			EntryEnumeration eEnum = blog.getBackend().getEntriesBetween(
-					blog.getKey(), arc.getStartDate(), arc.getExpirationDate(), false);			
-			
-			boolean hasEntries = false;
+			EntryIndex index = blog.getEntryIndex();
 			if(pageType == TOP_PAGE || pageType == ARC_PAGE)
 			{			
 				//doesn't matter which cat
-				hasEntries = eEnum.hasMoreEntries();				
+				return index.getEntryCount(arc.getStartDate(), arc.getExpirationDate()) > 0;
 			}
 			else if(pageType == CAT_PAGE)
 			{
-				while(eEnum.hasMoreEntries())//find first matching cat
-				{
-					BlogEntry be = eEnum.nextEntry();
-					String cats[] = be.getCategories();
-										
-					for(int i = 0; i < cats.length; i++)
-					{
-						if(cats[i].equals(category))
-						{
-							hasEntries = true;
-							break;
-						}
-					}
-					
-					if(hasEntries)
-						break;
-				}
+				return index.getFirstEntryBetween(
+					arc.getStartDate(), arc.getExpirationDate(), category) != null;
 			}
 			
-			eEnum.close();
-			return hasEntries;			
+			return false;			
 		}
 		catch(Exception ex){}
 		
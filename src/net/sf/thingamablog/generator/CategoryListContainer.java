@@ -18,7 +18,7 @@ import net.sf.thingamablog.blog.TBWeblog;
 /**
  * @author Bob Tantlinger
  */
-public class CategoryListContainer extends ListContainer
+public class CategoryListContainer extends ListContainer implements CacheableContainer
 {
     private static final int ENTRY_CATS = 0;
     private static final int BLOG_CATS = 1;
@@ -72,7 +72,7 @@ public class CategoryListContainer extends ListContainer
             if(mode == ENTRY_CATS)
                 cats = entry.getCategories();
             else
-                cats = blog.getCategories();            
+                cats = blog.getEntryIndex().getCategories();            
         }
         catch(Exception ex)
         {
@@ -143,6 +143,15 @@ public class CategoryListContainer extends ListContainer
         return true;
     }
     
+    /**
+     * The categories of the weblog are the same on every page,
+     * the categories of an entry aren't cached
+     */
+    public String getFragmentKey()
+    {
+        return mode == BLOG_CATS ? "" : null;
+    }
+    
 	private class CatComparator implements Comparator
 	{
 		private boolean asc;		
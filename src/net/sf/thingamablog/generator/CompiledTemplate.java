@@ -0,0 +1,495 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+
+/**
+ * An immutable, pre-scanned form of a template.
+ *
+ * The template text is scanned once for its &lt;$Tag$&gt; markup.
+ * The container structure of a region of the template depends on which
+ * container names are registered while it is rendered, so the node tree
+ * of each region is built the first time it is rendered with a given set
+ * of container names and reused from then on.
+ *
+ * A CompiledTemplate is safe to share between threads.
+ */
+public final class CompiledTemplate
+{
+	static final String LT = "<";
+	static final String GT = ">";
+	static final String END_LT = "</";
+	static final String TAG_LT = LT + '$';
+	static final String TAG_GT = '$' + GT;
+
+	private static final Node[] NO_NODES = new Node[0];
+
+	private final String text;
+	private final Tag tags[];
+	private final Map plans = new HashMap();
+
+	private CompiledTemplate(String text)
+	{
+		this.text = text;
+		this.tags = scanTags(text);
+	}
+
+	/**
+	 * Compiles template text
+	 *
+	 * @param text The template text
+	 * @return The compiled template
+	 */
+	public static CompiledTemplate compile(String text)
+	{
+		if(text == null)
+			text = "";
+		return new CompiledTemplate(text);
+	}
+
+	/**
+	 * Gets the text the template was compiled from
+	 *
+	 * @return The template text
+	 */
+	public String getText()
+	{
+		return text;
+	}
+
+	/**
+	 * Gets the length of the template text
+	 *
+	 * @return The length
+	 */
+	public int length()
+	{
+		return text.length();
+	}
+
+	/**
+	 * Gets the node tree of a region of the template.
+	 *
+	 * @param start The start of the region
+	 * @param end The end of the region
+	 * @param names The names of the containers that can be claimed in the region
+	 * @param namesKey The key of the names, as returned by namesKey(names)
+	 * @return The nodes of the region
+	 */
+	Node[] plan(int start, int end, Set names, String namesKey)
+	{
+		String key = start + ":" + end + ":" + namesKey;
+		synchronized(plans)
+		{
+			Node n[] = (Node[])plans.get(key);
+			if(n != null)
+				return n;
+		}
+
+		Node n[] = buildPlan(start, end, names);
+		synchronized(plans)
+		{
+			plans.put(key, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the node tree of text that isn't part of a template, such as a
+	 * tag value that contains template markup. The result isn't cached.
+	 */
+	static Node[] planText(String text, Set names)
+	{
+		CompiledTemplate ct = new CompiledTemplate(text);
+		return ct.buildPlan(0, text.length(), names);
+	}
+
+	static String namesKey(Set names)
+	{
+		if(names.isEmpty())
+			return "";
+		StringBuffer sb = new StringBuffer();
+		for(Iterator it = new TreeSet(names).iterator(); it.hasNext();)
+			sb.append(it.next()).append('\n');
+		return sb.toString();
+	}
+
+	private static Tag[] scanTags(String text)
+	{
+		List list = new ArrayList();
+		int pos = 0;
+		int s;
+		while((s = text.indexOf(TAG_LT, pos)) > -1)
+		{
+			int e = text.indexOf(TAG_GT, s + TAG_LT.length());
+			if(e < 0)//no more complete tags
+				break;
+
+			e += TAG_GT.length();
+			String var = text.substring(s, e);
+			String name = tagName(var);
+			if(name.length() > 0)
+				list.add(new Tag(text, s, e, name, var));
+			pos = e;
+		}
+
+		return (Tag[])list.toArray(new Tag[list.size()]);
+	}
+
+	private static String tagName(String var)
+	{
+		int s = TAG_LT.length();
+		int e = var.length() - TAG_GT.length();
+		int i = s;
+		while(i < e && !Character.isWhitespace(var.charAt(i)))
+			i++;
+		return var.substring(s, i);
+	}
+
+	private int firstTagAtOrAfter(int pos)
+	{
+		int lo = 0, hi = tags.length;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(tags[mid].start < pos)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private Node[] buildPlan(int start, int end, Set names)
+	{
+		if(start >= end)
+			return NO_NODES;
+
+		List nodes = new ArrayList();
+		int textStart = start;
+		int p = start;
+		int ti = firstTagAtOrAfter(start);
+
+		while(p < end)
+		{
+			int lt = text.indexOf('<', p);
+			if(lt < 0 || lt >= end)
+				break;
+
+			while(ti < tags.length && tags[ti].start < lt)
+				ti++;
+
+			if(ti < tags.length && tags[ti].start == lt)
+			{
+				Tag tag = tags[ti];
+				if(tag.end <= end)
+				{
+					addText(nodes, textStart, lt);
+					nodes.add(tag);
+					p = textStart = tag.end;
+					ti++;
+					continue;
+				}
+			}
+
+			if(ti > 0 && tags[ti - 1].end > lt)//inside the attributes of a tag
+			{
+				p = lt + 1;
+				continue;
+			}
+
+			Container c = names.isEmpty() ? null : scanContainer(lt, end, names);
+			if(c != null)
+			{
+				addText(nodes, textStart, lt);
+				nodes.add(c);
+				p = textStart = c.end;
+				continue;
+			}
+
+			p = lt + 1;
+		}
+
+		addText(nodes, textStart, end);
+		return (Node[])nodes.toArray(new Node[nodes.size()]);
+	}
+
+	private void addText(List nodes, int s, int e)
+	{
+		if(e > s)
+			nodes.add(new Text(text, s, e));
+	}
+
+	/**
+	 * Tries to match a container occurrence that opens at lt. As with
+	 * the original processor, the open tag ends at the first '>' and the
+	 * container ends at the first matching close tag.
+	 */
+	private Container scanContainer(int lt, int end, Set names)
+	{
+		int ns = lt + LT.length();
+		int ne = ns;
+		while(ne < end)
+		{
+			char ch = text.charAt(ne);
+			if(ch == '>' || Character.isWhitespace(ch))
+				break;
+			ne++;
+		}
+
+		if(ne == ns || ne >= end)
+			return null;
+
+		String name = text.substring(ns, ne);
+		if(!names.contains(name))
+			return null;
+
+		int otEnd = findGT(ne, end);
+		if(otEnd < 0)//incomplete tag
+			return null;
+
+		String closeTag = END_LT + name + GT;
+		int ce = text.indexOf(closeTag, otEnd + 1);
+		if(ce < 0 || ce + closeTag.length() > end)//incomplete tag
+			return null;
+
+		Node open[] = buildPlan(lt, otEnd + 1, Collections.EMPTY_SET);
+		return new Container(this, name, text.substring(lt, otEnd + 1), open,
+			otEnd + 1, ce, ce + closeTag.length());
+	}
+
+	/**
+	 * Finds the first '>' that isn't part of a &lt;$Tag$&gt;
+	 */
+	private int findGT(int pos, int end)
+	{
+		int ti = firstTagAtOrAfter(pos);
+		while(pos < end)
+		{
+			int gt = text.indexOf('>', pos);
+			if(gt < 0 || gt >= end)
+				return -1;
+
+			while(ti < tags.length && tags[ti].end <= gt)
+				ti++;
+			if(ti < tags.length && tags[ti].start < gt && gt < tags[ti].end)
+			{
+				pos = tags[ti].end;
+				continue;
+			}
+			return gt;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses the attributes of a tag or container. This is the attribute
+	 * parser of the original string based processor.
+	 *
+	 * @param t The text of the tag or container
+	 * @param te The element
+	 * @return The attributes, including defaults for missing attributes
+	 */
+	static Hashtable parseAttributes(String t, TemplateElement te)
+	{
+		Hashtable defaults = te.getDefaultAttributes();
+		if(defaults == null)//don't allow null attributes
+			defaults = new Hashtable();//empty attributes
+		Hashtable ht = new Hashtable(defaults);//copy defaults
+
+		String attribsStart = (te instanceof TemplateTag ? TAG_LT : LT) + te.getName();
+		String attribsEnd = te instanceof TemplateTag ? TAG_GT : GT;
+		int s = t.indexOf(attribsStart, 0);//open tag begin
+		if(s == -1)//not found
+			return ht;
+
+		int e = t.indexOf(attribsEnd, s + attribsStart.length());
+		if(e == -1 || e == (s + attribsStart.length()))//no attributes given, use defaults
+			return ht;
+
+		String attribs = t.substring(s + attribsStart.length(), e).trim();
+		attribs = " " + attribs;//ensure the first attrib has a prefixed space
+		char ws[] = {' ', '\n', '\t'};
+
+		for(Enumeration eEnum = ht.keys(); eEnum.hasMoreElements();)
+		{
+			String key = eEnum.nextElement().toString();
+			int p = 0;
+			for(int i = 0; i < ws.length; i++)
+			{
+				p = attribs.indexOf(ws[i] + key);
+				if(p != -1)
+					break;
+			}
+			if(p == -1)//attribute wasn't found, default will be used
+				continue;
+			//skip over the space and attribute name
+			p += key.length() + 1;
+
+			try
+			{
+				//iterate thru whitespace till we hit equals
+				while(Character.isWhitespace(attribs.charAt(p++)));
+				if(attribs.charAt(--p) != '=')
+					break;
+				//iterate thru whitespace till we hit opening quote
+				while(Character.isWhitespace(attribs.charAt(++p)));
+				if(attribs.charAt(p) != '\"')
+					break;
+
+				int end = attribs.indexOf("\"", p + 1);//end quote
+				if(end == -1)
+					break;//no closing quote
+
+				String val = attribs.substring(p, end);
+				//remove quotes
+				if(val.startsWith("\""))
+					val = val.substring(1, val.length());
+
+				if(val.endsWith("\""))
+					val = val.substring(0, val.length() - 1);
+
+				ht.put(key, val);
+			}
+			catch(IndexOutOfBoundsException ex)
+			{
+				break;
+			}
+		}
+
+		return ht;
+	}
+
+	/**
+	 * A node of a compiled template
+	 */
+	static abstract class Node
+	{
+	}
+
+	/**
+	 * Literal text
+	 */
+	static final class Text extends Node
+	{
+		final String src;
+		final int start, end;
+
+		Text(String src, int start, int end)
+		{
+			this.src = src;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Node that can cache the attributes it parses, as long as
+	 * the default attributes of the element don't change
+	 */
+	static abstract class AttributeNode extends Node
+	{
+		private Hashtable lastDefaults;
+		private Hashtable lastAttribs;
+
+		abstract String source();
+
+		Hashtable attributes(TemplateElement te)
+		{
+			Hashtable defaults = te.getDefaultAttributes();
+			synchronized(this)
+			{
+				if(lastAttribs != null &&
+				(defaults == null ? lastDefaults == null : defaults.equals(lastDefaults)))
+					return new Hashtable(lastAttribs);
+			}
+
+			Hashtable ht = parseAttributes(source(), te);
+			synchronized(this)
+			{
+				lastDefaults = defaults == null ? null : new Hashtable(defaults);
+				lastAttribs = ht;
+			}
+			return new Hashtable(ht);
+		}
+	}
+
+	/**
+	 * A &lt;$Tag attrib="value"$&gt;
+	 */
+	static final class Tag extends AttributeNode
+	{
+		final String src;
+		final int start, end;
+		final String name;
+		final String var;
+
+		Tag(String src, int start, int end, String name, String var)
+		{
+			this.src = src;
+			this.start = start;
+			this.end = end;
+			this.name = name;
+			this.var = var;
+		}
+
+		String source()
+		{
+			return var;
+		}
+	}
+
+	/**
+	 * A &lt;Container attrib="value"&gt;body&lt;/Container&gt;
+	 */
+	static final class Container extends AttributeNode
+	{
+		final CompiledTemplate owner;
+		final String name;
+		final String openTag;
+		final Node open[];
+		final int bodyStart, bodyEnd, end;
+
+		Container(CompiledTemplate owner, String name, String openTag, Node open[],
+			int bodyStart, int bodyEnd, int end)
+		{
+			this.owner = owner;
+			this.name = name;
+			this.openTag = openTag;
+			this.open = open;
+			this.bodyStart = bodyStart;
+			this.bodyEnd = bodyEnd;
+			this.end = end;
+		}
+
+		/**
+		 * Indicates if the open tag has &lt;$Tags$&gt; that must be
+		 * substituted before the attributes can be parsed
+		 */
+		boolean hasDynamicAttributes()
+		{
+			for(int i = 0; i < open.length; i++)
+				if(open[i] instanceof Tag)
+					return true;
+			return false;
+		}
+
+		String source()
+		{
+			return openTag;
+		}
+	}
+}
@@ -6,6 +6,8 @@ package net.sf.thingamablog.generator;
 
 import java.util.Hashtable;
 
+import net.sf.thingamablog.blog.DependencyGraph;
+
 
 /**
  * @author Bob Tantlinger
@@ -24,10 +26,12 @@ public class CustomTag extends TextTag
     }
     
 	/**
-	 *  overridden from super class to just return the value
+	 *  overridden from super class to just return the value, and
+	 *  to record that the page being generated uses the tag
 	 */
 	public String process(Object obj, Hashtable attribs)
 	{        
+		DependencyGraph.record(DependencyGraph.customTag(getName()));
 		return super.process(obj, attribs);
 	}
 	
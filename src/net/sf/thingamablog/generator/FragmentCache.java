@@ -0,0 +1,203 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import net.sf.thingamablog.blog.DependencyGraph;
+
+
+/**
+ * A cache of the rendered output of the containers of a template that
+ * are the same on many pages, such as the category and archive lists.
+ *
+ * A publish brackets the pages it generates with beginSession() and
+ * endSession(). Within a session the output of a CacheableContainer is
+ * kept for each occurrence of the container in a template, its attributes
+ * and its fragment key, and is copied into the pages that render the
+ * same occurrence again. Nothing is cached outside a session, and the
+ * cache is cleared when a session ends.
+ *
+ * A fragment keeps the dependencies it recorded while it was rendered,
+ * and records them again on every page it's reused on. The cache holds a
+ * limited number of characters, and forgets the least recently used
+ * fragments first. It's safe to use from several threads.
+ */
+public class FragmentCache
+{
+	/** The default maximum number of cached characters */
+	public static final long DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+	
+	private long maxSize = DEFAULT_MAX_SIZE;
+	
+	//Key -> Fragment, least recently used first
+	private LinkedHashMap fragments = new LinkedHashMap(16, 0.75f, true);
+	private long size;
+	private boolean inSession;
+	
+	private int hits;
+	private int misses;
+	
+	/**
+	 * Starts a publish session, and resets the hit and miss counts
+	 */
+	public synchronized void beginSession()
+	{
+		fragments.clear();
+		size = 0;
+		inSession = true;
+		hits = misses = 0;
+	}
+	
+	/**
+	 * Ends the publish session and forgets the cached fragments
+	 */
+	public synchronized void endSession()
+	{
+		inSession = false;
+		fragments.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Indicates if a publish session is in progress
+	 * @return true if fragments are cached
+	 */
+	public synchronized boolean isInSession()
+	{
+		return inSession;
+	}
+	
+	/**
+	 * Gets the output of a container, and records its dependencies on
+	 * the page the current thread is generating
+	 * 
+	 * @param node The occurrence of the container in a template
+	 * @param key The name, fragment key and attributes of the container
+	 * @return The output, or null if it isn't cached
+	 */
+	synchronized String get(Object node, String key)
+	{
+		if(!inSession)
+			return null;
+		
+		Fragment f = (Fragment)fragments.get(new Key(node, key));
+		//a fragment rendered without recording can't be replayed
+		if(f == null || (f.deps == null && DependencyGraph.isRecording()))
+		{
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		DependencyGraph.replay(f.deps);
+		return f.text;
+	}
+	
+	/**
+	 * Caches the output of a container
+	 * 
+	 * @param node The occurrence of the container in a template
+	 * @param key The name, fragment key and attributes of the container
+	 * @param text The output
+	 * @param deps The dependencies recorded while rendering it, or null
+	 */
+	synchronized void put(Object node, String key, String text, DependencyGraph.Capture deps)
+	{
+		if(!inSession || text.length() > maxSize)
+			return;
+		
+		Fragment old = (Fragment)fragments.put(new Key(node, key), new Fragment(text, deps));
+		if(old != null)
+			size -= old.text.length();
+		size += text.length();
+		
+		Iterator it = fragments.values().iterator();
+		while(size > maxSize && it.hasNext())
+		{
+			size -= ((Fragment)it.next()).text.length();
+			it.remove();
+		}
+	}
+	
+	/**
+	 * Gets the number of fragments that were reused in the current or last session
+	 * @return the number of hits
+	 */
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+	
+	/**
+	 * Gets the number of fragments that were rendered in the current or last session
+	 * @return the number of misses
+	 */
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+	
+	/**
+	 * Gets the maximum number of characters of cached fragments
+	 * @return the number of characters
+	 */
+	public synchronized long getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	/**
+	 * Sets the maximum number of characters of cached fragments. Larger
+	 * fragments are rendered every time.
+	 * @param n the number of characters
+	 */
+	public synchronized void setMaxSize(long n)
+	{
+		maxSize = Math.max(0, n);
+	}
+	
+	/**
+	 * The key of a fragment. Occurrences of a container are told apart
+	 * by the identity of their template nodes.
+	 */
+	private static class Key
+	{
+		final Object node;
+		final String key;
+		
+		Key(Object node, String key)
+		{
+			this.node = node;
+			this.key = key;
+		}
+		
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return k.node == node && k.key.equals(key);
+		}
+		
+		public int hashCode()
+		{
+			return System.identityHashCode(node) * 31 + key.hashCode();
+		}
+	}
+	
+	private static class Fragment
+	{
+		final String text;
+		final DependencyGraph.Capture deps;
+		
+		Fragment(String text, DependencyGraph.Capture deps)
+		{
+			this.text = text;
+			this.deps = deps;
+		}
+	}
+}
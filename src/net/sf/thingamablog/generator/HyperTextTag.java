@@ -7,9 +7,15 @@ package net.sf.thingamablog.generator;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import net.sf.thingamablog.xml.Entities;
 
@@ -41,6 +47,25 @@ public class HyperTextTag extends TextTag
         ENTITIES.put("html40_full", Entities.HTML40_FULL);
     }
     
+    //the attributes that change the text, in the order of the memo keys
+    private static final String TRANSFORMS[] = 
+        {FIND, REPLACE, WORDS, CLOSE_EMPTY_TAGS, TIDY_HTML, STRIP_HTML, ENCODE_HTML, ESCAPE, UNESCAPE};
+    
+    private static final Pattern QUOT = Pattern.compile("\\&quot;");
+    private static final Pattern HTML_TAG = Pattern.compile("\\<.*?\\>");
+    
+    /*
+     * The same entry text is rendered on the front page, its archive,
+     * category and entry pages and the feeds, usually with the same
+     * attributes. So the transformed text is memoized, keyed by the text
+     * and the attributes, and so is the output of Tidy. The compiled 
+     * patterns of the find and replace attributes are kept too.
+     */
+    private static final Memo RESULTS = new Memo(2000, 4 * 1024 * 1024);
+    private static final Memo TIDIED = new Memo(1000, 2 * 1024 * 1024);
+    //find + "\0" + replace -> Replacement[]
+    private static final Memo PATTERNS = new Memo(200, 64 * 1024);
+    
     public HyperTextTag(String name)
     {
         super(name);
@@ -62,21 +87,11 @@ public class HyperTextTag extends TextTag
         Object rep = attrs.get(REPLACE);
         if(!attrs.get(FIND).toString().equals("") && rep != EMPTY)
         {
-            String regex = attrs.get(FIND).toString().replaceAll("\\&quot;", "\\\"");            
-            String replace = rep.toString().replaceAll("\\&quot;", "\\\"");
-            
-            List regexs = tokenizeFindReplaceValues(regex);
-            List reps = tokenizeFindReplaceValues(replace);
-            for(int i = 0; i < regexs.size(); i++)
+            Replacement reps[] = getReplacements(attrs.get(FIND).toString(), rep.toString());
+            for(int i = 0; i < reps.length; i++)
             {
-                String re = regexs.get(i).toString();
-                String rp = "";
                 try{
-                    rp = reps.get(i).toString();
-                }catch(IndexOutOfBoundsException ex){}
-                //System.out.println(re + "-" + rp);
-                try{
-                    text = text.replaceAll(re, rp);
+                    text = reps[i].pattern.matcher(text).replaceAll(reps[i].replacement);
                 }catch(Exception ex){}
             }
         }
@@ -84,6 +99,35 @@ public class HyperTextTag extends TextTag
         return text;
     }
     
+    private Replacement[] getReplacements(String find, String rep)
+    {
+        String key = find + '\0' + rep;
+        Replacement reps[] = (Replacement[])PATTERNS.get(key);
+        if(reps != null)
+            return reps;
+        
+        String regex = QUOT.matcher(find).replaceAll("\\\"");            
+        String replace = QUOT.matcher(rep).replaceAll("\\\"");
+        
+        List regexs = tokenizeFindReplaceValues(regex);
+        List replaces = tokenizeFindReplaceValues(replace);
+        Vector v = new Vector();
+        for(int i = 0; i < regexs.size(); i++)
+        {
+            String rp = "";
+            try{
+                rp = replaces.get(i).toString();
+            }catch(IndexOutOfBoundsException ex){}
+            try{
+                v.add(new Replacement(Pattern.compile(regexs.get(i).toString()), rp));
+            }catch(PatternSyntaxException ex){}//skipped, as replaceAll() would fail
+        }
+        
+        reps = (Replacement[])v.toArray(new Replacement[v.size()]);
+        PATTERNS.put(key, reps, key.length());
+        return reps;
+    }
+    
     private List tokenizeFindReplaceValues(String val)
     {
         String delim = ",";
@@ -117,7 +161,67 @@ public class HyperTextTag extends TextTag
     public String process(Object obj, Hashtable attribs)
     {       
         String text = obj.toString();
+        String key = memoKey(attribs);
+        if(key == null)//nothing to do
+            return text;
+        
+        key = key + text;
+        String result = (String)RESULTS.get(key);
+        if(result == null)
+        {
+            result = transform(text, attribs);
+            RESULTS.put(key, result, key.length() + result.length());
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the attributes that change the text as a key, 
+     * or null if the text is returned as it is
+     */
+    private String memoKey(Hashtable attribs)
+    {
+        StringBuffer sb = null;
+        for(int i = 0; i < TRANSFORMS.length; i++)
+        {
+            Object val = attribs.get(TRANSFORMS[i]);
+            if(sb == null && !isNoOp(TRANSFORMS[i], val))
+                sb = new StringBuffer();
+            if(sb == null)
+                continue;
+            sb.append(TRANSFORMS[i]).append('=');
+            sb.append(val == EMPTY ? "\1" : String.valueOf(val)).append('\0');
+        }
+        if(sb == null)
+            return null;
         
+        //the attributes before the first one that matters were no-ops
+        return sb.toString();
+    }
+    
+    private boolean isNoOp(String attr, Object val)
+    {
+        if(val == null)
+            return true;
+        if(attr.equals(FIND))
+            return val.toString().equals("");
+        if(attr.equals(REPLACE))
+            return true;//does nothing without find
+        if(attr.equals(WORDS))
+        {
+            try{
+                return Integer.parseInt(val.toString()) <= 0;
+            }catch(Exception ex){
+                return true;
+            }
+        }
+        if(attr.equals(ESCAPE) || attr.equals(UNESCAPE))
+            return val.toString().equals("0");
+        return !val.toString().equals("1");
+    }
+    
+    private String transform(String text, Hashtable attribs)
+    {
         text = findReplace(text, attribs);
         
         int len = 0;
@@ -136,7 +240,7 @@ public class HyperTextTag extends TextTag
             text = tidyHTML(text);
         
         if(attribs.get(STRIP_HTML).toString().equals("1"))           
-            text = tidyHTML(text).replaceAll("\\<.*?\\>","");
+            text = HTML_TAG.matcher(tidyHTML(text)).replaceAll("");
                     
         if(attribs.get(ENCODE_HTML).toString().equals("1"))
         	text = encodeHTML(text);
@@ -145,7 +249,6 @@ public class HyperTextTag extends TextTag
         {
             Entities e = getEntityMap(attribs.get(ESCAPE).toString().trim());
             text = e.escape(text);  
-            System.out.println("\nESCAPED...\n" + text);
         }
         
         if(!attribs.get(UNESCAPE).toString().equals("0"))
@@ -158,8 +261,6 @@ public class HyperTextTag extends TextTag
             {
                 text = e.unescapeUnknownEntities(text);              
             }
-            
-            System.out.println("\nUNESCAPED...\n" + text);
         }
         
         return text;
@@ -175,13 +276,23 @@ public class HyperTextTag extends TextTag
     }
         
     private String tidyHTML(String html)
+    {
+       String tidied = (String)TIDIED.get(html);
+       if(tidied == null)
+       {
+           tidied = runTidy(html);
+           TIDIED.put(html, tidied, html.length() + tidied.length());
+       }
+       return tidied;
+    }
+    
+    private String runTidy(String html)
     {
         
        Tidy tidy = new Tidy();
        tidy.setXHTML(true);
        tidy.setQuiet(true);
        tidy.setShowWarnings(false);
-       System.err.println(tidy.getOutputEncoding());
        tidy.setOutputEncoding("UTF-8");
        
        StringReader reader = new StringReader(html);
@@ -380,5 +491,80 @@ public class HyperTextTag extends TextTag
 		    words += "...";
 		return words;
 	}    
- 
+    
+    /**
+     * Forgets the memoized text and patterns
+     */
+    public static void clearCache()
+    {
+        RESULTS.clear();
+        TIDIED.clear();
+        PATTERNS.clear();
+    }
+    
+    /**
+     * A compiled find pattern and its replacement
+     */
+    private static class Replacement
+    {
+        final Pattern pattern;
+        final String replacement;
+        
+        Replacement(Pattern pattern, String replacement)
+        {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+    }
+    
+    /**
+     * A map that holds a limited number of values and characters, and
+     * forgets the least recently used values first. It's shared by the 
+     * page generator threads.
+     */
+    private static class Memo
+    {
+        private final int maxEntries;
+        private final long maxSize;
+        //key -> Object[]{value, Integer size}
+        private final Map map = new LinkedHashMap(16, 0.75f, true);
+        private long size;
+        
+        Memo(int maxEntries, long maxSize)
+        {
+            this.maxEntries = maxEntries;
+            this.maxSize = maxSize;
+        }
+        
+        synchronized Object get(String key)
+        {
+            Object e[] = (Object[])map.get(key);
+            return e == null ? null : e[0];
+        }
+        
+        synchronized void put(String key, Object value, int n)
+        {
+            if(n > maxSize / 4)//too big to be worth keeping
+                return;
+            
+            Object old[] = (Object[])map.put(key, new Object[]{value, new Integer(n)});
+            if(old != null)
+                size -= ((Integer)old[1]).intValue();
+            size += n;
+            
+            for(Iterator it = map.values().iterator(); it.hasNext() && 
+                (map.size() > maxEntries || size > maxSize);)
+            {
+                Object e[] = (Object[])it.next();
+                it.remove();
+                size -= ((Integer)e[1]).intValue();
+            }
+        }
+        
+        synchronized void clear()
+        {
+            map.clear();
+            size = 0;
+        }
+    }
 }
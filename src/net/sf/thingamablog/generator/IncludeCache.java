@@ -0,0 +1,350 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.atlanticbb.tantlinger.io.IOUtils;
+import net.sf.thingamablog.EnvUtils;
+
+
+/**
+ * A cache of the text of the files and URLs that templates include
+ * with the Include container.
+ *
+ * A publish brackets the pages it generates with beginSession() and
+ * endSession(). Within a session an include is read once, and reused
+ * for up to the time to live. In later sessions, or outside a session,
+ * a cached include is checked before it's reused: a file by its size and
+ * modified time, and a URL with a conditional GET that sends the ETag
+ * and Last-Modified headers of the last response.
+ *
+ * The cache holds a limited number of includes and characters of text,
+ * and forgets the least recently used includes first. It's safe to use
+ * from several threads, and an include that one thread is reading is
+ * waited for by the others instead of being read again.
+ */
+public class IncludeCache
+{
+	/** The default time an include is reused within a session, in milliseconds */
+	public static final long DEFAULT_TTL = 10 * 60 * 1000;
+	/** The default maximum number of cached includes */
+	public static final int DEFAULT_MAX_ENTRIES = 64;
+	/** The default maximum number of cached characters */
+	public static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+	
+	private static final int TIMEOUT = 10000;
+	private static final int LOADED = 0;
+	private static final int NOT_MODIFIED = 1;
+	private static final int FAILED = 2;
+	
+	private static Logger logger = Logger.getLogger("net.sf.thingamablog.generator");
+	
+	private long ttl = DEFAULT_TTL;
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxSize = DEFAULT_MAX_SIZE;
+	
+	//source -> Entry, least recently used first
+	private LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+	private long size;
+	private int session;
+	private boolean inSession;
+	
+	private int hits;
+	private int misses;
+	private int notModified;
+	
+	/**
+	 * Starts a publish session, and resets the hit and miss counts
+	 */
+	public synchronized void beginSession()
+	{
+		session++;
+		inSession = true;
+		hits = misses = notModified = 0;
+	}
+	
+	/**
+	 * Ends the publish session. Cached includes are checked again before
+	 * they are reused.
+	 */
+	public synchronized void endSession()
+	{
+		inSession = false;
+	}
+	
+	/**
+	 * Gets the text of an include
+	 * 
+	 * @param src The URL or path of the file to include
+	 * @return The text, or null if it can't be read
+	 */
+	public String get(String src)
+	{
+		Entry e;
+		int s;
+		synchronized(this)
+		{
+			e = (Entry)entries.get(src);
+			if(e == null)
+			{
+				e = new Entry(src);
+				entries.put(src, e);
+			}
+			s = inSession ? session : -1;
+		}
+		
+		synchronized(e)
+		{
+			long now = System.currentTimeMillis();
+			if(e.text != null && s != -1 && e.session == s && now - e.checked < ttl)
+			{
+				count(LOADED, true);
+				return e.text;
+			}
+			
+			int oldSize = e.size();
+			int result = e.load();
+			e.session = s;
+			e.checked = now;
+			count(result, false);
+			resized(e, e.size() - oldSize);
+			return e.text;
+		}
+	}
+	
+	private synchronized void count(int result, boolean hit)
+	{
+		if(hit)
+			hits++;
+		else if(result == NOT_MODIFIED)
+			notModified++;
+		else
+			misses++;
+	}
+	
+	private synchronized void resized(Entry e, int delta)
+	{
+		if(entries.get(e.src) != e)//already forgotten
+			return;
+		size += delta;
+		
+		if(e.text == null || e.size() > maxSize)
+		{
+			entries.remove(e.src);
+			size -= e.size();
+		}
+		
+		Iterator it = entries.values().iterator();
+		while((entries.size() > maxEntries || size > maxSize) && it.hasNext())
+		{
+			Entry old = (Entry)it.next();
+			if(old == e)
+				continue;
+			it.remove();
+			size -= old.size();
+		}
+	}
+	
+	/**
+	 * Forgets all the cached includes
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Gets the number of includes that were reused without being checked
+	 * in the current or last session
+	 * @return the number of hits
+	 */
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+	
+	/**
+	 * Gets the number of includes that were read in the current or last session
+	 * @return the number of misses
+	 */
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+	
+	/**
+	 * Gets the number of includes that were checked and found unchanged
+	 * in the current or last session
+	 * @return the number of unchanged includes
+	 */
+	public synchronized int getNotModified()
+	{
+		return notModified;
+	}
+	
+	/**
+	 * Gets the time an include is reused within a session before it's checked again
+	 * @return the time in milliseconds
+	 */
+	public synchronized long getTimeToLive()
+	{
+		return ttl;
+	}
+	
+	/**
+	 * Sets the time an include is reused within a session before it's checked again
+	 * @param ms the time in milliseconds, or 0 to check every time
+	 */
+	public synchronized void setTimeToLive(long ms)
+	{
+		ttl = Math.max(0, ms);
+	}
+	
+	/**
+	 * Gets the maximum number of cached includes
+	 * @return the number of includes
+	 */
+	public synchronized int getMaxEntries()
+	{
+		return maxEntries;
+	}
+	
+	/**
+	 * Sets the maximum number of cached includes
+	 * @param n the number of includes
+	 */
+	public synchronized void setMaxEntries(int n)
+	{
+		maxEntries = Math.max(0, n);
+	}
+	
+	/**
+	 * Gets the maximum number of characters of cached text
+	 * @return the number of characters
+	 */
+	public synchronized long getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	/**
+	 * Sets the maximum number of characters of cached text. Larger
+	 * includes are read every time.
+	 * @param n the number of characters
+	 */
+	public synchronized void setMaxSize(long n)
+	{
+		maxSize = Math.max(0, n);
+	}
+	
+	/**
+	 * A cached include, and what's needed to check if it changed
+	 */
+	private static class Entry
+	{
+		final String src;
+		String text;
+		int session;
+		long checked;
+		
+		//validators of a URL
+		String etag;
+		String lastModified;
+		//validators of a file
+		long fileSize = -1;
+		long fileTime = -1;
+		
+		Entry(String src)
+		{
+			this.src = src;
+		}
+		
+		int size()
+		{
+			return text == null ? 0 : text.length();
+		}
+		
+		int load()
+		{
+			InputStream is = null;
+			try
+			{
+				URL url = toURL(src);
+				if(url != null)
+				{
+					URLConnection conn = url.openConnection();
+					EnvUtils.setTimeouts(conn, TIMEOUT, TIMEOUT);
+					if(conn instanceof HttpURLConnection && text != null)
+					{
+						if(etag != null)
+							conn.setRequestProperty("If-None-Match", etag);
+						if(lastModified != null)
+							conn.setRequestProperty("If-Modified-Since", lastModified);
+					}
+					if(conn instanceof HttpURLConnection && text != null && 
+						((HttpURLConnection)conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+						return NOT_MODIFIED;
+					
+					is = conn.getInputStream();
+					text = IOUtils.read(is);
+					etag = conn.getHeaderField("ETag");
+					lastModified = conn.getHeaderField("Last-Modified");
+					return LOADED;
+				}
+				
+				File f = new File(src);
+				if(!f.isFile() || !f.canRead())
+				{
+					text = null;
+					return FAILED;
+				}
+				
+				long len = f.length();
+				long time = f.lastModified();
+				if(text != null && len == fileSize && time == fileTime)
+					return NOT_MODIFIED;
+				
+				is = new FileInputStream(f);
+				text = IOUtils.read(is);
+				fileSize = len;
+				fileTime = time;
+				return LOADED;
+			}
+			catch(Exception ex)
+			{
+				//keep showing the last text we got, if any
+				logger.log(Level.WARNING, "Unable to read include " + src, ex);
+				return text == null ? FAILED : NOT_MODIFIED;
+			}
+			finally
+			{
+				IOUtils.close(is);
+			}
+		}
+	}
+	
+	private static URL toURL(String src)
+	{
+		try
+		{
+			return new URL(src);
+		}
+		catch(MalformedURLException ex){}
+		
+		return null;
+	}
+}
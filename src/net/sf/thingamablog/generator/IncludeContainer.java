@@ -4,17 +4,9 @@
  */
 package net.sf.thingamablog.generator;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.Hashtable;
 
 
-import net.atlanticbb.tantlinger.io.IOUtils;
-import net.sf.thingamablog.TimeoutInputStream;
-
 /**
   * @author Bob Tantlinger
   */
@@ -25,60 +17,28 @@ public class IncludeContainer extends BasicContainer
     private HyperTextTag includeText = new HyperTextTag("IncludeText");
     private Hashtable def = new Hashtable();
     private String text = null;
+    private IncludeCache cache;
     
     
     public IncludeContainer()
+    {
+        this(new IncludeCache());
+    }
+    
+    /**
+     * @param cache The cache to get the included text from
+     */
+    public IncludeContainer(IncludeCache cache)
     {
         super("Include");
         registerTag(includeText);
         def.put(FILE, "");
+        this.cache = cache;
     }
     
     public void initialize(Hashtable at)
     {
-        text = null; 
-        InputStream is = null;
-        try
-        {            
-            String src = at.get(FILE).toString();
-            if(isValidURL(src))
-            {
-                URL url = new URL(src);                
-                is = new TimeoutInputStream(url.openStream(), 1024, 10000, 10000);
-            }
-            else
-            {
-                File f = new File(src);
-                if(f.isFile() && f.canRead())                
-                    is = new FileInputStream(f);                
-            }
-            
-            if(is != null)
-            {
-                text = IOUtils.read(is);
-                is.close();
-            }
-        }
-        catch(Exception ex)
-        {
-            ex.printStackTrace();
-        } 
-        finally
-        {
-            IOUtils.close(is);
-        }
-    }
-    
-    private boolean isValidURL(String src)
-    {
-        try
-        {
-            new URL(src);
-            return true;
-        }
-        catch(MalformedURLException ex){}
-        
-        return false;
+        text = cache.get(at.get(FILE).toString());
     }
     
 /*    public void initialize(Hashtable at)
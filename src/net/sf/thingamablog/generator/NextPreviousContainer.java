@@ -10,6 +10,7 @@ import java.util.List;
 
 import net.sf.thingamablog.blog.ArchiveRange;
 import net.sf.thingamablog.blog.BlogEntry;
+import net.sf.thingamablog.blog.EntryIndex;
 import net.sf.thingamablog.blog.TBWeblog;
 
 
@@ -119,7 +120,7 @@ public class NextPreviousContainer implements TemplateContainer
         {
             try
             {
-                String cats[] = blog.getCategories();
+                String cats[] = blog.getEntryIndex().getCategories();
                 Object o = getNextOrPrev(cat, cats);
                 if(o != null)
                 {
@@ -161,11 +162,14 @@ public class NextPreviousContainer implements TemplateContainer
         {
             try
             {
-               BlogEntry be = blog.getEntry(entryID);
+               EntryIndex index = blog.getEntryIndex();
+               BlogEntry be = index.getEntryHeader(entryID);
+               if(be == null)//not published, e.g. a draft
+                   be = index.getEntry(entryID);
                if(dir == NEXT)
-                   be = blog.getEntryAfter(be.getDate());
+                   be = index.getEntryAfter(be.getDate());
                else
-                   be = blog.getEntryBefore(be.getDate());
+                   be = index.getEntryBefore(be.getDate());
                if(be != null)
                {
                    pageTitle = be.getTitle();
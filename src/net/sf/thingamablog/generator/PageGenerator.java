@@ -4,17 +4,18 @@
  */
 package net.sf.thingamablog.generator;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Date;
 import java.util.Locale;
 import java.util.Vector;
 
 import net.sf.thingamablog.blog.ArchiveRange;
+import net.sf.thingamablog.blog.BlogEntry;
+import net.sf.thingamablog.blog.EntryIndex;
 import net.sf.thingamablog.blog.TBWeblog;
 
 /**
@@ -53,72 +54,62 @@ public class PageGenerator
 	private boolean isLimitRssEntry = true;
 	
 	private TemplateProcessor pageBuilder = new TemplateProcessor();
+	private IncludeCache includeCache = new IncludeCache();
+	private FragmentCache fragmentCache = new FragmentCache();
+	//the date the pages show as the current date, or null for the real one
+	private Date pageDate;
     
     
     
     public PageGenerator()
     {
-        
+        pageBuilder.setFragmentCache(fragmentCache);
     }
 	
 	
-	private void writePage(BlogPageContainer bpc, String template, OutputStream out)
+	private void writePage(BlogPageContainer bpc, CompiledTemplate template, OutputStream out)
 	throws IOException
 	{
 		writePage(bpc, null, template, out);
 	}
 	
-	private void writePage(BlogPageContainer bpc, BlogEntryContainer bec, String template, OutputStream out)
+	//package private so the regression check can render both ways at the same date
+	void setPageDate(Date d)
+	{
+		pageDate = d;
+	}
+	
+	Date getPageDate()
+	{
+		return pageDate;
+	}
+	
+	//package private so the regression check can render pages the old way
+	void writePage(BlogPageContainer bpc, BlogEntryContainer bec, CompiledTemplate template, OutputStream out)
 	throws IOException
 	{
+		if(pageDate != null)
+			bpc.setCurrentDate(pageDate);
 		for(int i = 0; i < customTags.size(); i++)		
 			bpc.addCustomTag((CustomTag)customTags.elementAt(i));		
 	    
-	    Writer writer = new OutputStreamWriter(out, charset);
-		PrintWriter pw = new PrintWriter(writer);
-		
-		String rootName = BlogPageContainer.NAME;
-		template = "<" + rootName + ">" + template + "</" + rootName + ">";		
-	    String text = pageBuilder.processTemplate(template, bpc);
-	    
 	    /*
 	     * Writing all the entries for a page to a string
 	     * would be memeory-intensive if there are a lot of entries.
-	     * Thus, it seems safer and more effecient to write the 
-	     * entries directly to disk.
+	     * So the entries are rendered as the last container of the
+	     * page, and the whole page is streamed directly to disk.
+	     * 
+	     * The entries used to be written in after the rest of the page
+	     * was processed. The container has to stay the last one added,
+	     * so the page's own containers still take precedence over it
+	     * wherever they're nested in each other.
 	     */
 	    if(bec != null)
-	    {
-	        List entryTmpls = pageBuilder.parseContainers(text, bec);
-	        if(entryTmpls.size() == 0)//no entry containers found
-	        {	    
-	            pw.write(text);
-	        }
-	        else
-	        {
-	            Iterator it = entryTmpls.iterator();
-	            int pos = 0;	        
-	            while(it.hasNext())
-	            {	            
-	                String ec = it.next().toString();
-	            
-	                int ecPos = text.indexOf(ec, pos);
-	                String part = text.substring(pos, ecPos);
-	                writer.write(part);
-	                pageBuilder.writeContainer(ec, bec, writer);
-	                pos = ecPos + ec.length();	            
-	            }
-	        
-	            writer.write(text.substring(pos, text.length()));
-	        }
-	    }
-	    else
-	    {
-	        pw.write(text);
-	    }
+	        bpc.addContainer(bec);
 	    
+	    Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+	    pageBuilder.render(template, bpc, writer);
         writer.close();
-        pw.close();	
 	}
 	
 	/**
@@ -131,6 +122,20 @@ public class PageGenerator
 	 */
 	public void generatePage(TBWeblog blog, String cat, OutputStream out, String template)
 	throws IOException
+	{
+		generatePage(blog, cat, out, CompiledTemplate.compile(template));
+	}
+	
+	/**
+	 * Generate a category page
+	 * 
+	 * @param blog The weblog from which the page will be generated
+	 * @param cat The category 
+	 * @param out The OutputStream to write the page to 
+	 * @param template The compiled template
+	 */
+	public void generatePage(TBWeblog blog, String cat, OutputStream out, CompiledTemplate template)
+	throws IOException
 	{		
 	    BlogPageContainer bpc = new BlogPageContainer(blog, cat, charset);
 	    BlogEntryContainer bec = new BlogEntryContainer(blog, cat);
@@ -145,7 +150,7 @@ public class PageGenerator
 		bpc.addContainer(new ArchiveListContainer(blog, archiveRangeFormat, spanArcRange));
 		bpc.addContainer(new NextPreviousContainer(blog, cat, NextPreviousContainer.NEXT));
 		bpc.addContainer(new NextPreviousContainer(blog, cat, NextPreviousContainer.PREV));
-		bpc.addContainer(new IncludeContainer());
+		bpc.addContainer(new IncludeContainer(includeCache));
 		//bpc.addContainer(bec);
 		//writePage(bpc, template, out);	
 		writePage(bpc, bec, template, out);
@@ -161,6 +166,20 @@ public class PageGenerator
 	 */
 	public void generatePage(TBWeblog blog, ArchiveRange arc, OutputStream out, String template)
 	throws IOException
+	{
+		generatePage(blog, arc, out, CompiledTemplate.compile(template));
+	}
+	
+	/**
+	 * Generate an archive page
+	 * 
+	 * @param blog The weblog
+	 * @param arc The archive of the page
+	 * @param out The OutputStream to write the page to
+	 * @param template The compiled template
+	 */
+	public void generatePage(TBWeblog blog, ArchiveRange arc, OutputStream out, CompiledTemplate template)
+	throws IOException
 	{		
 	    BlogPageContainer bpc = new BlogPageContainer(blog, 
 	        formatArcRange(arc, blog.getLocale()), charset);
@@ -174,7 +193,7 @@ public class PageGenerator
 		bpc.addContainer(new ArchiveListContainer(blog, archiveRangeFormat, spanArcRange));
 		bpc.addContainer(new NextPreviousContainer(blog, arc, NextPreviousContainer.NEXT));
 		bpc.addContainer(new NextPreviousContainer(blog, arc, NextPreviousContainer.PREV));
-		bpc.addContainer(new IncludeContainer());
+		bpc.addContainer(new IncludeContainer(includeCache));
 		
 		//bpc.addContainer(bec);
 		//writePage(bpc, template, out);
@@ -193,11 +212,29 @@ public class PageGenerator
 	
 	public void generatePage(TBWeblog blog, long id, OutputStream out, String template)
 	throws IOException
+	{
+		generatePage(blog, id, out, CompiledTemplate.compile(template));
+	}
+	
+	/**
+	 * Generate an entry page
+	 * 
+	 * @param blog The weblog
+	 * @param id The ID of the entry
+	 * @param out The OutputStream to write the page to
+	 * @param template The compiled template
+	 */
+	public void generatePage(TBWeblog blog, long id, OutputStream out, CompiledTemplate template)
+	throws IOException
 	{
 	    String title;
         try
         {
-            title = blog.getEntry(id).getTitle();
+            EntryIndex index = blog.getEntryIndex();
+            BlogEntry be = index.getEntryHeader(id);
+            if(be == null)
+                be = index.getEntry(id);
+            title = be.getTitle();
         }
         catch(Exception ex)
         {
@@ -217,7 +254,7 @@ public class PageGenerator
 		bpc.addContainer(new ArchiveListContainer(blog, archiveRangeFormat, spanArcRange));
 		bpc.addContainer(new NextPreviousContainer(blog, id, NextPreviousContainer.NEXT));
 		bpc.addContainer(new NextPreviousContainer(blog, id, NextPreviousContainer.PREV));
-		bpc.addContainer(new IncludeContainer());
+		bpc.addContainer(new IncludeContainer(includeCache));
 		
 		writePage(bpc, container, template, out);
 		//writePage(bpc, template, out);
@@ -233,6 +270,20 @@ public class PageGenerator
 	 */
 	public void generatePage(TBWeblog blog, int type, OutputStream out, String template)
 	throws IOException
+	{
+		generatePage(blog, type, out, CompiledTemplate.compile(template));
+	}
+	
+	/**
+	 * Generate a front page, rss feed, or archive index page
+	 * 
+	 * @param blog The weblog
+	 * @param type The type of the page: FONT_PAGE, INDEX_PAGE, RSS_PAGE
+	 * @param out The OutputStream to write the page to
+	 * @param template The compiled template
+	 */
+	public void generatePage(TBWeblog blog, int type, OutputStream out, CompiledTemplate template)
+	throws IOException
 	{
 		BlogPageContainer bpc = new BlogPageContainer(blog, blog.getTitle(), charset);
 		
@@ -253,7 +304,7 @@ public class PageGenerator
 		bpc.addContainer(new ArchiveListContainer(blog, archiveRangeFormat, spanArcRange));
 		bpc.addContainer(new NextPreviousContainer(NextPreviousContainer.NEXT));
 		bpc.addContainer(new NextPreviousContainer(NextPreviousContainer.PREV));
-		bpc.addContainer(new IncludeContainer());
+		bpc.addContainer(new IncludeContainer(includeCache));
 		
 		if(type == FRONT_PAGE)
 		{
@@ -580,4 +631,27 @@ public class PageGenerator
         if(java.nio.charset.Charset.isSupported(string))
         	charset = string;
     }
+    
+    /**
+     * Gets the cache of the files and URLs included by the 
+     * Include container of the generated pages
+     * 
+     * @return The cache
+     */
+    public IncludeCache getIncludeCache()
+    {
+        return includeCache;
+    }
+    
+    /**
+     * Gets the cache of the output of the containers that are 
+     * the same on many of the generated pages, such as the
+     * category list, the archive lists and the calendar
+     * 
+     * @return The cache
+     */
+    public FragmentCache getFragmentCache()
+    {
+        return fragmentCache;
+    }
 }
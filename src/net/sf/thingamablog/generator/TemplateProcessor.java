@@ -7,286 +7,494 @@ package net.sf.thingamablog.generator;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.Vector;
 
+import net.sf.thingamablog.blog.DependencyGraph;
+import net.sf.thingamablog.generator.CompiledTemplate.Container;
+import net.sf.thingamablog.generator.CompiledTemplate.Node;
+import net.sf.thingamablog.generator.CompiledTemplate.Tag;
+import net.sf.thingamablog.generator.CompiledTemplate.Text;
 
+
+/**
+ * Renders templates by walking the node tree of a CompiledTemplate
+ * and writing the result straight to a Writer.
+ *
+ * The output is the same as that of the old string based processor.
+ * It substituted the tags of a container, and then processed the
+ * containers it registers one after another, each over the whole text
+ * of the container. So a container registered before a container that
+ * encloses it in the template was rendered first, and its tags and
+ * containers take precedence over those of the enclosing container.
+ *
+ * Every frame has a key that tells when the old processor would have
+ * processed it. A tag is bound by the first frame to process it, and a
+ * nested container is claimed by the first frame to reach it. Tag values
+ * that contain template markup are processed by whatever the old
+ * processor did after it substituted the value.
+ *
+ * With a FragmentCache, the output of a CacheableContainer is reused
+ * instead of rendered again, as long as nothing in it was bound by the
+ * tags or containers around it.
+ */
 public class TemplateProcessor
-{	
-	private static final String LT = "<";
-	private static final String GT = ">";
-	private static final String END_LT = "</";
-	private static final String TAG_LT = LT + '$';
-	private static final String TAG_GT = '$' + GT;
-	
-    public String processTemplate(String tmpl, TemplateContainer root)
+{
+	private static final String GT = CompiledTemplate.GT;
+	private static final String END_LT = CompiledTemplate.END_LT;
+	private static final int NO_KEY[] = new int[0];
+
+	private FragmentCache fragments;
+
+	/**
+	 * Sets the cache of the output of cacheable containers
+	 * 
+	 * @param cache The cache, or null to render every container
+	 */
+	public void setFragmentCache(FragmentCache cache)
 	{
-        List temps = parseContainers(tmpl, root);
-        for(Iterator it = temps.iterator(); it.hasNext();)
-		{			
-            String curTmp = it.next().toString();
-			StringWriter sw = new StringWriter(curTmp.length() * 2);
-			
-			try
+		fragments = cache;
+	}
+
+	/**
+	 * Gets the cache of the output of cacheable containers
+	 * 
+	 * @return The cache, or null
+	 */
+	public FragmentCache getFragmentCache()
+	{
+		return fragments;
+	}
+
+	/**
+	 * Processes every occurrence of a container in a template
+	 *
+	 * @param tmpl The template text
+	 * @param root The container
+	 * @return The processed template
+	 */
+	public String processTemplate(String tmpl, TemplateContainer root)
+	{
+		StringWriter sw = new StringWriter(tmpl.length() * 2);
+		try
+		{
+			writeTemplate(CompiledTemplate.compile(tmpl), root, sw);
+		}
+		catch(IOException ioe){}
+
+		return sw.toString();
+	}
+
+	/**
+	 * Writes a single occurrence of a container
+	 *
+	 * @param tmpl The container text, including the open and close tags
+	 * @param cont The container
+	 * @param writer The writer to write to
+	 * @throws IOException If an error occurs while writing
+	 */
+	public void writeContainer(String tmpl, TemplateContainer cont, Writer writer)
+	throws IOException
+	{
+		writeTemplate(CompiledTemplate.compile(tmpl), cont, writer);
+	}
+
+	private void writeTemplate(CompiledTemplate tmpl, TemplateContainer cont, Writer writer)
+	throws IOException
+	{
+		Vector v = new Vector(1);
+		v.add(cont);
+		Frame top = new Frame(null, null, v, NO_KEY);
+		writeNodes(tmpl.plan(0, tmpl.length(), top.names, top.namesKey),
+			top, null, -1, writer);
+	}
+
+	/**
+	 * Renders a compiled template with a root container. The whole
+	 * template is the body of the root container.
+	 *
+	 * @param tmpl The template
+	 * @param root The root container
+	 * @param writer The writer to write to
+	 * @throws IOException If an error occurs while writing
+	 */
+	public void render(CompiledTemplate tmpl, TemplateContainer root, Writer writer)
+	throws IOException
+	{
+		Hashtable defaults = root.getDefaultAttributes();
+		root.initialize(defaults == null ? new Hashtable() : new Hashtable(defaults));
+		if(!root.isVisible())
+			return;
+
+		do
+		{
+			Frame f = new Frame(null, root, NO_KEY);
+			if(root.prefix() != null)
+				writer.write(root.prefix());
+			writeNodes(tmpl.plan(0, tmpl.length(), f.names, f.namesKey),
+				f, null, -1, writer);
+			if(root.postfix() != null)
+				writer.write(root.postfix());
+		}
+		while(root.processAgain());
+	}
+
+	/*
+	 * minKey and minIndex restrict what can be substituted. Tags in the
+	 * template can be bound by any enclosing frame, but the markup in a tag
+	 * value can only be bound by the tags that come after the value's tag,
+	 * or by the frames the old processor got to after the value's frame.
+	 * A null minKey means there's no restriction.
+	 */
+	private void writeNodes(Node nodes[], Frame frame, int minKey[], int minIndex, Writer w)
+	throws IOException
+	{
+		for(int i = 0; i < nodes.length; i++)
+		{
+			Node n = nodes[i];
+			if(n instanceof Text)
 			{
-			    writeContainer(curTmp, root, sw);
+				Text t = (Text)n;
+				w.write(t.src, t.start, t.end - t.start);
 			}
-			catch(IOException ioe){}
-			
-			StringBuffer buf = sw.getBuffer();
-			tmpl = replace(curTmp, buf.substring(0, buf.length()), tmpl);			
-		}		
-		
-        return tmpl;
+			else if(n instanceof Tag)
+				writeTag((Tag)n, frame, minKey, minIndex, w);
+			else
+				writeContainer((Container)n, frame, minKey, minIndex, w);
+		}
 	}
-    
-    public void writeContainer(String tmpl, TemplateContainer cont, Writer writer)
-    throws IOException
-    {		
-		cont.initialize(parseAttributes(tmpl, cont));		
-		if(cont.isVisible())
+
+	private void writeTag(Tag t, Frame frame, int minKey[], int minIndex, Writer w)
+	throws IOException
+	{
+		//the first frame to process the tag wins
+		Frame owner = null;
+		int index = -1;
+		for(Frame f = frame; f != null; f = f.parent)
+		{
+			int i = f.indexOf(t.name);
+			if(i < 0)
+				continue;
+			if(minKey != null)
+			{
+				int c = compare(f.key, minKey);
+				if(c < 0 || (c == 0 && i <= minIndex))
+					continue;
+			}
+			if(owner == null || compare(f.key, owner.key) < 0)
+			{
+				owner = f;
+				index = i;
+			}
+		}
+
+		if(owner == null)//not a tag of ours, leave it alone
+		{
+			w.write(t.var);
+			return;
+		}
+		frame.boundBy(owner.depth);
+
+		TemplateTag tag = owner.tags[index];
+		String val = tag.process(owner.values[index], t.attributes(tag));
+		if(val.indexOf('<') < 0)
+			w.write(val);
+		else
 		{
-		    do
-		    {	        
-		        String result = processVariables(stripOffTags(tmpl, cont), cont);		       
-		        if(cont.prefix() != null)
-		            writer.write(cont.prefix());		        
-		        writer.write(processContainers(result, cont));		        
-		        if(cont.postfix() != null)
-		            writer.write(cont.postfix());
-		    }
-		    while(cont.processAgain());
+			Set names = frame.namesAfter(owner.key);
+			writeNodes(CompiledTemplate.planText(val, names), frame, owner.key, index, w);
 		}
-    }
-    
-    public List parseContainers(String tmpl, TemplateContainer tc)
-    {
-		int _pos = 0;
-        Vector temps = new Vector();
-		String containerStart = LT + tc.getName();
-		String closeTag = END_LT + tc.getName() + GT;
-		
-		while(tmpl.indexOf(containerStart, _pos) > -1)
+	}
+
+	private void writeContainer(Container c, Frame frame, int minKey[], int minIndex, Writer w)
+	throws IOException
+	{
+		//the first frame to reach it wins
+		TemplateContainer tc = null;
+		int claimDepth = -1;
+		int claimKey[] = null;
+		for(Frame f = frame; f != null; f = f.parent)
 		{
-			int s = tmpl.indexOf(containerStart, _pos);//open tag begin
-			if(s < 0)//not found
+			TemplateContainer child = (TemplateContainer)f.children.get(c.name);
+			if(child == null || frame.isActive(child))
 				continue;
-			
-			_pos = s + tc.getName().length() + 1; //update pos;
-			
-			char ch = tmpl.charAt(_pos);
-			if(ch != '>' && !Character.isWhitespace(ch))
-				continue;   //this isn't the right tag, 
-							//it only starts like the one we're looking for
-			//System.out.println("After tag = " + t.charAt(pos));
-			
-			//now we have to find the end ">" of the open tag
-			int otEnd = tmpl.indexOf(GT, _pos);
-			if(otEnd < 0)//incomplete tag
-				continue;		
-			
-			_pos = otEnd;
-			
-			int e = tmpl.indexOf(closeTag, _pos);
-			if(e < 0)//incomple tag
+			int k[] = f.childKey(c.name);
+			if(minKey != null && compare(k, minKey) <= 0)
 				continue;
-				
-			e += closeTag.length();
-			_pos = e;
-			
-			temps.add(tmpl.substring(s, e));
+			if(claimKey == null || compare(k, claimKey) < 0)
+			{
+				tc = child;
+				claimDepth = f.depth;
+				claimKey = k;
+			}
 		}
-		
-		return temps;
-    }
-	
-	private String stripOffTags(String t, TemplateContainer tc)
-	{
-		int s = t.indexOf(GT); //end of open tag
-		int e = t.indexOf(END_LT + tc.getName() + GT);//end of close tag
-		if(s < 0 || e < 0 || (s + 1) >= t.length())
-			return t;
-		return t.substring(s + 1, e);
-	}    
-
-	private String processVariables(String tmpl, TemplateContainer tc)
-	{
-	    List list = tc.getTags();
-	    if(list != null)
-	    {
-	        Iterator it = list.iterator();
-	        while(it.hasNext())
-	        {
-	            TemplateTag tag = (TemplateTag)it.next();
-	            tmpl = parseVariable(tmpl, tag, tc.getValueForTag(tag));
-	        }
-	    }	    
-	    return tmpl;
+
+		if(tc == null)
+		{
+			writeNodes(c.open, frame, minKey, minIndex, w);
+			writeNodes(c.owner.plan(c.bodyStart, c.bodyEnd, frame.names, frame.namesKey),
+				frame, minKey, minIndex, w);
+			w.write(END_LT + c.name + GT);
+			return;
+		}
+
+		Hashtable attribs;
+		if(c.hasDynamicAttributes())
+		{
+			StringWriter sw = new StringWriter(c.openTag.length() * 2);
+			writeNodes(c.open, frame, minKey, minIndex, sw);
+			attribs = CompiledTemplate.parseAttributes(sw.toString(), tc);
+		}
+		else
+			attribs = c.attributes(tc);
+
+		frame.boundBy(claimDepth);
+		String key = fragmentKey(tc, attribs, minKey, minIndex);
+		if(key == null)
+		{
+			writeContainer(c, tc, claimKey, attribs, frame, null, minKey, minIndex, w);
+			return;
+		}
+
+		String text = fragments.get(c, key);
+		if(text == null)
+		{
+			Fragment frag = new Fragment(frame.depth + 1, frame.fragment);
+			StringWriter sw = new StringWriter();
+			DependencyGraph.Capture deps = DependencyGraph.beginCapture();
+			try
+			{
+				writeContainer(c, tc, claimKey, attribs, frame, frag, minKey, minIndex, sw);
+			}
+			finally
+			{
+				DependencyGraph.endCapture(deps);
+			}
+			text = sw.toString();
+			if(!frag.bound)
+				fragments.put(c, key, text, deps);
+		}
+		w.write(text);
 	}
-	
-	private String processContainers(String tmpl, TemplateContainer tc)
+
+	private void writeContainer(Container c, TemplateContainer tc, int key[], Hashtable attribs, 
+		Frame frame, Fragment frag, int minKey[], int minIndex, Writer w)
+	throws IOException
 	{
-        List list = tc.getContainers();        
-        if(list != null)
-        {
-            Iterator it = list.iterator();
-            while(it.hasNext())
-            {
-                tmpl = processTemplate(tmpl, (TemplateContainer)it.next());	
-            }
-        }        
-        return tmpl;
+		tc.initialize(attribs);
+		if(!tc.isVisible())
+			return;
+
+		do
+		{
+			Frame f = new Frame(frame, tc, key);
+			if(frag != null)
+				f.fragment = frag;
+			if(tc.prefix() != null)
+				w.write(tc.prefix());
+			writeNodes(c.owner.plan(c.bodyStart, c.bodyEnd, f.names, f.namesKey),
+				f, minKey, minIndex, w);
+			if(tc.postfix() != null)
+				w.write(tc.postfix());
+		}
+		while(tc.processAgain());
 	}
-    
-	private String parseVariable(String tmpl, TemplateTag tag, Object obj)
-	{		
-		int _pos = 0;
-		String attribsStart = TAG_LT;
-		String attribsEnd = TAG_GT;
-		String tagStart = attribsStart + tag.getName();
-		
-		while((_pos = tmpl.indexOf(tagStart, _pos)) > -1)
+
+	/**
+	 * Gets the key of the output of a container in the fragment
+	 * cache, or null if its output isn't cached. The restrictions on
+	 * binding are part of the key, as they decide what the tags and
+	 * containers around the container can bind.
+	 */
+	private String fragmentKey(TemplateContainer tc, Hashtable attribs, int minKey[], int minIndex)
+	{
+		if(fragments == null || !(tc instanceof CacheableContainer) || !fragments.isInSession())
+			return null;
+		String ctx = ((CacheableContainer)tc).getFragmentKey();
+		if(ctx == null)
+			return null;
+		StringBuffer sb = new StringBuffer(tc.getName()).append('\n').append(ctx).append('\n');
+		if(minKey != null)
 		{
-			int end = tmpl.indexOf(attribsEnd, _pos) + attribsEnd.length();
-			if(end < _pos)//no more
-				return tmpl;
-			
-			String var = tmpl.substring(_pos, end);
-			int nameLen = tag.getName().length();
-			int normalLen = 
-				attribsStart.length() + nameLen + attribsEnd.length();
-						
-			if(var.length() > normalLen)
-			{
-				//this tag should have whitespace between the tag name and
-				//attribute list because it's longer than
-				//the normal, no-attribute, length.
-				char c = var.charAt(attribsStart.length() + nameLen);
-				if(!Character.isWhitespace(c))
-				{				
-					//System.out.println(c + " - " + tag.getName() + " - " + var);
-					//No whitespace found so
-					//this isn't the right tag, it only starts
-					//like the one we're looking for, so pass it over
-					_pos = end;
-					continue;					
-				}			
-			}
-						
-			Hashtable ht = parseAttributes(var, tag);
-			String val = tag.process(obj, ht);
-			tmpl = replace(var, val, tmpl);			
+			for(int i = 0; i < minKey.length; i++)
+				sb.append(minKey[i]).append('.');
+			sb.append(':').append(minIndex);
 		}
-		
-		return tmpl;		
+		return sb.append('\n').append(new TreeMap(attribs)).toString();
 	}
-    
-    private Hashtable parseAttributes(String t, TemplateElement te)
-    {
-        Hashtable defaults = te.getDefaultAttributes();
-        if(defaults == null)//don't allow null attributes
-            defaults = new Hashtable();//empty attributes
-        Hashtable ht = new Hashtable(defaults);//copy defaults
-        
-        String attribsStart = getAttribsStart(te) + te.getName();
-        String attribsEnd = getAttribsEnd(te);
-        int s = t.indexOf(attribsStart, 0);//open tag begin
-        if(s == -1)//not found
-            return ht;
-        
-        int e = t.indexOf(attribsEnd, s + attribsStart.length());
-        if(e == -1 || e == (s + attribsStart.length()))//no attributes given, use defaults
-            return ht;
-        
-        String attribs = t.substring(s + attribsStart.length(), e).trim();
-        //System.out.println(attribs);
-        attribs = " " + attribs;//ensure the first attrib has a prefixed space
-        char ws[] = {' ', '\n', '\t'};
-        
-        for(Enumeration eEnum = ht.keys(); eEnum.hasMoreElements();) 
-        {
-            String key = eEnum.nextElement().toString();
-            int p = 0;
-            for(int i = 0; i < ws.length; i++)
-            {
-                p = attribs.indexOf(ws[i] + key);
-                if(p != -1)
-                    break;
-            }           
-            if(p == -1)//attribute wasn't found, default will be used
-                continue;            
-            //skip over the space and attribute name        
-            p += key.length() + 1;
-            
-            try
-            {
-                //iterate thru whitespace till we hit equals
-                while(Character.isWhitespace(attribs.charAt(p++)));             
-                if(attribs.charAt(--p) != '=')
-                    break;
-                //iterate thru whitespace till we hit opening quote
-                while(Character.isWhitespace(attribs.charAt(++p)));             
-                if(attribs.charAt(p) != '\"')
-                    break;
-                
-                int end = attribs.indexOf("\"", p + 1);//end quote
-                if(end == -1)
-                    break;//no closing quote
-                
-                
-                //FIXED with trim() this screws up attribs like glue=", "
-                //String val = attribs.substring(p, end).trim();
-                String val = attribs.substring(p, end);
-                //remove quotes 
-                if(val.startsWith("\"") /*&& val.length() > 1*/)
-                    val = val.substring(1, val.length());
-                
-                if(val.endsWith("\"") /*&& val.length() > 1*/)
-                    val = val.substring(0, val.length() - 1);               
-                
-                ht.put(key, val);
-                //System.out.println(key + " = " +val); 
-                
-            }
-            catch(IndexOutOfBoundsException ex)
-            {
-                break;
-            }
-        }
-        
-        return ht;
-    }
-	
-	private String replace(String var, String val, String tmpl)
-	{		
-		if(var.equals("") || var == null)
-			 return tmpl;
-		StringBuffer sb = new StringBuffer(val.length() + tmpl.length());
-		sb.append(tmpl);
-		while(sb.indexOf(var) != -1 && !var.equals(val))
-		{			
-			int s = sb.indexOf(var);            
-			int e = s + var.length();
-			sb.delete(s, e);
-			sb.insert(s, val);
-		}                
-		return sb.substring(0, sb.length());
+
+	/**
+	 * Compares the keys of two frames. A frame's key is the key of the frame
+	 * that claimed it followed by the container's position among the
+	 * containers of that frame, so the smaller key was processed first.
+	 */
+	private static int compare(int a[], int b[])
+	{
+		int n = Math.min(a.length, b.length);
+		for(int i = 0; i < n; i++)
+		{
+			if(a[i] != b[i])
+				return a[i] < b[i] ? -1 : 1;
+		}
+		return a.length - b.length;
 	}
-	
-	private String getAttribsStart(TemplateElement te)
+
+	/**
+	 * A container whose output is being rendered for the fragment cache.
+	 * The output can only be reused if nothing in it was bound by the
+	 * frames outside the container.
+	 */
+	private static class Fragment
 	{
-	    if(te instanceof TemplateTag)
-	        return TAG_LT;
-	    return LT;
+		final int depth;
+		final Fragment parent;
+		boolean bound;
+
+		Fragment(int depth, Fragment parent)
+		{
+			this.depth = depth;
+			this.parent = parent;
+		}
 	}
-	
-	private String getAttribsEnd(TemplateElement te)
+
+	/**
+	 * The state of one pass of a container: its tag values
+	 * and the containers it registers
+	 */
+	private static class Frame
 	{
-	    if(te instanceof TemplateTag)
-	        return TAG_GT;
-	    return GT;
+		final Frame parent;
+		final int depth;
+		//when the old processor processed the frame
+		final int key[];
+		final TemplateContainer container;
+		final TemplateTag tags[];
+		final Object values[];
+		final Map tagIndex = new HashMap();
+		final Map children = new HashMap();
+		//name -> Integer position of the container
+		final Map positions = new HashMap();
+		final Set names;
+		final String namesKey;
+		//the innermost container being rendered for the fragment cache
+		Fragment fragment;
+
+		Frame(Frame parent, TemplateContainer tc, int key[])
+		{
+			this(parent, tc, null, key);
+		}
+
+		Frame(Frame parent, TemplateContainer tc, List conts, int key[])
+		{
+			this.parent = parent;
+			depth = parent == null ? 0 : parent.depth + 1;
+			this.key = key;
+			container = tc;
+			fragment = parent == null ? null : parent.fragment;
+
+			//the tag values are fetched before the nested
+			//containers, as some containers rely on that
+			List list = tc == null ? null : tc.getTags();
+			int size = list == null ? 0 : list.size();
+			tags = new TemplateTag[size];
+			values = new Object[size];
+			for(int i = 0; i < size; i++)
+			{
+				tags[i] = (TemplateTag)list.get(i);
+				values[i] = tc.getValueForTag(tags[i]);
+				if(!tagIndex.containsKey(tags[i].getName()))
+					tagIndex.put(tags[i].getName(), new Integer(i));
+			}
+
+			if(tc != null)
+				conts = tc.getContainers();
+			boolean added = false;
+			if(conts != null)
+			{
+				for(int i = 0; i < conts.size(); i++)
+				{
+					TemplateContainer child = (TemplateContainer)conts.get(i);
+					if(!children.containsKey(child.getName()))
+					{
+						children.put(child.getName(), child);
+						positions.put(child.getName(), new Integer(i));
+						added |= parent == null || !parent.names.contains(child.getName());
+					}
+				}
+			}
+
+			if(!added)
+			{
+				names = parent == null ? new HashSet() : parent.names;
+				namesKey = parent == null ? "" : parent.namesKey;
+			}
+			else
+			{
+				names = parent == null ? new HashSet() : new HashSet(parent.names);
+				names.addAll(children.keySet());
+				namesKey = CompiledTemplate.namesKey(names);
+			}
+		}
+
+		/**
+		 * Notes that a tag or container was bound by the frame at a depth,
+		 * which makes the fragments nested deeper than it page specific
+		 */
+		void boundBy(int ownerDepth)
+		{
+			for(Fragment fr = fragment; fr != null && fr.depth > ownerDepth; fr = fr.parent)
+				fr.bound = true;
+		}
+
+		int indexOf(String name)
+		{
+			Integer i = (Integer)tagIndex.get(name);
+			return i == null ? -1 : i.intValue();
+		}
+
+		boolean isActive(TemplateContainer tc)
+		{
+			for(Frame f = this; f != null; f = f.parent)
+				if(f.container == tc)
+					return true;
+			return false;
+		}
+
+		/**
+		 * Gets the key a container registered by this frame gets
+		 */
+		int[] childKey(String name)
+		{
+			int k[] = new int[key.length + 1];
+			System.arraycopy(key, 0, k, 0, key.length);
+			k[key.length] = ((Integer)positions.get(name)).intValue();
+			return k;
+		}
+
+		/**
+		 * Gets the names of the containers that can be claimed
+		 * by the frames processed after a key
+		 */
+		Set namesAfter(int minKey[])
+		{
+			Set set = new HashSet();
+			for(Frame f = this; f != null; f = f.parent)
+			{
+				for(Iterator it = f.children.keySet().iterator(); it.hasNext();)
+				{
+					String name = (String)it.next();
+					if(compare(f.childKey(name), minKey) > 0)
+						set.add(name);
+				}
+			}
+			return set;
+		}
 	}
 }
@@ -61,6 +61,7 @@ public class FeedPropertiesDialog extends StandardDialog
 	private JTextField titleField;
 	private JCheckBox arcCheckBox;
 	private SpinnerNumberModel arcSpinnerModel;
+	private SpinnerNumberModel ageSpinnerModel;
 	private DateFormat df = 
 		DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
 	
@@ -125,6 +126,12 @@ public class FeedPropertiesDialog extends StandardDialog
 		spinPanel.add(arcSpinner, BorderLayout.WEST);
 		spinPanel.add(new JPanel(), BorderLayout.CENTER);
 		lip1.addItem(i18n.str("max_headlines"), spinPanel); //$NON-NLS-1$
+		ageSpinnerModel = 
+			new SpinnerNumberModel(feed.getItemMaxAge(), 0, 3650, 1);
+		JPanel agePanel = new JPanel(new BorderLayout(5, 5));
+		agePanel.add(new JSpinner(ageSpinnerModel), BorderLayout.WEST);
+		agePanel.add(new JPanel(), BorderLayout.CENTER);
+		lip1.addItem(i18n.str("max_headline_age"), agePanel); //$NON-NLS-1$
 		lip1.setBorder(new TitledBorder(i18n.str("archiving"))); //$NON-NLS-1$
 				
 		JPanel mainPanel = new JPanel(new BorderLayout(5, 5));
@@ -143,6 +150,7 @@ public class FeedPropertiesDialog extends StandardDialog
 		//feed.setTitle(titleField.getText());
 	    feed.setLimitItems(arcCheckBox.isSelected());
 		feed.setItemLimit(arcSpinnerModel.getNumber().intValue());
+		feed.setItemMaxAge(ageSpinnerModel.getNumber().intValue());
 		return true;
 	}
 }
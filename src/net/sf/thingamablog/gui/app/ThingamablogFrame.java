@@ -83,6 +83,7 @@ import net.sf.thingamablog.blog.Weblog;
 import net.sf.thingamablog.blog.WeblogList;
 import net.sf.thingamablog.feed.Feed;
 import net.sf.thingamablog.feed.FeedBackendException;
+import net.sf.thingamablog.feed.FeedCompactor;
 import net.sf.thingamablog.feed.FeedFolder;
 import net.sf.thingamablog.feed.FeedItem;
 import net.sf.thingamablog.feed.UpdateProgress;
@@ -266,6 +267,8 @@ public class ThingamablogFrame extends JFrame
     	
 	private javax.swing.Timer feedUpdateTimer;
     private javax.swing.Timer mailCheckTimer;
+    //prunes the feed items and compacts the database in the background
+    private FeedCompactor feedCompactor;
     
     private TaskDialog taskDialog;
 	
@@ -576,6 +579,8 @@ public class ThingamablogFrame extends JFrame
 				try
 				{				
 				    isDBOpen = false;
+				    if(feedCompactor != null)
+				        feedCompactor.stop();
 				    if(backend != null)
 				        backend.shutdown();
 				    else
@@ -598,6 +603,8 @@ public class ThingamablogFrame extends JFrame
 				    
                     
                     isDBOpen = true;				    
+                    feedCompactor = new FeedCompactor(feedRoot, backend);
+                    feedCompactor.start();
 				
 				}
 				catch(Exception ex)
@@ -1751,12 +1758,33 @@ public class ThingamablogFrame extends JFrame
 		saveProperties();
 	}
 	
-	private void closeApp(boolean needExit)
+	private void closeApp(final boolean needExit)
 	{		
 		saveCurrentData();
 		setVisible(false);
+		if(SwingUtilities.isEventDispatchThread())
+		{
+			//stopping the feed compactor waits for a running compaction,
+			//which can take a while, so the EDT doesn't wait for it
+			Thread t = new Thread("Shutdown")
+			{
+				public void run()
+				{
+					shutdown(needExit);
+				}
+			};
+			t.start();
+		}
+		else
+			shutdown(needExit);
+	}
+	
+	private void shutdown(boolean needExit)
+	{
 		try
 		{
+			if(feedCompactor != null)
+				feedCompactor.stop();
 			backend.shutdown();
 			isDBOpen = false;
 		}
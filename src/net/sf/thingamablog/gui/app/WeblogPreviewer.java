@@ -10,6 +10,8 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import net.atlanticbb.tantlinger.io.IOUtils;
 import net.sf.thingamablog.TBGlobals;
@@ -18,20 +20,30 @@ import net.sf.thingamablog.blog.BackendException;
 import net.sf.thingamablog.blog.BlogEntry;
 import net.sf.thingamablog.blog.DiskTemplatePack;
 import net.sf.thingamablog.blog.NullPublishProgress;
+import net.sf.thingamablog.blog.PreviewServer;
 import net.sf.thingamablog.blog.TBWeblog;
 import net.sf.thingamablog.blog.TemplatePack;
 import net.sf.thingamablog.blog.WeblogBackend;
 
 /**
+ * Previews weblogs in the browser. The preview weblog is served by a
+ * PreviewServer, which renders each page as the browser asks for it, and 
+ * its data is kept until the preview data is cleared. If the server can't
+ * be started, the whole preview weblog is generated to a directory instead.
+ * 
  * @author Bob Tantlinger
  *
  */
 public class WeblogPreviewer
 {
     private static WeblogPreviewer singleton;
+    private static Logger logger = Logger.getLogger("net.sf.thingamablog.gui.app");
     
     private TBWeblog previewBlog;
     File outputDir = new File(TBGlobals.getPreviewDirectory(), "output");
+    private PreviewServer server = new PreviewServer();
+    //the archive and media URLs of the preview, relative to its base URL
+    private String arcPart = "", mediaPart = "";
     //private WeblogBackend backend;
     
     
@@ -51,6 +63,7 @@ public class WeblogPreviewer
     
     public void clearPreviewData() 
     {
+        server.setWeblog(null);
         if(previewBlog != null)
         {
             try
@@ -81,15 +94,11 @@ public class WeblogPreviewer
         String bUrl = blog.getBaseUrl();
         String baUrl = blog.getArchiveUrl();
         String bmUrl = blog.getMediaUrl();
-        
-        String baseUrl = outputDir.toURI().toURL().toExternalForm();        
-        String arcUrl = new File(outputDir, 
-            baUrl.substring(bUrl.length() - 1, baUrl.length())).toURI().toURL().toExternalForm();
-        String mediaUrl = new File(outputDir, 
-            bmUrl.substring(bUrl.length() - 1, bmUrl.length())).toURI().toURL().toExternalForm();
               
         initPreviewBlog(blog.getBackend(), pack, blog.getTitle(), blog.getDescription(), cats, auths, ents, blog.getType());
-        previewBlog.setBlogUrls(outputDir.getAbsolutePath(), baseUrl, arcUrl, mediaUrl);
+        //keep the layout of the archive and media directories
+        arcPart = relativeUrl(bUrl, baUrl);
+        mediaPart = relativeUrl(bUrl, bmUrl);
         
         //mimic the necessary attributes of the blog we're previewing
         previewBlog.setLocale(blog.getLocale());
@@ -120,10 +129,51 @@ public class WeblogPreviewer
         doPreview();        
     }
     
+    private String relativeUrl(String base, String url)
+    {
+        if(url.startsWith(base))
+            return url.substring(base.length());
+        return "";
+    }
+    
+    /**
+     * Starts the preview server, if it isn't running
+     * 
+     * @return The base URL of the server, or null if it can't be started
+     */
+    private String startServer()
+    {
+        try
+        {
+            server.start();
+            return server.getBaseUrl();
+        }
+        catch(IOException ex)
+        {
+            logger.log(Level.WARNING, "Unable to start the preview server", ex);
+            return null;
+        }
+    }
+    
     private void doPreview() throws Exception
     {        
     	IOUtils.deleteRecursively(outputDir);
     	
+    	//the server renders the pages the browser asks for
+    	String base = startServer();
+    	if(base != null)
+    	{
+    	    previewBlog.setBlogUrls(outputDir.getAbsolutePath(), base, 
+    	        base + arcPart, base + mediaPart);
+    	    server.setWeblog(previewBlog);
+    	    BrowserLaunch.launch(previewBlog.getFrontPageUrl());
+    	    return;
+    	}
+    	
+    	String baseUrl = outputDir.toURI().toURL().toExternalForm();
+    	String arcUrl = new File(outputDir, arcPart).toURI().toURL().toExternalForm();
+    	String mediaUrl = new File(outputDir, mediaPart).toURI().toURL().toExternalForm();
+    	previewBlog.setBlogUrls(outputDir.getAbsolutePath(), baseUrl, arcUrl, mediaUrl);
     	try
         {            
             previewBlog.publishAll(new NullPublishProgress());
@@ -152,6 +202,7 @@ public class WeblogPreviewer
     throws Exception
     {        
         clearPreviewData();
+        arcPart = mediaPart = "";
         
         previewBlog = new TBWeblog(TBGlobals.getPreviewDirectory());       
         previewBlog.setBackend(backend);     
@@ -27,6 +27,8 @@ import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Dialog;
 import java.awt.Frame;
+import java.util.Hashtable;
+import java.util.Vector;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
@@ -76,13 +78,27 @@ public class TBCustomVariablesPanel extends PropertyPanel
      */
     public void saveProperties()
     {       
-		weblog.setPublishAll(true);
 		java.util.Vector v = eList.getListData();
 		CustomTag tags[] = new CustomTag[v.size()];
 		for(int i = 0; i < tags.length; i++)
 			tags[i] = (CustomTag)v.elementAt(i);
 		
-		weblog.getPageGenerator().setCustomTags(tags);		
+		//only the pages that use the added, removed or edited tags are outdated
+		Hashtable old = new Hashtable();
+		CustomTag oldTags[] = weblog.getPageGenerator().getCustomTags();
+		for(int i = 0; i < oldTags.length; i++)
+			old.put(oldTags[i].getName(), String.valueOf(oldTags[i].getValue()));
+		Vector changed = new Vector();
+		for(int i = 0; i < tags.length; i++)
+		{
+			Object val = old.remove(tags[i].getName());
+			if(val == null || !val.equals(String.valueOf(tags[i].getValue())))
+				changed.add(tags[i].getName());
+		}
+		changed.addAll(old.keySet());
+		
+		weblog.getPageGenerator().setCustomTags(tags);
+		weblog.outdateCustomTags((String[])changed.toArray(new String[changed.size()]));
     }
 
     /* (non-Javadoc)
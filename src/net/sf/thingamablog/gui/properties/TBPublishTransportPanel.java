@@ -53,6 +53,7 @@ import net.sf.thingamablog.transport.FCPTransport;
 import net.sf.thingamablog.transport.FTPTransport;
 import net.sf.thingamablog.transport.LocalTransport;
 import net.sf.thingamablog.transport.PublishTransport;
+import net.sf.thingamablog.transport.RemotePublishTransport;
 import net.sf.thingamablog.transport.SFTPTransport;
 import net.sf.thingamablog.util.freenet.fcp.fcpManager;
 import net.sf.thingamablog.util.string.ASCIIconv;
@@ -243,6 +244,8 @@ public class TBPublishTransportPanel extends PropertyPanel
 			if(pt.isSavePassword())
 				pt.setPassword(ftpPanel.getPassword());
 			pt.setPassiveMode(ftpPanel.isPassive());
+			if(weblog.getPublishTransport() instanceof RemotePublishTransport)
+				pt.setUploadSessions(((RemotePublishTransport)weblog.getPublishTransport()).getUploadSessions());
 			transport = pt;						
 		}
 		else if(o == SFTP)
@@ -255,6 +258,8 @@ public class TBPublishTransportPanel extends PropertyPanel
 			pt.setSavePassword(sftpPanel.isSavePassword());
 			if(pt.isSavePassword())
 				pt.setPassword(sftpPanel.getPassword());
+			if(weblog.getPublishTransport() instanceof RemotePublishTransport)
+				pt.setUploadSessions(((RemotePublishTransport)weblog.getPublishTransport()).getUploadSessions());
 			transport = pt;					
 		}
 		else if(o == LOCAL)
@@ -278,6 +283,8 @@ public class TBPublishTransportPanel extends PropertyPanel
                         weblog.setBlogUrls("none",url,url,url);
                         pt.setEdition(fcpPanel.getEditionNumber());
                         pt.setSSKPath(fcpPanel.getFlogSSKPath());
+                        if (weblog.getPublishTransport() instanceof FCPTransport)
+                            pt.setUploadFromDisk(((FCPTransport)weblog.getPublishTransport()).isUploadFromDisk());
                         transport = pt;
                 }
 		
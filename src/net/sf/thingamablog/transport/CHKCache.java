@@ -0,0 +1,165 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.transport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Properties;
+
+import net.sf.thingamablog.blog.PublishManifest;
+
+
+/**
+ * Remembers the CHK each file content was inserted under, keyed by the
+ * MD5 hash and content type of the content.
+ *
+ * A CHK only depends on the content and its metadata, so content that was
+ * inserted for an earlier edition of a flog can be referenced again by a
+ * redirect. Entries expire after a while, so content is inserted again
+ * now and then and stays retrievable on the network.
+ */
+class CHKCache
+{
+	/** How long a CHK is reused before the content is inserted again */
+	static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+	private File file;
+	//content key -> "insert time CHK@..."
+	private Properties keys = new Properties();
+	private boolean modified;
+
+	/**
+	 * Loads the cache
+	 * @param file The file the cache is saved to
+	 */
+	CHKCache(File file)
+	{
+		this.file = file;
+		if(file.isFile())
+		{
+			try
+			{
+				InputStream in = new FileInputStream(file);
+				try
+				{
+					keys.load(in);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch(IOException ex)
+			{
+				keys.clear();
+			}
+		}
+	}
+
+	/**
+	 * Gets the key of the content of a file
+	 *
+	 * @param f The file
+	 * @param contentType The content type the file is inserted with
+	 * @return The key
+	 * @throws IOException If the file can't be read
+	 */
+	static String contentKey(File f, String contentType) throws IOException
+	{
+		return PublishManifest.digest(f) + ":" + contentType;
+	}
+
+	/**
+	 * Gets the CHK content was inserted under
+	 *
+	 * @param contentKey The key of the content
+	 * @return The CHK, or null if the content wasn't inserted recently
+	 */
+	synchronized String get(String contentKey)
+	{
+		String val = keys.getProperty(contentKey);
+		if(val == null)
+			return null;
+
+		int sp = val.indexOf(' ');
+		try
+		{
+			long time = Long.parseLong(val.substring(0, sp));
+			if(System.currentTimeMillis() - time > MAX_AGE)
+				return null;
+		}
+		catch(RuntimeException ex)
+		{
+			return null;
+		}
+		return val.substring(sp + 1);
+	}
+
+	/**
+	 * Records the CHK content was inserted under
+	 *
+	 * @param contentKey The key of the content
+	 * @param chk The CHK
+	 */
+	synchronized void put(String contentKey, String chk)
+	{
+		keys.setProperty(contentKey, System.currentTimeMillis() + " " + chk);
+		modified = true;
+	}
+
+	/**
+	 * Saves the cache if it was modified. Expired entries are dropped.
+	 *
+	 * @throws IOException If the cache can't be written
+	 */
+	synchronized void save() throws IOException
+	{
+		if(!modified)
+			return;
+
+		Properties p = new Properties();
+		for(Enumeration e = keys.propertyNames(); e.hasMoreElements();)
+		{
+			String key = (String)e.nextElement();
+			if(get(key) != null)
+				p.setProperty(key, keys.getProperty(key));
+		}
+
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			p.store(out, "Inserted content: MD5:content type = insert time CHK");
+		}
+		finally
+		{
+			out.close();
+		}
+		keys = p;
+		modified = false;
+	}
+}
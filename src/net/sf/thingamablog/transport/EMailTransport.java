@@ -7,13 +7,16 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
 import javax.mail.Address;
 import javax.mail.BodyPart;
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
@@ -21,6 +24,7 @@ import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 import javax.mail.internet.InternetAddress;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
@@ -40,6 +44,8 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.tidy.Tidy;
 
+import com.sun.mail.pop3.POP3Folder;
+
 
 /**
  * @author Bob Tantlinger
@@ -53,6 +59,12 @@ public class EMailTransport extends RemoteTransport
     private String failureReason = null;
     private String postDirective = "POST";
     
+    //the last message that was checked, so the next check only looks
+    //at newer messages. For IMAP it's "uidvalidity:uid", for POP3 the
+    //UIDL of the last message that was left on the server
+    private String lastSeenMailbox;
+    private String lastSeenUID;
+    
     private Tidy tidy = new Tidy();
     
     public EMailTransport()
@@ -77,9 +89,26 @@ public class EMailTransport extends RemoteTransport
             if(folder != null)
             {
                 folder.open(Folder.READ_WRITE); 
-                Message[] message = folder.getMessages();            
+                Hashtable authTable = new Hashtable();
+                for(int i = 0; i < authors.length; i++)
+                {
+                    if(authors[i].getEmailAddress() != null)
+                        authTable.put(authors[i].getEmailAddress(), authors[i]);
+                }
+                
+                String mailbox = getMailboxKey(authTable);
+                String lastSeen = mailbox.equals(lastSeenMailbox) ? lastSeenUID : null;
+                Message[] message = getNewMessages(folder, lastSeen);
                 if(message != null)
                 {
+                    //get the headers of all the new messages in one go, 
+                    //so only the bodies of posts are downloaded
+                    FetchProfile fp = new FetchProfile();
+                    fp.add(FetchProfile.Item.ENVELOPE);
+                    fp.add(FetchProfile.Item.FLAGS);
+                    fp.add(UIDFolder.FetchProfileItem.UID);
+                    folder.fetch(message, fp);
+                    
                     prg.numberOfMessagesToCheck(message.length);
                     for(int i = 0; i < message.length; i++)
                     {                        
@@ -88,19 +117,29 @@ public class EMailTransport extends RemoteTransport
                         String subj = message[i].getSubject();
                         
                         boolean isAdded = false;
-                        BlogEntry be = this.createEntryFromMessage(message[i], authors, catNames);
-                        if(be != null)
+                        if(!message[i].isSet(Flags.Flag.DELETED) && isPostSubject(subj) && 
+                            getAuthor(message[i], authTable) != null)
                         {
-                            entries.add(be);
-                            message[i].setFlag(Flags.Flag.DELETED, true);
-                            isAdded = true;
+                            BlogEntry be = this.createEntryFromMessage(message[i], authTable, catNames);
+                            if(be != null)
+                            {
+                                entries.add(be);
+                                message[i].setFlag(Flags.Flag.DELETED, true);
+                                isAdded = true;
+                            }
                         }
                         
+                        //POP3 needs a message that stays on the server
+                        if(!isAdded || !(folder instanceof POP3Folder))
+                            lastSeen = getUID(folder, message[i]);
+                        
                         prg.messageChecked((subj == null) ? "(No subject)" : subj, isAdded);
                     }
                 }
                 
                 folder.close(true);
+                lastSeenMailbox = mailbox;
+                lastSeenUID = lastSeen;
             }        
         }
         catch(Exception ex)
@@ -116,15 +155,96 @@ public class EMailTransport extends RemoteTransport
         return entries;
     }
     
-    private BlogEntry createEntryFromMessage(Message m, Author[] auths, String[] cats) throws MessagingException, IOException
+    /**
+     * Gets the messages that arrived since the last check. IMAP messages
+     * are selected by UID, and POP3 messages by the position of the last
+     * seen message in the UIDL list, which is fetched with one command.
+     */
+    private Message[] getNewMessages(Folder folder, String lastSeen) throws MessagingException
+    {
+        if(folder instanceof UIDFolder && !(folder instanceof POP3Folder))
+        {
+            UIDFolder uf = (UIDFolder)folder;
+            String validity = uf.getUIDValidity() + ":";
+            if(lastSeen == null || !lastSeen.startsWith(validity))
+                return folder.getMessages();
+            
+            long last = Long.parseLong(lastSeen.substring(validity.length()));
+            Message m[] = uf.getMessagesByUID(last + 1, UIDFolder.LASTUID);
+            
+            //the range always includes the newest message, even if it's been seen
+            List newer = new ArrayList();
+            for(int i = 0; i < m.length; i++)
+            {
+                if(m[i] != null && uf.getUID(m[i]) > last)
+                    newer.add(m[i]);
+            }
+            return (Message[])newer.toArray(new Message[newer.size()]);
+        }
+        
+        Message m[] = folder.getMessages();
+        if(lastSeen == null || !(folder instanceof POP3Folder))
+            return m;
+        
+        FetchProfile fp = new FetchProfile();
+        fp.add(UIDFolder.FetchProfileItem.UID);
+        folder.fetch(m, fp);
+        for(int i = m.length - 1; i >= 0; i--)
+        {
+            if(lastSeen.equals(((POP3Folder)folder).getUID(m[i])))
+            {
+                Message newer[] = new Message[m.length - i - 1];
+                System.arraycopy(m, i + 1, newer, 0, newer.length);
+                return newer;
+            }
+        }
+        
+        //the last seen message is gone, so check them all
+        return m;
+    }
+    
+    private String getUID(Folder folder, Message m) throws MessagingException
+    {
+        if(folder instanceof POP3Folder)
+            return ((POP3Folder)folder).getUID(m);
+        if(folder instanceof UIDFolder)
+        {
+            UIDFolder uf = (UIDFolder)folder;
+            return uf.getUIDValidity() + ":" + uf.getUID(m);
+        }
+        return null;
+    }
+    
+    /**
+     * Identifies the mailbox the last seen UID belongs to. The key
+     * includes the addresses of the authors, since posts from an
+     * address that wasn't an author were passed over.
+     */
+    private String getMailboxKey(Hashtable authTable)
+    {
+        String adrs[] = (String[])authTable.keySet().toArray(new String[authTable.size()]);
+        Arrays.sort(adrs);
+        StringBuffer sb = new StringBuffer();
+        for(int i = 0; i < adrs.length; i++)
+            sb.append(adrs[i]).append(',');
+        
+        return protocol + ":" + getUserName() + "@" + getAddress() + ":" + getPort() + 
+            ":" + Integer.toHexString(sb.toString().hashCode());
+    }
+    
+    private boolean isPostSubject(String subj)
+    {
+        return subj != null && subj.toLowerCase().startsWith(postDirective.toLowerCase()) &&
+            subj.indexOf(':', postDirective.length()) != -1;
+    }
+    
+    private BlogEntry createEntryFromMessage(Message m, Hashtable auths, String[] cats) throws MessagingException, IOException
     {
         String subj = m.getSubject();            
-        if(subj == null || !subj.toLowerCase().startsWith(postDirective.toLowerCase())) //this isn't a post email
+        if(!isPostSubject(subj)) //this isn't a post email
             return null;
         
         int colonIndex = subj.indexOf(':', postDirective.length());//subj.indexOf(':');
-        if(colonIndex == -1)
-            return null; //didn't end with a colon        
         
         Author auth = getAuthor(m, auths);
         if(auth == null)
@@ -185,20 +305,14 @@ public class EMailTransport extends RemoteTransport
         return be;
     }
     
-    private Author getAuthor(Message m, Author[] auths) throws MessagingException
+    private Author getAuthor(Message m, Hashtable auths) throws MessagingException
     {
         Address[] adr = m.getFrom();
         if(adr != null && adr.length > 0 && adr[0] instanceof InternetAddress)
         {                            
             String iAdr = ((InternetAddress)adr[0]).getAddress();
             if(iAdr != null && !iAdr.equals(""))
-            {
-                for(int i = 0; i < auths.length; i++)
-                {
-                    if(auths[i].getEmailAddress().equals(iAdr))
-                        return auths[i];
-                }
-            }
+                return (Author)auths.get(iAdr);
         }
         
         return null;
@@ -335,7 +449,8 @@ public class EMailTransport extends RemoteTransport
         failureReason = null;
         Properties props = new Properties();
         props.put("mail." + protocol + ".port", getPort() + "");        
-        Session session = Session.getDefaultInstance(props, null);
+        //not the default session, which keeps the properties it was first made with
+        Session session = Session.getInstance(props, null);
         
         try
         {
@@ -405,6 +520,43 @@ public class EMailTransport extends RemoteTransport
      */
     public void setPostDirective(String postDirective)
     {
+        //messages that were passed over may be posts now
+        if(!postDirective.equals(this.postDirective))
+            lastSeenUID = null;
         this.postDirective = postDirective;
     }
+    
+    /**
+     * Gets the last message that was checked, so the next check 
+     * only looks at newer messages
+     * 
+     * @return the UID of the message, or null to check every message
+     */
+    public String getLastSeenUID()
+    {
+        return lastSeenUID;
+    }
+    
+    /**
+     * Gets the mailbox the last seen UID belongs to. The UID is
+     * ignored if the server, user, protocol or authors change.
+     * 
+     * @return the mailbox
+     */
+    public String getLastSeenMailbox()
+    {
+        return lastSeenMailbox;
+    }
+    
+    /**
+     * Sets the last message that was checked
+     * 
+     * @param mailbox The mailbox the UID belongs to
+     * @param uid The UID, or null to check every message
+     */
+    public void setLastSeenUID(String mailbox, String uid)
+    {
+        lastSeenMailbox = mailbox;
+        lastSeenUID = uid;
+    }
 }
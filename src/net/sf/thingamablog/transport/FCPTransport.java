@@ -15,20 +15,28 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.plaf.ProgressBarUI;
 import net.sf.thingamablog.blog.PublishProgress;
 
-import net.sf.thingamablog.util.freenet.fcp.Client;
 import net.sf.thingamablog.util.freenet.fcp.ClientPutComplexDir;
+import net.sf.thingamablog.util.freenet.fcp.ClientPutFile;
 import net.sf.thingamablog.util.freenet.fcp.Connection;
 import net.sf.thingamablog.util.freenet.fcp.DirectFileEntry;
 import net.sf.thingamablog.util.freenet.fcp.DiskFileEntry;
 import net.sf.thingamablog.util.freenet.fcp.FileEntry;
 import net.sf.thingamablog.util.freenet.fcp.Message;
+import net.sf.thingamablog.util.freenet.fcp.MultiplexClient;
+import net.sf.thingamablog.util.freenet.fcp.RedirectFileEntry;
+import net.sf.thingamablog.util.freenet.fcp.Request;
+import net.sf.thingamablog.util.freenet.fcp.TestDDARequest;
+import net.sf.thingamablog.util.freenet.fcp.TestDDAResponse;
 import net.sf.thingamablog.util.freenet.fcp.Verbosity;
 import net.sf.thingamablog.util.freenet.fcp.fcpManager;
 import net.sf.thingamablog.util.string.ASCIIconv;
@@ -40,9 +48,13 @@ import thingamablog.l10n.i18n;
  */
 public class FCPTransport implements PublishTransport {
     private static Logger logger = Logger.getLogger("net.sf.thingamablog.transport");
+    private static int requestCount;
+    // The TestDDA replies aren't routed to a request, so only one disk
+    // access test may run at a time on the clients the transports share
+    private static final Object ddaLock = new Object();
     private fcpManager Manager = new fcpManager();
     private String insertURI;
-    private Client client;
+    private MultiplexClient client;
     private String failMsg;
     private int edition;
     private String hostname;
@@ -50,6 +62,8 @@ public class FCPTransport implements PublishTransport {
     private boolean activeLink;
     private String activeLinkPath;
     private String SSKPath;
+    private boolean uploadFromDisk = true;
+    private CHKCache keyCache;
     
     /**
      * Connects the transport
@@ -58,14 +72,15 @@ public class FCPTransport implements PublishTransport {
      */
     public boolean connect(){
         failMsg="";
-        if(Manager.isConnected()){
+        if(isConnected()){
             failMsg="Already connected";
             return false;
         }
         try {
             logger.info("Connecting to the node...");
-            Manager.getConnection().connect();
-            client = new Client(Manager.getConnection());
+            // Flogs on the same node share one connection, so they can
+            // publish at the same time without colliding client names
+            client = Manager.acquireClient();
             logger.info("Connected!");
             return true;
         } catch (IOException ioe) {
@@ -82,10 +97,11 @@ public class FCPTransport implements PublishTransport {
      * @return true on success, false otherwise
      */
     public boolean disconnect(){
-        if (client.isDisconnected())
+        if (client == null)
             return true;
         logger.info("Disconnecting from the node...");
-        Manager.getConnection().disconnect();
+        Manager.releaseClient(client);
+        client = null;
         logger.info("Disconnected!");
         return true;
     }
@@ -96,7 +112,7 @@ public class FCPTransport implements PublishTransport {
      * @return true if connected, false if not
      */
     public boolean isConnected(){
-        return Manager.isConnected();
+        return client != null && !client.isDisconnected();
     }
     
     /**
@@ -115,7 +131,7 @@ public class FCPTransport implements PublishTransport {
     
     public boolean publishFile(Hashtable ht, PublishProgress tp, String frontPage, String arcPath){
         //We do the publish job for an entire directory
-        if(!Manager.isConnected()){
+        if(!isConnected()){
             logger.log(Level.WARNING,"The connection to the node is not open !");
             failMsg="Not connected";
             return false;
@@ -124,47 +140,48 @@ public class FCPTransport implements PublishTransport {
         int current_edition = edition + 1;
         String dirURI = "freenet:USK@" + insertURI + "/" + ASCIIconv.convertNonAscii(this.SSKPath) + "/" + current_edition + "/";
         System.out.println("Insert URI : " + dirURI);
-        ClientPutComplexDir putDir = new ClientPutComplexDir("Thingamablog-insert", dirURI);
+        ClientPutComplexDir putDir = new ClientPutComplexDir(nextIdentifier("Thingamablog-insert-"), dirURI);
         System.out.println("Default name : " + frontPage);
         putDir.setDefaultName(frontPage);
         putDir.setMaxRetries(-1);
         putDir.setVerbosity(Verbosity.ALL);
+        // The node reads the files itself if it runs on this machine and may
+        // read the directories they are in. Otherwise they are streamed to it.
+        Hashtable diskAccess = null;
+        if (uploadFromDisk && isLocalNode())
+            diskAccess = new Hashtable();
+        Vector names = new Vector();
+        Vector files = new Vector();
         for(Enumeration e = ht.keys() ; e.hasMoreElements() ;) {
-            Object element = e.nextElement();
-            File file = (File)element;
-            long[] fileLength = new long[1];
-            try {
-                InputStream fileEntryInputStream = createFileInputStream(file, fileLength);
-                FileEntry fileEntry = createDirectFileEntry(file.getName(), fileEntryInputStream, fileLength);           
-                if (fileEntry != null) {
-                    System.out.println("File to insert : " + fileEntry.getFilename());
-                    putDir.addFileEntry(fileEntry);
-                }
-            } catch (IOException ex) {
-                logger.log(Level.WARNING, ex.getMessage());
+            File file = (File)e.nextElement();
+            if (!file.isFile()) {
+                logger.log(Level.WARNING, "Skipping missing file " + file);
+                continue;
             }
+            names.add(file.getName());
+            files.add(file);
         }
         // If there is an active link set, we publish it
         if (activeLink) {
             File file = new File(activeLinkPath);            
-            long[] fileLength = new long[1];
-            InputStream fileEntryInputStream;
-            try {
-                fileEntryInputStream = createFileInputStream(file, fileLength);           
-                FileEntry fileEntry = createDirectFileEntry("activelink.png", fileEntryInputStream, fileLength);
-                if (fileEntry != null) {
-                    System.out.println("File to insert : activelink.png");
-                    putDir.addFileEntry(fileEntry);
-                }
-             } catch (IOException ex) {
-                    logger.log(Level.WARNING, ex.getMessage());
-             }
+            if (file.isFile()) {
+                names.add("activelink.png");
+                files.add(file);
+            } else {
+                logger.log(Level.WARNING, "Skipping missing active link " + file);
+            }
         }
-        try {            
-            client.execute(putDir);
-            System.out.println("Publish in progress...");
-        } catch (IOException ioe) {
-            logger.log(Level.WARNING,"Publish process failed : " + ioe.getMessage());
+        boolean added = addFileEntries(putDir, names, files, diskAccess, tp);
+        saveKeyCache();
+        if (!added) {
+            return false;
+        }
+        Request request;
+        try {
+            request = client.submit(putDir);
+            logger.info("Publish queued...");
+        } catch (IllegalStateException ise) {
+            logger.log(Level.WARNING,"Publish process failed : " + ise.getMessage());
             return false;
         }
         String finalURI = null;
@@ -175,8 +192,8 @@ public class FCPTransport implements PublishTransport {
         int blockPublished = 0;
         tp.publishStarted(totalBlockToPublish);
         while (!finished) {
-            Message message = client.readMessage();
-            finished = (message == null) || (disconnected = client.isDisconnected());
+            Message message = request.readMessage();
+            finished = (message == null) || (disconnected = request.isDisconnected());
             logger.log(Level.INFO, "Message from the node :" + message);
             if (!finished) {
                 String messageName = message.getName();
@@ -204,11 +221,20 @@ public class FCPTransport implements PublishTransport {
                 }
                 success = "PutSuccessful".equals(messageName);
                 finished = success || "PutFailed".equals(messageName) || messageName.endsWith("Error");
-                if (tp.isAborted())
-                    disconnect();
+                if (tp.isAborted()) {
+                    try {
+                        request.cancel();
+                    } catch (IOException ioe) {
+                        logger.log(Level.WARNING,"Unable to cancel the insert : " + ioe.getMessage());
+                    }
+                    finished = true;
+                }
             }            
         }
         // If the publish has been made, we update the edition number to the current edition
+        if (request.getFailure() != null) {
+            logger.log(Level.WARNING,"Publish process failed : " + request.getFailure().getMessage());
+        }
         if(finalURI != null){
             edition++;
         }
@@ -216,15 +242,290 @@ public class FCPTransport implements PublishTransport {
         return success;
     }
     
-    private FileEntry createDirectFileEntry(String filename, InputStream fileEntryInputStream, long[] fileLength){
+    /**
+     * Adds the files to the directory insert. With a key cache, a file
+     * whose content was inserted for an earlier edition is added as a
+     * redirect to that CHK. New content is inserted as CHKs of its own
+     * first, several at a time, and then added as redirects too, so the
+     * directory insert itself only carries the manifest. Content that
+     * can't be inserted on its own goes into the directory insert.
+     *
+     * @return false if the publish was aborted or the node went away
+     */
+    private boolean addFileEntries(ClientPutComplexDir putDir, Vector names, Vector files,
+            Hashtable diskAccess, PublishProgress tp) {
+        if (keyCache == null) {
+            for (int i = 0; i < files.size(); i++) {
+                FileEntry fileEntry = createFileEntry((String)names.get(i), (File)files.get(i), diskAccess);
+                System.out.println("File to insert : " + fileEntry.getFilename() + " (" + fileEntry.getName() + ")");
+                putDir.addFileEntry(fileEntry);
+            }
+            return true;
+        }
+        // content key -> Vector of the indexes of the files with that content
+        Hashtable newContent = new Hashtable();
+        int reused = 0;
+        long reusedBytes = 0;
+        for (int i = 0; i < files.size(); i++) {
+            String name = (String)names.get(i);
+            File file = (File)files.get(i);
+            String contentType = DefaultMIMETypes.guessMIMEType(name);
+            String key = null;
+            try {
+                key = CHKCache.contentKey(file, contentType);
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to hash " + file + " : " + ioe.getMessage());
+            }
+            String chk = (key == null) ? null : keyCache.get(key);
+            if (chk != null) {
+                putDir.addFileEntry(new RedirectFileEntry(name, contentType, chk));
+                reused++;
+                reusedBytes += file.length();
+            } else if (key == null) {
+                putDir.addFileEntry(createFileEntry(name, file, diskAccess));
+            } else {
+                Vector indexes = (Vector)newContent.get(key);
+                if (indexes == null) {
+                    indexes = new Vector();
+                    newContent.put(key, indexes);
+                }
+                indexes.add(new Integer(i));
+            }
+        }
+        tp.logMessage("Reusing " + reused + " unchanged files (" + reusedBytes + " bytes) from earlier inserts");
+        // insert the new content, the client runs a few inserts at once
+        Vector requests = new Vector();
+        Vector keys = new Vector();
+        for (Enumeration e = newContent.keys(); e.hasMoreElements();) {
+            String key = (String)e.nextElement();
+            int first = ((Integer)((Vector)newContent.get(key)).firstElement()).intValue();
+            FileEntry fileEntry = createFileEntry((String)names.get(first), (File)files.get(first), diskAccess);
+            ClientPutFile put = new ClientPutFile(nextIdentifier("Thingamablog-chk-"), "CHK@", fileEntry);
+            put.setMaxRetries(-1);
+            try {
+                requests.add(client.submit(put));
+                keys.add(key);
+            } catch (IllegalStateException ise) {
+                failMsg = "Unable to insert " + fileEntry.getFilename() + " : " + ise.getMessage();
+                cancelAll(requests);
+                return false;
+            }
+        }
+        for (int r = 0; r < requests.size(); r++) {
+            String key = (String)keys.get(r);
+            String chk = waitForCHK((Request)requests.get(r), tp);
+            if (tp.isAborted() || !isConnected()) {
+                cancelAll(requests);
+                return false;
+            }
+            if (chk != null)
+                keyCache.put(key, chk);
+            Vector indexes = (Vector)newContent.get(key);
+            for (int j = 0; j < indexes.size(); j++) {
+                int i = ((Integer)indexes.get(j)).intValue();
+                String name = (String)names.get(i);
+                if (chk != null) {
+                    putDir.addFileEntry(new RedirectFileEntry(name, DefaultMIMETypes.guessMIMEType(name), chk));
+                } else {
+                    putDir.addFileEntry(createFileEntry(name, (File)files.get(i), diskAccess));
+                }
+                tp.logMessage(name + (chk != null ? " inserted as " + chk : " will be inserted with the directory"));
+            }
+            tp.updateBlocksTransferred(r + 1, requests.size(), i18n.str("insertion_in_progress"));
+        }
+        return true;
+    }
+    
+    /**
+     * Waits for a CHK insert to finish. The publish is checked every
+     * second, and the caller cancels the inserts if it was aborted or
+     * the node went away.
+     *
+     * @return the CHK, or null if the insert failed or was aborted
+     */
+    private String waitForCHK(Request request, PublishProgress tp) {
+        while (true) {
+            Message message = request.readMessage(1000);
+            if (message == null) {
+                if (request.isFinished() || request.isDisconnected())
+                    return null;
+                if (tp.isAborted() || !isConnected())
+                    return null;
+                continue;
+            }
+            String messageName = message.getName();
+            if ("PutSuccessful".equals(messageName))
+                return message.get("URI");
+            if ("PutFailed".equals(messageName) || messageName.endsWith("Error")) {
+                logger.log(Level.WARNING, "CHK insert failed : " + message);
+                return null;
+            }
+        }
+    }
+    
+    private void cancelAll(Vector requests) {
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                ((Request)requests.get(i)).cancel();
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to cancel an insert : " + ioe.getMessage());
+            }
+        }
+    }
+    
+    private void saveKeyCache() {
+        if (keyCache == null)
+            return;
+        try {
+            keyCache.save();
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "Unable to save the CHK cache : " + ioe.getMessage());
+        }
+    }
+    
+    /**
+     * Creates the entry for a file. The file is sent as a disk entry
+     * if the node may read its directory, otherwise as a direct entry
+     * whose content is streamed from the file when the insert starts.
+     *
+     * @param filename The name of the file in the insert
+     * @param file The file
+     * @param diskAccess directory -> Boolean results of the disk access tests,
+     * or null if the node can't read the files itself
+     * @return The entry
+     */
+    private FileEntry createFileEntry(String filename, File file, Hashtable diskAccess){
         String content = DefaultMIMETypes.guessMIMEType(filename);
-        FileEntry fileEntry = new DirectFileEntry(filename, content, fileEntryInputStream, fileLength[0]);
-        return fileEntry;
+        if (diskAccess != null) {
+            File dir = file.getAbsoluteFile().getParentFile();
+            Boolean allowed = (Boolean)diskAccess.get(dir);
+            if (allowed == null) {
+                allowed = Boolean.valueOf(testDiskAccess(dir));
+                diskAccess.put(dir, allowed);
+            }
+            if (allowed.booleanValue())
+                return new DiskFileEntry(filename, content, file.getAbsolutePath());
+        }
+        return new DirectFileEntry(filename, content, file);
+    }
+    
+    /**
+     * Returns a new identifier for a request. The node keeps persistent
+     * requests around, so the identifiers are unique among the requests
+     * of all the weblogs, even if they start in the same millisecond
+     */
+    private static synchronized String nextIdentifier(String prefix) {
+        return prefix + System.currentTimeMillis() + "-" + (++requestCount);
+    }
+    
+    /**
+     * Checks if a file is directly in a directory, after resolving
+     * any symbolic links and relative parts of their paths
+     */
+    private static boolean isInDirectory(File file, File dir) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent == null)
+            return false;
+        try {
+            return parent.getCanonicalFile().equals(dir.getCanonicalFile());
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+    
+    /**
+     * Asks the node if it may read files from a directory. This is the
+     * TestDDA handshake: the node names a file it wrote in the directory,
+     * and is allowed to read the directory if we can read it back.
+     *
+     * @param dir The directory
+     * @return true if the node may read the directory
+     */
+    boolean testDiskAccess(File dir) {
+        String path = dir.getAbsolutePath();
+        // not the client's own lock, its reader thread needs
+        // that one to hand us the replies
+        synchronized (ddaLock) {
+            try {
+                client.send(new TestDDARequest(path));
+                Message reply = readDDAMessage("TestDDAReply", path);
+                if (reply == null)
+                    return false;
+                String readContent = null;
+                String readFilename = reply.get("ReadFilename");
+                // only read back a file in the directory that's tested,
+                // not any file the node names
+                if (readFilename != null && !isInDirectory(new File(readFilename), dir)) {
+                    logger.warning("Ignoring the TestDDA file " + readFilename + 
+                        ", it isn't in " + path);
+                    readFilename = null;
+                }
+                if (readFilename != null) {
+                    try {
+                        readContent = readFile(new File(readFilename));
+                    } catch (IOException ioe) {
+                        logger.log(Level.INFO, "Unable to read the TestDDA file : " + ioe.getMessage());
+                    }
+                }
+                client.send(new TestDDAResponse(path, readContent));
+                Message complete = readDDAMessage("TestDDAComplete", path);
+                boolean allowed = complete != null &&
+                    Boolean.valueOf(complete.get("ReadDirectoryAllowed")).booleanValue();
+                logger.info("Disk access to " + path + (allowed ? " allowed" : " denied"));
+                return allowed;
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "Disk access test failed : " + ioe.getMessage());
+                return false;
+            }
+        }
+    }
+    
+    private Message readDDAMessage(String name, String path) {
+        while (true) {
+            Message message = client.readUnroutedMessage(10000);
+            if (message == null)
+                return null;
+            if (name.equals(message.getName()) && path.equals(message.get("Directory")))
+                return message;
+            if ("ProtocolError".equals(message.getName()))
+                return null;
+        }
+    }
+    
+    private String readFile(File file) throws IOException {
+        byte[] content = new byte[(int)file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < content.length) {
+                int n = in.read(content, read, content.length - read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+            return new String(content, 0, read, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+    
+    private boolean isLocalNode() {
+        try {
+            return InetAddress.getByName(hostname).isLoopbackAddress();
+        } catch (UnknownHostException uhe) {
+            return false;
+        }
     }
-        
-    private InputStream createFileInputStream(File file, long[] length) throws IOException {
-        length[0] = file.length();
-        return new FileInputStream(file);
+    
+    /**
+     * Sets the file that remembers the CHKs of inserted content. Content
+     * that was inserted before is then reused by later editions instead
+     * of being inserted again.
+     *
+     * @param file The file, or null to insert every file with each edition
+     */
+    public void setKeyCacheFile(File file) {
+        keyCache = (file == null) ? null : new CHKCache(file);
     }
     
     public void setNode(String hostname, int port) {
@@ -265,6 +566,21 @@ public class FCPTransport implements PublishTransport {
         return this.activeLink;
     }
     
+    /**
+     * Sets whether the node should read the files of an insert from the disk
+     * itself, rather than have them streamed over the connection. This only
+     * applies when the node runs on this machine and may read the directories.
+     *
+     * @param b true to let the node read the files
+     */
+    public void setUploadFromDisk(boolean b){
+        this.uploadFromDisk = b;
+    }
+    
+    public boolean isUploadFromDisk(){
+        return this.uploadFromDisk;
+    }
+    
     public void setActiveLinkPath(String activeLinkPath){
         this.activeLinkPath = activeLinkPath;
     }
@@ -26,6 +26,7 @@ package net.sf.thingamablog.transport;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -52,6 +53,10 @@ public class FTPTransport extends RemotePublishTransport
 	private boolean isPassiveMode;
 	private String failMsg = "";
     private MessageListener msgListener = new MessageListener();
+    //the remote working directory and transfer type, tracked
+    //here to save a round trip to the server for each file
+    private String cwd;
+    private FTPTransferType transferType;
     
     private List asciiTypes = new ArrayList();
 	
@@ -82,6 +87,9 @@ public class FTPTransport extends RemotePublishTransport
         
        	try
        	{
+       		clearKnownDirectories();
+       		cwd = null;
+       		transferType = null;
        		ftp = new FTPClient();
        		ftp.setMessageListener(msgListener);            
        		ftp.setRemotePort(getPort());//ftp.setControlPort(getPort());
@@ -139,13 +147,12 @@ public class FTPTransport extends RemotePublishTransport
 		if(!pubPath.endsWith("/"))
 			pubPath += "/"; //append a trailing slash if needed 
         
+		String tmpName = null;
 		try
 		{
-		    String cwd = ftp.pwd();
-		    if(!cwd.endsWith("/"))
-		        cwd += "/";
 		    if(!pubPath.equals(cwd))
 		    {
+		        cwd = null;
 		        boolean changedDir = false;
 		        try
 		        {
@@ -164,20 +171,45 @@ public class FTPTransport extends RemotePublishTransport
 		            //was unable to change dir. The dir likely does not exist
 		            //so we'll try making the dir structure of pubPath
 		            mkdirs(pubPath);
-		            //ftp.chdir(pubPath);
 		        }
+		        cwd = pubPath;
+		        addKnownDirectory(pubPath);
 		    }
 			
 			//set up the transfer properties
-			if(isASCII(file))
-				ftp.setType(FTPTransferType.ASCII);
-			else
-				ftp.setType(FTPTransferType.BINARY);			
+			FTPTransferType type = isASCII(file) ? 
+				FTPTransferType.ASCII : FTPTransferType.BINARY;
+			if(type != transferType)
+			{
+				transferType = null;
+				ftp.setType(type);
+				transferType = type;
+			}
 			
 			ftp.setProgressMonitor(new MyProgressMonitor(tp));
 						
-			//ftp.put(new FileInputStream(file), dest);
-			ftp.put(new FileInputStream(file), file.getName());	
+			//upload to a temporary name and rename it once it's complete
+			tmpName = tempName(file.getName());
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				ftp.put(in, tmpName);
+			}
+			finally
+			{
+				in.close();
+			}
+			
+			//a cancelled transfer leaves a partial file
+			if(tp.isAborted())
+			{
+				removeTemp(tmpName);
+				failMsg = "Aborted";
+				return false;
+			}
+			//ASCII transfers may change the size of the file
+			rename(tmpName, file.getName(), 
+				type == FTPTransferType.BINARY ? file.length() : -1);
 			
 			//finished = true;
 			return true;
@@ -188,6 +220,8 @@ public class FTPTransport extends RemotePublishTransport
 			failMsg += "\n" + ex.getMessage();
 		    ex.printStackTrace();
 		    logger.log(Level.WARNING, failMsg, ex);
+		    if(tmpName != null && tp.isAborted())
+		    	removeTemp(tmpName);
 		}
 		
 		//finished = true;
@@ -195,40 +229,90 @@ public class FTPTransport extends RemotePublishTransport
     }   
     
     
+	/**
+	 * Renames an uploaded file to its real name
+	 * 
+	 * @param from The temporary name
+	 * @param to The real name
+	 * @param size The size the upload should have, or -1 if it isn't known
+	 */
+	private void rename(String from, String to, long size) throws IOException, FTPException
+	{
+		try
+		{
+			ftp.rename(from, to);
+		}
+		catch(FTPException ex)
+		{
+			//some servers won't rename over an existing file, but the
+			//live file is only deleted if the upload is there to replace it
+			if(!isUploaded(from, size))
+				throw ex;
+			try
+			{
+				ftp.delete(to);
+			}
+			catch(FTPException delEx)
+			{}
+			ftp.rename(from, to);
+		}
+	}
+	
+	private boolean isUploaded(String name, long size)
+	{
+		try
+		{
+			long remoteSize = ftp.size(name);
+			return size < 0 ? remoteSize >= 0 : remoteSize == size;
+		}
+		catch(Exception ex)
+		{
+			logger.log(Level.WARNING, "Unable to check the upload " + name, ex);
+			return false;
+		}
+	}
+	
+	private void removeTemp(String name)
+	{
+		try
+		{
+			ftp.delete(name);
+		}
+		catch(Exception ex)
+		{
+			logger.log(Level.INFO, "Unable to remove the partial upload " + name, ex);
+		}
+	}
+    
 	private void mkdirs(String path) throws IOException, FTPException
 	{		
-	    String cwd = ftp.pwd();
-	    	    
-	    while(!path.startsWith(cwd))
-	    {
-	        System.out.println(cwd + " " + path);
-	        ftp.cdup();//should throw exception if can't cdup
-	        System.out.println("CDUP!");
-	        cwd = ftp.pwd();
-	    }
-	    
-        String mkPath = path.substring(cwd.length(), path.length());
-        System.out.println("DIRS TO MAKE: " + mkPath);
-
-        String dirs[] = splitPath(mkPath);
+        //make the dirs of the absolute path that aren't known to 
+        //exist, which another session may have made already
+        String dirs[] = splitPath(path);
+        String dir = path.startsWith("/") ? "/" : "";
 		for(int i = 0; i < dirs.length; i++)
 		{
-			System.out.println("mkdir " + dirs[i]);
-			logger.info("mkdir " + dirs[i]);
+			dir += dirs[i] + "/";
+			if(isKnownDirectory(dir))
+				continue;
+			
+			System.out.println("mkdir " + dir);
+			logger.info("mkdir " + dir);
 
 			//swallow exception that results from trying to
 			//make a dir that already exists
 			try
 			{
-				ftp.mkdir(dirs[i]);
+				ftp.mkdir(dir);
 			}
 			catch(Exception ex)
 			{}
-
-			//change to the new dir
-			//throws an exception if something went wrong                
-			ftp.chdir(dirs[i]);
+			addKnownDirectory(dir);
 		}
+
+		//change to the new dir
+		//throws an exception if something went wrong                
+		ftp.chdir(path);
 	}
 
 
@@ -265,6 +349,14 @@ public class FTPTransport extends RemotePublishTransport
         return failMsg;
     }
     
+    protected RemotePublishTransport newTransport()
+    {
+        FTPTransport t = new FTPTransport();
+        t.setPassiveMode(isPassiveMode);
+        t.setASCIIExtentions(asciiTypes);
+        return t;
+    }
+    
 	/**
 	 * Indicates whether the transport uses passive mode
 	 * 
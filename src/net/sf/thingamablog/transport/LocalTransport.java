@@ -74,9 +74,12 @@ public class LocalTransport implements PublishTransport
 			FileChannel srcChannel = new FileInputStream(file).getChannel();
     
 			
+			// Copy to a temporary file first, then move it into place, 
+			// so a half written file is never served
 			File dest = new File(dir, file.getName());
+			File tmp = new File(dir, "." + file.getName() + ".part");
 			// Create channel on the destination
-			FileChannel dstChannel = new FileOutputStream(dest).getChannel();
+			FileChannel dstChannel = new FileOutputStream(tmp).getChannel();
     
 			// Copy file contents from source to destination
 			dstChannel.transferFrom(srcChannel, 0, srcChannel.size());
@@ -85,6 +88,17 @@ public class LocalTransport implements PublishTransport
 			srcChannel.close();
 			dstChannel.close();
 			
+			if(!tmp.renameTo(dest))
+			{
+				//some platforms won't rename over an existing file
+				dest.delete();
+				if(!tmp.renameTo(dest))
+				{
+					tmp.delete();
+					throw new IOException("Unable to write " + dest.getAbsolutePath());
+				}
+			}
+			
 			tp.bytesTransferred(file.length());
 			
 			return true;
@@ -3,6 +3,7 @@
  */
 package net.sf.thingamablog.transport;
 
+import java.util.Hashtable;
 import java.util.StringTokenizer;
 
 
@@ -12,6 +13,110 @@ import java.util.StringTokenizer;
  */
 public abstract class RemotePublishTransport extends RemoteTransport implements PublishTransport
 {
+    /** The default number of sessions that upload at the same time */
+    public static final int DEFAULT_UPLOAD_SESSIONS = 3;
+    
+    private int uploadSessions = DEFAULT_UPLOAD_SESSIONS;
+    
+    //remote directories known to exist, shared with the sessions
+    //created by createSession() and cleared when this transport connects
+    private Hashtable knownDirs = new Hashtable();
+    private boolean isSession;
+    
+    /**
+     * Creates an unconnected transport of the same type
+     * 
+     * @return The new transport
+     */
+    protected abstract RemotePublishTransport newTransport();
+    
+    /**
+     * Creates an unconnected transport with the same settings as this one,
+     * to upload files in parallel with it. The session shares the cache of
+     * remote directories that are known to exist with this transport. 
+     * Disconnecting the session doesn't clear the password.
+     * 
+     * @return The new session
+     */
+    public RemotePublishTransport createSession()
+    {
+        RemotePublishTransport t = newTransport();
+        t.setAddress(getAddress());
+        t.setPort(getPort());
+        t.setUserName(getUserName());
+        t.setPassword(getPassword());
+        t.setSavePassword(true);
+        t.setUploadSessions(1);
+        t.knownDirs = knownDirs;
+        t.isSession = true;
+        return t;
+    }
+    
+    /**
+     * Gets the number of sessions that upload files at the same time
+     * 
+     * @return The number of sessions
+     */
+    public int getUploadSessions()
+    {
+        return uploadSessions;
+    }
+    
+    /**
+     * Sets the number of sessions that upload files at the same time.
+     * More sessions hide the latency of the per file round trips, but
+     * some servers limit the number of connections per user.
+     * 
+     * @param n The number of sessions, 1 to upload one file at a time
+     */
+    public void setUploadSessions(int n)
+    {
+        uploadSessions = Math.max(1, n);
+    }
+    
+    /**
+     * Forgets the remote directories that are known to exist. Called on 
+     * connect, so the cache only lives as long as a publish. 
+     */
+    protected void clearKnownDirectories()
+    {
+        if(!isSession)
+            knownDirs.clear();
+    }
+    
+    /**
+     * Indicates if a remote directory is known to exist
+     * 
+     * @param dir The absolute path of the directory, with a trailing slash
+     * @return true if the directory was created or visited in this publish
+     */
+    protected boolean isKnownDirectory(String dir)
+    {
+        return knownDirs.containsKey(dir);
+    }
+    
+    /**
+     * Records that a remote directory, and so all its parents, exist
+     * 
+     * @param dir The absolute path of the directory, with a trailing slash
+     */
+    protected void addKnownDirectory(String dir)
+    {
+        knownDirs.put(dir, dir);
+    }
+    
+    /**
+     * Gets the temporary name a file is uploaded to before it is renamed
+     * to its real name, so a half written file is never served
+     * 
+     * @param name The name of the file
+     * @return The temporary name
+     */
+    protected static String tempName(String name)
+    {
+        return "." + name + ".part";
+    }
+    
     /**
      * Convienence method for splitting a path into an array
      * 
@@ -33,6 +33,7 @@ import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.SftpProgressMonitor;
 import com.jcraft.jsch.UserInfo;
 
@@ -47,6 +48,9 @@ public class SFTPTransport extends RemotePublishTransport
     private static Logger logger = Logger.getLogger("net.sf.thingamablog.transport");
     private ChannelSftp sftp;
     private String failMsg = "";
+    //the remote working directory, tracked here to save
+    //a round trip to the server for each file
+    private String cwd;
 
     /* (non-Javadoc)
      * @see net.sf.thingamablog.transport.PublishTransport#connect()
@@ -62,6 +66,8 @@ public class SFTPTransport extends RemotePublishTransport
 
         try
         {
+            clearKnownDirectories();
+            cwd = null;
 			JSch jsch = new JSch();
             Session session = jsch.getSession(getUserName(), getAddress(), getPort());
 
@@ -117,13 +123,12 @@ public class SFTPTransport extends RemotePublishTransport
         if(!pubPath.endsWith("/"))
             pubPath += "/"; //append a trailing slash if needed
 
+        String tmpName = null;
         try
         {
-            String cwd = sftp.pwd();
-            if(!cwd.endsWith("/"))
-                cwd += "/";
             if(!pubPath.equals(cwd))
             {            
+                cwd = null;
                 boolean changedDir = false;
                 try
                 {
@@ -141,15 +146,33 @@ public class SFTPTransport extends RemotePublishTransport
                     //was unable to change dir. the dir likely does not exist
                     //so we'll try making the dir structure of pubPath
                     mkdirs(pubPath);
-                    //sftp.cd(pubPath);
                 }
+                cwd = pubPath;
+                addKnownDirectory(pubPath);
             }
 
             int mode = ChannelSftp.OVERWRITE;
             //String dest = pubPath + file.getName();
+            //upload to a temporary name and rename it once it's complete
+            tmpName = tempName(file.getName());
             InputStream is = new FileInputStream(file);
-            sftp.put(is, file.getName(), new MyProgressMonitor(tp), mode);
-            is.close();
+            try
+            {
+                sftp.put(is, tmpName, new MyProgressMonitor(tp), mode);
+            }
+            finally
+            {
+                is.close();
+            }
+
+            //a cancelled transfer leaves a partial file
+            if(tp.isAborted())
+            {
+                removeTemp(tmpName);
+                failMsg = "Aborted";
+                return false;
+            }
+            rename(tmpName, file.getName(), file.length());
 
             return true;
         }
@@ -159,56 +182,106 @@ public class SFTPTransport extends RemotePublishTransport
 			failMsg += "\n" + ex.getMessage();
 			logger.log(Level.WARNING, failMsg, ex);
             ex.printStackTrace();
+            if(tmpName != null && tp.isAborted())
+                removeTemp(tmpName);
         }
 
         return false;
     }
 
-    private void mkdirs(String path) throws Exception
+    /**
+     * Renames an uploaded file to its real name
+     * 
+     * @param from The temporary name
+     * @param to The real name
+     * @param size The size the upload should have
+     */
+    private void rename(String from, String to, long size) throws SftpException
     {
-        //sftp.cd("/"); //change to the root dir      
-
-        //String dirs[] = splitPath(path);
-        
-        String cwd = sftp.pwd();
-        //System.out.println("CWD: " + cwd);      
-        
-        while(!path.startsWith(cwd))
+        try
         {
-            System.out.println(cwd + " " + path);
-            sftp.cd("..");//should throw exception if can't cdup
-            System.out.println("CDUP!");
-            cwd = sftp.pwd();
+            sftp.rename(from, to);
         }
-        
-        String mkPath = path.substring(cwd.length(), path.length());
-        System.out.println("DIRS TO MAKE: " + mkPath);
+        catch(SftpException ex)
+        {
+            //sftp servers don't have to rename over an existing file, but the
+            //live file is only removed if the upload is there to replace it
+            if(!isUploaded(from, size))
+                throw ex;
+            try
+            {
+                sftp.rm(to);
+            }
+            catch(SftpException rmEx)
+            {}
+            sftp.rename(from, to);
+        }
+    }
+    
+    private boolean isUploaded(String name, long size)
+    {
+        try
+        {
+            return sftp.stat(name).getSize() == size;
+        }
+        catch(SftpException ex)
+        {
+            logger.log(Level.WARNING, "Unable to check the upload " + name, ex);
+            return false;
+        }
+    }
+    
+    private void removeTemp(String name)
+    {
+        try
+        {
+            sftp.rm(name);
+        }
+        catch(Exception ex)
+        {
+            logger.log(Level.INFO, "Unable to remove the partial upload " + name, ex);
+        }
+    }
 
-        String dirs[] = splitPath(mkPath);
-        
+    private void mkdirs(String path) throws Exception
+    {
+        //make the dirs of the absolute path that aren't known to 
+        //exist, which another session may have made already
+        String dirs[] = splitPath(path);
+        String dir = path.startsWith("/") ? "/" : "";
         for(int i = 0; i < dirs.length; i++)
         {
-            System.out.println("mkdir " + dirs[i]);
-            logger.info("mkdir " + dirs[i]);
+            dir += dirs[i] + "/";
+            if(isKnownDirectory(dir))
+                continue;
+            
+            System.out.println("mkdir " + dir);
+            logger.info("mkdir " + dir);
             //swallow exception that results from trying to
             //make a dir that already exists
             try
             {
-                sftp.mkdir(dirs[i]);
+                sftp.mkdir(dir);
             }
             catch(Exception ex)
             {}
-
-            //change to the new dir
-            //throws an exception if something went wrong                
-            sftp.cd(dirs[i]);
+            addKnownDirectory(dir);
         }
+
+        //change to the new dir
+        //throws an exception if something went wrong                
+        sftp.cd(path);
     }
 
     public String getFailureReason()
     {
         return failMsg;
     }
+    
+    protected RemotePublishTransport newTransport()
+    {
+        return new SFTPTransport();
+    }
 
     /* (non-Javadoc)
      * @see net.sf.thingamablog.transport.PublishTransport#disconnect()
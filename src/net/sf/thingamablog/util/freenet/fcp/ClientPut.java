@@ -150,6 +150,41 @@ public abstract class ClientPut extends Command {
 		this.maxRetries = maxRetries;
 	}
 
+	/**
+	 * Returns the client token of this request.
+	 * @return The client token of this request
+	 */
+	public String getClientToken() {
+		return clientToken;
+	}
+
+	/**
+	 * Sets the client token of this request. The node returns the token with
+	 * the persistent requests it lists, so a client can recognize them.
+	 * @param clientToken
+	 *            The client token of this request
+	 */
+	public void setClientToken(String clientToken) {
+		this.clientToken = clientToken;
+	}
+
+	/**
+	 * Returns the persistence of this request.
+	 * @return The persistence of this request
+	 */
+	public Persistence getPersistence() {
+		return persistence;
+	}
+
+	/**
+	 * Sets the persistence of this request.
+	 * @param persistence
+	 *            The persistence of this request
+	 */
+	public void setPersistence(Persistence persistence) {
+		this.persistence = persistence;
+	}
+
 	/**
 	 * Returns the priority class of this request.
 	 * @return The priority class of this request
@@ -19,22 +19,20 @@
 
 package net.sf.thingamablog.util.freenet.fcp;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import net.sf.thingamablog.util.io.Closer;
-
 /**
  * Implementation of the <code>ClientPutComplexDir</code> command. This
  * command can be used to insert directories that do not exist on disk.
+ * <p>
+ * The content of {@link DirectFileEntry}s is not buffered. It is streamed
+ * from its source to the node, in the order the entries were added, when the
+ * command is executed.
  *
  * @author David Roden &lt;droden@gmail.com&gt;
  * @version $Id: ClientPutComplexDir.java 17481 2008-02-02 21:21:16Z bombe $
@@ -47,9 +45,6 @@ public class ClientPutComplexDir extends ClientPutDir {
 	/** Whether this request has payload. */
 	private boolean hasPayload = false;
 
-	/** The input streams for the payload. */
-	private File payloadFile;
-
 	/** The total number of bytes of the payload. */
 	private long payloadLength = 0;
 
@@ -67,36 +62,7 @@ public class ClientPutComplexDir extends ClientPutDir {
 	 * @param fileEntry The file entry to add to the directory
 	 */
 	public void addFileEntry(FileEntry fileEntry) {
-		if (fileEntry instanceof DirectFileEntry) {
-			if (payloadFile == null){
-				try {
-					payloadFile = File.createTempFile("payload", ".dat");
-					payloadFile.deleteOnExit();
-				} catch (IOException e) {
-				}
-			}
-			if (payloadFile != null) {
-				InputStream payloadInputStream = ((DirectFileEntry) fileEntry).getDataInputStream();
-				FileOutputStream payloadOutputStream = null;
-				try {
-					payloadOutputStream = new FileOutputStream(payloadFile, true);
-					byte[] buffer = new byte[65536];
-					int read = 0;
-					while ((read = payloadInputStream.read(buffer)) != -1) {
-						payloadOutputStream.write(buffer, 0, read);
-					}
-					payloadOutputStream.flush();
-					fileEntries.add(fileEntry);
-				} catch (IOException ioe1) {
-					/* hmm, ignore? */
-				} finally {
-					Closer.close(payloadOutputStream);
-					Closer.close(payloadInputStream);
-				}
-			}
-		} else {
-			fileEntries.add(fileEntry);
-		}
+		fileEntries.add(fileEntry);
 	}
 
 	/**
@@ -104,6 +70,8 @@ public class ClientPutComplexDir extends ClientPutDir {
 	 */
 	protected void write(Writer writer) throws IOException {
 		super.write(writer);
+		hasPayload = false;
+		payloadLength = 0;
 		int fileIndex = 0;
                 Iterator it = fileEntries.iterator();
 		while (it.hasNext()) {
@@ -141,17 +109,22 @@ public class ClientPutComplexDir extends ClientPutDir {
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Writes the content of all {@link DirectFileEntry}s, in the order they
+	 * were added.
+	 * 
+	 * @param outputStream
+	 *            The stream to write the payload to
+	 * @throws IOException
+	 *             if an I/O error occurs
 	 */
-	protected InputStream getPayload() {
-		if (payloadFile != null) {
-			try {
-				return new FileInputStream(payloadFile);
-			} catch (FileNotFoundException e) {
-				/* shouldn't occur. */
+	protected void writePayload(OutputStream outputStream) throws IOException {
+		Iterator it = fileEntries.iterator();
+		while (it.hasNext()) {
+			FileEntry fileEntry = (FileEntry) it.next();
+			if (fileEntry instanceof DirectFileEntry) {
+				((DirectFileEntry) fileEntry).writeData(outputStream);
 			}
 		}
-		return null;
 	}
 
 }
@@ -0,0 +1,114 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>ClientPut</code> command for a single file.
+ * The content of the file is taken from a {@link DirectFileEntry}, which is
+ * streamed to the node, or a {@link DiskFileEntry}, which the node reads
+ * itself. The name of the entry is not part of the inserted key.
+ * <p>
+ * Inserting to <code>CHK@</code> yields a key that only depends on the
+ * content and its metadata, so it can be referenced again by a
+ * {@link RedirectFileEntry} as long as the content does not change.
+ * <p>
+ * The node can answer with the following messages: <code>URIGenerated</code>,
+ * <code>SimpleProgress</code>, <code>PutSuccessful</code>,
+ * <code>PutFailed</code>.
+ */
+public class ClientPutFile extends ClientPut {
+
+	/** The content of the file. */
+	private final FileEntry fileEntry;
+
+	/**
+	 * Creates a new <code>ClientPut</code> command for a file.
+	 * 
+	 * @param identifier
+	 *            The identifier of the command
+	 * @param uri
+	 *            The URI to insert to, e.g. <code>CHK@</code>
+	 * @param fileEntry
+	 *            The content of the file, a {@link DirectFileEntry} or a
+	 *            {@link DiskFileEntry}
+	 */
+	public ClientPutFile(String identifier, String uri, FileEntry fileEntry) {
+		super("ClientPut", identifier, uri);
+		if (!(fileEntry instanceof DirectFileEntry) && !(fileEntry instanceof DiskFileEntry)) {
+			throw new IllegalArgumentException("file entry must be a direct or disk entry");
+		}
+		this.fileEntry = fileEntry;
+	}
+
+	/**
+	 * Returns the content of the file.
+	 * 
+	 * @return The file entry
+	 */
+	public FileEntry getFileEntry() {
+		return fileEntry;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("TargetFilename=" + LINEFEED);
+		if (fileEntry.getContentType() != null) {
+			writer.write("Metadata.ContentType=" + fileEntry.getContentType() + LINEFEED);
+		}
+		writer.write("UploadFrom=" + fileEntry.getName() + LINEFEED);
+		if (fileEntry instanceof DirectFileEntry) {
+			writer.write("DataLength=" + ((DirectFileEntry) fileEntry).getDataLength() + LINEFEED);
+		} else {
+			writer.write("Filename=" + ((DiskFileEntry) fileEntry).getLocalFilename() + LINEFEED);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected boolean hasPayload() {
+		return fileEntry instanceof DirectFileEntry;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected long getPayloadLength() {
+		return ((DirectFileEntry) fileEntry).getDataLength();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void writePayload(OutputStream outputStream) throws IOException {
+		((DirectFileEntry) fileEntry).writeData(outputStream);
+	}
+
+}
@@ -21,8 +21,12 @@ package net.sf.thingamablog.util.freenet.fcp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 
+import net.sf.thingamablog.util.io.Closer;
+import net.sf.thingamablog.util.io.StreamCopier;
+
 /**
  * Abstract base class for all commands.
  * <p>
@@ -135,4 +139,26 @@ public abstract class Command {
 		return -1;
 	}
 
+	/**
+	 * Writes the payload of this command to the node. The default
+	 * implementation copies the stream returned by {@link #getPayload()}.
+	 * Subclasses that can send their payload without first collecting it in
+	 * a single stream may override this method. This method is never called
+	 * if {@link #hasPayload()} returns <code>false</code>.
+	 * 
+	 * @param outputStream
+	 *            The stream to write the payload to
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	protected void writePayload(OutputStream outputStream) throws IOException {
+		InputStream payloadInputStream = null;
+		try {
+			payloadInputStream = getPayload();
+			StreamCopier.copy(payloadInputStream, outputStream, getPayloadLength());
+		} finally {
+			Closer.close(payloadInputStream);
+		}
+	}
+
 }
@@ -19,8 +19,6 @@
 
 package net.sf.thingamablog.util.freenet.fcp;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -32,10 +30,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import net.sf.thingamablog.util.io.Closer;
-import net.sf.thingamablog.util.io.LineInputStream;
-import net.sf.thingamablog.util.io.StreamCopier;
-import net.sf.thingamablog.util.io.TempFileInputStream;
 
 /**
  * A physical connection to a Freenet node.
@@ -259,13 +253,7 @@ public class Connection {
 		nodeWriter.write("EndMessage" + Command.LINEFEED);
 		nodeWriter.flush();
 		if (command.hasPayload()) {
-			InputStream payloadInputStream = null;
-			try {
-				payloadInputStream = command.getPayload();
-				StreamCopier.copy(payloadInputStream, nodeOutputStream, command.getPayloadLength());
-			} finally {
-				Closer.close(payloadInputStream);
-			}
+			command.writePayload(nodeOutputStream);
 			nodeOutputStream.flush();
 		}
 	}
@@ -294,79 +282,26 @@ public class Connection {
 		}
 
 		/**
-		 * Main loop of the reader. Lines are read and converted into
-		 * {@link Message} objects.
+		 * Main loop of the reader. Messages are read with a
+		 * {@link MessageReader} and passed on to the listeners.
 		 */
 		public void run() {
-			LineInputStream nodeReader = null;
 			try {
-				nodeReader = new LineInputStream(nodeInputStream);
-				String line = "";
-				Message message = null;
-				while (line != null) {
-					line = nodeReader.readLine();
-					// System.err.println("> " + line);
-					if (line == null) {
-						break;
-					}
-					if (message == null) {
-						message = new Message(line);
-						continue;
-					}
-					if ("Data".equals(line)) {
-						/* need to read message from stream now */
-						File tempFile = null;
-						try {
-							tempFile = File.createTempFile("fcpv2", "data");
-							tempFile.deleteOnExit();
-							FileOutputStream tempFileOutputStream = new FileOutputStream(tempFile);
-							long dataLength = Long.parseLong(message.get("DataLength"));
-							StreamCopier.copy(nodeInputStream, tempFileOutputStream, dataLength);
-							tempFileOutputStream.close();
-							message.setPayloadInputStream(new TempFileInputStream(tempFile));
-						} catch (IOException ioe1) {
-							ioe1.printStackTrace();
-						}
-					}
-					if ("Data".equals(line) || "EndMessage".equals(line)) {
-						if (message.getName().equals("NodeHello")) {
-							nodeHello = message;
-							synchronized (Connection.this) {
-								Connection.this.notify();
-							}
-						} else {
-							fireMessageReceived(message);
+				MessageReader messageReader = new MessageReader(nodeInputStream);
+				Message message;
+				while ((message = messageReader.readMessage()) != null) {
+					if (message.getName().equals("NodeHello")) {
+						nodeHello = message;
+						synchronized (Connection.this) {
+							Connection.this.notify();
 						}
-						message = null;
-						continue;
+					} else {
+						fireMessageReceived(message);
 					}
-					int equalsPosition = line.indexOf('=');
-					if (equalsPosition > -1) {
-						String key = line.substring(0, equalsPosition).trim();
-						String value = line.substring(equalsPosition + 1).trim();
-						if (key.equals("Identifier")) {
-							message.setIdentifier(value);
-						} else {
-							message.put(key, value);
-						}
-						continue;
-					}
-					/* skip lines consisting of whitespace only */
-					if (line.trim().length() == 0) {
-						continue;
-					}
-					/* if we got here, some error occured! */
-					throw new IOException("Unexpected line: " + line);
 				}
 			} catch (IOException ioe1) {
 				// ioe1.printStackTrace();
 			} finally {
-				if (nodeReader != null) {
-					try {
-						nodeReader.close();
-					} catch (IOException ioe1) {
-					}
-				}
 				if (nodeInputStream != null) {
 					try {
 						nodeInputStream.close();
@@ -20,7 +20,18 @@
 package net.sf.thingamablog.util.freenet.fcp;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import net.sf.thingamablog.util.io.Closer;
+import net.sf.thingamablog.util.io.StreamCopier;
 
 /**
  * A {@link FileEntry} that sends its payload directly to the node, using the
@@ -34,6 +45,9 @@ public class DirectFileEntry extends FileEntry {
 	/** The input stream to read the data for this file from. */
 	private final InputStream dataInputStream;
 
+	/** The file to read the data for this file from. */
+	private final File dataFile;
+
 	/** The length of the data. */
 	private final long dataLength;
 
@@ -68,9 +82,29 @@ public class DirectFileEntry extends FileEntry {
 	public DirectFileEntry(String filename, String contentType, InputStream dataInputStream, long dataLength) {
 		super(filename, contentType);
 		this.dataInputStream = dataInputStream;
+		this.dataFile = null;
 		this.dataLength = dataLength;
 	}
 
+	/**
+	 * Creates a new FileEntry with the specified name and content type that
+	 * gets its data from the specified file. The file is not opened until the
+	 * data is sent to the node.
+	 * 
+	 * @param filename
+	 *            The name of the file
+	 * @param contentType
+	 *            The content type of the file
+	 * @param dataFile
+	 *            The file to read the content from
+	 */
+	public DirectFileEntry(String filename, String contentType, File dataFile) {
+		super(filename, contentType);
+		this.dataInputStream = null;
+		this.dataFile = dataFile;
+		this.dataLength = dataFile.length();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -81,12 +115,65 @@ public class DirectFileEntry extends FileEntry {
 	/**
 	 * Returns the input stream for the file's content.
 	 * 
-	 * @return The input stream for the file's content
+	 * @return The input stream for the file's content, or <code>null</code>
+	 *         if the content is read from a file
 	 */
 	public InputStream getDataInputStream() {
 		return dataInputStream;
 	}
 
+	/**
+	 * Returns the file the content is read from.
+	 * 
+	 * @return The file the content is read from, or <code>null</code> if the
+	 *         content is read from an input stream
+	 */
+	public File getDataFile() {
+		return dataFile;
+	}
+
+	/**
+	 * Writes exactly {@link #getDataLength()} bytes of content to the
+	 * specified output stream and closes the source of the content. Content
+	 * that is read from a file is transferred in large chunks with
+	 * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. The
+	 * target is the output stream wrapped in a channel, so the data is still
+	 * copied through a buffer on the heap; only a socket or file channel
+	 * would let the platform skip that copy.
+	 * 
+	 * @param outputStream
+	 *            The stream to write the content to
+	 * @throws EOFException
+	 *             if the content is shorter than its length
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeData(OutputStream outputStream) throws IOException {
+		if (dataFile == null) {
+			try {
+				StreamCopier.copy(dataInputStream, outputStream, dataLength);
+			} finally {
+				Closer.close(dataInputStream);
+			}
+			return;
+		}
+		FileInputStream fileInputStream = new FileInputStream(dataFile);
+		try {
+			FileChannel fileChannel = fileInputStream.getChannel();
+			WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+			long position = 0;
+			while (position < dataLength) {
+				long transferred = fileChannel.transferTo(position, dataLength - position, outputChannel);
+				if (transferred <= 0) {
+					throw new EOFException(dataFile + " is shorter than " + dataLength + " bytes");
+				}
+				position += transferred;
+			}
+		} finally {
+			Closer.close(fileInputStream);
+		}
+	}
+
 	/**
 	 * Returns the length of this file's content.
 	 * 
@@ -0,0 +1,355 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.sf.thingamablog.util.io.Closer;
+import net.sf.thingamablog.util.io.TempFileInputStream;
+
+/**
+ * Reads {@link Message}s from the stream of a node.
+ * <p>
+ * The stream is read in blocks into a buffer that the lines of a message are
+ * parsed from, so a message costs a few reads instead of one read per byte.
+ * Keys and values are decoded as UTF-8 straight from the buffer. The payload
+ * of a <code>Data</code> message is kept in memory if it is small, and is
+ * only spooled to a temp file if it is larger than the in-memory limit.
+ * <p>
+ * A reader is not thread-safe; the connection uses it from its reader thread
+ * only.
+ */
+public class MessageReader {
+
+	/** The default size of the read buffer. */
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/** The default size of the largest payload that is kept in memory. */
+	private static final int MEMORY_PAYLOAD_SIZE = 256 * 1024;
+
+	/** The byte sequences of the lines that end a message. */
+	private static final byte[] END_MESSAGE = { 'E', 'n', 'd', 'M', 'e', 's', 's', 'a', 'g', 'e' };
+	private static final byte[] DATA = { 'D', 'a', 't', 'a' };
+
+	/** The stream to read from. */
+	private final InputStream inputStream;
+
+	/** The size of the largest payload that is kept in memory. */
+	private final int memoryPayloadSize;
+
+	/** The read buffer. */
+	private final byte[] buffer;
+
+	/** The position of the next unread byte in the buffer. */
+	private int position;
+
+	/** The end of the valid bytes in the buffer. */
+	private int limit;
+
+	/** The current line, if it did not fit in the buffer. */
+	private byte[] line = new byte[256];
+
+	/** The bytes of the current line, either the buffer or line. */
+	private byte[] lineBytes;
+
+	/** The start and end of the current line in lineBytes. */
+	private int lineStart, lineEnd;
+
+	/** Whether a '\n' that follows a '\r' must be skipped. */
+	private boolean skipLinefeed;
+
+	/**
+	 * Creates a new reader with the default buffer and payload sizes.
+	 * 
+	 * @param inputStream
+	 *            The stream to read from
+	 */
+	public MessageReader(InputStream inputStream) {
+		this(inputStream, BUFFER_SIZE, MEMORY_PAYLOAD_SIZE);
+	}
+
+	/**
+	 * Creates a new reader.
+	 * 
+	 * @param inputStream
+	 *            The stream to read from
+	 * @param bufferSize
+	 *            The size of the read buffer
+	 * @param memoryPayloadSize
+	 *            The size of the largest payload that is kept in memory
+	 */
+	public MessageReader(InputStream inputStream, int bufferSize, int memoryPayloadSize) {
+		this.inputStream = inputStream;
+		this.buffer = new byte[bufferSize];
+		this.memoryPayloadSize = memoryPayloadSize;
+	}
+
+	/**
+	 * Reads the next message. The message ends with an
+	 * <code>EndMessage</code> line, or with a <code>Data</code> line that is
+	 * followed by <code>DataLength</code> bytes of payload.
+	 * 
+	 * @return The message, or <code>null</code> if the stream ended
+	 * @throws IOException
+	 *             if an I/O error occurs or the message is malformed
+	 */
+	public Message readMessage() throws IOException {
+		Message message = null;
+		while (readLine()) {
+			if (message == null) {
+				if (!isBlankLine()) {
+					message = new Message(decode(lineStart, lineEnd));
+				}
+				continue;
+			}
+			if (lineEquals(END_MESSAGE)) {
+				return message;
+			}
+			if (lineEquals(DATA)) {
+				readPayload(message);
+				return message;
+			}
+			int equalsPosition = indexOf('=');
+			if (equalsPosition > -1) {
+				String key = decode(lineStart, equalsPosition);
+				String value = decode(equalsPosition + 1, lineEnd);
+				if (key.equals("Identifier")) {
+					message.setIdentifier(value);
+				} else {
+					message.put(key, value);
+				}
+				continue;
+			}
+			/* skip lines consisting of whitespace only */
+			if (isBlankLine()) {
+				continue;
+			}
+			throw new IOException("Unexpected line: " + decode(lineStart, lineEnd));
+		}
+		if (message != null) {
+			throw new EOFException("Stream ended inside " + message.getName());
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the payload of a <code>Data</code> message.
+	 */
+	private void readPayload(Message message) throws IOException {
+		long dataLength;
+		try {
+			dataLength = Long.parseLong(message.get("DataLength"));
+		} catch (NumberFormatException nfe1) {
+			throw new IOException("Invalid DataLength: " + message.get("DataLength"));
+		}
+		if (dataLength < 0) {
+			throw new IOException("Invalid DataLength: " + dataLength);
+		}
+		if ((dataLength > 0) && skipLinefeed) {
+			/* the Data line ended with "\r\n" */
+			skipLinefeed = false;
+			if ((position == limit) && !fill()) {
+				throw new EOFException();
+			}
+			if (buffer[position] == '\n') {
+				position++;
+			}
+		}
+		if (dataLength <= memoryPayloadSize) {
+			byte[] payload = new byte[(int) dataLength];
+			readFully(payload, 0, payload.length);
+			message.setPayloadInputStream(new ByteArrayInputStream(payload));
+			return;
+		}
+		File tempFile = File.createTempFile("fcpv2", "data");
+		tempFile.deleteOnExit();
+		OutputStream tempFileOutputStream = new FileOutputStream(tempFile);
+		try {
+			long remaining = dataLength;
+			while (remaining > 0) {
+				if (position == limit && !fill()) {
+					throw new EOFException();
+				}
+				int count = (int) Math.min(limit - position, remaining);
+				tempFileOutputStream.write(buffer, position, count);
+				position += count;
+				remaining -= count;
+			}
+		} finally {
+			Closer.close(tempFileOutputStream);
+		}
+		message.setPayloadInputStream(new TempFileInputStream(tempFile));
+	}
+
+	/**
+	 * Reads exactly <code>length</code> bytes, first from the buffer and then
+	 * from the stream.
+	 */
+	private void readFully(byte[] data, int offset, int length) throws IOException {
+		int count = Math.min(limit - position, length);
+		System.arraycopy(buffer, position, data, offset, count);
+		position += count;
+		offset += count;
+		length -= count;
+		while (length > 0) {
+			int read = inputStream.read(data, offset, length);
+			if (read == -1) {
+				throw new EOFException();
+			}
+			offset += read;
+			length -= read;
+		}
+	}
+
+	/**
+	 * Reads the next line. A line ends with '\n', '\r' or "\r\n". The line
+	 * is left in the buffer if it is complete there, and is only copied to
+	 * the spill array if it continues past the end of the buffer.
+	 * 
+	 * @return <code>false</code> if the stream ended before a line was read
+	 */
+	private boolean readLine() throws IOException {
+		int spilled = -1;
+		while (true) {
+			if (position == limit && !fill()) {
+				if (spilled <= 0) {
+					return false;
+				}
+				setLine(line, 0, spilled);
+				return true;
+			}
+			if (skipLinefeed) {
+				skipLinefeed = false;
+				if (buffer[position] == '\n') {
+					position++;
+					continue;
+				}
+			}
+			int start = position;
+			while (position < limit) {
+				byte b = buffer[position];
+				if ((b == '\n') || (b == '\r')) {
+					skipLinefeed = (b == '\r');
+					int end = position++;
+					if (spilled < 0) {
+						setLine(buffer, start, end);
+					} else {
+						setLine(line, 0, spill(spilled, start, end));
+					}
+					return true;
+				}
+				position++;
+			}
+			/* the line continues past the end of the buffer */
+			spilled = spill(Math.max(spilled, 0), start, position);
+		}
+	}
+
+	/**
+	 * Appends bytes of the buffer to the spill array.
+	 * 
+	 * @return The new length of the line in the spill array
+	 */
+	private int spill(int length, int start, int end) {
+		int needed = length + end - start;
+		if (needed > line.length) {
+			byte[] newLine = new byte[Math.max(needed, line.length * 2)];
+			System.arraycopy(line, 0, newLine, 0, length);
+			line = newLine;
+		}
+		System.arraycopy(buffer, start, line, length, end - start);
+		return needed;
+	}
+
+	private void setLine(byte[] bytes, int start, int end) {
+		lineBytes = bytes;
+		lineStart = start;
+		lineEnd = end;
+	}
+
+	/**
+	 * Refills the buffer once all of it has been read.
+	 * 
+	 * @return <code>false</code> if the stream ended
+	 */
+	private boolean fill() throws IOException {
+		int read = inputStream.read(buffer, 0, buffer.length);
+		if (read == -1) {
+			return false;
+		}
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	private boolean lineEquals(byte[] bytes) {
+		if (lineEnd - lineStart != bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (lineBytes[lineStart + i] != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isBlankLine() {
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (lineBytes[i] > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int indexOf(char c) {
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (lineBytes[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Decodes a part of the current line as UTF-8, leaving out leading and
+	 * trailing whitespace.
+	 */
+	private String decode(int start, int end) throws IOException {
+		while (start < end && (lineBytes[start] & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (lineBytes[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		return new String(lineBytes, start, end - start, "UTF-8");
+	}
+
+}
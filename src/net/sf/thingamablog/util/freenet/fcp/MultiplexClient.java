@@ -0,0 +1,379 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A client that runs several requests at once over one {@link Connection}.
+ * <p>
+ * Unlike {@link Client}, which only listens for the identifier of its last
+ * command, this client routes every message to the {@link Request} with the
+ * message's identifier. Messages without a known identifier, such as those
+ * of global requests while the global queue is watched, are kept in a
+ * separate, bounded queue.
+ * <p>
+ * Submitted commands are sent by a sender thread, in the order of their
+ * {@link PriorityClass} and in the order they were submitted within a class.
+ * At most <code>maxActiveRequests</code> requests are sent and unfinished at
+ * any time, so a low priority insert that is waiting does not delay the
+ * upload of a more urgent one.
+ */
+public class MultiplexClient implements ConnectionListener {
+
+	/** The default number of requests that may run at once. */
+	public static final int DEFAULT_MAX_ACTIVE_REQUESTS = 4;
+
+	/** The number of unrouted messages that are kept. */
+	private static final int MAX_UNROUTED_MESSAGES = 256;
+
+	/** The connection this client operates on. */
+	private final Connection connection;
+
+	/** The number of requests that may run at once. */
+	private final int maxActiveRequests;
+
+	/** The requests by identifier. */
+	private final Map requests = new HashMap();
+
+	/** The requests whose command has not been sent, by priority. */
+	private final List pendingRequests = new ArrayList();
+
+	/** The messages that did not belong to a request. */
+	private final List unroutedMessages = new ArrayList();
+
+	/** The number of requests that were sent and are not finished. */
+	private int activeRequests = 0;
+
+	/** Whether the connection was lost. */
+	private boolean disconnected = false;
+
+	/** Whether the client was closed. */
+	private boolean closed = false;
+
+	/**
+	 * Creates a new client that runs up to
+	 * {@link #DEFAULT_MAX_ACTIVE_REQUESTS} requests at once.
+	 * 
+	 * @param connection
+	 *            The connection to operate on, which must be connected
+	 */
+	public MultiplexClient(Connection connection) {
+		this(connection, DEFAULT_MAX_ACTIVE_REQUESTS);
+	}
+
+	/**
+	 * Creates a new client.
+	 * 
+	 * @param connection
+	 *            The connection to operate on, which must be connected
+	 * @param maxActiveRequests
+	 *            The number of requests that may run at once
+	 */
+	public MultiplexClient(Connection connection, int maxActiveRequests) {
+		this.connection = connection;
+		this.maxActiveRequests = Math.max(1, maxActiveRequests);
+		connection.addConnectionListener(this);
+		Thread senderThread = new Thread(new Sender(), "FCP sender " + connection.getName());
+		senderThread.setDaemon(true);
+		senderThread.start();
+	}
+
+	/**
+	 * Returns the connection this client operates on.
+	 * 
+	 * @return The connection
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Queues a command. The command is sent when no more than
+	 * <code>maxActiveRequests - 1</code> other requests are running and no
+	 * request with a higher priority is waiting.
+	 * 
+	 * @param command
+	 *            The command, which must have an identifier that is not used
+	 *            by another request of this client
+	 * @return The request of the command
+	 * @throws IllegalArgumentException
+	 *             if the command has no identifier, or its identifier is in use
+	 * @throws IllegalStateException
+	 *             if the client is closed or disconnected
+	 */
+	public Request submit(Command command) {
+		String identifier = command.getIdentifier();
+		if (identifier == null) {
+			throw new IllegalArgumentException("command has no identifier");
+		}
+		Request request = new Request(this, identifier, command);
+		synchronized (this) {
+			checkOpen();
+			if (requests.containsKey(identifier)) {
+				throw new IllegalArgumentException("identifier in use: " + identifier);
+			}
+			requests.put(identifier, request);
+			int index = pendingRequests.size();
+			while ((index > 0) && (((Request) pendingRequests.get(index - 1)).getPriority() > request.getPriority())) {
+				index--;
+			}
+			pendingRequests.add(index, request);
+			notifyAll();
+		}
+		return request;
+	}
+
+	/**
+	 * Routes the messages with the specified identifier to a new request
+	 * without sending a command. This is used to follow persistent requests
+	 * that were started earlier, for example on another connection, or
+	 * requests on the global queue.
+	 * 
+	 * @param identifier
+	 *            The identifier of the request
+	 * @return The request
+	 * @throws IllegalArgumentException
+	 *             if the identifier is in use
+	 * @throws IllegalStateException
+	 *             if the client is closed or disconnected
+	 */
+	public synchronized Request attach(String identifier) {
+		checkOpen();
+		if (requests.containsKey(identifier)) {
+			throw new IllegalArgumentException("identifier in use: " + identifier);
+		}
+		Request request = new Request(this, identifier, null);
+		requests.put(identifier, request);
+		return request;
+	}
+
+	/**
+	 * Sends a command right away, bypassing the queue. Use this for commands
+	 * that do not start a request, like {@link WatchGlobal} or
+	 * {@link TestDDARequest}. Their replies are unrouted messages.
+	 * 
+	 * @param command
+	 *            The command to send
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @see #readUnroutedMessage(long)
+	 */
+	public void send(Command command) throws IOException {
+		connection.execute(command);
+	}
+
+	/**
+	 * Tells the node whether to send the messages of the requests on the
+	 * global queue to this client. Their messages can then be followed with
+	 * {@link #attach(String)}.
+	 * 
+	 * @param enabled
+	 *            <code>true</code> to watch the global queue
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void setWatchGlobal(boolean enabled) throws IOException {
+		WatchGlobal watchGlobal = new WatchGlobal(enabled);
+		watchGlobal.setVerbosityMask(Verbosity.ALL);
+		send(watchGlobal);
+	}
+
+	/**
+	 * Returns the next message that did not belong to a request. If there is
+	 * none, at most <code>maxWaitTime</code> milliseconds are waited for one.
+	 * 
+	 * @param maxWaitTime
+	 *            The maximum time to wait, in milliseconds
+	 * @return The message, or <code>null</code> if none arrived in time
+	 */
+	public Message readUnroutedMessage(long maxWaitTime) {
+		synchronized (unroutedMessages) {
+			if (unroutedMessages.isEmpty() && !isDisconnected()) {
+				try {
+					unroutedMessages.wait(maxWaitTime);
+				} catch (InterruptedException ie1) {
+				}
+			}
+			if (unroutedMessages.isEmpty()) {
+				return null;
+			}
+			return (Message) unroutedMessages.remove(0);
+		}
+	}
+
+	/**
+	 * Returns the number of requests that were sent and are not finished.
+	 * 
+	 * @return The number of running requests
+	 */
+	public synchronized int getActiveCount() {
+		return activeRequests;
+	}
+
+	/**
+	 * Returns the number of requests that wait to be sent.
+	 * 
+	 * @return The number of waiting requests
+	 */
+	public synchronized int getPendingCount() {
+		return pendingRequests.size();
+	}
+
+	/**
+	 * Returns whether the connection to the node was lost.
+	 * 
+	 * @return <code>true</code> if the client is disconnected
+	 */
+	public synchronized boolean isDisconnected() {
+		return disconnected;
+	}
+
+	/**
+	 * Stops the sender thread. Requests that were not sent yet are finished
+	 * without being sent. The connection is left open.
+	 */
+	public void close() {
+		List unsent;
+		synchronized (this) {
+			closed = true;
+			unsent = new ArrayList(pendingRequests);
+			notifyAll();
+		}
+		for (Iterator it = unsent.iterator(); it.hasNext();) {
+			Request request = (Request) it.next();
+			request.setFailed(new IOException("client closed"));
+			requestFinished(request);
+		}
+		connection.removeConnectionListener(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void messageReceived(Connection connection, Message message) {
+		Request request;
+		synchronized (this) {
+			request = (Request) requests.get(message.getIdentifier());
+		}
+		if (request == null) {
+			synchronized (unroutedMessages) {
+				unroutedMessages.add(message);
+				if (unroutedMessages.size() > MAX_UNROUTED_MESSAGES) {
+					unroutedMessages.remove(0);
+				}
+				unroutedMessages.notifyAll();
+			}
+			return;
+		}
+		if (request.deliver(message)) {
+			requestFinished(request);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void connectionTerminated(Connection connection) {
+		List lost;
+		synchronized (this) {
+			disconnected = true;
+			lost = new ArrayList(requests.values());
+			notifyAll();
+		}
+		for (Iterator it = lost.iterator(); it.hasNext();) {
+			((Request) it.next()).setDisconnected();
+		}
+		synchronized (unroutedMessages) {
+			unroutedMessages.notifyAll();
+		}
+	}
+
+	/**
+	 * Removes a finished request and lets the next waiting request be sent.
+	 * 
+	 * @param request
+	 *            The finished request
+	 */
+	synchronized void requestFinished(Request request) {
+		if (requests.get(request.getIdentifier()) != request) {
+			return;
+		}
+		requests.remove(request.getIdentifier());
+		if (!pendingRequests.remove(request) && (request.getCommand() != null)) {
+			activeRequests--;
+		}
+		notifyAll();
+	}
+
+	private void checkOpen() {
+		if (closed || disconnected) {
+			throw new IllegalStateException("client is not connected");
+		}
+	}
+
+	/**
+	 * Sends the queued commands.
+	 */
+	private class Sender implements Runnable {
+
+		public void run() {
+			while (true) {
+				Request request;
+				synchronized (MultiplexClient.this) {
+					while (!closed && !disconnected && (pendingRequests.isEmpty() || (activeRequests >= maxActiveRequests))) {
+						try {
+							MultiplexClient.this.wait();
+						} catch (InterruptedException ie1) {
+						}
+					}
+					if (closed || disconnected) {
+						return;
+					}
+					request = (Request) pendingRequests.remove(0);
+					activeRequests++;
+				}
+				try {
+					connection.execute(request.getCommand());
+					if (request.setSent()) {
+						/* cancelled during the upload, the node has it now */
+						request.sendRemove();
+					}
+				} catch (IOException ioe1) {
+					request.setFailed(ioe1);
+					requestFinished(request);
+				} catch (IllegalStateException ise1) {
+					request.setFailed(new IOException(ise1.getMessage()));
+					requestFinished(request);
+				}
+			}
+		}
+
+	}
+
+}
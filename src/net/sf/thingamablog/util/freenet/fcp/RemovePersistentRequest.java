@@ -0,0 +1,62 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>RemovePersistentRequest</code> command. It
+ * cancels a running request, or removes a finished persistent request from
+ * the queue of the node.
+ * <p>
+ * The node can answer with the following messages:
+ * <code>PersistentRequestRemoved</code>.
+ */
+public class RemovePersistentRequest extends Command {
+
+	/** Whether the request is on the global queue. */
+	private final boolean global;
+
+	/**
+	 * Creates a new <code>RemovePersistentRequest</code> command.
+	 * 
+	 * @param identifier
+	 *            The identifier of the request to remove
+	 * @param global
+	 *            <code>true</code> if the request is on the global queue
+	 */
+	public RemovePersistentRequest(String identifier, boolean global) {
+		super("RemovePersistentRequest", identifier);
+		this.global = global;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Global=" + global + LINEFEED);
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request that runs on a {@link MultiplexClient}. The client puts the
+ * messages the node sends for the request's identifier in the request's own
+ * queue, so several requests can be read from at the same time.
+ * <p>
+ * A request is finished when the node sends a message that ends it, such as
+ * <code>PutSuccessful</code> or <code>PutFailed</code>, when it is cancelled,
+ * or when its command could not be sent.
+ */
+public class Request {
+
+	/** The names of the messages that end a request. */
+	private static final String[] FINAL_MESSAGES = { "PutSuccessful", "PutFailed", "GetFailed",
+		"AllData", "ProtocolError", "IdentifierCollision", "PersistentRequestRemoved" };
+
+	/** The client the request runs on. */
+	private final MultiplexClient client;
+
+	/** The identifier of the request. */
+	private final String identifier;
+
+	/** The command of the request, or <code>null</code> for an attached request. */
+	private final Command command;
+
+	/** The messages that have not been read yet. */
+	private final List messages = new ArrayList();
+
+	/** Whether the command has been sent to the node. */
+	private boolean sent = false;
+
+	/** Whether the request is finished. */
+	private boolean finished = false;
+
+	/** Whether the request was cancelled. */
+	private boolean cancelled = false;
+
+	/** Whether the connection to the node was lost. */
+	private boolean disconnected = false;
+
+	/** The error that kept the command from being sent. */
+	private IOException failure;
+
+	/**
+	 * Creates a new request.
+	 * 
+	 * @param client
+	 *            The client the request runs on
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param command
+	 *            The command of the request, or <code>null</code> if the
+	 *            request was started earlier
+	 */
+	Request(MultiplexClient client, String identifier, Command command) {
+		this.client = client;
+		this.identifier = identifier;
+		this.command = command;
+		this.sent = (command == null);
+	}
+
+	/**
+	 * Returns the identifier of this request.
+	 * 
+	 * @return The identifier of this request
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the command of this request.
+	 * 
+	 * @return The command, or <code>null</code> if the request was attached
+	 * @see MultiplexClient#attach(String)
+	 */
+	public Command getCommand() {
+		return command;
+	}
+
+	/**
+	 * Returns the next message of this request, waiting for it as long as
+	 * the request is not finished.
+	 * 
+	 * @return The next message, or <code>null</code> if the request is
+	 *         finished and all of its messages have been read
+	 */
+	public Message readMessage() {
+		return readMessage(0);
+	}
+
+	/**
+	 * Returns the next message of this request. If there is none, at most
+	 * <code>maxWaitTime</code> milliseconds are waited for one to arrive.
+	 * 
+	 * @param maxWaitTime
+	 *            The maximum time to wait, or <code>0</code> to wait until
+	 *            a message arrives or the request is finished
+	 * @return The message, or <code>null</code> if none arrived in time or the
+	 *         request is finished and all of its messages have been read
+	 */
+	public synchronized Message readMessage(long maxWaitTime) {
+		long end = System.currentTimeMillis() + maxWaitTime;
+		while (messages.isEmpty() && !finished && !disconnected) {
+			long wait = 0;
+			if (maxWaitTime > 0) {
+				wait = end - System.currentTimeMillis();
+				if (wait <= 0) {
+					break;
+				}
+			}
+			try {
+				wait(wait);
+			} catch (InterruptedException ie1) {
+				break;
+			}
+		}
+		if (messages.isEmpty()) {
+			return null;
+		}
+		return (Message) messages.remove(0);
+	}
+
+	/**
+	 * Returns whether the command of this request has been sent to the node.
+	 * 
+	 * @return <code>true</code> if the command has been sent
+	 */
+	public synchronized boolean isSent() {
+		return sent;
+	}
+
+	/**
+	 * Returns whether this request is finished. There may still be unread
+	 * messages.
+	 * 
+	 * @return <code>true</code> if the request is finished
+	 */
+	public synchronized boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Returns whether the connection to the node was lost before the
+	 * request finished.
+	 * 
+	 * @return <code>true</code> if the connection was lost
+	 */
+	public synchronized boolean isDisconnected() {
+		return disconnected;
+	}
+
+	/**
+	 * Returns the error that kept the command of this request from being sent.
+	 * 
+	 * @return The error, or <code>null</code>
+	 */
+	public synchronized IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Cancels this request. If its command was already sent, the node is
+	 * asked to remove the request. If it is being sent right now, the client
+	 * asks the node to remove it once it has been sent.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void cancel() throws IOException {
+		boolean remove;
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			remove = sent;
+			finished = true;
+			cancelled = true;
+			notifyAll();
+		}
+		client.requestFinished(this);
+		if (remove) {
+			sendRemove();
+		}
+	}
+
+	/**
+	 * Asks the node to remove this request.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void sendRemove() throws IOException {
+		boolean global = (command instanceof ClientPut) && ((ClientPut) command).isGlobal();
+		client.send(new RemovePersistentRequest(identifier, global));
+	}
+
+	/**
+	 * Returns the priority of this request. Lower values are sent first.
+	 * 
+	 * @return The value of the priority class of a put, or
+	 *         {@link PriorityClass#MAXIMUM} for other commands
+	 */
+	int getPriority() {
+		if (command instanceof ClientPut) {
+			PriorityClass priorityClass = ((ClientPut) command).getPriorityClass();
+			if (priorityClass != null) {
+				return priorityClass.getValue();
+			}
+		}
+		return PriorityClass.MAXIMUM.getValue();
+	}
+
+	/**
+	 * Adds a message for this request.
+	 * 
+	 * @return <code>true</code> if the message finished the request
+	 */
+	synchronized boolean deliver(Message message) {
+		messages.add(message);
+		notifyAll();
+		if (finished) {
+			return false;
+		}
+		for (int i = 0; i < FINAL_MESSAGES.length; i++) {
+			if (FINAL_MESSAGES[i].equals(message.getName())) {
+				finished = true;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks the command of this request as sent.
+	 * 
+	 * @return <code>true</code> if the request was cancelled while its
+	 *         command was being sent
+	 */
+	synchronized boolean setSent() {
+		sent = true;
+		return cancelled;
+	}
+
+	synchronized void setFailed(IOException failure) {
+		this.failure = failure;
+		finished = true;
+		notifyAll();
+	}
+
+	synchronized void setDisconnected() {
+		disconnected = true;
+		notifyAll();
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>TestDDARequest</code> command. This command
+ * starts the test that tells whether the node may read files from, or write
+ * files to, a directory on the disk the client shares with it.
+ * <p>
+ * The node can answer with the following messages: <code>TestDDAReply</code>.
+ */
+public class TestDDARequest extends Command {
+
+	/** The directory to test. */
+	private final String directory;
+
+	/** Whether the client wants the node to read from the directory. */
+	private boolean wantReadDirectory = true;
+
+	/** Whether the client wants the node to write to the directory. */
+	private boolean wantWriteDirectory = false;
+
+	/**
+	 * Creates a new <code>TestDDARequest</code> command for the specified
+	 * directory.
+	 * 
+	 * @param directory
+	 *            The absolute path of the directory to test
+	 */
+	public TestDDARequest(String directory) {
+		super("TestDDARequest", null);
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the directory this command tests.
+	 * 
+	 * @return The directory to test
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Sets whether the client wants the node to read from the directory.
+	 * 
+	 * @param wantReadDirectory
+	 *            <code>true</code> to test read access
+	 */
+	public void setWantReadDirectory(boolean wantReadDirectory) {
+		this.wantReadDirectory = wantReadDirectory;
+	}
+
+	/**
+	 * Sets whether the client wants the node to write to the directory.
+	 * 
+	 * @param wantWriteDirectory
+	 *            <code>true</code> to test write access
+	 */
+	public void setWantWriteDirectory(boolean wantWriteDirectory) {
+		this.wantWriteDirectory = wantWriteDirectory;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Directory=" + directory + LINEFEED);
+		writer.write("WantReadDirectory=" + wantReadDirectory + LINEFEED);
+		writer.write("WantWriteDirectory=" + wantWriteDirectory + LINEFEED);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>WatchGlobal</code> command. It tells the node
+ * whether to send the messages of requests on the global queue to this
+ * connection, as well as those of the connection's own requests.
+ */
+public class WatchGlobal extends Command {
+
+	/** Whether to watch the global queue. */
+	private final boolean enabled;
+
+	/** The verbosity of the messages of global requests. */
+	private Verbosity verbosityMask = Verbosity.NONE;
+
+	/**
+	 * Creates a new <code>WatchGlobal</code> command.
+	 * 
+	 * @param enabled
+	 *            <code>true</code> to watch the global queue,
+	 *            <code>false</code> to stop watching it
+	 */
+	public WatchGlobal(boolean enabled) {
+		super("WatchGlobal", null);
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Sets the verbosity of the messages that are sent for global requests.
+	 * 
+	 * @param verbosityMask
+	 *            The verbosity
+	 */
+	public void setVerbosityMask(Verbosity verbosityMask) {
+		this.verbosityMask = verbosityMask;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Enabled=" + enabled + LINEFEED);
+		if (verbosityMask != null)
+			writer.write("VerbosityMask=" + verbosityMask.getValue() + LINEFEED);
+	}
+
+}
@@ -10,6 +10,7 @@
 package net.sf.thingamablog.util.freenet.fcp;
 
 import java.io.IOException;
+import java.util.Hashtable;
 
 /**
  * Copy of jSite's Freenet7Interface
@@ -17,6 +18,12 @@ import java.io.IOException;
  */
 public class fcpManager {
     
+    // host:port -> MultiplexClient shared by every transport of that node
+    private static Hashtable sharedClients = new Hashtable();
+    // MultiplexClient -> int[1] number of users
+    private static Hashtable clientUsers = new Hashtable();
+    private static int sharedCounter;
+    
     private Node node;
     private Connection connection;
     int counter;
@@ -56,6 +63,61 @@ public class fcpManager {
         return connection.isConnected();
     }
     
+    /**
+     * Returns the client shared by everyone who publishes to the node.
+     * The first call opens a new connection to the node, later calls
+     * reuse it until every user has released it.
+     *
+     * @return The shared client
+     * @throws IOException if the node can't be reached
+     */
+    public MultiplexClient acquireClient() throws IOException {
+        String key = node.getHostname() + ":" + node.getPort();
+        synchronized (sharedClients) {
+            MultiplexClient client = (MultiplexClient)sharedClients.get(key);
+            if (client != null && client.isDisconnected()) {
+                sharedClients.remove(key);
+                clientUsers.remove(client);
+                client.close();
+                client = null;
+            }
+            if (client == null) {
+                Connection shared = new Connection(node,
+                    "Thingamablog-" + System.currentTimeMillis() + "-" + sharedCounter++);
+                if (!shared.connect()) {
+                    throw new IOException("Node did not answer the client hello");
+                }
+                client = new MultiplexClient(shared);
+                sharedClients.put(key, client);
+                clientUsers.put(client, new int[1]);
+            }
+            ((int[])clientUsers.get(client))[0]++;
+            return client;
+        }
+    }
+    
+    /**
+     * Releases a client returned by acquireClient(). The connection
+     * is closed when its last user releases it.
+     *
+     * @param client The client
+     */
+    public void releaseClient(MultiplexClient client) {
+        synchronized (sharedClients) {
+            int[] users = (int[])clientUsers.get(client);
+            if (users != null && --users[0] > 0) {
+                return;
+            }
+            clientUsers.remove(client);
+            String key = node.getHostname() + ":" + node.getPort();
+            if (sharedClients.get(key) == client) {
+                sharedClients.remove(key);
+            }
+        }
+        client.close();
+        client.getConnection().disconnect();
+    }
+    
     public Node getNode() {
         return node;
     }
@@ -45,6 +45,7 @@ import net.sf.thingamablog.feed.Feed;
 import net.sf.thingamablog.feed.FeedBackend;
 import net.sf.thingamablog.feed.FeedFolder;
 import net.sf.thingamablog.generator.CustomTag;
+import net.sf.thingamablog.generator.IncludeCache;
 import net.sf.thingamablog.generator.PageGenerator;
 import net.sf.thingamablog.transport.EMailTransport;
 import net.sf.thingamablog.transport.FCPTransport;
@@ -149,10 +150,15 @@ public class TBPersistFactory
 			
 			link.setAttribute("archive", feeds[j].isLimitItems() + "");
 			link.setAttribute("limit", feeds[j].getItemLimit() + "");				
+			link.setAttribute("max_age", feeds[j].getItemMaxAge() + "");
 			
 			Date updateDate = feeds[j].getLastUpdated();
 			if(updateDate != null)
 				link.setAttribute("update_date", updateDate.getTime() + "");
+			if(feeds[j].getETag() != null)
+				link.setAttribute("etag", feeds[j].getETag());
+			if(feeds[j].getLastModified() != null)
+				link.setAttribute("last_modified", feeds[j].getLastModified());
 			//link.setAttribute("update_failed", feeds[j].isLastUpdateFailed() + "");
 			if(feeds[j].isLastUpdateFailed())
 				link.setAttribute("update_failed", feeds[j].getLastUpdateFailedReason());
@@ -272,6 +278,12 @@ public class TBPersistFactory
 		f.setLastUpdateFailed(failReason != null);
 		f.setLimitItems(archive);
 		f.setItemLimit(limit);
+		try
+		{
+			f.setItemMaxAge(Integer.parseInt(element.getAttributeValue("max_age", "0")));
+		}catch(Exception ex){}
+		f.setETag(element.getAttributeValue("etag"));
+		f.setLastModified(element.getAttributeValue("last_modified"));
 		if(failReason != null)
 			f.setLastUpdateFailedReason(failReason);
 		return f;
@@ -400,6 +412,10 @@ public class TBPersistFactory
 		genElement.setAttribute("limit_cat", gen.isLimitCategoryPage() + "");
 		genElement.setAttribute("cat_page_limit", gen.getCategoryPageLimit() + "");
 		genElement.setAttribute("limit_rss_body", gen.isLimitRssEntry() + "");
+		IncludeCache ic = gen.getIncludeCache();
+		genElement.setAttribute("include_ttl_seconds", (ic.getTimeToLive() / 1000) + "");
+		genElement.setAttribute("include_max_entries", ic.getMaxEntries() + "");
+		genElement.setAttribute("include_max_kb", (ic.getMaxSize() / 1024) + "");
 		
 		
 		Element customTagsElement = new Element("CustomTags");
@@ -436,6 +452,11 @@ public class TBPersistFactory
         if(rpt.isSavePassword())
             transport.setAttribute("password", 
             PasswordUtil.encrypt(rpt.getPassword(), PasswordUtil.KEY));
+        if(rpt.getLastSeenUID() != null)
+        {
+            transport.setAttribute("last_uid", rpt.getLastSeenUID());
+            transport.setAttribute("last_uid_mailbox", rpt.getLastSeenMailbox());
+        }
         
         mailSettings.addContent(transport);
         return mailSettings;
@@ -455,6 +476,9 @@ public class TBPersistFactory
 			if(rpt.isSavePassword())
 				transport.setAttribute("password", 
 				PasswordUtil.encrypt(rpt.getPassword(), PasswordUtil.KEY));
+			if(rpt instanceof RemotePublishTransport)
+				transport.setAttribute("sessions", 
+				((RemotePublishTransport)rpt).getUploadSessions() + "");
 			if(rpt instanceof FTPTransport)
 			{
 				FTPTransport ftp = (FTPTransport)rpt;
@@ -486,6 +510,7 @@ public class TBPersistFactory
                         transport.setAttribute("activeLinkPath",fpt.getActiveLinkPath());
                     }
                     transport.setAttribute("SSKPath",fpt.getSSKPath());
+                    transport.setAttribute("uploadFromDisk",fpt.isUploadFromDisk() + "");
                 }
 		else
 		{
@@ -720,6 +745,14 @@ public class TBPersistFactory
 		s = genElement.getAttributeValue("limit_rss_body");
 		gen.setLimitRssEntry(s != null && s.equals("true"));
 		
+		IncludeCache ic = gen.getIncludeCache();
+		ic.setTimeToLive(1000L * parseInt(genElement.getAttributeValue("include_ttl_seconds"), 
+			(int)(IncludeCache.DEFAULT_TTL / 1000)));
+		ic.setMaxEntries(parseInt(genElement.getAttributeValue("include_max_entries"), 
+			IncludeCache.DEFAULT_MAX_ENTRIES));
+		ic.setMaxSize(1024L * parseInt(genElement.getAttributeValue("include_max_kb"), 
+			(int)(IncludeCache.DEFAULT_MAX_SIZE / 1024)));
+		
 		Element custTags = genElement.getChild("CustomTags");
 		if(custTags == null)return;
 		Iterator itr = custTags.getChildren().iterator();		
@@ -777,6 +810,8 @@ public class TBPersistFactory
         blog.getMailTransport().setProtocol(transport.getAttributeValue("protocol", "POP3"));
         blog.getMailTransport().setPostDirective(transport.getAttributeValue("post_directive", "POST"));
         configureRemoteTransport(blog.getMailTransport(), transport, 110);
+        blog.getMailTransport().setLastSeenUID(transport.getAttributeValue("last_uid_mailbox"), 
+            transport.getAttributeValue("last_uid"));
     }
     
     private static int parseInt(String intStr, int defaultVal)
@@ -871,6 +906,8 @@ public class TBPersistFactory
 				rtp = new SFTPTransport();
 			
 			configureRemoteTransport(rtp, transport, port);
+			rtp.setUploadSessions(parseInt(transport.getAttributeValue("sessions"), 
+				RemotePublishTransport.DEFAULT_UPLOAD_SESSIONS));
 			pubTransport = rtp;
 		}
                 else if (type.equals("fcp"))
@@ -889,6 +926,9 @@ public class TBPersistFactory
                     } else {
                         fcp.setSSKPath(SSKPath);
                     }
+                    String uploadFromDisk = transport.getAttributeValue("uploadFromDisk");
+                    if(uploadFromDisk != null)
+                        fcp.setUploadFromDisk(Boolean.valueOf(uploadFromDisk).booleanValue());
                     pubTransport = fcp;
                 }
 		else		
@@ -0,0 +1,265 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.blog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import net.sf.thingamablog.transport.RemotePublishTransport;
+import net.sf.thingamablog.transport.TransportProgress;
+
+
+/**
+ * Publishes files with the ParallelPublisher over a transport that keeps
+ * the uploads in memory, and checks that every file is uploaded once, that
+ * each directory is uploaded by one session, that the sessions overlap,
+ * and that a failed upload or a refused connection is handled.
+ *
+ * Usage: ParallelPublisherCheck
+ */
+public class ParallelPublisherCheck
+{
+	private static final int DIRS = 6;
+	private static final int FILES_PER_DIR = 5;
+
+	private int failures;
+
+	public static void main(String args[]) throws Exception
+	{
+		File dir = File.createTempFile("pubcheck", "");
+		dir.delete();
+		dir.mkdirs();
+		Vector files = new Vector();
+		Vector paths = new Vector();
+		for(int d = 0; d < DIRS; d++)
+		{
+			for(int i = 0; i < FILES_PER_DIR; i++)
+			{
+				File f = new File(dir, "file" + d + "-" + i + ".html");
+				FileOutputStream out = new FileOutputStream(f);
+				out.write(("<p>" + d + " " + i + "</p>").getBytes("UTF-8"));
+				out.close();
+				files.add(f);
+				paths.add("/www/dir" + d + "/");
+			}
+		}
+
+		ParallelPublisherCheck check = new ParallelPublisherCheck();
+		check.checkUpload(dir, files, paths);
+		check.checkFailure(dir, files, paths);
+		check.checkRefusedSessions(dir, files, paths);
+
+		System.out.println(files.size() + " files, " + check.failures + " checks failed");
+		if(check.failures > 0)
+			System.exit(1);
+	}
+
+	private void checkUpload(File dir, Vector files, Vector paths) throws IOException
+	{
+		Server server = new Server();
+		Progress progress = new Progress();
+		PublishManifest manifest = new PublishManifest(new File(dir, "manifest.properties"));
+		manifest.load("memory");
+		boolean ok = publish(server, 4, progress, manifest, files, paths);
+
+		expect("all files published", ok);
+		expect("every file uploaded once", server.uploads.size() == files.size() && server.duplicates == 0);
+		expect("every upload completed", progress.completed == files.size());
+		expect("every upload recorded", manifest.size() == files.size());
+		expect("one session per directory", server.splitDirs == 0);
+		expect("sessions overlap", server.maxActive > 1);
+		expect("sessions disconnected", server.active == 0);
+	}
+
+	private void checkFailure(File dir, Vector files, Vector paths) throws IOException
+	{
+		Server server = new Server();
+		server.failOn = "file3-2.html";
+		Progress progress = new Progress();
+		boolean ok = publish(server, 3, progress, null, files, paths);
+
+		expect("failed upload fails the publish", !ok);
+		expect("failed upload is not completed", !progress.completedFiles.containsKey(server.failOn));
+		expect("failure reason kept", progress.failureReason != null &&
+			progress.failureReason.equals("Unable to upload " + server.failOn));
+	}
+
+	private void checkRefusedSessions(File dir, Vector files, Vector paths) throws IOException
+	{
+		Server server = new Server();
+		server.maxConnections = 1;
+		Progress progress = new Progress();
+		boolean ok = publish(server, 4, progress, null, files, paths);
+
+		expect("refused sessions don't fail the publish", ok);
+		expect("first session uploads everything", server.uploads.size() == files.size());
+	}
+
+	private boolean publish(Server server, int sessions, Progress progress,
+		PublishManifest manifest, Vector files, Vector paths)
+	{
+		MemoryTransport t = new MemoryTransport(server);
+		t.setUploadSessions(sessions);
+		t.connect();
+		ParallelPublisher pp = new ParallelPublisher(t, progress, manifest, null);
+		for(int i = 0; i < files.size(); i++)
+			pp.add((File)files.elementAt(i), (String)paths.elementAt(i));
+		boolean ok = pp.publish();
+		progress.failureReason = pp.getFailureReason();
+		t.disconnect();
+		return ok;
+	}
+
+	private void expect(String what, boolean ok)
+	{
+		if(!ok)
+		{
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	/**
+	 * The state of the remote server, shared by the sessions
+	 */
+	private static class Server
+	{
+		//remote path -> file
+		Hashtable uploads = new Hashtable();
+		//directory -> session
+		Hashtable dirSessions = new Hashtable();
+		int duplicates;
+		int splitDirs;
+		int connections;
+		int maxConnections = Integer.MAX_VALUE;
+		int active;
+		int maxActive;
+		String failOn;
+
+		synchronized boolean connect()
+		{
+			if(connections >= maxConnections)
+				return false;
+			connections++;
+			return true;
+		}
+
+		synchronized void disconnect()
+		{
+			connections--;
+		}
+
+		synchronized void begin(MemoryTransport session, String pubPath)
+		{
+			active++;
+			maxActive = Math.max(maxActive, active);
+			Object s = dirSessions.get(pubPath);
+			if(s == null)
+				dirSessions.put(pubPath, session);
+			else if(s != session)
+				splitDirs++;
+		}
+
+		synchronized void end(String pubPath, File f)
+		{
+			active--;
+			if(uploads.put(pubPath + f.getName(), f) != null)
+				duplicates++;
+		}
+	}
+
+	private static class MemoryTransport extends RemotePublishTransport
+	{
+		private Server server;
+		private String failureReason;
+
+		MemoryTransport(Server server)
+		{
+			this.server = server;
+		}
+
+		protected RemotePublishTransport newTransport()
+		{
+			return new MemoryTransport(server);
+		}
+
+		public boolean connect()
+		{
+			isConnected = server.connect();
+			if(!isConnected)
+				failureReason = "Too many connections";
+			clearKnownDirectories();
+			return isConnected;
+		}
+
+		public boolean disconnect()
+		{
+			if(isConnected)
+				server.disconnect();
+			isConnected = false;
+			return true;
+		}
+
+		public String getFailureReason()
+		{
+			return failureReason;
+		}
+
+		public boolean publishFile(String pubPath, File file, TransportProgress tp)
+		{
+			if(file.getName().equals(server.failOn))
+			{
+				failureReason = "Unable to upload " + file.getName();
+				return false;
+			}
+
+			server.begin(this, pubPath);
+			try
+			{
+				//a round trip to the server
+				Thread.sleep(5);
+			}
+			catch(InterruptedException ie){}
+			tp.bytesTransferred(file.length());
+			server.end(pubPath, file);
+			return true;
+		}
+	}
+
+	private static class Progress implements PublishProgress
+	{
+		int completed;
+		Hashtable completedFiles = new Hashtable();
+		String failureReason;
+
+		public void publishStarted(long totalBytesToPublish){}
+
+		public void filePublishStarted(File f, String pubPath){}
+
+		public void filePublishCompleted(File f, String pubPath)
+		{
+			completed++;
+			completedFiles.put(f.getName(), f);
+		}
+
+		public void publishFailed(String reason){}
+
+		public void publishCompleted(){}
+
+		public void bytesTransferred(long bytes){}
+
+		public boolean isAborted()
+		{
+			return false;
+		}
+
+		public void logMessage(String msg){}
+
+		public void updateBlocksTransferred(int blocks, int total, String name){}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.feed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+
+/**
+ * Checks that a feed is only downloaded and parsed again when it changed.
+ * A small HTTP server on the loopback interface serves a feed with an ETag
+ * and a Last-Modified date, and only answers 304 when a request sends both
+ * of them back.
+ *
+ * Usage: ConditionalGetCheck
+ */
+public class ConditionalGetCheck implements Runnable
+{
+	private static final String ETAG = "\"feed-1\"";
+	private static final String LAST_MODIFIED = "Mon, 07 Mar 2005 09:30:00 GMT";
+	private static final String RSS =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		"<rss version=\"2.0\"><channel><title>Check</title>" +
+		"<link>http://example.com/</link><description>A feed</description>" +
+		"<item><title>Item</title><link>http://example.com/1</link>" +
+		"<description>Text</description></item></channel></rss>\n";
+
+	private ServerSocket server;
+	private int requests;
+	private int notModified;
+	private int failures;
+
+	public static void main(String args[]) throws Exception
+	{
+		ConditionalGetCheck check = new ConditionalGetCheck();
+		check.server = new ServerSocket(0);
+		Thread t = new Thread(check, "ConditionalGetCheck");
+		t.setDaemon(true);
+		t.start();
+
+		String url = "http://127.0.0.1:" + check.server.getLocalPort() + "/feed.xml";
+		Feed feed = new Feed(url);
+
+		//no validators yet, so the feed is downloaded
+		Feed.Download d = feed.fetch(5000, 5000);
+		check.expect("first fetch succeeds", d != null);
+		check.expect("first fetch is parsed", d != null && d.feed != null);
+		check.expect("ETag is read", d != null && ETAG.equals(d.etag));
+		check.expect("Last-Modified is read", d != null && LAST_MODIFIED.equals(d.lastModified));
+
+		//the validators of the last download are sent back
+		feed.setETag(ETAG);
+		feed.setLastModified(LAST_MODIFIED);
+		d = feed.fetch(5000, 5000);
+		check.expect("second fetch succeeds", d != null);
+		check.expect("second fetch is not parsed", d != null && d.feed == null);
+		check.expect("server answered 304", check.notModified == 1);
+		check.expect("validators are kept", d != null && ETAG.equals(d.etag) &&
+			LAST_MODIFIED.equals(d.lastModified));
+
+		//a feed that wasn't modified only updates the date, it has no backend here
+		if(d != null && d.feed == null)
+			feed.store(d);
+		check.expect("unmodified feed is stored", feed.getLastUpdated() != null);
+
+		//a changed ETag downloads the feed again
+		feed.setETag("\"feed-0\"");
+		feed.setLastModified(null);
+		d = feed.fetch(5000, 5000);
+		check.expect("stale ETag is downloaded again", d != null && d.feed != null);
+
+		check.server.close();
+		System.out.println(check.requests + " requests, " + check.failures + " checks failed");
+		if(check.failures > 0)
+			System.exit(1);
+	}
+
+	private void expect(String what, boolean ok)
+	{
+		if(!ok)
+		{
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	public void run()
+	{
+		while(true)
+		{
+			Socket s;
+			try
+			{
+				s = server.accept();
+			}
+			catch(IOException ex)
+			{
+				return;
+			}
+			try
+			{
+				serve(s);
+			}
+			catch(IOException ex)
+			{
+				System.out.println("Server error: " + ex.getMessage());
+			}
+			finally
+			{
+				try{s.close();}
+				catch(IOException ex){}
+			}
+		}
+	}
+
+	private void serve(Socket s) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "ISO-8859-1"));
+		String ifNoneMatch = null;
+		String ifModifiedSince = null;
+		in.readLine();//the request line
+		String line;
+		while((line = in.readLine()) != null && line.length() > 0)
+		{
+			int colon = line.indexOf(':');
+			if(colon < 0)
+				continue;
+			String name = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+			if(name.equalsIgnoreCase("If-None-Match"))
+				ifNoneMatch = value;
+			else if(name.equalsIgnoreCase("If-Modified-Since"))
+				ifModifiedSince = value;
+		}
+
+		//both validators have to come back, so a missing one is noticed
+		boolean modified = !ETAG.equals(ifNoneMatch) || !LAST_MODIFIED.equals(ifModifiedSince);
+
+		String head;
+		byte body[] = new byte[0];
+		synchronized(this)
+		{
+			requests++;
+			if(!modified)
+				notModified++;
+		}
+		if(modified)
+		{
+			body = RSS.getBytes("UTF-8");
+			head = "HTTP/1.0 200 OK\r\nContent-Type: application/rss+xml; charset=UTF-8\r\n" +
+				"Content-Length: " + body.length + "\r\n";
+		}
+		else
+			head = "HTTP/1.0 304 Not Modified\r\n";
+		head += "ETag: " + ETAG + "\r\nLast-Modified: " + LAST_MODIFIED + "\r\n\r\n";
+
+		OutputStream out = s.getOutputStream();
+		out.write(head.getBytes("ISO-8859-1"));
+		out.write(body);
+		out.flush();
+	}
+}
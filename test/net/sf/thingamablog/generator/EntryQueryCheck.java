@@ -0,0 +1,260 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Hashtable;
+
+import net.sf.thingamablog.blog.ArchiveRange;
+import net.sf.thingamablog.blog.Author;
+import net.sf.thingamablog.blog.BackendException;
+import net.sf.thingamablog.blog.BlogEntry;
+import net.sf.thingamablog.blog.EntryEnumeration;
+import net.sf.thingamablog.blog.TBWeblog;
+import net.sf.thingamablog.blog.WeblogSearch;
+
+
+/**
+ * Generates every page of a weblog with a shipped template set over a
+ * backend that counts the calls made to it, and checks that the number of
+ * queries doesn't grow with the number of entries, and that the text of
+ * each entry is read from the backend at most once.
+ *
+ * Usage: EntryQueryCheck [template set]
+ */
+public class EntryQueryCheck
+{
+	private static final String CATEGORIES[] = {"News", "Java", "Misc"};
+
+	private int failures;
+
+	public static void main(String args[]) throws Exception
+	{
+		File set = new File(args.length > 0 ? args[0] : "template_sets/plain_jane.zip");
+		Hashtable tmpls = TemplateRegressionCheck.readTemplates(set);
+
+		File home = File.createTempFile("querycheck", "");
+		home.delete();
+		home.mkdirs();
+
+		EntryQueryCheck check = new EntryQueryCheck();
+		int sizes[] = {20, 60, 180};
+		int queries[] = new int[sizes.length];
+		for(int i = 0; i < sizes.length; i++)
+		{
+			CountingBackend backend = new CountingBackend();
+			TBWeblog blog = createWeblog(home, "blog" + i, backend, sizes[i]);
+			int pages = check.generatePages(blog, backend, tmpls);
+			queries[i] = backend.queries;
+			System.out.println(sizes[i] + " entries, " + pages + " pages: " +
+				backend.queries + " queries, " + backend.reads + " entries read");
+
+			check.expect(sizes[i] + " entries: each entry read at most once",
+				backend.reads <= sizes[i]);
+			check.expect(sizes[i] + " entries: the index counts its queries",
+				blog.getEntryIndex().getQueryCount() <= backend.queries);
+			if(i > 0)
+				check.expect(sizes[i] + " entries: as many queries as " + sizes[0],
+					queries[i] == queries[0]);
+		}
+
+		System.out.println(check.failures + " checks failed");
+		if(check.failures > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Generates the pages a publish of the whole weblog generates, and
+	 * counts the backend calls made while generating them
+	 */
+	private int generatePages(TBWeblog blog, CountingBackend backend, Hashtable tmpls)
+	throws Exception
+	{
+		ArchiveRange arcs[] = blog.getArchives();
+		BlogEntry entries[] = blog.getEntries();
+		blog.getEntryCache().clear();
+
+		PageGenerator gen = new PageGenerator();
+		gen.setPageDate(new Date());
+		gen.getIncludeCache().beginSession();
+		gen.getFragmentCache().beginSession();
+		backend.queries = 0;
+		backend.reads = 0;
+		int pages = 0;
+		try
+		{
+			gen.generatePage(blog, PageGenerator.FRONT_PAGE, new ByteArrayOutputStream(), (String)tmpls.get("main"));
+			gen.generatePage(blog, PageGenerator.RSS_PAGE, new ByteArrayOutputStream(), (String)tmpls.get("feed"));
+			gen.generatePage(blog, PageGenerator.INDEX_PAGE, new ByteArrayOutputStream(), (String)tmpls.get("index"));
+			pages += 3;
+			for(int i = 0; i < CATEGORIES.length; i++, pages++)
+				gen.generatePage(blog, CATEGORIES[i], new ByteArrayOutputStream(), (String)tmpls.get("category"));
+			for(int i = 0; i < arcs.length; i++, pages++)
+				gen.generatePage(blog, arcs[i], new ByteArrayOutputStream(), (String)tmpls.get("archive"));
+			for(int i = 0; i < entries.length; i++, pages++)
+				gen.generatePage(blog, entries[i].getID(), new ByteArrayOutputStream(), (String)tmpls.get("entry"));
+		}
+		finally
+		{
+			gen.getIncludeCache().endSession();
+			gen.getFragmentCache().endSession();
+		}
+		return pages;
+	}
+
+	private void expect(String what, boolean ok)
+	{
+		if(!ok)
+		{
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	private static TBWeblog createWeblog(File home, String key, CountingBackend backend, int count)
+	throws Exception
+	{
+		TBWeblog blog = new TBWeblog(home, key);
+		blog.setBackend(backend);
+		blog.setType("internet");
+		blog.setTitle("Check " + key);
+		blog.setDescription("A weblog");
+		blog.setBlogUrls(home.getAbsolutePath(), "http://example.com/blog/",
+			"http://example.com/blog/archives/", "http://example.com/blog/media/");
+
+		Author auth = new Author();
+		auth.setName("Author");
+		auth.setEmailAddress("author@example.com");
+		blog.addAuthor(auth);
+		for(int i = 0; i < CATEGORIES.length; i++)
+			blog.addCategory(CATEGORIES[i]);
+
+		//a few entries a week, so more entries fill more months
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2005, Calendar.MARCH, 3, 9, 30);
+		for(int i = 0; i < count; i++)
+		{
+			BlogEntry be = new BlogEntry();
+			be.setTitle("Entry " + i);
+			be.setAuthor(auth);
+			be.setDate(cal.getTime());
+			be.setLastModified(cal.getTime());
+			be.addCategory(CATEGORIES[i % CATEGORIES.length]);
+			be.setText("<p>Text of entry " + i + "</p>");
+			blog.addEntry(be);
+			cal.add(Calendar.DATE, 2);
+		}
+		return blog;
+	}
+
+	/**
+	 * A MemoryBackend that counts the entry reads and the other queries
+	 */
+	private static class CountingBackend extends MemoryBackend
+	{
+		int queries;
+		int reads;
+
+		public synchronized BlogEntry getEntry(String blogKey, long id) throws BackendException
+		{
+			reads++;
+			return super.getEntry(blogKey, id);
+		}
+
+		public synchronized EntryEnumeration findEntries(String blogKey, WeblogSearch search) throws BackendException
+		{
+			queries++;
+			return super.findEntries(blogKey, search);
+		}
+
+		public synchronized EntryEnumeration getEntries(String blogKey, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntries(blogKey, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntriesFromCategory(String blogKey, String category, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntriesFromCategory(blogKey, category, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntriesBefore(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntriesBefore(blogKey, d, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntriesAfter(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntriesAfter(blogKey, d, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntriesBetween(String blogKey, Date from, Date to, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntriesBetween(blogKey, from, to, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getDraftEntries(String blogKey, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getDraftEntries(blogKey, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntryHeaders(String blogKey, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntryHeaders(blogKey, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntryHeadersFromCategory(String blogKey, String category, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntryHeadersFromCategory(blogKey, category, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntryHeadersBefore(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntryHeadersBefore(blogKey, d, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntryHeadersAfter(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntryHeadersAfter(blogKey, d, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getEntryHeadersBetween(String blogKey, Date from, Date to, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getEntryHeadersBetween(blogKey, from, to, orderByDateAsc);
+		}
+
+		public synchronized EntryEnumeration getDraftEntryHeaders(String blogKey, boolean orderByDateAsc) throws BackendException
+		{
+			queries++;
+			return super.getDraftEntryHeaders(blogKey, orderByDateAsc);
+		}
+
+		public synchronized Author[] getAuthors(String blogKey, boolean sortAsc) throws BackendException
+		{
+			queries++;
+			return super.getAuthors(blogKey, sortAsc);
+		}
+
+		public synchronized String[] getCategories(String blogKey, boolean sortAsc) throws BackendException
+		{
+			queries++;
+			return super.getCategories(blogKey, sortAsc);
+		}
+	}
+}
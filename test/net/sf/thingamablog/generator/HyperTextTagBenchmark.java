@@ -0,0 +1,104 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.util.Hashtable;
+
+
+/**
+ * Measures what the memoization of HyperTextTag saves in a publish. Each
+ * entry body is rendered the way a typical set of templates renders it:
+ * cut to a number of words on the front page, tidied on its archive,
+ * category and entry pages, and encoded with a find and replace in the
+ * feed. The bodies are rendered once with the memo cleared before every
+ * call, which is what every call cost before, and once memoized.
+ * <p>
+ * Usage: <code>java net.sf.thingamablog.generator.HyperTextTagBenchmark [entries] [rounds]</code>
+ */
+class HyperTextTagBenchmark
+{
+	public static void main(String args[])
+	{
+		int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+		
+		HyperTextTag tag = new HyperTextTag("EntryBody");
+		String bodies[] = createBodies(entries);
+		Hashtable pages[] = createPages(tag);
+		System.out.println(entries + " entries, " + pages.length + " renderings each");
+		
+		for(int round = 1; round <= rounds; round++)
+		{
+			long start = System.currentTimeMillis();
+			render(tag, bodies, pages, true);
+			report("round " + round + " uncached", entries * pages.length, 
+				System.currentTimeMillis() - start);
+			
+			HyperTextTag.clearCache();
+			start = System.currentTimeMillis();
+			render(tag, bodies, pages, false);
+			report("round " + round + " memoized", entries * pages.length, 
+				System.currentTimeMillis() - start);
+		}
+	}
+	
+	private static void render(HyperTextTag tag, String bodies[], Hashtable pages[], boolean clear)
+	{
+		for(int p = 0; p < pages.length; p++)
+		{
+			for(int i = 0; i < bodies.length; i++)
+			{
+				if(clear)
+					HyperTextTag.clearCache();
+				tag.process(bodies[i], new Hashtable(pages[p]));
+			}
+		}
+	}
+	
+	private static Hashtable[] createPages(HyperTextTag tag)
+	{
+		Hashtable front = new Hashtable(tag.getDefaultAttributes());
+		front.put(HyperTextTag.WORDS, "50");
+		
+		Hashtable tidied = new Hashtable(tag.getDefaultAttributes());
+		tidied.put(HyperTextTag.TIDY_HTML, "1");
+		tidied.put(HyperTextTag.CLOSE_EMPTY_TAGS, "1");
+		
+		Hashtable feed = new Hashtable(tag.getDefaultAttributes());
+		feed.put(HyperTextTag.FIND, "&nbsp;, <br>");
+		feed.put(HyperTextTag.REPLACE, "&#160;, <br />");
+		feed.put(HyperTextTag.ENCODE_HTML, "1");
+		
+		//the archive, category and entry pages
+		return new Hashtable[]{front, tidied, tidied, tidied, feed};
+	}
+	
+	private static String[] createBodies(int n)
+	{
+		String bodies[] = new String[n];
+		for(int i = 0; i < n; i++)
+		{
+			StringBuffer sb = new StringBuffer();
+			for(int p = 0; p < 8; p++)
+			{
+				sb.append("<p>Entry ").append(i).append(", paragraph ").append(p);
+				sb.append(": some <b>bold</b> text, a <a href=\"http://example.com/");
+				sb.append(i).append("\">link</a>&nbsp;and an image <img src=\"pic");
+				sb.append(p).append(".png\"><br>followed by more words to make ");
+				sb.append("the paragraph about as long as a real one would be.");
+				if(p % 3 == 0)
+					sb.append("<ul><li>one<li>two</ul>");//unclosed tags for Tidy
+			}
+			bodies[i] = sb.toString();
+		}
+		return bodies;
+	}
+	
+	private static void report(String name, int renderings, long millis)
+	{
+		System.out.println(name + ": " + millis + " ms, " + 
+			((millis * 1000) / Math.max(1, renderings)) + " us per rendering");
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * A PageGenerator that renders pages with the LegacyTemplateProcessor, the
+ * way pages were written before templates were compiled. The page is
+ * processed as a string first, then the entries are written in place of
+ * each BlogEntry container that's left.
+ */
+public class LegacyPageGenerator extends PageGenerator
+{
+	private LegacyTemplateProcessor pageBuilder = new LegacyTemplateProcessor();
+
+	void writePage(BlogPageContainer bpc, BlogEntryContainer bec, CompiledTemplate template, OutputStream out)
+	throws IOException
+	{
+		if(getPageDate() != null)
+			bpc.setCurrentDate(getPageDate());
+		CustomTag tags[] = getCustomTags();
+		for(int i = 0; i < tags.length; i++)
+			bpc.addCustomTag(tags[i]);
+
+		Writer writer = new OutputStreamWriter(out, getCharset());
+		String rootName = BlogPageContainer.NAME;
+		String text = pageBuilder.processTemplate(
+			"<" + rootName + ">" + template.getText() + "</" + rootName + ">", bpc);
+
+		List entryTmpls = bec == null ? null : pageBuilder.parseContainers(text, bec);
+		if(entryTmpls == null || entryTmpls.size() == 0)
+			writer.write(text);
+		else
+		{
+			int pos = 0;
+			for(Iterator it = entryTmpls.iterator(); it.hasNext();)
+			{
+				String ec = it.next().toString();
+				int ecPos = text.indexOf(ec, pos);
+				writer.write(text.substring(pos, ecPos));
+				pageBuilder.writeContainer(ec, bec, writer);
+				pos = ecPos + ec.length();
+			}
+			writer.write(text.substring(pos, text.length()));
+		}
+		writer.close();
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Vector;
+
+import net.sf.thingamablog.blog.Author;
+import net.sf.thingamablog.blog.AuthorStore;
+import net.sf.thingamablog.blog.BackendException;
+import net.sf.thingamablog.blog.BlogEntry;
+import net.sf.thingamablog.blog.CategoryStore;
+import net.sf.thingamablog.blog.EntryEnumeration;
+import net.sf.thingamablog.blog.WeblogBackend;
+import net.sf.thingamablog.blog.WeblogSearch;
+
+
+/**
+ * A WeblogBackend that keeps the entries, categories and authors of
+ * a single weblog in memory. Like a database, it hands out copies of the
+ * entries, and the headers are copies with all of an entry's fields.
+ */
+public class MemoryBackend implements WeblogBackend, AuthorStore, CategoryStore
+{
+	private Vector entries = new Vector();
+	private Vector authors = new Vector();
+	private Vector categories = new Vector();
+	private long nextID = 1;
+
+	public CategoryStore getCategoryStore()
+	{
+		return this;
+	}
+
+	public AuthorStore getAuthorStore()
+	{
+		return this;
+	}
+
+	public void removeAllWeblogData(String blogKey) throws BackendException
+	{
+		entries.clear();
+		authors.clear();
+		categories.clear();
+	}
+
+	public void initEntryStoreForWeblog(String blogKey) throws BackendException
+	{
+	}
+
+	public long addEntry(String blogKey, BlogEntry be) throws BackendException
+	{
+		be = copy(be);
+		be.setID(nextID++);
+		entries.add(be);
+		return be.getID();
+	}
+
+	public void updateEntry(String blogKey, BlogEntry be) throws BackendException
+	{
+		removeEntry(blogKey, be.getID());
+		entries.add(copy(be));
+	}
+
+	public void removeEntry(String blogKey, long id) throws BackendException
+	{
+		for(int i = 0; i < entries.size(); i++)
+		{
+			if(((BlogEntry)entries.elementAt(i)).getID() == id)
+				entries.removeElementAt(i--);
+		}
+	}
+
+	public BlogEntry getEntry(String blogKey, long id) throws BackendException
+	{
+		for(int i = 0; i < entries.size(); i++)
+		{
+			BlogEntry be = (BlogEntry)entries.elementAt(i);
+			if(be.getID() == id)
+				return copy(be);
+		}
+		return null;
+	}
+
+	public EntryEnumeration findEntries(String blogKey, WeblogSearch search) throws BackendException
+	{
+		Vector v = new Vector();
+		for(int i = 0; i < entries.size(); i++)
+		{
+			BlogEntry be = (BlogEntry)entries.elementAt(i);
+			if(be.isDraft() != search.isFindDrafts())
+				continue;
+			if(search.getStartDate() != null && be.getDate().before(search.getStartDate()))
+				continue;
+			if(search.getEndDate() != null && be.getDate().after(search.getEndDate()))
+				continue;
+			if(search.getCategory() != null && !hasCategory(be, search.getCategory()))
+				continue;
+			if(search.getTitleContains() != null && be.getTitle().indexOf(search.getTitleContains()) < 0)
+				continue;
+			if(search.getBodyContains() != null && be.getText().indexOf(search.getBodyContains()) < 0)
+				continue;
+			v.add(be);
+		}
+		return sorted(v, false);
+	}
+
+	public EntryEnumeration getEntries(String blogKey, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntriesBetween(blogKey, null, null, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntriesFromCategory(String blogKey, String category, boolean orderByDateAsc) throws BackendException
+	{
+		Vector v = new Vector();
+		for(int i = 0; i < entries.size(); i++)
+		{
+			BlogEntry be = (BlogEntry)entries.elementAt(i);
+			if(!be.isDraft() && hasCategory(be, category))
+				v.add(be);
+		}
+		return sorted(v, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntriesBefore(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntriesBetween(blogKey, null, d, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntriesAfter(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntriesBetween(blogKey, d, null, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntriesBetween(String blogKey, Date from, Date to, boolean orderByDateAsc) throws BackendException
+	{
+		Vector v = new Vector();
+		for(int i = 0; i < entries.size(); i++)
+		{
+			BlogEntry be = (BlogEntry)entries.elementAt(i);
+			if(be.isDraft())
+				continue;
+			if(from != null && be.getDate().before(from))
+				continue;
+			if(to != null && be.getDate().after(to))
+				continue;
+			v.add(be);
+		}
+		return sorted(v, orderByDateAsc);
+	}
+
+	public EntryEnumeration getDraftEntries(String blogKey, boolean orderByDateAsc) throws BackendException
+	{
+		Vector v = new Vector();
+		for(int i = 0; i < entries.size(); i++)
+		{
+			BlogEntry be = (BlogEntry)entries.elementAt(i);
+			if(be.isDraft())
+				v.add(be);
+		}
+		return sorted(v, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntryHeaders(String blogKey, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntries(blogKey, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntryHeadersFromCategory(String blogKey, String category, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntriesFromCategory(blogKey, category, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntryHeadersBefore(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntriesBefore(blogKey, d, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntryHeadersAfter(String blogKey, Date d, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntriesAfter(blogKey, d, orderByDateAsc);
+	}
+
+	public EntryEnumeration getEntryHeadersBetween(String blogKey, Date from, Date to, boolean orderByDateAsc) throws BackendException
+	{
+		return getEntriesBetween(blogKey, from, to, orderByDateAsc);
+	}
+
+	public EntryEnumeration getDraftEntryHeaders(String blogKey, boolean orderByDateAsc) throws BackendException
+	{
+		return getDraftEntries(blogKey, orderByDateAsc);
+	}
+
+	public void addAuthor(String blogKey, Author auth) throws BackendException
+	{
+		authors.add(auth);
+	}
+
+	public void removeAuthor(String blogKey, Author auth) throws BackendException
+	{
+		authors.remove(auth);
+	}
+
+	public void updateAuthor(String blogKey, Author oldAuth, Author newAuth) throws BackendException
+	{
+		int i = authors.indexOf(oldAuth);
+		if(i >= 0)
+			authors.setElementAt(newAuth, i);
+	}
+
+	public Author[] getAuthors(String blogKey, boolean sortAsc) throws BackendException
+	{
+		Author a[] = new Author[authors.size()];
+		authors.copyInto(a);
+		Arrays.sort(a);
+		if(!sortAsc)
+			Collections.reverse(Arrays.asList(a));
+		return a;
+	}
+
+	public void addCategory(String blogKey, String cat) throws BackendException
+	{
+		if(!categories.contains(cat))
+			categories.add(cat);
+	}
+
+	public void removeCategory(String blogKey, String cat) throws BackendException
+	{
+		categories.remove(cat);
+	}
+
+	public void renameCategory(String blogKey, String oldCat, String newCat) throws BackendException
+	{
+		int i = categories.indexOf(oldCat);
+		if(i >= 0)
+			categories.setElementAt(newCat, i);
+	}
+
+	public String[] getCategories(String blogKey, boolean sortAsc) throws BackendException
+	{
+		String c[] = new String[categories.size()];
+		categories.copyInto(c);
+		Arrays.sort(c);
+		if(!sortAsc)
+			Collections.reverse(Arrays.asList(c));
+		return c;
+	}
+
+	private boolean hasCategory(BlogEntry be, String cat)
+	{
+		String cats[] = be.getCategories();
+		for(int i = 0; i < cats.length; i++)
+		{
+			if(cats[i].equals(cat))
+				return true;
+		}
+		return false;
+	}
+
+	private static BlogEntry copy(BlogEntry be)
+	{
+		BlogEntry c = new BlogEntry();
+		c.setID(be.getID());
+		c.setTitle(be.getTitle());
+		c.setText(be.getText());
+		c.setDate(be.getDate());
+		c.setLastModified(be.getLastModified());
+		c.setCategories(be.getCategories());
+		c.setAuthor(be.getAuthor());
+		c.setDraft(be.isDraft());
+		return c;
+	}
+
+	private EntryEnumeration sorted(Vector v, final boolean asc)
+	{
+		Collections.sort(v, new Comparator()
+		{
+			public int compare(Object o1, Object o2)
+			{
+				int c = ((BlogEntry)o1).getDate().compareTo(((BlogEntry)o2).getDate());
+				return asc ? c : -c;
+			}
+		});
+
+		final Vector list = new Vector(v.size());
+		for(int i = 0; i < v.size(); i++)
+			list.add(copy((BlogEntry)v.elementAt(i)));
+		return new EntryEnumeration()
+		{
+			private int index;
+
+			public boolean hasMoreEntries()
+			{
+				return index < list.size();
+			}
+
+			public BlogEntry nextEntry()
+			{
+				return (BlogEntry)list.elementAt(index++);
+			}
+
+			public void close()
+			{
+			}
+		};
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import net.sf.thingamablog.blog.ArchiveRange;
+import net.sf.thingamablog.blog.Author;
+import net.sf.thingamablog.blog.BlogEntry;
+import net.sf.thingamablog.blog.TBWeblog;
+
+
+/**
+ * Renders every page of the shipped template sets with the TemplateProcessor
+ * and with the LegacyTemplateProcessor, and checks that the bytes are the
+ * same. The pages are rendered both outside and inside a publish session,
+ * so the fragments the FragmentCache reuses are checked as well.
+ *
+ * Usage: TemplateRegressionCheck [template sets dir]
+ */
+public class TemplateRegressionCheck
+{
+	private static final String CATEGORIES[] = {"News", "Java", "Misc"};
+
+	/*
+	 * Containers nested in containers that the old processor processed
+	 * after them, and tag values with markup in them. None of the shipped
+	 * templates do that.
+	 */
+	private static final String NESTING =
+		"<$BlogTitle$>\n" +
+		"<BlogEntry><$EntryTitle$>: <CategoryList><$CategoryName$>,</CategoryList>\n" +
+		"<EntryCategories><$CategoryName$>;</EntryCategories> <$EntryBody$>\n" +
+		"<Include file=\"%INCLUDE%\"><$IncludeText$></Include></BlogEntry>\n" +
+		"<CategoryList><$CategoryName$>: <BlogEntry><$EntryID$>\n" +
+		"<EntryCategories><$CategoryName$> <$CategoryLink$></EntryCategories></BlogEntry>\n" +
+		"</CategoryList>\n" +
+		"<ArchiveList><$ArchiveName$> <Calendar><$MonthLabel$></Calendar></ArchiveList>\n" +
+		"<Include file=\"%INCLUDE%\"><$IncludeText$></Include>\n";
+
+	private static final String INCLUDE =
+		"<p><$BlogTitle$> <$EntryTitle$> <$PageTitle$></p>\n" +
+		"<CategoryList><$CategoryName$></CategoryList>";
+
+	private int pages;
+	private int failures;
+
+	public static void main(String args[]) throws Exception
+	{
+		File dir = new File(args.length > 0 ? args[0] : "template_sets");
+		File sets[] = dir.listFiles();
+		if(sets == null)
+			throw new IOException("No template sets in " + dir);
+		Arrays.sort(sets);
+
+		File home = File.createTempFile("tmplcheck", "");
+		home.delete();
+		home.mkdirs();
+
+		TemplateRegressionCheck check = new TemplateRegressionCheck();
+		for(int i = 0; i < sets.length; i++)
+		{
+			if(sets[i].getName().endsWith(".zip"))
+				check.checkTemplateSet(sets[i].getName(), readTemplates(sets[i]), home);
+		}
+
+		File inc = new File(home, "include.html");
+		Writer w = new OutputStreamWriter(new FileOutputStream(inc), "UTF-8");
+		w.write(INCLUDE);
+		w.close();
+		String nesting = NESTING.replaceAll("%INCLUDE%", inc.getAbsolutePath());
+		Hashtable tmpls = new Hashtable();
+		String names[] = {"main", "feed", "index", "category", "archive", "entry"};
+		for(int i = 0; i < names.length; i++)
+			tmpls.put(names[i], nesting);
+		check.checkTemplateSet("nesting", tmpls, home);
+
+		System.out.println(check.pages + " pages checked, " + check.failures + " differ");
+		if(check.failures > 0)
+			System.exit(1);
+	}
+
+	private void checkTemplateSet(String name, Hashtable tmpls, File home) throws Exception
+	{
+		TBWeblog blog = createWeblog(home, name);
+
+		PageGenerator gen = new PageGenerator();
+		LegacyPageGenerator legacy = new LegacyPageGenerator();
+		gen.setArchiveRangeFormat("MMMM yyyy", false);
+		legacy.setArchiveRangeFormat("MMMM yyyy", false);
+		//the two renders may fall on different seconds
+		Date now = new Date();
+		gen.setPageDate(now);
+		legacy.setPageDate(now);
+
+		checkPages(name, blog, tmpls, gen, legacy);
+		gen.getIncludeCache().beginSession();
+		gen.getFragmentCache().beginSession();
+		try
+		{
+			checkPages(name + " (session)", blog, tmpls, gen, legacy);
+		}
+		finally
+		{
+			gen.getIncludeCache().endSession();
+			gen.getFragmentCache().endSession();
+		}
+	}
+
+	private void checkPages(String set, TBWeblog blog, Hashtable tmpls,
+		PageGenerator gen, LegacyPageGenerator legacy) throws Exception
+	{
+		int types[] = {PageGenerator.FRONT_PAGE, PageGenerator.RSS_PAGE, PageGenerator.INDEX_PAGE};
+		String names[] = {"main", "feed", "index"};
+		for(int i = 0; i < types.length; i++)
+		{
+			String t = (String)tmpls.get(names[i]);
+			if(t == null)
+				continue;
+			ByteArrayOutputStream a = new ByteArrayOutputStream();
+			ByteArrayOutputStream b = new ByteArrayOutputStream();
+			gen.generatePage(blog, types[i], a, t);
+			legacy.generatePage(blog, types[i], b, t);
+			compare(set, names[i], a, b);
+		}
+
+		String t = (String)tmpls.get("category");
+		for(int i = 0; t != null && i < CATEGORIES.length; i++)
+		{
+			ByteArrayOutputStream a = new ByteArrayOutputStream();
+			ByteArrayOutputStream b = new ByteArrayOutputStream();
+			gen.generatePage(blog, CATEGORIES[i], a, t);
+			legacy.generatePage(blog, CATEGORIES[i], b, t);
+			compare(set, "category " + CATEGORIES[i], a, b);
+		}
+
+		t = (String)tmpls.get("archive");
+		ArchiveRange arcs[] = blog.getArchives();
+		for(int i = 0; t != null && i < arcs.length; i++)
+		{
+			ByteArrayOutputStream a = new ByteArrayOutputStream();
+			ByteArrayOutputStream b = new ByteArrayOutputStream();
+			gen.generatePage(blog, arcs[i], a, t);
+			legacy.generatePage(blog, arcs[i], b, t);
+			compare(set, "archive " + arcs[i].getStartDate(), a, b);
+		}
+
+		t = (String)tmpls.get("entry");
+		BlogEntry entries[] = blog.getEntries();
+		for(int i = 0; t != null && i < entries.length; i++)
+		{
+			ByteArrayOutputStream a = new ByteArrayOutputStream();
+			ByteArrayOutputStream b = new ByteArrayOutputStream();
+			gen.generatePage(blog, entries[i].getID(), a, t);
+			legacy.generatePage(blog, entries[i].getID(), b, t);
+			compare(set, "entry " + entries[i].getID(), a, b);
+		}
+	}
+
+	private void compare(String set, String page, ByteArrayOutputStream a, ByteArrayOutputStream b)
+	throws IOException
+	{
+		pages++;
+		byte x[] = a.toByteArray();
+		byte y[] = b.toByteArray();
+		if(Arrays.equals(x, y))
+			return;
+
+		failures++;
+		int n = 0;
+		while(n < x.length && n < y.length && x[n] == y[n])
+			n++;
+		int s = Math.max(0, n - 40);
+		System.out.println(set + ", " + page + ": differs at byte " + n);
+		System.out.println("  new: " + snippet(x, s));
+		System.out.println("  old: " + snippet(y, s));
+	}
+
+	private static String snippet(byte b[], int start) throws IOException
+	{
+		int len = Math.min(120, b.length - start);
+		return new String(b, start, Math.max(0, len), "UTF-8").replace('\n', ' ').replace('\r', ' ');
+	}
+
+	static Hashtable readTemplates(File file) throws IOException
+	{
+		Hashtable tmpls = new Hashtable();
+		ZipFile zip = new ZipFile(file);
+		try
+		{
+			for(Enumeration e = zip.entries(); e.hasMoreElements();)
+			{
+				ZipEntry ze = (ZipEntry)e.nextElement();
+				String name = new File(ze.getName()).getName();
+				if(ze.isDirectory() || !name.endsWith(".template"))
+					continue;
+
+				InputStream in = zip.getInputStream(ze);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte buf[] = new byte[4096];
+				int n;
+				while((n = in.read(buf)) > 0)
+					out.write(buf, 0, n);
+				in.close();
+				tmpls.put(name.substring(0, name.length() - 9), out.toString("UTF-8"));
+			}
+		}
+		finally
+		{
+			zip.close();
+		}
+		return tmpls;
+	}
+
+	private static TBWeblog createWeblog(File home, String key) throws Exception
+	{
+		MemoryBackend backend = new MemoryBackend();
+		TBWeblog blog = new TBWeblog(home, key);
+		blog.setBackend(backend);
+		blog.setType("internet");
+		blog.setTitle("Check <" + key + ">");
+		blog.setDescription("A weblog & its pages");
+		blog.setBlogUrls(home.getAbsolutePath(), "http://example.com/blog/",
+			"http://example.com/blog/archives/", "http://example.com/blog/media/");
+
+		Author auths[] = new Author[2];
+		for(int i = 0; i < auths.length; i++)
+		{
+			auths[i] = new Author();
+			auths[i].setName("Author " + i);
+			auths[i].setEmailAddress("author" + i + "@example.com");
+			auths[i].setUrl("http://example.com/" + i);
+			blog.addAuthor(auths[i]);
+		}
+		for(int i = 0; i < CATEGORIES.length; i++)
+			blog.addCategory(CATEGORIES[i]);
+
+		//entries over a few months, some with markup in their text
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2005, Calendar.MARCH, 3, 9, 30);
+		for(int i = 0; i < 14; i++)
+		{
+			BlogEntry be = new BlogEntry();
+			be.setTitle("Entry " + i + (i % 4 == 0 ? " & <more>" : ""));
+			be.setAuthor(auths[i % auths.length]);
+			be.setDate(cal.getTime());
+			be.setLastModified(cal.getTime());
+			be.addCategory(CATEGORIES[i % CATEGORIES.length]);
+			if(i % 5 == 0)
+				be.addCategory(CATEGORIES[(i + 1) % CATEGORIES.length]);
+			String text = "<p>Text of entry " + i + ", <b>bold</b> and <a href=\"http://example.com/\">a link</a>.</p>";
+			if(i % 3 == 0)
+				text += "<p>From <$BlogTitle$> on <$EntryDate$> by <$EntryAuthor$></p>";
+			be.setText(text);
+			be.setDraft(i == 13);
+			blog.addEntry(be);
+			cal.add(Calendar.DATE, 9);
+		}
+		return blog;
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.transport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+
+import net.sf.thingamablog.blog.Author;
+import net.sf.thingamablog.blog.BlogEntry;
+
+
+/**
+ * Imports posts from a small POP3 server on the loopback interface, and
+ * checks that only the bodies of posts are downloaded, and that the next
+ * check only looks at the messages that arrived since the last one, unless
+ * the directive or the authors changed.
+ *
+ * Usage: EMailImportCheck
+ */
+public class EMailImportCheck implements Runnable
+{
+	private ServerSocket server;
+	//the messages in the mailbox, in order
+	private Vector mailbox = new Vector();
+	private int nextUID = 1;
+	//uid -> number of times the whole message was downloaded
+	private Hashtable retrieved = new Hashtable();
+	private int failures;
+
+	public static void main(String args[]) throws Exception
+	{
+		EMailImportCheck check = new EMailImportCheck();
+		check.server = new ServerSocket(0);
+		Thread t = new Thread(check, "EMailImportCheck");
+		t.setDaemon(true);
+		t.start();
+
+		Author auth = new Author();
+		auth.setName("Author");
+		auth.setEmailAddress("author@example.com");
+		Author authors[] = {auth};
+		String cats[] = {"Java", "News"};
+
+		EMailTransport mail = new EMailTransport();
+		mail.setProtocol("pop3");
+		mail.setAddress("127.0.0.1");
+		mail.setPort(check.server.getLocalPort());
+		mail.setUserName("user");
+		mail.setPassword("secret");
+
+		check.addMessage("author@example.com", "Hello", "Not a post");
+		check.addMessage("author@example.com", "POST: First", "The first post");
+		check.addMessage("stranger@example.com", "POST: Spam", "Not from an author");
+
+		Progress p = new Progress();
+		List entries = check.importPosts(mail, authors, cats, p);
+		check.expect("every message checked first", p.checked == 3);
+		check.expect("one post imported", entries.size() == 1 &&
+			((BlogEntry)entries.get(0)).getTitle().equals("First"));
+		check.expect("post deleted", check.mailbox.size() == 2);
+		check.expect("only the post downloaded", check.retrieved.size() == 1 &&
+			check.retrieved.containsKey("uid-2"));
+		check.expect("last seen is the last message left", "uid-3".equals(mail.getLastSeenUID()));
+
+		check.addMessage("author@example.com", "POST in java: Second", "The second post");
+		p = new Progress();
+		entries = check.importPosts(mail, authors, cats, p);
+		check.expect("only the new message checked", p.checked == 1);
+		check.expect("new post imported", entries.size() == 1 &&
+			((BlogEntry)entries.get(0)).getTitle().equals("Second") &&
+			((BlogEntry)entries.get(0)).getCategories().length == 1 &&
+			((BlogEntry)entries.get(0)).getCategories()[0].equals("Java"));
+		check.expect("last seen stays on a message left on the server", "uid-3".equals(mail.getLastSeenUID()));
+
+		p = new Progress();
+		entries = check.importPosts(mail, authors, cats, p);
+		check.expect("nothing new, nothing checked", p.checked == 0 && entries.size() == 0);
+
+		//a new directive may turn old messages into posts
+		mail.setPostDirective("BLOG");
+		p = new Progress();
+		entries = check.importPosts(mail, authors, cats, p);
+		check.expect("every message checked after the directive changed", p.checked == 2);
+
+		//the last seen UID of another mailbox is ignored
+		mail.setLastSeenUID("pop3:other@example.com:110", "uid-3");
+		p = new Progress();
+		entries = check.importPosts(mail, authors, cats, p);
+		check.expect("every message checked in another mailbox", p.checked == 2);
+
+		//the last seen message was deleted by another client
+		check.mailbox.removeElementAt(check.mailbox.size() - 1);
+		check.addMessage("author@example.com", "Later", "Another message");
+		p = new Progress();
+		entries = check.importPosts(mail, authors, cats, p);
+		check.expect("every message checked when the last seen is gone", p.checked == 2);
+
+		//a post from an address that isn't an author is passed over...
+		check.addMessage("stranger@example.com", "BLOG: Guest", "A guest post");
+		p = new Progress();
+		entries = check.importPosts(mail, authors, cats, p);
+		check.expect("post from a stranger not imported", p.checked == 1 && entries.size() == 0);
+
+		//...until the address is added as an author
+		Author guest = new Author();
+		guest.setName("Guest");
+		guest.setEmailAddress("stranger@example.com");
+		Author guests[] = {auth, guest};
+		p = new Progress();
+		entries = check.importPosts(mail, guests, cats, p);
+		check.expect("every message checked after the authors changed", p.checked == 3);
+		check.expect("post from the new author imported", entries.size() == 1 &&
+			((BlogEntry)entries.get(0)).getTitle().equals("Guest"));
+
+		check.server.close();
+		System.out.println(check.failures + " checks failed");
+		if(check.failures > 0)
+			System.exit(1);
+	}
+
+	private List importPosts(EMailTransport mail, Author authors[], String cats[], Progress p)
+	throws Exception
+	{
+		if(!mail.connect())
+			throw new IOException("Not connected: " + mail.getFailureReason());
+		try
+		{
+			return mail.getEntries(authors, cats, p);
+		}
+		finally
+		{
+			mail.disconnect();
+		}
+	}
+
+	private synchronized void addMessage(String from, String subject, String body)
+	{
+		String text =
+			"From: " + from + "\r\n" +
+			"To: blog@example.com\r\n" +
+			"Subject: " + subject + "\r\n" +
+			"Date: Mon, 07 Mar 2005 09:30:00 +0000\r\n" +
+			"Message-ID: <" + nextUID + "@example.com>\r\n" +
+			"Content-Type: text/plain; charset=us-ascii\r\n" +
+			"\r\n" + body + "\r\n";
+		mailbox.add(new String[]{"uid-" + nextUID++, text});
+	}
+
+	private void expect(String what, boolean ok)
+	{
+		if(!ok)
+		{
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	public void run()
+	{
+		while(true)
+		{
+			Socket s;
+			try
+			{
+				s = server.accept();
+			}
+			catch(IOException ex)
+			{
+				return;
+			}
+			try
+			{
+				serve(s);
+			}
+			catch(IOException ex)
+			{
+				System.out.println("Server error: " + ex.getMessage());
+			}
+			finally
+			{
+				try{s.close();}
+				catch(IOException ex){}
+			}
+		}
+	}
+
+	/**
+	 * Answers the POP3 commands JavaMail sends. Deleted messages are
+	 * removed from the mailbox when the session quits.
+	 */
+	private void serve(Socket s) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "US-ASCII"));
+		OutputStream out = s.getOutputStream();
+		Vector msgs;
+		synchronized(this)
+		{
+			msgs = new Vector(mailbox);
+		}
+		boolean deleted[] = new boolean[msgs.size()];
+		reply(out, "+OK ready");
+
+		String line;
+		while((line = in.readLine()) != null)
+		{
+			String args[] = line.trim().split(" ");
+			String cmd = args[0].toUpperCase();
+			int n = args.length > 1 ? parse(args[1]) : 0;
+			boolean valid = n >= 1 && n <= msgs.size() && !deleted[n - 1];
+			String msg[] = valid ? (String[])msgs.elementAt(n - 1) : null;
+
+			if(cmd.equals("USER") || cmd.equals("PASS") || cmd.equals("NOOP") || cmd.equals("RSET"))
+				reply(out, "+OK");
+			else if(cmd.equals("STAT"))
+			{
+				int count = 0, size = 0;
+				for(int i = 0; i < msgs.size(); i++)
+				{
+					if(!deleted[i])
+					{
+						count++;
+						size += ((String[])msgs.elementAt(i))[1].length();
+					}
+				}
+				reply(out, "+OK " + count + " " + size);
+			}
+			else if((cmd.equals("LIST") || cmd.equals("UIDL")) && args.length == 1)
+			{
+				StringBuffer sb = new StringBuffer("+OK\r\n");
+				for(int i = 0; i < msgs.size(); i++)
+				{
+					String m[] = (String[])msgs.elementAt(i);
+					if(!deleted[i])
+						sb.append((i + 1) + " " + (cmd.equals("LIST") ? String.valueOf(m[1].length()) : m[0]) + "\r\n");
+				}
+				sb.append(".");
+				reply(out, sb.toString());
+			}
+			else if(cmd.equals("LIST") && valid)
+				reply(out, "+OK " + n + " " + msg[1].length());
+			else if(cmd.equals("UIDL") && valid)
+				reply(out, "+OK " + n + " " + msg[0]);
+			else if(cmd.equals("TOP") && valid)
+				reply(out, "+OK\r\n" + msg[1].substring(0, msg[1].indexOf("\r\n\r\n") + 2) + "\r\n.");
+			else if(cmd.equals("RETR") && valid)
+			{
+				synchronized(this)
+				{
+					Integer c = (Integer)retrieved.get(msg[0]);
+					retrieved.put(msg[0], new Integer(c == null ? 1 : c.intValue() + 1));
+				}
+				reply(out, "+OK\r\n" + msg[1] + ".");
+			}
+			else if(cmd.equals("DELE") && valid)
+			{
+				deleted[n - 1] = true;
+				reply(out, "+OK");
+			}
+			else if(cmd.equals("QUIT"))
+			{
+				synchronized(this)
+				{
+					for(int i = 0; i < msgs.size(); i++)
+					{
+						if(deleted[i])
+							mailbox.remove(msgs.elementAt(i));
+					}
+				}
+				reply(out, "+OK");
+				return;
+			}
+			else
+				reply(out, "-ERR");
+		}
+	}
+
+	private static int parse(String s)
+	{
+		try
+		{
+			return Integer.parseInt(s);
+		}
+		catch(NumberFormatException ex)
+		{
+			return 0;
+		}
+	}
+
+	private static void reply(OutputStream out, String s) throws IOException
+	{
+		out.write((s + "\r\n").getBytes("US-ASCII"));
+		out.flush();
+	}
+
+	private static class Progress implements MailTransportProgress
+	{
+		int checked;
+
+		public boolean isAborted()
+		{
+			return false;
+		}
+
+		public void emailCheckStarted(String serverName){}
+
+		public void numberOfMessagesToCheck(int num){}
+
+		public void messageChecked(String subject, boolean isImportable)
+		{
+			checked++;
+		}
+
+		public void emailCheckComplete(){}
+
+		public void mailCheckFailed(String message){}
+	}
+}
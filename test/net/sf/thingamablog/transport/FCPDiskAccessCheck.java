@@ -0,0 +1,214 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ */
+package net.sf.thingamablog.transport;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Hashtable;
+
+
+/**
+ * Runs the TestDDA handshake of the FCPTransport against a small FCP node
+ * on the loopback interface, over the client the transports of a node
+ * share. The node writes a file in the tested directory and allows the
+ * directory if the client reads the file back.
+ *
+ * Checks that a directory is allowed without waiting for the reply
+ * timeout, that a file the node names outside the directory isn't read,
+ * and that two transports can test directories at the same time.
+ *
+ * Usage: FCPDiskAccessCheck
+ */
+public class FCPDiskAccessCheck implements Runnable
+{
+	//the transports give up on a reply after 10 seconds
+	private static final long MAX_TEST_TIME = 5000;
+
+	private ServerSocket server;
+	private int failures;
+	//directory -> the file the node names for it, if not its own
+	private Hashtable readFiles = new Hashtable();
+
+	public static void main(String args[]) throws Exception
+	{
+		FCPDiskAccessCheck check = new FCPDiskAccessCheck();
+		check.server = new ServerSocket(0);
+		Thread t = new Thread(check, "FCPDiskAccessCheck");
+		t.setDaemon(true);
+		t.start();
+
+		File dir = File.createTempFile("ddacheck", "");
+		dir.delete();
+		dir.mkdirs();
+		File a = new File(dir, "a");
+		File b = new File(dir, "b");
+		File c = new File(dir, "c");
+		a.mkdirs();
+		b.mkdirs();
+		c.mkdirs();
+
+		FCPTransport first = check.connect();
+		FCPTransport second = check.connect();
+
+		long start = System.currentTimeMillis();
+		check.expect("directory allowed", first.testDiskAccess(a));
+		check.expect("answered without a timeout", System.currentTimeMillis() - start < MAX_TEST_TIME);
+
+		//the node names a file in another directory
+		check.readFiles.put(c.getAbsolutePath(), new File(a, "outside.txt").getAbsolutePath());
+		check.expect("file outside the directory not read", !first.testDiskAccess(c));
+
+		//both transports share the client and its unrouted replies
+		Tester one = new Tester(first, a);
+		Tester two = new Tester(second, b);
+		start = System.currentTimeMillis();
+		one.start();
+		two.start();
+		one.join();
+		two.join();
+		check.expect("concurrent tests allowed", one.allowed && two.allowed);
+		check.expect("concurrent tests without a timeout", System.currentTimeMillis() - start < MAX_TEST_TIME);
+
+		first.disconnect();
+		second.disconnect();
+		check.server.close();
+		System.out.println(check.failures + " checks failed");
+		if(check.failures > 0)
+			System.exit(1);
+	}
+
+	private FCPTransport connect() throws IOException
+	{
+		FCPTransport fcp = new FCPTransport();
+		fcp.setNode("127.0.0.1", server.getLocalPort());
+		if(!fcp.connect())
+			throw new IOException("Not connected: " + fcp.getFailureReason());
+		return fcp;
+	}
+
+	private void expect(String what, boolean ok)
+	{
+		if(!ok)
+		{
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	public void run()
+	{
+		while(true)
+		{
+			final Socket s;
+			try
+			{
+				s = server.accept();
+			}
+			catch(IOException ex)
+			{
+				return;
+			}
+			Thread t = new Thread("FCP node")
+			{
+				public void run()
+				{
+					try
+					{
+						serve(s);
+					}
+					catch(IOException ex){}
+					finally
+					{
+						try{s.close();}
+						catch(IOException ex){}
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Answers the hello and the TestDDA messages of a connection
+	 */
+	private void serve(Socket s) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+		OutputStream out = s.getOutputStream();
+		//directory -> the content of the file written for it
+		Hashtable contents = new Hashtable();
+		int files = 0;
+
+		String name;
+		while((name = in.readLine()) != null)
+		{
+			Hashtable fields = new Hashtable();
+			String line;
+			while((line = in.readLine()) != null && !line.equals("EndMessage"))
+			{
+				int eq = line.indexOf('=');
+				if(eq > 0)
+					fields.put(line.substring(0, eq), line.substring(eq + 1));
+			}
+
+			String dir = (String)fields.get("Directory");
+			if(name.equals("ClientHello"))
+				send(out, "NodeHello\nFCPVersion=2.0\nNode=Fred\n");
+			else if(name.equals("TestDDARequest") && dir != null)
+			{
+				String file = (String)readFiles.get(dir);
+				if(file == null)
+					file = new File(dir, "DDACheck-" + files + ".tmp").getAbsolutePath();
+				String content = "content " + files++;
+				File f = new File(file);
+				f.deleteOnExit();
+				FileOutputStream fout = new FileOutputStream(f);
+				fout.write(content.getBytes("UTF-8"));
+				fout.close();
+				contents.put(dir, content);
+				send(out, "TestDDAReply\nDirectory=" + dir + "\nReadFilename=" + file + "\n");
+			}
+			else if(name.equals("TestDDAResponse") && dir != null)
+			{
+				Object content = contents.remove(dir);
+				boolean allowed = content != null && content.equals(fields.get("ReadContent"));
+				send(out, "TestDDAComplete\nDirectory=" + dir + "\nReadDirectoryAllowed=" + allowed + "\n");
+			}
+			else
+				send(out, "ProtocolError\nCode=1\n");
+		}
+	}
+
+	private static synchronized void send(OutputStream out, String msg) throws IOException
+	{
+		out.write((msg + "EndMessage\n").getBytes("UTF-8"));
+		out.flush();
+	}
+
+	private static class Tester extends Thread
+	{
+		private FCPTransport fcp;
+		private File dir;
+		boolean allowed;
+
+		Tester(FCPTransport fcp, File dir)
+		{
+			this.fcp = fcp;
+			this.dir = dir;
+		}
+
+		public void run()
+		{
+			allowed = fcp.testDiskAccess(dir);
+		}
+	}
+}
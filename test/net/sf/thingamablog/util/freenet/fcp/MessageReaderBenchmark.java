@@ -0,0 +1,155 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * This file is part of Thingamablog. ( http://thingamablog.sf.net )
+ *
+ * Copyright (c) 2004, Bob Tantlinger All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307,
+ * USA.
+ */
+package net.sf.thingamablog.util.freenet.fcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.sf.thingamablog.util.io.LineInputStream;
+
+/**
+ * Compares the throughput of {@link MessageReader} with the line by line
+ * parsing the connection used before it. Both parse the same stream of
+ * <code>SimpleProgress</code> messages, like the ones the node sends during
+ * an insert. The number of reads made on the underlying stream is reported
+ * too, as on a socket each of them is a system call.
+ * <p>
+ * Usage: <code>java net.sf.thingamablog.util.freenet.fcp.MessageReaderBenchmark [messages] [rounds]</code>
+ */
+class MessageReaderBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int messages = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		byte[] stream = createStream(messages);
+		System.out.println(messages + " messages, " + stream.length + " bytes");
+
+		for (int round = 1; round <= rounds; round++) {
+			CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(stream));
+			long start = System.currentTimeMillis();
+			int count = readLines(in);
+			report("round " + round + " LineInputStream", count, System.currentTimeMillis() - start, in.reads);
+
+			in = new CountingInputStream(new ByteArrayInputStream(stream));
+			start = System.currentTimeMillis();
+			count = readMessages(in);
+			report("round " + round + " MessageReader  ", count, System.currentTimeMillis() - start, in.reads);
+		}
+	}
+
+	private static byte[] createStream(int messages) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(messages * 200);
+		for (int i = 0; i < messages; i++) {
+			String message = "SimpleProgress\n" +
+				"Identifier=Thingamablog-insert\n" +
+				"Total=" + (messages * 2) + "\n" +
+				"Required=" + messages + "\n" +
+				"Failed=0\n" +
+				"FatallyFailed=0\n" +
+				"Succeeded=" + i + "\n" +
+				"FinalizedTotal=" + (i > messages / 2) + "\n" +
+				"EndMessage\n";
+			out.write(message.getBytes("UTF-8"));
+		}
+		return out.toByteArray();
+	}
+
+	private static void report(String name, int messages, long millis, long reads) {
+		long perSecond = (millis == 0) ? -1 : (messages * 1000L / millis);
+		System.out.println(name + ": " + messages + " messages in " + millis + " ms, " +
+			perSecond + " messages/s, " + reads + " reads");
+	}
+
+	private static int readMessages(InputStream in) throws IOException {
+		MessageReader reader = new MessageReader(in);
+		int count = 0;
+		while (reader.readMessage() != null) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * The message parsing of the connection before it used a
+	 * {@link MessageReader}, without the payload handling.
+	 */
+	private static int readLines(InputStream in) throws IOException {
+		LineInputStream nodeReader = new LineInputStream(in);
+		int count = 0;
+		String line = "";
+		Message message = null;
+		while (line != null) {
+			line = nodeReader.readLine();
+			if (line == null) {
+				break;
+			}
+			if (message == null) {
+				message = new Message(line);
+				continue;
+			}
+			if ("Data".equals(line) || "EndMessage".equals(line)) {
+				count++;
+				message = null;
+				continue;
+			}
+			int equalsPosition = line.indexOf('=');
+			if (equalsPosition > -1) {
+				String key = line.substring(0, equalsPosition).trim();
+				String value = line.substring(equalsPosition + 1).trim();
+				if (key.equals("Identifier")) {
+					message.setIdentifier(value);
+				} else {
+					message.put(key, value);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the reads made on a stream.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		long reads;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read() throws IOException {
+			reads++;
+			return super.read();
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			reads++;
+			return super.read(b, off, len);
+		}
+
+	}
+
+}